@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.action;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The UTF-8 buffer of the result or log of an action. It grows on demand,
+ * and keeps at most the given bytes: beyond them, the head and the tail
+ * halves are kept and the middle is dropped. The whole output can also be
+ * spilled to a local file once the middle is dropped.
+ *
+ * <p>The text appended since the last report can be polled, with the bytes
+ * dropped in between replaced by a marker.
+ */
+class ActionOutputBuffer extends OutputStream {
+  static final Logger LOG = LoggerFactory.getLogger(ActionOutputBuffer.class);
+  private static final int INITIAL_SIZE = 256;
+  private static final byte[] EMPTY = new byte[0];
+
+  private int headLimit;
+  private int tailLimit;
+  private File spillFile;
+  private OutputStream spillOs;
+
+  private byte[] head = EMPTY;
+  private int headCount;
+  // A ring of the last bytes written
+  private byte[] tail = EMPTY;
+  private int tailStart;
+  private int tailCount;
+  private long written;
+
+  private long reportedBytes;
+  private int reportedChars;
+
+  ActionOutputBuffer(int maxBytes) {
+    setMaxBytes(maxBytes);
+  }
+
+  /**
+   * Set the max bytes kept, which takes effect if nothing is written yet.
+   */
+  synchronized void setMaxBytes(int maxBytes) {
+    if (written == 0) {
+      this.headLimit = maxBytes / 2;
+      this.tailLimit = maxBytes - headLimit;
+    }
+  }
+
+  /**
+   * Set the file to spill the whole output to, once the middle of it is
+   * dropped. Takes effect if nothing is dropped yet.
+   */
+  synchronized void setSpillFile(File spillFile) {
+    if (spillOs == null) {
+      this.spillFile = spillFile;
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    if (spillFile != null) {
+      spill(b, off, len);
+    }
+    int n = Math.min(len, headLimit - headCount);
+    if (n > 0) {
+      head = ensureCapacity(head, headCount, headCount + n, headLimit);
+      System.arraycopy(b, off, head, headCount, n);
+      headCount += n;
+      off += n;
+      len -= n;
+    }
+    if (len > 0) {
+      appendTail(b, off, len);
+    }
+    written += n + len;
+  }
+
+  /**
+   * Get the bytes written, including the ones dropped.
+   */
+  synchronized long getBytesWritten() {
+    return written;
+  }
+
+  /**
+   * Get the bytes kept in memory.
+   */
+  synchronized int getBytesKept() {
+    return headCount + tailCount;
+  }
+
+  synchronized int getReportedChars() {
+    return reportedChars;
+  }
+
+  /**
+   * Get the text appended since the last call. A char not written
+   * completely yet is left to the next call.
+   */
+  synchronized String pollUnreported() {
+    long pos = reportedBytes;
+    long tailFrom = written - tailCount;
+    StringBuilder text = new StringBuilder();
+    if (headCount < tailFrom && pos < tailFrom) {
+      // Some bytes not reported yet are dropped
+      if (pos < headCount) {
+        text.append(decode(pos, headCount));
+        pos = headCount;
+      }
+      text.append(getDroppedMarker(tailFrom - pos));
+      pos = skipContinuationBytes(tailFrom);
+    }
+    long end = getCompleteEnd(pos, written);
+    text.append(decode(pos, end));
+    reportedBytes = end;
+    reportedChars += text.length();
+    return text.toString();
+  }
+
+  @Override
+  public synchronized String toString() {
+    long tailFrom = written - tailCount;
+    if (headCount == tailFrom) {
+      return decode(0, written);
+    }
+    return decode(0, headCount) + getDroppedMarker(tailFrom - headCount)
+        + decode(skipContinuationBytes(tailFrom), written);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (spillOs != null) {
+      try {
+        spillOs.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close " + spillFile, e);
+      }
+    }
+  }
+
+  private void appendTail(byte[] b, int off, int len) {
+    if (len >= tailLimit) {
+      tail = ensureCapacity(tail, 0, tailLimit, tailLimit);
+      System.arraycopy(b, off + len - tailLimit, tail, 0, tailLimit);
+      tailStart = 0;
+      tailCount = tailLimit;
+      return;
+    }
+    if (tail.length < tailLimit && tailCount + len > tail.length) {
+      // Grow the ring, with its bytes moved to the start
+      byte[] grown = ensureCapacity(EMPTY, 0, tailCount + len, tailLimit);
+      copyTail(tailStart, tailCount, grown, 0);
+      tail = grown;
+      tailStart = 0;
+    }
+    int pos = (tailStart + tailCount) % tail.length;
+    int n = Math.min(len, tail.length - pos);
+    System.arraycopy(b, off, tail, pos, n);
+    System.arraycopy(b, off + n, tail, 0, len - n);
+    int overwritten = Math.max(0, tailCount + len - tail.length);
+    tailStart = (tailStart + overwritten) % tail.length;
+    tailCount += len - overwritten;
+  }
+
+  private void spill(byte[] b, int off, int len) {
+    try {
+      if (spillOs == null) {
+        if (written + len <= headLimit + tailLimit) {
+          return;
+        }
+        // Nothing is dropped before, so all written is kept
+        spillOs = new BufferedOutputStream(new FileOutputStream(spillFile));
+        spillOs.write(head, 0, headCount);
+        byte[] bytes = new byte[tailCount];
+        copyTail(tailStart, tailCount, bytes, 0);
+        spillOs.write(bytes);
+      }
+      spillOs.write(b, off, len);
+    } catch (IOException e) {
+      LOG.warn("Stop spilling to " + spillFile, e);
+      close();
+      spillFile = null;
+      spillOs = null;
+    }
+  }
+
+  private String getDroppedMarker(long dropped) {
+    return "\n... " + dropped + " bytes omitted"
+        + (spillOs != null ? ", the whole output is in " + spillFile : "") + " ...\n";
+  }
+
+  private String decode(long from, long to) {
+    byte[] bytes = new byte[(int) (to - from)];
+    long tailFrom = written - tailCount;
+    int fromHead = (int) Math.max(0, Math.min(to, headCount) - from);
+    if (fromHead > 0) {
+      System.arraycopy(head, (int) from, bytes, 0, fromHead);
+    }
+    if (bytes.length > fromHead) {
+      int index = (int) (from + fromHead - tailFrom);
+      copyTail((tailStart + index) % tail.length, bytes.length - fromHead, bytes, fromHead);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void copyTail(int start, int len, byte[] dest, int destPos) {
+    int n = Math.min(len, tail.length - start);
+    System.arraycopy(tail, start, dest, destPos, n);
+    System.arraycopy(tail, 0, dest, destPos + n, len - n);
+  }
+
+  private byte byteAt(long pos) {
+    if (pos < headCount) {
+      return head[(int) pos];
+    }
+    return tail[(int) ((tailStart + pos - (written - tailCount)) % tail.length)];
+  }
+
+  private long skipContinuationBytes(long pos) {
+    while (pos < written && (byteAt(pos) & 0xC0) == 0x80) {
+      pos++;
+    }
+    return pos;
+  }
+
+  private long getCompleteEnd(long from, long end) {
+    long lead = end - 1;
+    while (lead > from && (byteAt(lead) & 0xC0) == 0x80) {
+      lead--;
+    }
+    if (lead >= from && lead + getUtf8Length(byteAt(lead)) > end) {
+      return lead;
+    }
+    return end;
+  }
+
+  private static int getUtf8Length(byte lead) {
+    if ((lead & 0x80) == 0) {
+      return 1;
+    } else if ((lead & 0xE0) == 0xC0) {
+      return 2;
+    } else if ((lead & 0xF0) == 0xE0) {
+      return 3;
+    }
+    return 4;
+  }
+
+  private static byte[] ensureCapacity(byte[] buf, int count, int capacity, int limit) {
+    if (capacity <= buf.length) {
+      return buf;
+    }
+    int size = Math.max(buf.length, INITIAL_SIZE);
+    while (size < capacity) {
+      size <<= 1;
+    }
+    byte[] grown = new byte[Math.min(size, limit)];
+    System.arraycopy(buf, 0, grown, 0, count);
+    return grown;
+  }
+}
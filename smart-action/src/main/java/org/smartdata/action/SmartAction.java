@@ -18,16 +18,19 @@
 package org.smartdata.action;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smartdata.SmartContext;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.protocol.message.ActionStatus;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Smart action, the base class. All actions should inherit this. All actions
@@ -36,29 +39,30 @@
  */
 public abstract class SmartAction {
   static final Logger LOG = LoggerFactory.getLogger(SmartAction.class);
+  private static final Pattern SPILL_FILE_NAME =
+      Pattern.compile("action-\\d+\\.(result|log)");
   private long cmdletId;
   private boolean lastAction;
   private long actionId;
   private Map<String, String> actionArgs;
   private SmartContext context;
-  private ByteArrayOutputStream resultOs;
-  private PrintStream psResultOs;
-  private ByteArrayOutputStream logOs;
-  private PrintStream psLogOs;
+  private ActionOutputBuffer resultOs;
+  // Created on demand, as each holds buffers for encoding
+  private volatile PrintStream psResultOs;
+  private ActionOutputBuffer logOs;
+  private volatile PrintStream psLogOs;
   private volatile boolean successful;
   protected String name;
   private long startTime;
   private long finishTime;
   private Throwable throwable;
-  private boolean finished;
+  private volatile boolean finished;
 
   public SmartAction() {
     this.successful = false;
     //Todo: extract the print stream out of this class
-    this.resultOs = new ByteArrayOutputStream(64 * 1024);
-    this.psResultOs = new PrintStream(resultOs, false);
-    this.logOs = new ByteArrayOutputStream(64 * 1024);
-    this.psLogOs = new PrintStream(logOs, false);
+    this.resultOs = new ActionOutputBuffer(SmartConfKeys.SMART_ACTION_OUTPUT_MAX_BYTES_DEFAULT);
+    this.logOs = new ActionOutputBuffer(SmartConfKeys.SMART_ACTION_OUTPUT_MAX_BYTES_DEFAULT);
   }
 
   public String getName() {
@@ -91,6 +95,12 @@ public SmartContext getContext() {
 
   public void setContext(SmartContext context) {
     this.context = context;
+    if (context != null && context.getConf() != null) {
+      int maxBytes = context.getConf().getInt(SmartConfKeys.SMART_ACTION_OUTPUT_MAX_BYTES_KEY,
+          SmartConfKeys.SMART_ACTION_OUTPUT_MAX_BYTES_DEFAULT);
+      resultOs.setMaxBytes(maxBytes);
+      logOs.setMaxBytes(maxBytes);
+    }
   }
 
   /**
@@ -128,6 +138,7 @@ public void setActionId(long actionId) {
   public final void run() {
     try {
       setStartTime();
+      setSpillFiles();
       execute();
       successful = true;
     } catch (Throwable t) {
@@ -141,6 +152,48 @@ public final void run() {
     }
   }
 
+  private void setSpillFiles() {
+    File dir = context == null ? null : getSpillDir(context.getConf());
+    if (dir != null) {
+      resultOs.setSpillFile(new File(dir, "action-" + actionId + ".result"));
+      logOs.setSpillFile(new File(dir, "action-" + actionId + ".log"));
+    }
+  }
+
+  /**
+   * Get the dir to spill the result and log of actions to, or null if they
+   * are not spilled.
+   */
+  public static File getSpillDir(SmartConf conf) {
+    String dir = conf == null ? null : conf.getTrimmed(
+        SmartConfKeys.SMART_ACTION_OUTPUT_SPILL_DIR_KEY,
+        SmartConfKeys.SMART_ACTION_OUTPUT_SPILL_DIR_DEFAULT);
+    return dir == null || dir.isEmpty() ? null : new File(dir);
+  }
+
+  /**
+   * Delete the spill files last written before the given time.
+   *
+   * @return the number of files deleted
+   */
+  public static int purgeSpillFiles(File dir, long before) {
+    File[] files = dir.listFiles((parent, name) -> SPILL_FILE_NAME.matcher(name).matches());
+    if (files == null) {
+      return 0;
+    }
+    int deleted = 0;
+    for (File file : files) {
+      if (file.lastModified() < before) {
+        if (file.delete()) {
+          deleted++;
+        } else {
+          LOG.warn("Failed to delete spill file {}", file);
+        }
+      }
+    }
+    return deleted;
+  }
+
   private void setStartTime() {
     this.startTime = System.currentTimeMillis();
   }
@@ -155,19 +208,33 @@ private void setFinishTime() {
 
   // The result will be shown in each action's summary page.
   protected void appendResult(String result) {
-    psResultOs.println(result);
+    getResultOs().println(result);
   }
 
   // The log will be shown in action's submission section and summary page.
   protected void appendLog(String log) {
-    psLogOs.println(log);
+    getLogOs().println(log);
   }
 
   public PrintStream getResultOs() {
+    if (psResultOs == null) {
+      synchronized (resultOs) {
+        if (psResultOs == null) {
+          psResultOs = createPrintStream(resultOs);
+        }
+      }
+    }
     return psResultOs;
   }
 
   public PrintStream getLogOs() {
+    if (psLogOs == null) {
+      synchronized (logOs) {
+        if (psLogOs == null) {
+          psLogOs = createPrintStream(logOs);
+        }
+      }
+    }
     return psLogOs;
   }
 
@@ -179,22 +246,64 @@ public float getProgress() {
   }
 
   public ActionStatus getActionStatus() throws UnsupportedEncodingException {
+    // Read before the buffers, so that a finished status carries all of them
+    boolean isFinished = finished;
     return new ActionStatus(
         cmdletId,
         lastAction,
         actionId,
         getProgress(),
-        resultOs.toString("UTF-8"),
-        logOs.toString("UTF-8"),
+        resultOs.toString(),
+        logOs.toString(),
         startTime,
         finishTime,
         throwable,
-        finished);
+        isFinished);
+  }
+
+  /**
+   * Get the status of the action to report. Only the result and log
+   * appended since the last report are carried, from their offsets.
+   */
+  public synchronized ActionStatus getIncrementalActionStatus() {
+    boolean isFinished = finished;
+    int resultOffset = resultOs.getReportedChars();
+    int logOffset = logOs.getReportedChars();
+    ActionStatus status = new ActionStatus(
+        cmdletId,
+        lastAction,
+        actionId,
+        getProgress(),
+        resultOs.pollUnreported(),
+        logOs.pollUnreported(),
+        startTime,
+        finishTime,
+        throwable,
+        isFinished);
+    status.setResultOffset(resultOffset);
+    status.setLogOffset(logOffset);
+    return status;
+  }
+
+  // Encoded as UTF-8, in which the buffers are decoded
+  private static PrintStream createPrintStream(ActionOutputBuffer buffer) {
+    try {
+      return new PrintStream(buffer, false, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   private void stop() {
-    psLogOs.close();
-    psResultOs.close();
+    if (psLogOs != null) {
+      psLogOs.close();
+    }
+    if (psResultOs != null) {
+      psResultOs.close();
+    }
+    // Close the spill files, if any
+    logOs.close();
+    resultOs.close();
   }
 
   public boolean isSuccessful() {
@@ -210,4 +319,5 @@ public boolean getExpectedAfterRun() throws UnsupportedEncodingException {
     ActionStatus actionStatus = getActionStatus();
     return actionStatus.isFinished() && actionStatus.getThrowable() == null;
   }
+
 }
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.action;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class TestActionOutputBuffer {
+
+  private static void write(ActionOutputBuffer buffer, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void testKeepAllWithinLimit() {
+    ActionOutputBuffer buffer = new ActionOutputBuffer(1024);
+    Assert.assertEquals(0, buffer.getBytesKept());
+    Assert.assertEquals("", buffer.toString());
+    Assert.assertEquals("", buffer.pollUnreported());
+
+    write(buffer, "hello ");
+    write(buffer, "world");
+    Assert.assertEquals("hello world", buffer.toString());
+    Assert.assertEquals("hello world", buffer.pollUnreported());
+    Assert.assertEquals("", buffer.pollUnreported());
+    Assert.assertEquals(11, buffer.getReportedChars());
+  }
+
+  @Test
+  public void testKeepHeadAndTail() {
+    ActionOutputBuffer buffer = new ActionOutputBuffer(10);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append((char) ('a' + i % 26));
+      write(buffer, String.valueOf((char) ('a' + i % 26)));
+    }
+    Assert.assertEquals(1000, buffer.getBytesWritten());
+    Assert.assertEquals(10, buffer.getBytesKept());
+    Assert.assertEquals(text.substring(0, 5) + "\n... 990 bytes omitted ...\n"
+        + text.substring(995), buffer.toString());
+
+    // A write larger than the tail replaces it
+    write(buffer, "0123456789");
+    Assert.assertEquals("abcde\n... 1000 bytes omitted ...\n56789", buffer.toString());
+  }
+
+  @Test
+  public void testPollAcrossDroppedBytes() {
+    ActionOutputBuffer buffer = new ActionOutputBuffer(8);
+    write(buffer, "ab");
+    Assert.assertEquals("ab", buffer.pollUnreported());
+    write(buffer, "cdefghijkl");
+    Assert.assertEquals("cd\n... 4 bytes omitted ...\nijkl", buffer.pollUnreported());
+    write(buffer, "mn");
+    Assert.assertEquals("mn", buffer.pollUnreported());
+    write(buffer, "opqrstuvwxyz");
+    Assert.assertEquals("\n... 8 bytes omitted ...\nwxyz", buffer.pollUnreported());
+
+    int reported = "ab".length() + "cd\n... 4 bytes omitted ...\nijkl".length()
+        + "mn".length() + "\n... 8 bytes omitted ...\nwxyz".length();
+    Assert.assertEquals(reported, buffer.getReportedChars());
+  }
+
+  @Test
+  public void testIncompleteChar() {
+    ActionOutputBuffer buffer = new ActionOutputBuffer(1024);
+    byte[] bytes = "a\u4e2d".getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, 2);
+    Assert.assertEquals("a", buffer.pollUnreported());
+    buffer.write(bytes, 2, bytes.length - 2);
+    Assert.assertEquals("\u4e2d", buffer.pollUnreported());
+    Assert.assertEquals(2, buffer.getReportedChars());
+
+    // Bytes of a char cut by the dropped middle are skipped
+    buffer = new ActionOutputBuffer(4);
+    write(buffer, "ab\u4e2d\u4e2d");
+    Assert.assertEquals("ab\n... 4 bytes omitted ...\n", buffer.toString());
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    File file = File.createTempFile("action", ".log");
+    try {
+      ActionOutputBuffer buffer = new ActionOutputBuffer(6);
+      buffer.setSpillFile(file);
+      write(buffer, "abc");
+      Assert.assertEquals(0, file.length());
+      write(buffer, "defgh");
+      write(buffer, "ijkl");
+      buffer.close();
+      Assert.assertEquals("abcdefghijkl",
+          new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+      Assert.assertEquals("abc\n... 6 bytes omitted, the whole output is in " + file
+          + " ...\njkl", buffer.toString());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testPurgeSpillFiles() throws IOException {
+    File dir = Files.createTempDirectory("spill").toFile();
+    try {
+      File oldLog = new File(dir, "action-1.log");
+      File oldResult = new File(dir, "action-1.result");
+      File newLog = new File(dir, "action-2.log");
+      File other = new File(dir, "other.log");
+      for (File file : new File[] {oldLog, oldResult, newLog, other}) {
+        Assert.assertTrue(file.createNewFile());
+      }
+      long now = System.currentTimeMillis();
+      Assert.assertTrue(oldLog.setLastModified(now - 60000));
+      Assert.assertTrue(oldResult.setLastModified(now - 60000));
+      Assert.assertTrue(other.setLastModified(now - 60000));
+
+      Assert.assertEquals(2, SmartAction.purgeSpillFiles(dir, now - 30000));
+      Assert.assertFalse(oldLog.exists());
+      Assert.assertFalse(oldResult.exists());
+      Assert.assertTrue(newLog.exists());
+      Assert.assertTrue(other.exists());
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+}
@@ -28,10 +28,8 @@
 import akka.actor.Terminated;
 import akka.actor.UntypedActor;
 import akka.japi.Procedure;
-import akka.pattern.Patterns;
 import akka.remote.AssociationEvent;
 import akka.remote.DisassociatedEvent;
-import akka.util.Timeout;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -50,6 +48,7 @@
 import org.smartdata.server.engine.cmdlet.agent.AgentConstants;
 import org.smartdata.server.engine.cmdlet.agent.AgentUtils;
 import org.smartdata.server.engine.cmdlet.agent.SmartAgentContext;
+import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.GrantCredits;
 import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.RegisterNewAgent;
 import org.smartdata.server.engine.cmdlet.agent.messages.MasterToAgent;
 import org.smartdata.server.engine.cmdlet.agent.messages.MasterToAgent.AgentRegistered;
@@ -75,7 +74,7 @@ public class SmartAgent implements StatusReporter {
   private static final Logger LOG = LoggerFactory.getLogger(SmartAgent.class);
   private ActorSystem system;
   private ActorRef agentActor;
-  private CmdletExecutor cmdletExecutor;
+  private volatile CmdletExecutor cmdletExecutor;
 
   public static void main(String[] args) throws IOException {
     SmartAgent agent = new SmartAgent();
@@ -168,10 +167,16 @@ public void run() {
     int reportPeriod =
         conf.getInt(SmartConfKeys.SMART_STATUS_REPORT_PERIOD_KEY,
             SmartConfKeys.SMART_STATUS_REPORT_PERIOD_DEFAULT);
-    StatusReportTask statusReportTask =
+    final StatusReportTask statusReportTask =
         new StatusReportTask(this, cmdletExecutor, conf);
-    executorService.scheduleAtFixedRate(
-            statusReportTask, 1000, reportPeriod, TimeUnit.MILLISECONDS);
+    executorService.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        statusReportTask.run();
+        // Granted after the status of the finished cmdlets is reported
+        grantCredits();
+      }
+    }, 1000, reportPeriod, TimeUnit.MILLISECONDS);
 
     try {
       Await.result(system.whenTerminated(), Duration.Inf());
@@ -194,7 +199,35 @@ public void shutdown() {
    */
   @Override
   public void report(StatusMessage status) {
-    Patterns.ask(agentActor, status, Timeout.apply(5, TimeUnit.SECONDS));
+    agentActor.tell(status, ActorRef.noSender());
+  }
+
+  /**
+   * Grant master the credits released by the cmdlets finished since the
+   * last grant.
+   */
+  private void grantCredits() {
+    int finished = cmdletExecutor.pollNumFinished();
+    if (finished > 0) {
+      agentActor.tell(new GrantCredits(finished), ActorRef.noSender());
+    }
+  }
+
+  /**
+   * Get the credits granted on registering to a master, i.e. the number
+   * of more cmdlets this agent can accept.
+   */
+  private int getAvailableCredits(SmartConf conf) {
+    int capacity = conf.getInt(SmartConfKeys.SMART_CMDLET_EXECUTORS_KEY,
+        SmartConfKeys.SMART_CMDLET_EXECUTORS_DEFAULT)
+        + conf.getInt(SmartConfKeys.SMART_DISPATCH_CMDLETS_EXTRA_NUM_KEY,
+        SmartConfKeys.SMART_DISPATCH_CMDLETS_EXTRA_NUM_DEFAULT);
+    CmdletExecutor executor = cmdletExecutor;
+    if (executor == null) {
+      return capacity;
+    }
+    executor.pollNumFinished();
+    return Math.max(0, capacity - executor.getNumCmdlets());
   }
 
   private String getAgentName() {
@@ -381,6 +414,8 @@ public void apply(Object message) throws Exception {
           AgentActor.this.id = registered.getAgentId();
           LOG.info("SmartAgent {} registered to master: {}",
               AgentActor.this.id, master.path().address());
+          // The master resets the credits of the agent on registering
+          master.tell(new GrantCredits(agent.getAvailableCredits(conf)), getSelf());
           Serve serveContext = new Serve();
           getContext().become(serveContext);
         } else if (message instanceof DisassociatedEvent) {
@@ -448,9 +483,9 @@ public void apply(Object message) throws Exception {
           } catch (Exception e) {
             LOG.error(e.getMessage());
           }
-        } else if (message instanceof StatusMessage) {
+        } else if (message instanceof StatusMessage
+            || message instanceof GrantCredits) {
           master.tell(message, getSelf());
-          getSender().tell("status reported", getSelf());
         } else if (message instanceof Terminated) {
           Terminated terminated = (Terminated) message;
           if (terminated.getActor().equals(master)) {
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.metastore.DBType;
+import org.smartdata.metastore.DruidPool;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.metastore.dao.AccessCountTableManager;
+import org.smartdata.metastore.dao.AccessEventAggregator;
+import org.smartdata.metastore.dao.DaoProviderFactory;
+import org.smartdata.metastore.db.DBHandlersFactory;
+import org.smartdata.metastore.db.DbSchemaManager;
+import org.smartdata.metrics.FileAccessEvent;
+import org.smartdata.model.FileInfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_DRIVERCLASSNAME;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_INITIALSIZE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_MAXACTIVE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_MINIDLE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_URL;
+
+/**
+ * Ingest of file access events into a SQLite metastore. Each invocation of
+ * addAccessEvents adds one batch of events spread over a second, so the
+ * aggregation windows are closed and written to metastore as they are in
+ * smart server. Each invocation of addWindowOfDistinctFiles adds a whole
+ * window accessing every file once. The heap retained since setup is
+ * printed after each iteration.
+ */
+@State(Scope.Benchmark)
+public class AccessEventAggregatorBenchmark {
+  private static final long AGGREGATION_INTERVAL_MS = 5000;
+  private static final int INSERT_BATCH_SIZE = 10000;
+
+  @Param({"10000", "1000000"})
+  public int files;
+
+  @Param({"1000"})
+  public int batchSize;
+
+  @Param({"true", "false"})
+  public boolean inMemory;
+
+  private File dbFile;
+  private DruidPool druidPool;
+  private ExecutorService executorService;
+  private AccessEventAggregator aggregator;
+  private Random random;
+  private long timestamp;
+  private long baselineHeap;
+
+  @Setup
+  public void setUp() throws Exception {
+    dbFile = File.createTempFile("smart-benchmarks", ".db");
+    Properties druidProps = new Properties();
+    druidProps.setProperty(PROP_URL, "jdbc:sqlite:" + dbFile.getAbsolutePath());
+    druidProps.setProperty(PROP_DRIVERCLASSNAME, org.sqlite.JDBC.class.getName());
+    druidProps.setProperty(PROP_INITIALSIZE, "2");
+    druidProps.setProperty(PROP_MINIDLE, "2");
+    druidProps.setProperty(PROP_MAXACTIVE, "2");
+    druidPool = new DruidPool(druidProps);
+
+    DBHandlersFactory dbHandlersFactory = new DBHandlersFactory();
+    DbSchemaManager dbSchemaManager =
+        dbHandlersFactory.createDbManager(druidPool, new Configuration());
+    dbSchemaManager.initializeDatabase();
+    MetaStore metaStore = new MetaStore(druidPool, dbSchemaManager,
+        new DaoProviderFactory().createDaoProvider(druidPool, DBType.SQLITE),
+        dbHandlersFactory.createDbMetadataProvider(druidPool, DBType.SQLITE));
+
+    insertFiles(metaStore);
+
+    executorService = Executors.newFixedThreadPool(4);
+    AccessCountTableManager manager =
+        new AccessCountTableManager(metaStore, executorService, new Configuration());
+    aggregator = new AccessEventAggregator(
+        metaStore, manager, AGGREGATION_INTERVAL_MS, inMemory);
+    random = new Random(2018);
+    timestamp = AGGREGATION_INTERVAL_MS;
+    baselineHeap = getUsedHeap();
+  }
+
+  private void insertFiles(MetaStore metaStore) throws Exception {
+    for (int i = 0; i < files; i += INSERT_BATCH_SIZE) {
+      FileInfo[] fileInfos = new FileInfo[Math.min(INSERT_BATCH_SIZE, files - i)];
+      for (int j = 0; j < fileInfos.length; j++) {
+        fileInfos[j] = new FileInfo(getPath(i + j), i + j + 1, 1024, false, (short) 3,
+            128 * 1024 * 1024, 0, 0, (short) 0644, "hive", "hadoop", (byte) 0, (byte) 0);
+      }
+      metaStore.insertFiles(fileInfos);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void printHeapUsage() {
+    System.out.println("Heap retained since setup: "
+        + (getUsedHeap() - baselineHeap) / 1024 / 1024 + " MB");
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+    if (druidPool != null) {
+      druidPool.close();
+    }
+    if (dbFile != null) {
+      dbFile.delete();
+    }
+  }
+
+  @Benchmark
+  public void addAccessEvents() {
+    List<FileAccessEvent> events = new ArrayList<>(batchSize);
+    long step = 1000 / batchSize + 1;
+    for (int i = 0; i < batchSize; i++) {
+      // Skewed towards a few hot files
+      int file = random.nextInt(random.nextBoolean() ? files / 100 + 1 : files);
+      events.add(new FileAccessEvent(getPath(file), timestamp, "hive"));
+      timestamp += step;
+    }
+    aggregator.addAccessEvents(events);
+  }
+
+  @Benchmark
+  public void addWindowOfDistinctFiles() {
+    for (int i = 0; i < files; i += batchSize) {
+      List<FileAccessEvent> events = new ArrayList<>(batchSize);
+      for (int file = i; file < Math.min(i + batchSize, files); file++) {
+        events.add(new FileAccessEvent(getPath(file), timestamp, "hive"));
+      }
+      aggregator.addAccessEvents(events);
+    }
+    timestamp += AGGREGATION_INTERVAL_MS;
+  }
+
+  private static long getUsedHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static String getPath(int index) {
+    return "/warehouse/db" + index % 10 + "/table" + index % 100 + "/part-" + index;
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import com.google.common.collect.ArrayListMultimap;
+import org.apache.hadoop.fs.BlockLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.SmartContext;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.model.CmdletDescriptor;
+import org.smartdata.model.ExecutorType;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.model.action.ActionScheduler;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.server.cluster.NodeInfo;
+import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
+import org.smartdata.server.engine.cmdlet.CmdletDispatcherHelper;
+import org.smartdata.server.engine.cmdlet.CmdletExecutorService;
+import org.smartdata.server.engine.cmdlet.CmdletQueue;
+import org.smartdata.server.engine.cmdlet.DataLocalityResolver;
+import org.smartdata.server.engine.message.NodeMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * A mixed workload of 10 big copies among 150 small ones, submitted one
+ * per 20 ms to two agents with 16 slots each. Each agent copies 1 MB per
+ * ms, for the cmdlets in execution on it in order. The time to complete
+ * the workload is measured when cmdlets are weighed by the length of their
+ * files or by their number of actions. The p50 and p99 time to complete a
+ * small cmdlet since it is submitted are printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CmdletDispatcherBenchmark {
+  private static final int NUM_CMDLETS = 160;
+  private static final long SUBMIT_INTERVAL_MS = 20;
+
+  @Param({"cost", "count"})
+  public String weighing;
+
+  private CmdletQueue scheduledCmdlets;
+  private Map<Long, LaunchCmdlet> idToLaunchCmdlet;
+  private CmdletDispatcher dispatcher;
+  private ScheduledExecutorService executor;
+  private final Map<String, Long> busyUntil = new HashMap<>();
+  private final long[] submitTimes = new long[NUM_CMDLETS + 1];
+  private final long[] completionTimes = new long[NUM_CMDLETS + 1];
+  private CountDownLatch finished;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    SmartConf conf = new SmartConf();
+    conf.setBoolean(SmartConfKeys.SMART_ACTION_LOCAL_EXECUTION_DISABLED_KEY, true);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_EXECUTORS_KEY, 16);
+    conf.setInt(SmartConfKeys.SMART_DISPATCH_CMDLETS_EXTRA_NUM_KEY, 0);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_DISPATCHERS_KEY, 1);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_KEY, 0);
+    // No executor holds the blocks, so that only the weighing differs
+    conf.set(SmartConfKeys.SMART_CMDLET_DISPATCHER_LOCALITY_ACTIONS_KEY, "");
+    if ("count".equals(weighing)) {
+      conf.set(SmartConfKeys.SMART_CMDLET_DISPATCHER_COST_ACTIONS_KEY, "");
+    }
+
+    CmdletDispatcherHelper.init();
+    scheduledCmdlets = new CmdletQueue();
+    idToLaunchCmdlet = new ConcurrentHashMap<>();
+    Set<Long> runningCmdlets = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    dispatcher = new CmdletDispatcher(new SmartContext(conf), mock(CmdletManager.class),
+        scheduledCmdlets, idToLaunchCmdlet, runningCmdlets,
+        ArrayListMultimap.<String, ActionScheduler>create());
+    dispatcher.registerExecutorService(new SimulatedAgentService());
+    dispatcher.onNodeMessage(new NodeMessage(
+        new NodeInfo("agent1", "host-a:7048", ExecutorType.AGENT)), true);
+    dispatcher.onNodeMessage(new NodeMessage(
+        new NodeInfo("agent2", "host-b:7048", ExecutorType.AGENT)), true);
+    dispatcher.setLocalityResolver(new DataLocalityResolver(conf) {
+      @Override
+      protected BlockLocation[] getBlockLocations(String path) {
+        return new BlockLocation[0];
+      }
+
+      @Override
+      protected long getFileLength(String path) {
+        return lengthOf(path);
+      }
+    });
+
+    executor = Executors.newScheduledThreadPool(8);
+    busyUntil.clear();
+    Arrays.fill(completionTimes, 0);
+    finished = new CountDownLatch(NUM_CMDLETS);
+    dispatcher.start();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    List<Long> latencies = new ArrayList<>();
+    for (int cid = 1; cid <= NUM_CMDLETS; cid++) {
+      if (!isBig(cid) && completionTimes[cid] > 0) {
+        latencies.add(completionTimes[cid] - submitTimes[cid]);
+      }
+    }
+    if (!latencies.isEmpty()) {
+      Collections.sort(latencies);
+      System.out.println("Completion time of small cmdlets by " + weighing + ": p50 "
+          + latencies.get(latencies.size() / 2) + " ms, p99 "
+          + latencies.get(latencies.size() * 99 / 100) + " ms");
+    }
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public void mixedWorkload() throws Exception {
+    for (int cid = 1; cid <= NUM_CMDLETS; cid++) {
+      LaunchCmdlet cmdlet = new LaunchCmdlet(cid, Collections.singletonList(
+          new LaunchAction(cid, "copy", Collections.singletonMap(
+              CmdletDescriptor.HDFS_FILE_PATH, isBig(cid) ? "/big" : "/small"))));
+      idToLaunchCmdlet.put((long) cid, cmdlet);
+      submitTimes[cid] = System.currentTimeMillis();
+      dispatcher.onCmdletScheduled(cmdlet);
+      scheduledCmdlets.add(cid);
+      Thread.sleep(SUBMIT_INTERVAL_MS);
+    }
+    if (!finished.await(60, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("Workload not completed in 60s");
+    }
+  }
+
+  private static boolean isBig(int cid) {
+    return cid % 16 == 1;
+  }
+
+  private static long lengthOf(String path) {
+    return path.endsWith("/big") ? 300L << 20 : 10L << 20;
+  }
+
+  /**
+   * Completes the cmdlets of each node in order, by the length of their files.
+   */
+  private class SimulatedAgentService extends CmdletExecutorService {
+    SimulatedAgentService() {
+      super(null, ExecutorType.AGENT);
+    }
+
+    @Override
+    public boolean canAcceptMore() {
+      return true;
+    }
+
+    @Override
+    public String execute(final LaunchCmdlet cmdlet) {
+      String path = cmdlet.getLaunchActions().get(0).getArgs()
+          .get(CmdletDescriptor.HDFS_FILE_PATH);
+      long completionTime;
+      synchronized (busyUntil) {
+        Long until = busyUntil.get(cmdlet.getNodeId());
+        completionTime = Math.max(until == null ? 0 : until, System.currentTimeMillis())
+            + (lengthOf(path) >> 20);
+        busyUntil.put(cmdlet.getNodeId(), completionTime);
+      }
+      executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          completionTimes[(int) cmdlet.getCmdletId()] = System.currentTimeMillis();
+          dispatcher.onCmdletFinished(cmdlet.getCmdletId());
+          finished.countDown();
+        }
+      }, completionTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+      return cmdlet.getNodeId();
+    }
+
+    @Override
+    public void stop(long cmdletId) {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public int getNumNodes() {
+      return 2;
+    }
+
+    @Override
+    public List<NodeInfo> getNodesInfo() {
+      return Collections.emptyList();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.message.ActionStatus;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.protocol.protobuffer.CmdletMessageSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trip of the cmdlet messages sent to and from agents, by Java
+ * serialization and by {@link CmdletMessageSerializer}. The sizes of the
+ * serialized messages are printed on setup.
+ */
+@State(Scope.Benchmark)
+public class CmdletMessageSerializerBenchmark {
+  @Param({"java", "protobuf"})
+  public String format;
+
+  // The action statuses in a status report
+  @Param({"1", "100"})
+  public int statuses;
+
+  // The log lines of each action status
+  @Param({"0", "100"})
+  public int logLines;
+
+  private LaunchCmdlet cmdlet;
+  private StatusReport report;
+
+  @Setup
+  public void setUp() throws Exception {
+    List<LaunchAction> actions = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Map<String, String> args = new HashMap<>();
+      args.put("-file", "/warehouse/db1/table1/part-" + i);
+      args.put("-dest", "/backup/warehouse/db1/table1/part-" + i);
+      actions.add(new LaunchAction(i, "copy", args));
+    }
+    cmdlet = new LaunchCmdlet(1023, actions);
+
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; i < logLines; i++) {
+      log.append("Copied block ").append(i).append(" of /warehouse/db1/table1/part-0\n");
+    }
+    List<ActionStatus> actionStatuses = new ArrayList<>();
+    for (int i = 0; i < statuses; i++) {
+      actionStatuses.add(new ActionStatus(1023 + i, true, i, 1.0f, "Success", log.toString(),
+          System.currentTimeMillis(), System.currentTimeMillis(), null, true));
+    }
+    report = new StatusReport(actionStatuses);
+
+    System.out.println("Serialized by " + format + ": LaunchCmdlet " + serialize(cmdlet).length
+        + " bytes, StatusReport " + serialize(report).length + " bytes");
+  }
+
+  @Benchmark
+  public Object launchCmdlet() throws Exception {
+    return deserialize(serialize(cmdlet));
+  }
+
+  @Benchmark
+  public Object statusReport() throws Exception {
+    return deserialize(serialize(report));
+  }
+
+  private byte[] serialize(Object message) throws IOException {
+    if ("protobuf".equals(format)) {
+      return CmdletMessageSerializer.serialize(message);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(message);
+    }
+    return bytes.toByteArray();
+  }
+
+  private Object deserialize(byte[] bytes) throws Exception {
+    if ("protobuf".equals(format)) {
+      return CmdletMessageSerializer.deserialize(bytes);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return in.readObject();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.model.CmdletInfo;
+import org.smartdata.model.CmdletState;
+import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.ServerContext;
+import org.smartdata.server.engine.ServiceMode;
+import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Submission of cmdlets to CmdletManager at a fixed rate, with a mocked
+ * metastore and a dispatcher which always has free slots. Each invocation
+ * submits the cmdlets of the given seconds and waits until all of them are
+ * scheduled. The p50, p99 and max scheduling latency, from the generation
+ * of a cmdlet to its scheduling, are printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CmdletSchedulingBenchmark {
+  private static final long SCHEDULE_TIMEOUT_MS = 30000;
+
+  @Param({"10000"})
+  public int rate;
+
+  @Param({"3"})
+  public int seconds;
+
+  private CmdletManager cmdletManager;
+  private List<CmdletInfo> cmdlets;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Exception {
+    MetaStore metaStore = mock(MetaStore.class);
+    when(metaStore.getMaxCmdletId()).thenReturn(0L);
+    when(metaStore.getMaxActionId()).thenReturn(0L);
+    // Scheduled cmdlets are not dispatched, so there are always slots left
+    CmdletDispatcher dispatcher = mock(CmdletDispatcher.class);
+    when(dispatcher.canDispatchMore()).thenReturn(true);
+    when(dispatcher.getTotalSlotsLeft()).thenReturn(Integer.MAX_VALUE / 2);
+    SmartConf conf = new SmartConf();
+    conf.setInt(SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY, rate * seconds);
+    ServerContext serverContext = new ServerContext(conf, metaStore);
+    serverContext.setServiceMode(ServiceMode.HDFS);
+    cmdletManager = new CmdletManager(serverContext);
+    cmdletManager.init();
+    cmdletManager.setDispatcher(dispatcher);
+    cmdletManager.start();
+    cmdlets = new ArrayList<>(rate * seconds);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws Exception {
+    if (!cmdlets.isEmpty()) {
+      long[] latencies = new long[cmdlets.size()];
+      for (int i = 0; i < latencies.length; i++) {
+        latencies[i] = cmdlets.get(i).getStateChangedTime() - cmdlets.get(i).getGenerateTime();
+      }
+      Arrays.sort(latencies);
+      System.out.println("Scheduling latency of " + latencies.length + " cmdlets: p50 "
+          + latencies[latencies.length / 2] + " ms, p99 "
+          + latencies[latencies.length * 99 / 100] + " ms, max "
+          + latencies[latencies.length - 1] + " ms");
+    }
+    if (cmdletManager != null) {
+      cmdletManager.stop();
+    }
+  }
+
+  @Benchmark
+  public void submitAtFixedRate() throws Exception {
+    long start = System.currentTimeMillis();
+    for (int second = 0; second < seconds; second++) {
+      for (int i = 0; i < rate; i++) {
+        // Identical cmdlets are refused by the tracker
+        long cid = cmdletManager.submitCmdlet("echo -msg " + cmdlets.size());
+        cmdlets.add(cmdletManager.getCmdletInfo(cid));
+      }
+      long sleep = start + (second + 1) * 1000L - System.currentTimeMillis();
+      if (sleep > 0) {
+        Thread.sleep(sleep);
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + SCHEDULE_TIMEOUT_MS;
+    for (CmdletInfo cmdlet : cmdlets) {
+      while (cmdlet.getState() == CmdletState.PENDING) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new IllegalStateException("Cmdlets not scheduled in "
+              + SCHEDULE_TIMEOUT_MS + " ms");
+        }
+        Thread.sleep(10);
+      }
+    }
+  }
+}
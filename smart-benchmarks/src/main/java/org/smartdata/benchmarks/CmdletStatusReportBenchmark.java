@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.model.CmdletInfo;
+import org.smartdata.protocol.message.ActionStatus;
+import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.ServerContext;
+import org.smartdata.server.engine.ServiceMode;
+import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Status reports of finished actions applied by CmdletManager, with a
+ * mocked metastore and dispatcher. Each invocation reports the actions of
+ * a batch of cmdlets submitted on setup as finished, in one report as an
+ * executor does, so the score is in finished actions per second.
+ */
+@State(Scope.Benchmark)
+public class CmdletStatusReportBenchmark {
+  private static final int REPORT_SIZE = 500;
+
+  private CmdletManager cmdletManager;
+  private List<CmdletInfo> cmdlets;
+  private long numSubmitted = 0;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Exception {
+    MetaStore metaStore = mock(MetaStore.class);
+    when(metaStore.getMaxCmdletId()).thenReturn(0L);
+    when(metaStore.getMaxActionId()).thenReturn(0L);
+    CmdletDispatcher dispatcher = mock(CmdletDispatcher.class);
+    when(dispatcher.canDispatchMore()).thenReturn(true);
+    when(dispatcher.getTotalSlotsLeft()).thenReturn(Integer.MAX_VALUE / 2);
+    SmartConf conf = new SmartConf();
+    conf.setInt(SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY, Integer.MAX_VALUE);
+    ServerContext serverContext = new ServerContext(conf, metaStore);
+    serverContext.setServiceMode(ServiceMode.HDFS);
+    cmdletManager = new CmdletManager(serverContext);
+    cmdletManager.init();
+    cmdletManager.setDispatcher(dispatcher);
+    cmdletManager.start();
+  }
+
+  @Setup(Level.Invocation)
+  public void submitCmdlets() throws Exception {
+    cmdlets = new ArrayList<>(REPORT_SIZE);
+    for (int i = 0; i < REPORT_SIZE; i++) {
+      // Identical cmdlets are refused by the tracker
+      long cid = cmdletManager.submitCmdlet("echo -msg " + numSubmitted++);
+      cmdlets.add(cmdletManager.getCmdletInfo(cid));
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws Exception {
+    if (cmdletManager != null) {
+      cmdletManager.stop();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(REPORT_SIZE)
+  public void reportFinishedActions() {
+    long now = System.currentTimeMillis();
+    List<ActionStatus> actionStatuses = new ArrayList<>(REPORT_SIZE);
+    for (CmdletInfo cmdlet : cmdlets) {
+      actionStatuses.add(new ActionStatus(cmdlet.getCid(), true, cmdlet.getAids().get(0),
+          null, now, now, null, true));
+    }
+    cmdletManager.updateStatus(new StatusReport(actionStatuses));
+  }
+}
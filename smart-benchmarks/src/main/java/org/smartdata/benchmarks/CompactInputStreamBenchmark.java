@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSInputStream;
+import org.apache.hadoop.hdfs.SmartInputStreamFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.FileContainerInfo;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random preads on a small file compacted into a container file, compared
+ * with the same preads on the container file itself.
+ */
+@State(Scope.Benchmark)
+public class CompactInputStreamBenchmark extends MiniClusterBenchmark {
+  private static final String CONTAINER_FILE = "/benchmarks/container_file";
+  private static final int FILES = 1000;
+
+  @Param({"4096"})
+  public int smallFileLength;
+
+  @Param({"512"})
+  public int readSize;
+
+  private DFSInputStream container;
+  private DFSInputStream smallFile;
+  private long smallFileOffset;
+
+  @Setup
+  public void setUp() throws IOException {
+    startCluster(64L * 1024 * 1024);
+    byte[] data = new byte[smallFileLength * FILES];
+    new Random(2018).nextBytes(data);
+    try (FSDataOutputStream out = dfs.create(new Path(CONTAINER_FILE), (short) 1)) {
+      out.write(data);
+    }
+    int index = FILES / 2;
+    smallFileOffset = (long) index * smallFileLength;
+    container = dfsClient.open(CONTAINER_FILE);
+    smallFile = SmartInputStreamFactory.create(dfsClient, "/benchmarks/file_" + index, true,
+        new CompactFileState("/benchmarks/file_" + index, new FileContainerInfo(
+            CONTAINER_FILE, smallFileOffset, smallFileLength)));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (smallFile != null) {
+      smallFile.close();
+    }
+    if (container != null) {
+      container.close();
+    }
+    shutdownCluster();
+  }
+
+  @Benchmark
+  public byte[] smallFilePread() throws IOException {
+    byte[] buf = new byte[readSize];
+    smallFile.readFully(randomPosition(), buf);
+    return buf;
+  }
+
+  @Benchmark
+  public byte[] containerPread() throws IOException {
+    byte[] buf = new byte[readSize];
+    container.readFully(smallFileOffset + randomPosition(), buf);
+    return buf;
+  }
+
+  private long randomPosition() {
+    return ThreadLocalRandom.current().nextInt(smallFileLength - readSize + 1);
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.commons.lang.mutable.MutableFloat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.CompressionCodec;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DFSInputStream;
+import org.apache.hadoop.hdfs.SmartCompressorStream;
+import org.apache.hadoop.hdfs.SmartInputStreamFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.model.CompressionFileState;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random seek/read and pread of 4 KB on a compressed file, with different
+ * numbers of decompressed trunks cached by the reader.
+ */
+@State(Scope.Benchmark)
+public class CompressionInputStreamBenchmark extends MiniClusterBenchmark {
+  private static final String FILE = "/benchmarks/compressed_file";
+  private static final int READ_SIZE = 4 * 1024;
+
+  @Param({"16"})
+  public int fileSizeMb;
+
+  @Param({"262144"})
+  public int bufferSize;
+
+  @Param({"0", "4", "16"})
+  public int cacheTrunks;
+
+  private int fileLength;
+  private DFSInputStream in;
+
+  @Setup
+  public void setUp() throws IOException {
+    startCluster(4L * 1024 * 1024);
+    fileLength = fileSizeMb * 1024 * 1024;
+    // Compressible data, with a small alphabet
+    byte[] data = new byte[fileLength];
+    Random random = new Random(2018);
+    for (int i = 0; i < fileLength; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+    CompressionFileState fileState =
+        new CompressionFileState(FILE, bufferSize, CompressionCodec.ZLIB);
+    fileState.setOriginalLength(fileLength);
+    try (FSDataOutputStream out = dfs.create(new Path(FILE), (short) 1)) {
+      new SmartCompressorStream(new ByteArrayInputStream(data), out, bufferSize,
+          fileState, new MutableFloat()).convert();
+    }
+    fileState.setCompressedLength(dfs.getFileStatus(new Path(FILE)).getLen());
+
+    Configuration conf = new Configuration(dfs.getConf());
+    conf.setInt(SmartConfKeys.SMART_COMPRESSION_READ_CACHE_TRUNKS, cacheTrunks);
+    in = SmartInputStreamFactory.create(
+        new DFSClient(dfs.getUri(), conf), FILE, true, fileState);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+    shutdownCluster();
+  }
+
+  @Benchmark
+  public byte[] seekAndRead() throws IOException {
+    byte[] buf = new byte[READ_SIZE];
+    synchronized (in) {
+      in.seek(ThreadLocalRandom.current().nextInt(fileLength - READ_SIZE));
+      int read = 0;
+      while (read < buf.length) {
+        read += in.read(buf, read, buf.length - read);
+      }
+    }
+    return buf;
+  }
+
+  @Benchmark
+  public byte[] pread() throws IOException {
+    byte[] buf = new byte[READ_SIZE];
+    in.readFully(ThreadLocalRandom.current().nextInt(fileLength - READ_SIZE), buf);
+    return buf;
+  }
+}
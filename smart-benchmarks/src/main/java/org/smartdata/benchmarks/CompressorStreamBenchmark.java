@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.mutable.MutableFloat;
+import org.apache.hadoop.hdfs.CompressionCodec;
+import org.apache.hadoop.hdfs.SmartCompressorStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.smartdata.model.CompressionFileState;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of a file by the compress action, with the trunks
+ * compressed by different numbers of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressorStreamBenchmark {
+  @Param({"64"})
+  public int fileSizeMb;
+
+  @Param({"1048576"})
+  public int bufferSize;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    // Compressible data, with a small alphabet
+    data = new byte[fileSizeMb * 1024 * 1024];
+    Random random = new Random(2018);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+  }
+
+  @Benchmark
+  public CompressionFileState compress() throws IOException {
+    CompressionFileState fileState =
+        new CompressionFileState("/benchmarks/file", bufferSize, CompressionCodec.ZLIB);
+    fileState.setOriginalLength(data.length);
+    new SmartCompressorStream(new ByteArrayInputStream(data), new NullOutputStream(),
+        bufferSize, fileState, new MutableFloat(), threads).convert();
+    return fileState;
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.smartdata.hdfs.metric.fetcher.EventBatchSerializer;
+
+/**
+ * Serialization and deserialization of an inotify event batch with a mix
+ * of the event types fetched from namenode.
+ */
+@State(Scope.Benchmark)
+public class EventBatchSerializerBenchmark {
+  @Param({"1", "100", "1000"})
+  public int events;
+
+  private EventBatch batch;
+  private byte[] bytes;
+
+  @Setup
+  public void setUp() {
+    Event[] batchEvents = new Event[events];
+    for (int i = 0; i < events; i++) {
+      batchEvents[i] = createEvent(i);
+    }
+    batch = new EventBatch(1023, batchEvents);
+    bytes = EventBatchSerializer.serialize(batch);
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return EventBatchSerializer.serialize(batch);
+  }
+
+  @Benchmark
+  public EventBatch deserialize() throws InvalidProtocolBufferException {
+    return EventBatchSerializer.deserialize(bytes);
+  }
+
+  @Benchmark
+  public EventBatch roundTrip() throws InvalidProtocolBufferException {
+    return EventBatchSerializer.deserialize(EventBatchSerializer.serialize(batch));
+  }
+
+  private static Event createEvent(int index) {
+    String path = "/warehouse/db" + index % 10 + "/table" + index % 100 + "/part-" + index;
+    switch (index % 5) {
+      case 0:
+        return new Event.CreateEvent.Builder()
+            .iNodeType(Event.CreateEvent.INodeType.FILE)
+            .ctime(index)
+            .defaultBlockSize(128 * 1024 * 1024)
+            .groupName("hadoop")
+            .overwrite(true)
+            .ownerName("hive")
+            .path(path)
+            .perms(new FsPermission("644"))
+            .replication(3)
+            .build();
+      case 1:
+        return new Event.CloseEvent(path, 1024L * index, index);
+      case 2:
+        return new Event.MetadataUpdateEvent.Builder()
+            .path(path)
+            .metadataType(Event.MetadataUpdateEvent.MetadataType.TIMES)
+            .mtime(index)
+            .atime(index)
+            .ownerName("hive")
+            .groupName("hadoop")
+            .build();
+      case 3:
+        return new Event.RenameEvent.Builder()
+            .srcPath(path)
+            .dstPath(path + ".done")
+            .timestamp(index)
+            .build();
+      default:
+        return new Event.UnlinkEvent.Builder().path(path).timestamp(index).build();
+    }
+  }
+}
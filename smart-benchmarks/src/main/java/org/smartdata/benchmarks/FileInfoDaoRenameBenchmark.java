@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.smartdata.metastore.DBType;
+import org.smartdata.metastore.DruidPool;
+import org.smartdata.metastore.dao.DaoProviderFactory;
+import org.smartdata.metastore.dao.FileInfoDao;
+import org.smartdata.metastore.dao.impl.TreeFileInfoDao;
+import org.smartdata.metastore.db.DBHandlersFactory;
+import org.smartdata.model.FileInfo;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_DRIVERCLASSNAME;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_INITIALSIZE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_MAXACTIVE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_MINIDLE;
+import static com.alibaba.druid.pool.DruidDataSourceFactory.PROP_URL;
+
+/**
+ * Renaming of a directory with many descendants in a SQLite metastore,
+ * by the file tree which updates the path column in background, against
+ * updating the path of every descendant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileInfoDaoRenameBenchmark {
+  private static final int FILES_PER_DIR = 1000;
+  private static final int INSERT_BATCH_SIZE = 10000;
+
+  @Param({"1000000"})
+  public int descendants;
+
+  @Param({"true", "false"})
+  public boolean fileTree;
+
+  private File dbFile;
+  private DruidPool druidPool;
+  private FileInfoDao fileInfoDao;
+  private String src = "/data";
+  private String dest = "/archive";
+
+  @Setup
+  public void setUp() throws Exception {
+    dbFile = File.createTempFile("smart-benchmarks", ".db");
+    Properties druidProps = new Properties();
+    druidProps.setProperty(PROP_URL, "jdbc:sqlite:" + dbFile.getAbsolutePath());
+    druidProps.setProperty(PROP_DRIVERCLASSNAME, org.sqlite.JDBC.class.getName());
+    druidProps.setProperty(PROP_INITIALSIZE, "2");
+    druidProps.setProperty(PROP_MINIDLE, "2");
+    druidProps.setProperty(PROP_MAXACTIVE, "2");
+    druidPool = new DruidPool(druidProps);
+    new DBHandlersFactory().createDbManager(druidPool, new Configuration())
+        .initializeDatabase();
+    fileInfoDao = new DaoProviderFactory()
+        .createDaoProvider(druidPool, DBType.SQLITE, fileTree).fileInfoDao();
+
+    TransactionTemplate transactionTemplate = new TransactionTemplate(
+        new DataSourceTransactionManager(druidPool.getDataSource()));
+    List<FileInfo> files = new ArrayList<>();
+    files.add(file(src, 1, true));
+    for (int i = 0; i < descendants; i++) {
+      if (i % (FILES_PER_DIR + 1) == 0) {
+        files.add(file(src + "/dir" + i, i + 2, true));
+      } else {
+        files.add(file(src + "/dir" + (i - i % (FILES_PER_DIR + 1)) + "/file" + i,
+            i + 2, false));
+      }
+      if (files.size() == INSERT_BATCH_SIZE || i == descendants - 1) {
+        // Committed per batch, as the inotify events are applied
+        FileInfo[] batch = files.toArray(new FileInfo[0]);
+        transactionTemplate.execute(status -> {
+          fileInfoDao.insert(batch);
+          return null;
+        });
+        files.clear();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (druidPool != null) {
+      druidPool.close();
+    }
+    if (dbFile != null) {
+      dbFile.delete();
+    }
+  }
+
+  /**
+   * Wait for the paths updated in background, so that they are not counted
+   * in the next rename.
+   */
+  @TearDown(Level.Invocation)
+  public void repairPaths() {
+    if (fileInfoDao instanceof TreeFileInfoDao) {
+      ((TreeFileInfoDao) fileInfoDao).repairPaths();
+    }
+  }
+
+  @Benchmark
+  public void renameDirectory() {
+    fileInfoDao.renameFile(src, dest, true);
+    String renamed = src;
+    src = dest;
+    dest = renamed;
+  }
+
+  @Benchmark
+  public void renameDirectoryAndUpdatePaths() {
+    renameDirectory();
+    repairPaths();
+  }
+
+  private static FileInfo file(String path, long fid, boolean isDir) {
+    return new FileInfo(path, fid, 0, isDir, (short) 1, 0, 0, 0,
+        (short) 0, "root", "root", (byte) 0, (byte) 0);
+  }
+}
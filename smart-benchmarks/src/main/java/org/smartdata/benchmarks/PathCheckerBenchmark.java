@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.smartdata.model.PathChecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Matching of file paths against the ignored path patterns and cover dirs,
+ * as done for every namespace event.
+ */
+@State(Scope.Benchmark)
+public class PathCheckerBenchmark {
+  private static final List<String> IGNORED_PATTERNS = Arrays.asList(
+      ".*/\\.Trash/.*", ".*/_temporary/.*", ".*\\._COPYING_$", ".*/\\.staging/.*",
+      "/system/.*", "/tmp/.*", "/ssm/.*", ".*/\\.hive-staging.*");
+
+  @Param({"0", "8"})
+  public int coverDirs;
+
+  private PathChecker pathChecker;
+  private String[] paths;
+
+  @Setup
+  public void setUp() {
+    List<String> dirs = new ArrayList<>();
+    for (int i = 0; i < coverDirs; i++) {
+      dirs.add("/warehouse/db" + i + "/");
+    }
+    pathChecker = new PathChecker(IGNORED_PATTERNS, dirs);
+
+    String[] templates = {
+        "/warehouse/db%d/table%d/part-%05d.parquet",
+        "/warehouse/db%d/table%d/_temporary/0/part-%05d",
+        "/user/hive/.Trash/Current/db%d/table%d/%d",
+        "/tmp/job_%d_%d/file%d",
+        "/data/logs/2024/%02d/%02d/app-%d.log._COPYING_"};
+    Random random = new Random(2018);
+    paths = new String[1024];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = String.format(templates[random.nextInt(templates.length)],
+          random.nextInt(12), random.nextInt(28), i);
+    }
+  }
+
+  @Benchmark
+  public void isIgnored(Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(pathChecker.isIgnored(path));
+    }
+  }
+
+  @Benchmark
+  public void isCovered(Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(pathChecker.isCovered(path));
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Encoding and decoding of one stripe with the pure Java RS raw coders of
+ * Hadoop, used by the erasure coding actions. Decoding recovers the first
+ * data unit and the first parity unit.
+ */
+@State(Scope.Thread)
+public class RSRawCoderBenchmark {
+  @Param({"6-3", "10-4"})
+  public String schema;
+
+  @Param({"65536"})
+  public int cellSize;
+
+  private RSRawEncoder encoder;
+  private RSRawDecoder decoder;
+  private byte[][] data;
+  private byte[][] parity;
+  private byte[][] decodeInputs;
+  private int[] erasedIndexes;
+  private byte[][] recovered;
+
+  @Setup
+  public void setUp() throws IOException {
+    String[] units = schema.split("-");
+    int numDataUnits = Integer.parseInt(units[0]);
+    int numParityUnits = Integer.parseInt(units[1]);
+    ErasureCoderOptions options = new ErasureCoderOptions(numDataUnits, numParityUnits);
+    encoder = new RSRawEncoder(options);
+    decoder = new RSRawDecoder(options);
+
+    Random random = new Random(2018);
+    data = new byte[numDataUnits][cellSize];
+    for (byte[] cell : data) {
+      random.nextBytes(cell);
+    }
+    parity = new byte[numParityUnits][cellSize];
+    encoder.encode(data, parity);
+
+    decodeInputs = new byte[numDataUnits + numParityUnits][];
+    System.arraycopy(data, 0, decodeInputs, 0, numDataUnits);
+    System.arraycopy(parity, 0, decodeInputs, numDataUnits, numParityUnits);
+    erasedIndexes = new int[]{0, numDataUnits};
+    for (int index : erasedIndexes) {
+      decodeInputs[index] = null;
+    }
+    recovered = new byte[erasedIndexes.length][cellSize];
+  }
+
+  @Benchmark
+  public byte[][] encode() throws IOException {
+    encoder.encode(data, parity);
+    return parity;
+  }
+
+  @Benchmark
+  public byte[][] decode() throws IOException {
+    decoder.decode(decodeInputs, erasedIndexes, recovered);
+    return recovered;
+  }
+}
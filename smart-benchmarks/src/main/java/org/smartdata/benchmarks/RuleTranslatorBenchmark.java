@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.model.rule.TranslateResult;
+import org.smartdata.rule.parser.SmartRuleStringParser;
+import org.smartdata.rule.parser.TranslationContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parsing and translation of rules into SQL statements, done by
+ * SmartRuleVisitTranslator when a rule is submitted or reloaded.
+ */
+@State(Scope.Benchmark)
+public class RuleTranslatorBenchmark {
+  private static final Map<String, String> RULES = new HashMap<>();
+
+  static {
+    RULES.put("path", "file : path matches \"/src/*\" | sync -dest \"hdfs://remote:8020/dest\"");
+    RULES.put("accessCount", "file : every 5min | path matches \"/data/*\""
+        + " and accessCount(10min) > accessCountTop(10min, 10) | allssd");
+    RULES.put("storagePolicy", "file : ac(10min) > acTopSp(10min, 10, \"ALL_SSD\")"
+        + " and length > 1MB | archive");
+    RULES.put("schedule", "file : every 5h / 1h / 20min | length > 19"
+        + " and age > 30day | compress -codec Zlib");
+  }
+
+  @Param({"path", "accessCount", "storagePolicy", "schedule"})
+  public String rule;
+
+  private SmartConf conf;
+  private String ruleText;
+
+  @Setup
+  public void setUp() {
+    conf = new SmartConf();
+    ruleText = RULES.get(rule);
+  }
+
+  @Benchmark
+  public TranslateResult translate() throws IOException {
+    TranslationContext context = new TranslationContext(1, System.currentTimeMillis());
+    return new SmartRuleStringParser(ruleText, context, conf).translate();
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.metrics.FileAccessEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded in-memory buffer for file access events. Repeated accesses to
+ * the same file by the same user are merged into one event with an access
+ * count, and the
+ * buffered events are handed to a {@link Reporter} from a background thread
+ * once the batch size is reached or the flush interval elapses. Adding an
+ * event never waits for the reporter.
+ */
+class FileAccessEventBuffer implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(FileAccessEventBuffer.class);
+  private static final long CLOSE_TIMEOUT_MS = 5000;
+
+  /**
+   * Delivers a batch of merged access events to smart server.
+   */
+  interface Reporter {
+    void report(List<FileAccessEvent> events) throws IOException;
+  }
+
+  private final Reporter reporter;
+  private final int capacity;
+  private final int batchSize;
+  private final long flushIntervalMs;
+  private final Object lock = new Object();
+  private final Thread flusher;
+  private final AtomicLong droppedEvents = new AtomicLong(0);
+  // Keyed by the path and the user of the events
+  private Map<Map.Entry<String, String>, FileAccessEvent> events;
+  private volatile boolean running = true;
+
+  FileAccessEventBuffer(Reporter reporter, int capacity,
+      int batchSize, long flushIntervalMs) {
+    this.reporter = reporter;
+    this.capacity = capacity;
+    this.batchSize = Math.min(batchSize, capacity);
+    this.flushIntervalMs = flushIntervalMs;
+    this.events = new LinkedHashMap<>();
+    this.flusher = new Thread(this::runFlusher, "SmartClient-AccessEventFlusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Buffer the given event. If the buffer is full and the file has not been
+   * accessed by the user in current batch, the event is dropped.
+   */
+  void add(FileAccessEvent event) {
+    Map.Entry<String, String> key =
+        new AbstractMap.SimpleImmutableEntry<>(event.getPath(), event.getAccessedBy());
+    synchronized (lock) {
+      FileAccessEvent merged = events.get(key);
+      if (merged != null) {
+        merged.incrementCount(event.getCount());
+        merged.setTimeStamp(Math.max(merged.getTimestamp(), event.getTimestamp()));
+        return;
+      }
+      if (events.size() >= capacity) {
+        droppedEvents.addAndGet(event.getCount());
+        return;
+      }
+      events.put(key, new FileAccessEvent(event.getPath(),
+          event.getTimestamp(), event.getAccessedBy(), event.getCount()));
+      if (events.size() >= batchSize) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Report all buffered events in the caller's thread.
+   */
+  void flush() {
+    List<FileAccessEvent> batch = drain();
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      reporter.report(batch);
+    } catch (IOException | RuntimeException e) {
+      // Keep the flusher running, or the later events are never reported
+      long lost = 0;
+      for (FileAccessEvent event : batch) {
+        lost += event.getCount();
+      }
+      droppedEvents.addAndGet(lost);
+      LOG.warn("Failed to report {} file access events to SmartServer: {}",
+          lost, e.getMessage());
+    }
+  }
+
+  /**
+   * Get the number of access events dropped because the buffer was full
+   * or they failed to be reported.
+   */
+  long getDroppedEventCount() {
+    return droppedEvents.get();
+  }
+
+  int size() {
+    synchronized (lock) {
+      return events.size();
+    }
+  }
+
+  private List<FileAccessEvent> drain() {
+    synchronized (lock) {
+      if (events.isEmpty()) {
+        return new ArrayList<>();
+      }
+      List<FileAccessEvent> batch = new ArrayList<>(events.values());
+      events = new LinkedHashMap<>();
+      return batch;
+    }
+  }
+
+  private void runFlusher() {
+    while (running) {
+      synchronized (lock) {
+        if (running && events.size() < batchSize) {
+          try {
+            lock.wait(flushIntervalMs);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+      flush();
+    }
+    flush();
+  }
+
+  /**
+   * Stop the background thread after reporting the remaining events.
+   */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    try {
+      flusher.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
+import org.smartdata.model.NormalFileState;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache for file states. A cached state expires after the
+ * configured TTL, and is dropped earlier once smart server reports that the
+ * state of the file may have changed. The changes are pulled from smart
+ * server at most once per sync interval, and nothing is served from cache
+ * while smart server can not be reached. So a state changed by smart server
+ * may still be served for up to the sync interval, which is the staleness
+ * accepted for not calling smart server on each access.
+ * <p></p>
+ * Optionally, a bloom filter of files not in normal state is downloaded
+ * from smart server per refresh interval. A file which is neither in the
+ * filter nor changed after the filter is built is known to be normal, so
+ * its state needs not to be loaded. Like the cached states, the filter is
+ * trusted with the changes synced per sync interval, so no call to smart
+ * server is made for each file.
+ */
+public class FileStateCache {
+  static final Logger LOG = LoggerFactory.getLogger(FileStateCache.class);
+
+  /**
+   * Loads the file state of a path on cache miss.
+   */
+  public interface Loader {
+    FileState load(String path) throws IOException;
+  }
+
+  /**
+   * Provides the file state changes tracked by smart server.
+   */
+  interface ChangeSource {
+    FileStateChanges getChangesSince(long epoch) throws IOException;
+  }
+
+  /**
+   * Provides the bloom filter of files not in normal state.
+   */
+  interface FilterSource {
+    FileStateFilter getFilter() throws IOException;
+  }
+
+  private final ChangeSource changeSource;
+  private final FilterSource filterSource;
+  private final int capacity;
+  private final long ttlMs;
+  private final long syncIntervalMs;
+  private final long filterRefreshIntervalMs;
+  private final Map<String, CachedState> states;
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong filterHits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private boolean synced = false;
+  private long serverId;
+  private long epoch;
+  private long lastSyncTime;
+  private FileStateFilter filter;
+  // Files and directories changed after the filter is built
+  private final Set<String> changedSinceFilter = new HashSet<>();
+  private final List<String> changedDirsSinceFilter = new ArrayList<>();
+  private long lastFilterRefreshTime;
+
+  FileStateCache(ChangeSource changeSource, int capacity, long ttlMs,
+      long syncIntervalMs) {
+    this(changeSource, capacity, ttlMs, syncIntervalMs, null, 0);
+  }
+
+  FileStateCache(ChangeSource changeSource, int capacity, long ttlMs,
+      long syncIntervalMs, FilterSource filterSource, long filterRefreshIntervalMs) {
+    this.changeSource = changeSource;
+    this.filterSource = filterSource;
+    this.capacity = capacity;
+    this.ttlMs = ttlMs;
+    this.syncIntervalMs = syncIntervalMs;
+    this.filterRefreshIntervalMs = filterRefreshIntervalMs;
+    // Sync on first access
+    this.lastSyncTime = now() - syncIntervalMs;
+    this.lastFilterRefreshTime = now() - filterRefreshIntervalMs;
+    this.states = new LinkedHashMap<String, CachedState>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedState> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Get the file state of the given path, the loader is only called if
+   * the state is not cached or may be outdated.
+   */
+  public FileState get(String path, Loader loader) throws IOException {
+    long now = now();
+    long loadEpoch;
+    synchronized (this) {
+      if (filterSource != null && now - lastFilterRefreshTime >= filterRefreshIntervalMs) {
+        refreshFilter(now);
+      }
+      if (now - lastSyncTime >= syncIntervalMs) {
+        sync(now, epoch);
+      }
+      if (synced && isNormalByFilter(path)) {
+        filterHits.incrementAndGet();
+        return new NormalFileState(path);
+      }
+      CachedState cached = synced ? states.get(path) : null;
+      if (cached != null && now - cached.loadTime < ttlMs) {
+        hits.incrementAndGet();
+        return cached.state;
+      }
+      loadEpoch = epoch;
+    }
+    misses.incrementAndGet();
+    FileState state = loader.load(path);
+    // A file under processing will change its state soon
+    if (state != null && state.getFileStage() == FileState.FileStage.DONE) {
+      synchronized (this) {
+        // Skip the state if any change has been synced during loading
+        if (synced && epoch == loadEpoch) {
+          states.put(path, new CachedState(state, now));
+        }
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Get the file states of the given paths.
+   */
+  public Map<String, FileState> getAll(List<String> paths, Loader loader)
+      throws IOException {
+    Map<String, FileState> result = new HashMap<>();
+    for (String path : paths) {
+      result.put(path, get(path, loader));
+    }
+    return result;
+  }
+
+  /**
+   * Drop all cached states.
+   */
+  public synchronized void clear() {
+    states.clear();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Get the number of files known to be normal by the bloom filter.
+   */
+  public long getFilterHitCount() {
+    return filterHits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  synchronized int size() {
+    return states.size();
+  }
+
+  private void refreshFilter(long now) {
+    lastFilterRefreshTime = now;
+    dropFilter();
+    FileStateFilter newFilter;
+    try {
+      newFilter = filterSource.getFilter();
+    } catch (IOException e) {
+      LOG.warn("Failed to get file state filter from SmartServer: {}", e.getMessage());
+      return;
+    }
+    filter = newFilter;
+    // Changes after the filter is built are needed, as well as the ones
+    // for cached states
+    sync(now, synced ? Math.min(epoch, newFilter.getEpoch()) : newFilter.getEpoch());
+  }
+
+  private void sync(long now, long sinceEpoch) {
+    lastSyncTime = now;
+    FileStateChanges changes;
+    try {
+      changes = changeSource.getChangesSince(sinceEpoch);
+    } catch (IOException e) {
+      if (synced) {
+        LOG.warn("Failed to get file state changes from SmartServer, "
+            + "file state cache is disabled until next sync: {}", e.getMessage());
+      }
+      states.clear();
+      dropFilter();
+      synced = false;
+      return;
+    }
+    if (!synced || changes.isReset() || changes.getServerId() != serverId) {
+      states.clear();
+    } else {
+      for (String path : changes.getPaths()) {
+        invalidate(path);
+      }
+    }
+    if (filter != null) {
+      if (changes.isReset() || changes.getServerId() != filter.getServerId()) {
+        dropFilter();
+      } else {
+        for (String path : changes.getPaths()) {
+          if (path.endsWith("/")) {
+            changedDirsSinceFilter.add(path);
+          } else {
+            changedSinceFilter.add(path);
+          }
+        }
+        // Too many changes, wait for a newer filter
+        if (changedSinceFilter.size() + changedDirsSinceFilter.size() > capacity) {
+          dropFilter();
+        }
+      }
+    }
+    serverId = changes.getServerId();
+    epoch = changes.getEpoch();
+    synced = true;
+  }
+
+  private boolean isNormalByFilter(String path) {
+    if (filter == null || filter.mayNotBeNormal(path)
+        || changedSinceFilter.contains(path)) {
+      return false;
+    }
+    for (String dir : changedDirsSinceFilter) {
+      if (path.startsWith(dir)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void dropFilter() {
+    filter = null;
+    changedSinceFilter.clear();
+    changedDirsSinceFilter.clear();
+  }
+
+  private void invalidate(String path) {
+    if (!path.endsWith("/")) {
+      states.remove(path);
+      return;
+    }
+    Iterator<String> iter = states.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().startsWith(path)) {
+        iter.remove();
+      }
+    }
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  private static class CachedState {
+    private final FileState state;
+    private final long loadTime;
+
+    CachedState(FileState state, long loadTime) {
+      this.state = state;
+      this.loadTime = loadTime;
+    }
+  }
+}
@@ -24,6 +24,8 @@
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
 import org.smartdata.model.NormalFileState;
 import org.smartdata.protocol.SmartClientProtocol;
 import org.smartdata.protocol.protobuffer.ClientProtocolClientSideTranslator;
@@ -64,6 +66,8 @@ public class SmartClient implements java.io.Closeable, SmartClientProtocol {
   private List<String> ignoreAccessEventDirs;
   private Map<String, Integer> singleIgnoreList;
   private List<String> coverAccessEventDirs;
+  private FileAccessEventBuffer eventBuffer;
+  private FileStateCache fileStateCache;
   public static final String ACTIVE_SMART_SERVER_FILE_PATH = "/tmp/active_smart_server";
 
   public SmartClient(Configuration conf) throws IOException {
@@ -159,6 +163,34 @@ private void initialize(InetSocketAddress[] addrs) throws IOException {
     for (String s : coverDirs) {
       coverAccessEventDirs.add(s + (s.endsWith("/") ? "" : "/"));
     }
+
+    if (conf.getBoolean(SmartConfKeys.SMART_CLIENT_REPORT_BUFFER_ENABLED,
+        SmartConfKeys.SMART_CLIENT_REPORT_BUFFER_ENABLED_DEFAULT)) {
+      eventBuffer = new FileAccessEventBuffer(this::sendFileAccessEvents,
+          conf.getInt(SmartConfKeys.SMART_CLIENT_REPORT_BUFFER_CAPACITY,
+              SmartConfKeys.SMART_CLIENT_REPORT_BUFFER_CAPACITY_DEFAULT),
+          conf.getInt(SmartConfKeys.SMART_CLIENT_REPORT_BATCH_SIZE,
+              SmartConfKeys.SMART_CLIENT_REPORT_BATCH_SIZE_DEFAULT),
+          conf.getLong(SmartConfKeys.SMART_CLIENT_REPORT_FLUSH_INTERVAL_MS,
+              SmartConfKeys.SMART_CLIENT_REPORT_FLUSH_INTERVAL_MS_DEFAULT));
+    }
+
+    if (conf.getBoolean(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_ENABLED,
+        SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_ENABLED_DEFAULT)) {
+      boolean filterEnabled = conf.getBoolean(
+          SmartConfKeys.SMART_CLIENT_FILE_STATE_FILTER_ENABLED,
+          SmartConfKeys.SMART_CLIENT_FILE_STATE_FILTER_ENABLED_DEFAULT);
+      fileStateCache = new FileStateCache(this::getFileStateChanges,
+          conf.getInt(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_CAPACITY,
+              SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_CAPACITY_DEFAULT),
+          conf.getLong(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_TTL_MS,
+              SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_DEFAULT),
+          conf.getLong(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_SYNC_INTERVAL_MS,
+              SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_SYNC_INTERVAL_MS_DEFAULT),
+          filterEnabled ? this::getFileStateFilter : null,
+          conf.getLong(SmartConfKeys.SMART_CLIENT_FILE_STATE_FILTER_REFRESH_INTERVAL_MS,
+              SmartConfKeys.SMART_CLIENT_FILE_STATE_FILTER_REFRESH_INTERVAL_MS_DEFAULT));
+    }
   }
 
   private void checkOpen() throws IOException {
@@ -225,6 +257,9 @@ private InetSocketAddress getActiveServerAddress() {
    * next time a SmartClient is created with this Configuration instance,
    * active server will be put in the head of a queue and it will be picked
    * up firstly.
+   * <p></p>
+   * If access event buffer is enabled, the event is only recorded in memory
+   * and reported later by a background thread together with other events.
    *
    * @param event
    * @throws IOException
@@ -236,28 +271,74 @@ public void reportFileAccessEvent(FileAccessEvent event)
       return;
     }
     checkOpen();
+    if (eventBuffer != null) {
+      eventBuffer.add(event);
+      return;
+    }
+    report(server -> server.reportFileAccessEvent(event));
+  }
+
+  /**
+   * Reports a batch of access events to smart server in one RPC call. The
+   * same fail over strategy as {@link #reportFileAccessEvent} is applied.
+   *
+   * @param events
+   * @throws IOException
+   */
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    List<FileAccessEvent> toReport = new ArrayList<>(events.size());
+    for (FileAccessEvent event : events) {
+      if (!shouldIgnore(event.getPath())) {
+        toReport.add(event);
+      }
+    }
+    sendFileAccessEvents(toReport);
+  }
+
+  /**
+   * Send access events which have been checked by {@link #shouldIgnore}.
+   */
+  private void sendFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    if (events.isEmpty()) {
+      return;
+    }
+    checkOpen();
+    report(server -> server.reportFileAccessEvents(events));
+  }
+
+  private void report(ReportTask task) throws IOException {
     if (conf.getBoolean(SmartConfKeys.SMART_CLIENT_CONCURRENT_REPORT_ENABLED,
         SmartConfKeys.SMART_CLIENT_CONCURRENT_REPORT_ENABLED_DEFAULT)) {
-      reportFileAccessEventConcurrently(event);
+      reportConcurrently(task);
     } else {
-      reportFileAccessEventSimply(event);
+      reportSimply(task);
     }
   }
 
+  /**
+   * A report call to be issued against one of the smart servers.
+   */
+  private interface ReportTask {
+    void reportTo(SmartClientProtocol server) throws IOException;
+  }
+
   /**
    * A simple report strategy that tries to connect to smart server one by one.
    * And active smart server address will be updated in a local file for new
    * client to use henceforth.
-   * @param event
+   * @param task
    * @throws IOException
    */
-  private void reportFileAccessEventSimply(FileAccessEvent event)
+  private void reportSimply(ReportTask task)
       throws IOException {
     int failedServerNum = 0;
     while (true) {
       try {
         SmartClientProtocol server = serverQue.getFirst();
-        server.reportFileAccessEvent(event);
+        task.reportTo(server);
         if (failedServerNum != 0) {
           onNewActiveSmartServer();
         }
@@ -279,9 +360,9 @@ private void reportFileAccessEventSimply(FileAccessEvent event)
   /**
    * Report file access event concurrently. Only one server is active, so
    * reporting to this server will be successful.
-   * @param event
+   * @param task
    */
-  private void reportFileAccessEventConcurrently(FileAccessEvent event)
+  private void reportConcurrently(ReportTask task)
       throws IOException {
     int num = serverQue.size();
     ExecutorService executorService = Executors.newFixedThreadPool(num);
@@ -291,7 +372,7 @@ private void reportFileAccessEventConcurrently(FileAccessEvent event)
       futures[index] = executorService.submit(new Callable<Void>() {
         @Override
         public Void call() throws IOException {
-          server.reportFileAccessEvent(event);
+          task.reportTo(server);
           return null;
         }
       });
@@ -321,6 +402,7 @@ public Void call() throws IOException {
     for (Future<Void> future : futures) {
       future.cancel(true);
     }
+    executorService.shutdown();
     if (!isReported) {
       throw new IOException("Failed to report access event to Smart Server!");
     }
@@ -366,6 +448,111 @@ public FileState getFileState(String filePath) throws IOException {
     }
   }
 
+  /**
+   * Get file state of the given file with the given loader. If file state
+   * cache is enabled, the loader is skipped for a cached state which is not
+   * reported to be changed by smart server.
+   *
+   * @param filePath
+   * @param loader
+   * @return
+   * @throws IOException
+   */
+  public FileState getFileState(String filePath, FileStateCache.Loader loader)
+      throws IOException {
+    if (fileStateCache == null) {
+      return loader.load(filePath);
+    }
+    return fileStateCache.get(filePath, loader);
+  }
+
+  /**
+   * Get file states of the given files with the given loader, the same as
+   * {@link #getFileState(String, FileStateCache.Loader)} for each of them.
+   *
+   * @param filePaths
+   * @param loader
+   * @return the file states by path
+   * @throws IOException
+   */
+  public Map<String, FileState> getFileStates(List<String> filePaths,
+      FileStateCache.Loader loader) throws IOException {
+    if (fileStateCache != null) {
+      return fileStateCache.getAll(filePaths, loader);
+    }
+    Map<String, FileState> fileStates = new HashMap<>();
+    for (String filePath : filePaths) {
+      fileStates.put(filePath, loader.load(filePath));
+    }
+    return fileStates;
+  }
+
+  /**
+   * Get file states of the given files in one call. Files without state
+   * stored in smart server are not in the result, they are normal files.
+   *
+   * @param filePaths
+   * @return
+   * @throws IOException
+   */
+  @Override
+  public List<FileState> getFileStates(List<String> filePaths) throws IOException {
+    return query(server -> server.getFileStates(filePaths));
+  }
+
+  /**
+   * Get file states of all direct children of the given directory in one
+   * call. Files without state stored in smart server are not in the result,
+   * they are normal files.
+   *
+   * @param dirPath
+   * @return
+   * @throws IOException
+   */
+  @Override
+  public List<FileState> getChildFileStates(String dirPath) throws IOException {
+    return query(server -> server.getChildFileStates(dirPath));
+  }
+
+  @Override
+  public FileStateChanges getFileStateChanges(long sinceEpoch) throws IOException {
+    return query(server -> server.getFileStateChanges(sinceEpoch));
+  }
+
+  @Override
+  public FileStateFilter getFileStateFilter() throws IOException {
+    return query(SmartClientProtocol::getFileStateFilter);
+  }
+
+  /**
+   * A query call to be issued against one of the smart servers.
+   */
+  private interface QueryTask<T> {
+    T queryFrom(SmartClientProtocol server) throws IOException;
+  }
+
+  /**
+   * Query smart servers one by one until one of them can be connected.
+   */
+  private <T> T query(QueryTask<T> task) throws IOException {
+    checkOpen();
+    int triedServerNum = 0;
+    while (true) {
+      try {
+        SmartClientProtocol server = serverQue.getFirst();
+        return task.queryFrom(server);
+      } catch (ConnectException e) {
+        triedServerNum++;
+        if (triedServerNum == serverQue.size()) {
+          throw new ConnectException("Tried to connect to configured SSM "
+              + "server(s), but failed." + e.getMessage());
+        }
+        // Put the first server to last, and will pick the second one to try.
+        serverQue.addLast(serverQue.pollFirst());
+      }
+    }
+  }
+
   public boolean shouldIgnore(String path) {
     if (singleIgnoreList.containsKey(path)) {
       // this report should be ignored
@@ -392,6 +579,9 @@ public boolean shouldIgnore(String path) {
   @Override
   public void close() {
     if (running) {
+      if (eventBuffer != null) {
+        eventBuffer.close();
+      }
       running = false;
       for (SmartClientProtocol server : serverQue) {
         RPC.stopProxy(server);
@@ -24,16 +24,58 @@
 public class BloomFilter {
   private static final int BIT_SIZE = 1 << 28;
   private final int[] seeds = new int[] { 3, 5, 7, 11, 13, 31, 37, 61 };
-  private BitSet bitSet = new BitSet(BIT_SIZE);
+  private final int bitSize;
+  private BitSet bitSet;
   private BloomHash[] bloomHashes = new BloomHash[seeds.length];
   private List<String> whiteList = new ArrayList<>();
 
   public BloomFilter() {
+    this(BIT_SIZE);
+  }
+
+  /**
+   * Create a bloom filter with the given number of bits, which is rounded
+   * up to a power of two.
+   *
+   * @param bitSize the number of bits
+   */
+  public BloomFilter(int bitSize) {
+    this(bitSize, null);
+  }
+
+  /**
+   * Restore a bloom filter from the bits got by {@link #toByteArray}.
+   *
+   * @param bitSize the number of bits
+   * @param bits the bits of the filter, or null for an empty filter
+   */
+  public BloomFilter(int bitSize, byte[] bits) {
+    if (bitSize <= 0 || bitSize > BIT_SIZE) {
+      throw new IllegalArgumentException("Invalid bloom filter size: " + bitSize);
+    }
+    int size = 1;
+    while (size < bitSize) {
+      size <<= 1;
+    }
+    this.bitSize = size;
+    this.bitSet = bits == null ? new BitSet(this.bitSize) : BitSet.valueOf(bits);
     for (int i = 0; i < seeds.length; i++) {
-      bloomHashes[i] = new BloomHash(BIT_SIZE, seeds[i]);
+      bloomHashes[i] = new BloomHash(this.bitSize, seeds[i]);
     }
   }
 
+  public int getBitSize() {
+    return bitSize;
+  }
+
+  /**
+   * Get the bits of the filter. Deleted elements are not included, they
+   * are still reported as contained by the restored filter.
+   */
+  public byte[] toByteArray() {
+    return bitSet.toByteArray();
+  }
+
   /**
    * Add element to bloom filter.
    *
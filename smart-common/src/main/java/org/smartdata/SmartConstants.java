@@ -39,6 +39,9 @@ public class SmartConstants {
   public static final String SMART_HDFS_LAST_INOTIFY_TXID =
     "smart_hadoop_last_inotify_txid";
 
+  public static final String SMART_HDFS_INOTIFY_TXID_LAG =
+    "smart_hadoop_inotify_txid_lag";
+
   public static final String SMART_ALLUXIO_LAST_ENTRY_SN =
       "smart_alluxio_last_entry_sn";
 
@@ -65,6 +65,8 @@ public SmartConf() {
     } catch (FileNotFoundException e) {
       // In some unit test, these files may be not given. So such exception is tolerable.
       LOG.warn("Could not get file named servers or agents to parse host.");
+      this.serverHosts = this.serverHosts == null ? new HashSet<String>() : this.serverHosts;
+      this.agentHosts = new HashSet<>();
     }
   }
 
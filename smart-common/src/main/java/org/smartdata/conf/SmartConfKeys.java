@@ -48,6 +48,12 @@ public class SmartConfKeys {
   public static final String SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_KEY =
       "smart.namespace.fetcher.consumers.num";
   public static final int SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_DEFAULT = 3;
+  public static final String SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_KEY =
+      "smart.namespace.fetcher.fsimage.path";
+  public static final String SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_DEFAULT = "";
+  public static final String SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_KEY =
+      "smart.namespace.fetcher.inotify.apply.batch";
+  public static final int SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_DEFAULT = 1000;
 
   // Configure keys for Alluxio
   public static final String SMART_ALLUXIO_MASTER_HOSTNAME_KEY = "smart.alluxio.master.hostname";
@@ -89,10 +95,17 @@ public class SmartConfKeys {
   public static final String SMART_METASTORE_LEGACY_MYSQL_SUPPORT_KEY =
       "smart.metastore.mysql.legacy.enabled";
   public static final boolean SMART_METASTORE_LEGACY_MYSQL_SUPPORT_DEFAULT = false;
+  // Whether to store files by parent id and name to make directory renames cheap
+  public static final String SMART_METASTORE_FILE_TREE_ENABLED_KEY =
+      "smart.metastore.file.tree.enabled";
+  public static final boolean SMART_METASTORE_FILE_TREE_ENABLED_DEFAULT = false;
 
   public static final String SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS =
       "smart.access.count.aggregation.interval.ms";
   public static final int SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS_DEFAULT = 5000;
+  public static final String SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_KEY =
+      "smart.access.count.aggregation.in.memory.enabled";
+  public static final boolean SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_DEFAULT = false;
 
   public static final String SMART_NUM_DAY_TABLES_TO_KEEP_KEY =
       "smart.access.count.day.tables.num";
@@ -191,6 +204,18 @@ public class SmartConfKeys {
   public static final String SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_KEY =
       "smart.cmdlet.dispatcher.log.disp.metrics.interval"; // in ms
   public static final int SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_DEFAULT = 5000;
+  public static final String SMART_CMDLET_DISPATCHER_LOCALITY_ACTIONS_KEY =
+      "smart.cmdlet.dispatcher.locality.actions";
+  public static final String SMART_CMDLET_DISPATCHER_LOCALITY_ACTIONS_DEFAULT =
+      "copy";
+  public static final String SMART_CMDLET_DISPATCHER_COST_ACTIONS_KEY =
+      "smart.cmdlet.dispatcher.cost.actions";
+  public static final String SMART_CMDLET_DISPATCHER_COST_ACTIONS_DEFAULT =
+      "copy,allssd,onessd,archive,alldisk,onedisk,ramdisk,"
+          + "compress,decompress,checksum,ec,unec,copy2s3";
+  public static final String SMART_CMDLET_DISPATCHER_ACTION_COST_KEY =
+      "smart.cmdlet.dispatcher.action.cost";
+  public static final long SMART_CMDLET_DISPATCHER_ACTION_COST_DEFAULT = 1024 * 1024;
 
   // Action
   public static final String SMART_ACTION_MOVE_THROTTLE_MB_KEY = "smart.action.move.throttle.mb";
@@ -202,6 +227,12 @@ public class SmartConfKeys {
   public static final String SMART_ACTION_LOCAL_EXECUTION_DISABLED_KEY =
       "smart.action.local.execution.disabled";
   public static final boolean SMART_ACTION_LOCAL_EXECUTION_DISABLED_DEFAULT = false;
+  public static final String SMART_ACTION_OUTPUT_MAX_BYTES_KEY =
+      "smart.action.output.max.bytes";
+  public static final int SMART_ACTION_OUTPUT_MAX_BYTES_DEFAULT = 1024 * 1024;
+  public static final String SMART_ACTION_OUTPUT_SPILL_DIR_KEY =
+      "smart.action.output.spill.dir";
+  public static final String SMART_ACTION_OUTPUT_SPILL_DIR_DEFAULT = "";  // not to spill
 
   // SmartAgent
   public static final String SMART_AGENT_MASTER_PORT_KEY = "smart.agent.master.port";
@@ -273,9 +304,55 @@ public class SmartConfKeys {
   public static final String SMART_COMPRESSION_CODEC_DEFAULT = "Zlib";
   public static final String SMART_COMPRESSION_MAX_SPLIT = "smart.compression.max.split";
   public static final int SMART_COMPRESSION_MAX_SPLIT_DEFAULT = 1000;
+  public static final String SMART_COMPRESSION_THREADS = "smart.compression.threads";
+  public static final int SMART_COMPRESSION_THREADS_DEFAULT = 4;
+  public static final String SMART_COMPRESSION_READ_CACHE_TRUNKS =
+      "smart.compression.read.cache.trunks";
+  public static final int SMART_COMPRESSION_READ_CACHE_TRUNKS_DEFAULT = 4;
 
   // Enable current report or not in SSM HA mode.
   public static final String SMART_CLIENT_CONCURRENT_REPORT_ENABLED =
       "smart.client.concurrent.report.enabled";
   public static final boolean SMART_CLIENT_CONCURRENT_REPORT_ENABLED_DEFAULT = true;
+
+  // Buffer access events in SmartClient and report them in batches
+  public static final String SMART_CLIENT_REPORT_BUFFER_ENABLED =
+      "smart.client.report.buffer.enabled";
+  public static final boolean SMART_CLIENT_REPORT_BUFFER_ENABLED_DEFAULT = true;
+  public static final String SMART_CLIENT_REPORT_BUFFER_CAPACITY =
+      "smart.client.report.buffer.capacity";
+  public static final int SMART_CLIENT_REPORT_BUFFER_CAPACITY_DEFAULT = 10000;
+  public static final String SMART_CLIENT_REPORT_BATCH_SIZE =
+      "smart.client.report.batch.size";
+  public static final int SMART_CLIENT_REPORT_BATCH_SIZE_DEFAULT = 1000;
+  public static final String SMART_CLIENT_REPORT_FLUSH_INTERVAL_MS =
+      "smart.client.report.flush.interval.ms";
+  public static final long SMART_CLIENT_REPORT_FLUSH_INTERVAL_MS_DEFAULT = 1000;
+
+  // Cache file states in SmartClient
+  public static final String SMART_CLIENT_FILE_STATE_CACHE_ENABLED =
+      "smart.client.file.state.cache.enabled";
+  public static final boolean SMART_CLIENT_FILE_STATE_CACHE_ENABLED_DEFAULT = false;
+  public static final String SMART_CLIENT_FILE_STATE_CACHE_CAPACITY =
+      "smart.client.file.state.cache.capacity";
+  public static final int SMART_CLIENT_FILE_STATE_CACHE_CAPACITY_DEFAULT = 10000;
+  public static final String SMART_CLIENT_FILE_STATE_CACHE_TTL_MS =
+      "smart.client.file.state.cache.ttl.ms";
+  public static final long SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_DEFAULT = 60000;
+  public static final String SMART_CLIENT_FILE_STATE_CACHE_SYNC_INTERVAL_MS =
+      "smart.client.file.state.cache.sync.interval.ms";
+  public static final long SMART_CLIENT_FILE_STATE_CACHE_SYNC_INTERVAL_MS_DEFAULT = 1000;
+  public static final String SMART_CLIENT_FILE_STATE_FILTER_ENABLED =
+      "smart.client.file.state.filter.enabled";
+  public static final boolean SMART_CLIENT_FILE_STATE_FILTER_ENABLED_DEFAULT = false;
+  public static final String SMART_CLIENT_FILE_STATE_FILTER_REFRESH_INTERVAL_MS =
+      "smart.client.file.state.filter.refresh.interval.ms";
+  public static final long SMART_CLIENT_FILE_STATE_FILTER_REFRESH_INTERVAL_MS_DEFAULT = 300000;
+
+  // Bloom filter of files not in normal state, downloaded by SmartClient
+  public static final String SMART_FILE_STATE_FILTER_BITS = "smart.file.state.filter.bits";
+  public static final int SMART_FILE_STATE_FILTER_BITS_DEFAULT = 8388608;
+  public static final String SMART_FILE_STATE_FILTER_REBUILD_INTERVAL_MS =
+      "smart.file.state.filter.rebuild.interval.ms";
+  public static final long SMART_FILE_STATE_FILTER_REBUILD_INTERVAL_MS_DEFAULT = 60000;
 }
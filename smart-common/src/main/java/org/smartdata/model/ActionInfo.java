@@ -45,6 +45,14 @@ public class ActionInfo {
 
   private float progress;
 
+  // The chars of the result and log reported by the executor, which differ
+  // from the lengths of the ones kept if some reports are lost
+  private int reportedResultChars;
+  private int reportedLogChars;
+
+  // Appended in place of the result or log of lost reports
+  static final String LOST_REPORTS_MARK = "...\n";
+
   public ActionInfo() {
     this.result = "";
     this.log = "";
@@ -162,6 +170,52 @@ public void appendLogLine(String logLine) {
     this.log += logLine + "\n";
   }
 
+  /**
+   * Append the result reported by the executor from the given offset.
+   *
+   * @see #appendReportedLog
+   */
+  public void appendReportedResult(String text, int offset) {
+    result = appendReported(result, reportedResultChars, text, offset);
+    reportedResultChars = getReportedChars(reportedResultChars, text, offset);
+  }
+
+  /**
+   * Append the log reported by the executor from the given offset, i.e. the
+   * chars reported before it. An offset of zero means the whole log is
+   * reported. The offset is compared with the chars reported so far rather
+   * than the length of the log kept, which has a mark for lost reports.
+   */
+  public void appendReportedLog(String text, int offset) {
+    log = appendReported(log, reportedLogChars, text, offset);
+    reportedLogChars = getReportedChars(reportedLogChars, text, offset);
+  }
+
+  private static String appendReported(String kept, int reportedChars,
+      String text, int offset) {
+    if (text == null) {
+      return kept;
+    }
+    if (offset <= 0) {
+      // A late duplicated report is shorter than the one reported
+      return kept == null || text.length() >= reportedChars ? text : kept;
+    }
+    if (kept == null) {
+      kept = "";
+    }
+    if (offset > reportedChars) {
+      // The reports in between are lost
+      return kept + LOST_REPORTS_MARK + text;
+    }
+    int duplicated = reportedChars - offset;
+    return duplicated >= text.length() ? kept : kept + text.substring(duplicated);
+  }
+
+  private static int getReportedChars(int reportedChars, String text, int offset) {
+    return text == null ? reportedChars
+        : Math.max(reportedChars, Math.max(offset, 0) + text.length());
+  }
+
   public boolean isSuccessful() {
     return successful;
   }
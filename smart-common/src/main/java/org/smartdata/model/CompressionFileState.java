@@ -18,21 +18,40 @@
 package org.smartdata.model;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * A class to maintain info of compressed files.
+ *
+ * <p>The offsets of the compression trunks are kept packed, as zigzag
+ * varint deltas, and decoded on the first lookup. So a file state read
+ * from XAttr holds a single byte array until the file is read. Only the
+ * packed offsets are serialized, while the boxed ones serialized by older
+ * versions are still read.
  */
 public class CompressionFileState extends FileState implements Serializable {
+  // Pinned to the one of the boxed positions, to read the file states stored by then
+  private static final long serialVersionUID = -5630689633921638007L;
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("bufferSize", int.class),
+      new ObjectStreamField("compressionImpl", String.class),
+      new ObjectStreamField("originalLength", long.class),
+      new ObjectStreamField("compressedLength", long.class),
+      new ObjectStreamField("packedPositions", byte[].class)
+  };
 
   private int bufferSize;
   private String compressionImpl;
   private long originalLength;
   private long compressedLength;
-  private Long[] originalPos;
-  private Long[] compressedPos;
+  private byte[] packedPositions;
+  private transient volatile TrunkPositions positions;
 
   public CompressionFileState(String fileName, FileStage stage) {
     // default bufferSize=1024 * 1024
@@ -86,8 +105,7 @@ public CompressionFileState(String fileName, int bufferSize, String compressionI
     this.compressionImpl = compressionImpl;
     this.originalLength = originalLength;
     this.compressedLength = compressedLength;
-    this.originalPos = originalPos;
-    this.compressedPos = compressedPos;
+    setPositions(TrunkPositions.of(originalPos, compressedPos));
   }
 
   public int getBufferSize() {
@@ -114,12 +132,32 @@ public void setCompressedLength(long length) {
     compressedLength = length;
   }
 
+  /**
+   * Get a boxed copy of the original offsets of the compression trunks.
+   * Use {@link #getOriginalOffset(int)} for lookups.
+   */
   public Long[] getOriginalPos() {
-    return originalPos;
+    return box(getPositions().originalPos);
   }
 
+  /**
+   * Get a boxed copy of the compressed offsets of the compression trunks.
+   * Use {@link #getCompressedOffset(int)} for lookups.
+   */
   public Long[] getCompressedPos() {
-    return compressedPos;
+    return box(getPositions().compressedPos);
+  }
+
+  public int getTrunkCount() {
+    return getPositions().originalPos.length;
+  }
+
+  public long getOriginalOffset(int index) {
+    return getPositions().originalPos[index];
+  }
+
+  public long getCompressedOffset(int index) {
+    return getPositions().compressedPos[index];
   }
 
   public String getCompressionImpl() {
@@ -137,7 +175,7 @@ public void setCompressionImpl(String compressionImpl) {
    * @return the index of the compression trunk where the offset locates
    */
   public int getPosIndexByOriginalOffset(long offset) {
-    int trunkIndex = Arrays.binarySearch(originalPos, offset);
+    int trunkIndex = Arrays.binarySearch(getPositions().originalPos, offset);
     if (trunkIndex < -1) {
       trunkIndex = -trunkIndex - 2;
     } else if (trunkIndex == -1) {
@@ -153,7 +191,7 @@ public int getPosIndexByOriginalOffset(long offset) {
    * @return the index of the compression trunk where the offset locates
    */
   public int getPosIndexByCompressedOffset(long offset) {
-    int trunkIndex = Arrays.binarySearch(compressedPos, offset);
+    int trunkIndex = Arrays.binarySearch(getPositions().compressedPos, offset);
     if (trunkIndex < -1) {
       trunkIndex = -trunkIndex - 2;
     } else if (trunkIndex == -1) {
@@ -176,9 +214,9 @@ public CompressionTrunk locateCompressionTrunk(boolean compressed,
         getPosIndexByOriginalOffset(offset);
     CompressionTrunk compressionTrunk = new CompressionTrunk(index);
     compressionTrunk.setCompressionImpl(compressionImpl);
-    compressionTrunk.setOriginOffset(originalPos[index]);
+    compressionTrunk.setOriginOffset(getOriginalOffset(index));
     compressionTrunk.setOriginLength(getOriginTrunkSize(index));
-    compressionTrunk.setCompressedOffset(compressedPos[index]);
+    compressionTrunk.setCompressedOffset(getCompressedOffset(index));
     compressionTrunk.setCompressedLength(getCompressedTrunkSize(index));
     return compressionTrunk;
   }
@@ -190,6 +228,7 @@ public CompressionTrunk locateCompressionTrunk(boolean compressed,
    * @return
    */
   public long getOriginTrunkSize(int index) throws IOException {
+    long[] originalPos = getPositions().originalPos;
     if (index >= originalPos.length || index < 0) {
       throw new IOException("Trunk index out of bound");
     }
@@ -209,6 +248,7 @@ public long getOriginTrunkSize(int index) throws IOException {
    * @return
    */
   public long getCompressedTrunkSize(int index) throws IOException {
+    long[] compressedPos = getPositions().compressedPos;
     if (index >= compressedPos.length || index < 0) {
       throw new IOException("Trunk index out of bound");
     }
@@ -227,8 +267,68 @@ public void setPositionMapping(Long[] originalPos, Long[] compressedPos)
       throw new IOException("Input of position mapping is incorrect : "
           + "originalPos.length != compressedPos.length");
     }
-    this.originalPos = originalPos;
-    this.compressedPos = compressedPos;
+    setPositions(TrunkPositions.of(originalPos, compressedPos));
+  }
+
+  public void setPositionMapping(long[] originalPos, long[] compressedPos)
+      throws IOException {
+    if (originalPos.length != compressedPos.length) {
+      throw new IOException("Input of position mapping is incorrect : "
+          + "originalPos.length != compressedPos.length");
+    }
+    setPositions(new TrunkPositions(originalPos, compressedPos));
+  }
+
+  private void setPositions(TrunkPositions positions) {
+    this.packedPositions = positions.pack();
+    this.positions = positions;
+  }
+
+  private TrunkPositions getPositions() {
+    TrunkPositions decoded = positions;
+    if (decoded == null) {
+      // Concurrent lookups may decode it more than once
+      decoded = TrunkPositions.unpack(packedPositions);
+      positions = decoded;
+    }
+    return decoded;
+  }
+
+  private static Long[] box(long[] values) {
+    Long[] boxed = new Long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      boxed[i] = values[i];
+    }
+    return boxed;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("bufferSize", bufferSize);
+    fields.put("compressionImpl", compressionImpl);
+    fields.put("originalLength", originalLength);
+    fields.put("compressedLength", compressedLength);
+    fields.put("packedPositions", packedPositions);
+    out.writeFields();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    bufferSize = fields.get("bufferSize", 0);
+    compressionImpl = (String) fields.get("compressionImpl", null);
+    originalLength = fields.get("originalLength", 0L);
+    compressedLength = fields.get("compressedLength", 0L);
+    if (!fields.defaulted("packedPositions")) {
+      packedPositions = (byte[]) fields.get("packedPositions", null);
+    } else {
+      // Serialized by older versions, with the boxed positions
+      try {
+        packedPositions = TrunkPositions.of((Long[]) fields.get("originalPos", null),
+            (Long[]) fields.get("compressedPos", null)).pack();
+      } catch (IllegalArgumentException e) {
+        throw new InvalidObjectException(e.getMessage());
+      }
+    }
   }
 
   public static Builder newBuilder() {
@@ -304,4 +404,93 @@ public CompressionFileState build() {
           compressedLength, originalPos, compressedPos, fileStage);
     }
   }
+
+  /**
+   * The original and compressed offsets of the compression trunks.
+   */
+  private static class TrunkPositions {
+    private final long[] originalPos;
+    private final long[] compressedPos;
+
+    private TrunkPositions(long[] originalPos, long[] compressedPos) {
+      this.originalPos = originalPos;
+      this.compressedPos = compressedPos;
+    }
+
+    private static TrunkPositions of(Long[] originalPos, Long[] compressedPos) {
+      int count = originalPos == null ? 0 : originalPos.length;
+      if (count != (compressedPos == null ? 0 : compressedPos.length)) {
+        throw new IllegalArgumentException("Input of position mapping is incorrect : "
+            + "originalPos.length != compressedPos.length");
+      }
+      long[] original = new long[count];
+      long[] compressed = new long[count];
+      for (int i = 0; i < count; i++) {
+        original[i] = originalPos[i];
+        compressed[i] = compressedPos[i];
+      }
+      return new TrunkPositions(original, compressed);
+    }
+
+    /**
+     * Pack the positions as the trunk count followed by the deltas of
+     * each original and compressed offset from the previous ones.
+     */
+    private byte[] pack() {
+      // At most 10 bytes for a varint of long
+      byte[] buf = new byte[5 + 20 * originalPos.length];
+      int off = writeVarLong(buf, 0, originalPos.length);
+      for (int i = 0; i < originalPos.length; i++) {
+        off = writeVarLong(buf, off,
+            zigzag(originalPos[i] - (i == 0 ? 0 : originalPos[i - 1])));
+        off = writeVarLong(buf, off,
+            zigzag(compressedPos[i] - (i == 0 ? 0 : compressedPos[i - 1])));
+      }
+      return Arrays.copyOf(buf, off);
+    }
+
+    private static TrunkPositions unpack(byte[] packed) {
+      if (packed == null || packed.length == 0) {
+        return new TrunkPositions(new long[0], new long[0]);
+      }
+      int[] off = {0};
+      int count = (int) readVarLong(packed, off);
+      long[] original = new long[count];
+      long[] compressed = new long[count];
+      for (int i = 0; i < count; i++) {
+        original[i] = (i == 0 ? 0 : original[i - 1]) + unzigzag(readVarLong(packed, off));
+        compressed[i] = (i == 0 ? 0 : compressed[i - 1]) + unzigzag(readVarLong(packed, off));
+      }
+      return new TrunkPositions(original, compressed);
+    }
+
+    private static int writeVarLong(byte[] buf, int off, long value) {
+      while ((value & ~0x7FL) != 0) {
+        buf[off++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[off++] = (byte) value;
+      return off;
+    }
+
+    private static long readVarLong(byte[] buf, int[] off) {
+      long value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buf[off[0]++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private static long zigzag(long value) {
+      return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+    }
+  }
 }
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.model;
+
+import java.util.List;
+
+/**
+ * Paths whose file state has changed after a given epoch. If reset is set,
+ * the changes can not be tracked and all file states should be reloaded.
+ */
+public class FileStateChanges {
+  private final long serverId;
+  private final long epoch;
+  private final boolean reset;
+  private final List<String> paths;
+
+  public FileStateChanges(long serverId, long epoch, boolean reset, List<String> paths) {
+    this.serverId = serverId;
+    this.epoch = epoch;
+    this.reset = reset;
+    this.paths = paths;
+  }
+
+  public long getServerId() {
+    return serverId;
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  public boolean isReset() {
+    return reset;
+  }
+
+  /**
+   * Changed paths. A path ending with "/" stands for all files under
+   * that directory.
+   */
+  public List<String> getPaths() {
+    return paths;
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.model;
+
+import org.smartdata.BloomFilter;
+
+/**
+ * A bloom filter of files not in normal state, built by smart server at the
+ * given epoch of file state changes.
+ */
+public class FileStateFilter {
+  private final long serverId;
+  private final long epoch;
+  private final BloomFilter filter;
+
+  public FileStateFilter(long serverId, long epoch, BloomFilter filter) {
+    this.serverId = serverId;
+    this.epoch = epoch;
+    this.filter = filter;
+  }
+
+  public long getServerId() {
+    return serverId;
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  public BloomFilter getFilter() {
+    return filter;
+  }
+
+  /**
+   * Check if the file may be not in normal state when the filter is built.
+   */
+  public boolean mayNotBeNormal(String path) {
+    return filter.contains(path);
+  }
+}
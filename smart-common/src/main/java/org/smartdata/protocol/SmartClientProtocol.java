@@ -21,8 +21,11 @@
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Interface between SmartClient and SmartServer.
@@ -31,5 +34,10 @@
   serverPrincipal = SmartConfKeys.SMART_SERVER_KERBEROS_PRINCIPAL_KEY)
 public interface SmartClientProtocol {
   void reportFileAccessEvent(FileAccessEvent event) throws IOException;
+  void reportFileAccessEvents(List<FileAccessEvent> events) throws IOException;
   FileState getFileState(String filePath) throws IOException;
+  List<FileState> getFileStates(List<String> filePaths) throws IOException;
+  List<FileState> getChildFileStates(String dirPath) throws IOException;
+  FileStateChanges getFileStateChanges(long sinceEpoch) throws IOException;
+  FileStateFilter getFileStateFilter() throws IOException;
 }
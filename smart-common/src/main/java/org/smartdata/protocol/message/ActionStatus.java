@@ -30,6 +30,9 @@ public class ActionStatus implements Serializable {
   private long finishTime;
   private Throwable throwable;
   private boolean finished;
+  // The offsets in the whole result and log where the carried ones start
+  private int resultOffset;
+  private int logOffset;
 
   public ActionStatus(long cmdletId, boolean lastAction, long actionId, float percentage,
       String result, String log, long startTime, long finishTime, Throwable t, boolean finished) {
@@ -133,6 +136,30 @@ public void setLog(String log) {
     this.log = log;
   }
 
+  /**
+   * Get the offset in the whole result of the action where the result of
+   * this status starts. Zero if the status carries the whole result.
+   */
+  public int getResultOffset() {
+    return resultOffset;
+  }
+
+  public void setResultOffset(int resultOffset) {
+    this.resultOffset = resultOffset;
+  }
+
+  /**
+   * Get the offset in the whole log of the action where the log of this
+   * status starts. Zero if the status carries the whole log.
+   */
+  public int getLogOffset() {
+    return logOffset;
+  }
+
+  public void setLogOffset(int logOffset) {
+    this.logOffset = logOffset;
+  }
+
   public long getStartTime() {
     return startTime;
   }
@@ -21,12 +21,23 @@
 import org.apache.hadoop.ipc.RPC;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
+import org.smartdata.protocol.ClientServerProto.GetChildFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterResponseProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateRequestProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
 import org.smartdata.protocol.SmartClientProtocol;
 
 import java.io.IOException;
+import java.util.List;
 
 public class ClientProtocolClientSideTranslator implements
     java.io.Closeable, SmartClientProtocol {
@@ -45,12 +56,7 @@ public void close() throws IOException {
 
   @Override
   public void reportFileAccessEvent(FileAccessEvent event) throws IOException {
-    ReportFileAccessEventRequestProto req =
-        ReportFileAccessEventRequestProto.newBuilder()
-            .setFilePath(event.getPath())
-            .setFileId(0)
-            .setAccessedBy(event.getAccessedBy())
-            .build();
+    ReportFileAccessEventRequestProto req = ProtoBufferHelper.convert(event);
     try {
       rpcProxy.reportFileAccessEvent(null, req);
     } catch (ServiceException e) {
@@ -58,6 +64,17 @@ public void reportFileAccessEvent(FileAccessEvent event) throws IOException {
     }
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    ReportFileAccessEventsRequestProto req = ProtoBufferHelper.convert(events);
+    try {
+      rpcProxy.reportFileAccessEvents(null, req);
+    } catch (ServiceException e) {
+      throw ProtoBufferHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public FileState getFileState(String filePath) throws IOException {
     GetFileStateRequestProto req = GetFileStateRequestProto.newBuilder()
@@ -70,4 +87,54 @@ public FileState getFileState(String filePath) throws IOException {
       throw ProtoBufferHelper.getRemoteException(e);
     }
   }
+
+  @Override
+  public List<FileState> getFileStates(List<String> filePaths) throws IOException {
+    GetFileStatesRequestProto req = GetFileStatesRequestProto.newBuilder()
+        .addAllFilePaths(filePaths)
+        .build();
+    try {
+      GetFileStatesResponseProto response = rpcProxy.getFileStates(null, req);
+      return ProtoBufferHelper.convert(response);
+    } catch (ServiceException e) {
+      throw ProtoBufferHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public List<FileState> getChildFileStates(String dirPath) throws IOException {
+    GetChildFileStatesRequestProto req = GetChildFileStatesRequestProto.newBuilder()
+        .setDirPath(dirPath)
+        .build();
+    try {
+      GetFileStatesResponseProto response = rpcProxy.getChildFileStates(null, req);
+      return ProtoBufferHelper.convert(response);
+    } catch (ServiceException e) {
+      throw ProtoBufferHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public FileStateChanges getFileStateChanges(long sinceEpoch) throws IOException {
+    GetFileStateChangesRequestProto req = GetFileStateChangesRequestProto.newBuilder()
+        .setSinceEpoch(sinceEpoch)
+        .build();
+    try {
+      GetFileStateChangesResponseProto response = rpcProxy.getFileStateChanges(null, req);
+      return ProtoBufferHelper.convert(response);
+    } catch (ServiceException e) {
+      throw ProtoBufferHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public FileStateFilter getFileStateFilter() throws IOException {
+    GetFileStateFilterRequestProto req = GetFileStateFilterRequestProto.newBuilder().build();
+    try {
+      GetFileStateFilterResponseProto response = rpcProxy.getFileStateFilter(null, req);
+      return ProtoBufferHelper.convert(response);
+    } catch (ServiceException e) {
+      throw ProtoBufferHelper.getRemoteException(e);
+    }
+  }
 }
@@ -23,10 +23,19 @@
 import org.apache.hadoop.security.KerberosInfo;
 import org.smartdata.SmartConstants;
 import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.protocol.ClientServerProto.GetChildFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterResponseProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateRequestProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventResponseProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsResponseProto;
 
 @KerberosInfo(
   serverPrincipal = SmartConfKeys.SMART_SERVER_KERBEROS_PRINCIPAL_KEY)
@@ -37,7 +46,27 @@ public interface ClientProtocolProtoBuffer {
   reportFileAccessEvent(RpcController controller,
                         ReportFileAccessEventRequestProto req) throws ServiceException;
 
+  ReportFileAccessEventsResponseProto
+  reportFileAccessEvents(RpcController controller,
+                         ReportFileAccessEventsRequestProto req) throws ServiceException;
+
   GetFileStateResponseProto
   getFileState(RpcController controller,
                GetFileStateRequestProto req) throws ServiceException;
+
+  GetFileStatesResponseProto
+  getFileStates(RpcController controller,
+                GetFileStatesRequestProto req) throws ServiceException;
+
+  GetFileStatesResponseProto
+  getChildFileStates(RpcController controller,
+                     GetChildFileStatesRequestProto req) throws ServiceException;
+
+  GetFileStateChangesResponseProto
+  getFileStateChanges(RpcController controller,
+                      GetFileStateChangesRequestProto req) throws ServiceException;
+
+  GetFileStateFilterResponseProto
+  getFileStateFilter(RpcController controller,
+                     GetFileStateFilterRequestProto req) throws ServiceException;
 }
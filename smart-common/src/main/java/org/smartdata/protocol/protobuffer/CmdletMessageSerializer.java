@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.protocol.protobuffer;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.smartdata.model.CmdletDispatchPolicy;
+import org.smartdata.model.CmdletState;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.CmdletMessagesProto.ActionArgProto;
+import org.smartdata.protocol.CmdletMessagesProto.ActionStatusProto;
+import org.smartdata.protocol.CmdletMessagesProto.CmdletMessageProto;
+import org.smartdata.protocol.CmdletMessagesProto.CmdletStatusUpdateProto;
+import org.smartdata.protocol.CmdletMessagesProto.LaunchActionProto;
+import org.smartdata.protocol.CmdletMessagesProto.LaunchCmdletProto;
+import org.smartdata.protocol.CmdletMessagesProto.StatusReportProto;
+import org.smartdata.protocol.CmdletMessagesProto.StopCmdletProto;
+import org.smartdata.protocol.message.ActionStatus;
+import org.smartdata.protocol.message.CmdletStatusUpdate;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.protocol.message.StopCmdlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the messages exchanged with the agents and standby servers
+ * executing cmdlets, as {@link CmdletMessageProto}. It replaces Java
+ * serialization of these messages in Akka and Hazelcast.
+ */
+public class CmdletMessageSerializer {
+  /** The classes of the messages supported. */
+  public static final List<Class<?>> MESSAGE_CLASSES = Collections.unmodifiableList(
+      Arrays.<Class<?>>asList(LaunchCmdlet.class, StopCmdlet.class, StatusReport.class,
+          ActionStatus.class, CmdletStatusUpdate.class));
+
+  private static final CmdletDispatchPolicy[] DISPATCH_POLICY_VALUES =
+      CmdletDispatchPolicy.values();
+
+  private CmdletMessageSerializer() {
+  }
+
+  public static boolean isSupported(Object message) {
+    return message != null && MESSAGE_CLASSES.contains(message.getClass());
+  }
+
+  public static byte[] serialize(Object message) {
+    CmdletMessageProto.Builder builder = CmdletMessageProto.newBuilder();
+    if (message instanceof LaunchCmdlet) {
+      builder.setLaunchCmdlet(convert((LaunchCmdlet) message));
+    } else if (message instanceof StopCmdlet) {
+      builder.setStopCmdlet(StopCmdletProto.newBuilder()
+          .setCmdletId(((StopCmdlet) message).getCmdletId()));
+    } else if (message instanceof StatusReport) {
+      StatusReportProto.Builder report = StatusReportProto.newBuilder();
+      for (ActionStatus status : ((StatusReport) message).getActionStatuses()) {
+        report.addActionStatuses(convert(status));
+      }
+      builder.setStatusReport(report);
+    } else if (message instanceof ActionStatus) {
+      builder.setActionStatus(convert((ActionStatus) message));
+    } else if (message instanceof CmdletStatusUpdate) {
+      CmdletStatusUpdate update = (CmdletStatusUpdate) message;
+      builder.setCmdletStatusUpdate(CmdletStatusUpdateProto.newBuilder()
+          .setCmdletId(update.getCmdletId())
+          .setTimestamp(update.getTimestamp())
+          .setState(update.getCurrentState().getValue()));
+    } else {
+      throw new IllegalArgumentException("Unsupported message: "
+          + (message == null ? null : message.getClass().getName()));
+    }
+    return builder.build().toByteArray();
+  }
+
+  public static Object deserialize(byte[] bytes) throws InvalidProtocolBufferException {
+    CmdletMessageProto proto = CmdletMessageProto.parseFrom(bytes);
+    if (proto.hasLaunchCmdlet()) {
+      return convert(proto.getLaunchCmdlet());
+    } else if (proto.hasStopCmdlet()) {
+      return new StopCmdlet(proto.getStopCmdlet().getCmdletId());
+    } else if (proto.hasStatusReport()) {
+      List<ActionStatus> statuses = new ArrayList<>();
+      for (ActionStatusProto status : proto.getStatusReport().getActionStatusesList()) {
+        statuses.add(convert(status));
+      }
+      return new StatusReport(statuses);
+    } else if (proto.hasActionStatus()) {
+      return convert(proto.getActionStatus());
+    } else if (proto.hasCmdletStatusUpdate()) {
+      CmdletStatusUpdateProto update = proto.getCmdletStatusUpdate();
+      return new CmdletStatusUpdate(update.getCmdletId(), update.getTimestamp(),
+          CmdletState.fromValue(update.getState()));
+    }
+    throw new InvalidProtocolBufferException("No message is set");
+  }
+
+  public static LaunchCmdletProto convert(LaunchCmdlet cmdlet) {
+    LaunchCmdletProto.Builder builder = LaunchCmdletProto.newBuilder()
+        .setCmdletId(cmdlet.getCmdletId())
+        .setDispPolicy(cmdlet.getDispPolicy().ordinal());
+    if (cmdlet.getNodeId() != null) {
+      builder.setNodeId(cmdlet.getNodeId());
+    }
+    if (cmdlet.getLaunchActions() != null) {
+      for (LaunchAction action : cmdlet.getLaunchActions()) {
+        LaunchActionProto.Builder actionBuilder = LaunchActionProto.newBuilder()
+            .setActionId(action.getActionId())
+            .setActionType(action.getActionType());
+        if (action.getArgs() != null) {
+          for (Map.Entry<String, String> arg : action.getArgs().entrySet()) {
+            ActionArgProto.Builder argBuilder = ActionArgProto.newBuilder().setKey(arg.getKey());
+            if (arg.getValue() != null) {
+              argBuilder.setValue(arg.getValue());
+            }
+            actionBuilder.addArgs(argBuilder);
+          }
+        }
+        builder.addLaunchActions(actionBuilder);
+      }
+    }
+    return builder.build();
+  }
+
+  public static LaunchCmdlet convert(LaunchCmdletProto proto) {
+    List<LaunchAction> actions = new ArrayList<>(proto.getLaunchActionsCount());
+    for (LaunchActionProto action : proto.getLaunchActionsList()) {
+      Map<String, String> args = new LinkedHashMap<>();
+      for (ActionArgProto arg : action.getArgsList()) {
+        args.put(arg.getKey(), arg.hasValue() ? arg.getValue() : null);
+      }
+      actions.add(new LaunchAction(action.getActionId(), action.getActionType(), args));
+    }
+    LaunchCmdlet cmdlet = new LaunchCmdlet(proto.getCmdletId(), actions);
+    cmdlet.setDispPolicy(DISPATCH_POLICY_VALUES[proto.getDispPolicy()]);
+    if (proto.hasNodeId()) {
+      cmdlet.setNodeId(proto.getNodeId());
+    }
+    return cmdlet;
+  }
+
+  public static ActionStatusProto convert(ActionStatus status) {
+    ActionStatusProto.Builder builder = ActionStatusProto.newBuilder()
+        .setCmdletId(status.getCmdletId())
+        .setActionId(status.getActionId())
+        .setLastAction(status.isLastAction())
+        .setPercentage(status.getPercentage())
+        .setStartTime(status.getStartTime())
+        .setFinishTime(status.getFinishTime())
+        .setFinished(status.isFinished())
+        .setResultOffset(status.getResultOffset())
+        .setLogOffset(status.getLogOffset());
+    // Empty strings are read back as null, which the getters return as empty
+    if (!status.getResult().isEmpty()) {
+      builder.setResult(status.getResult());
+    }
+    if (!status.getLog().isEmpty()) {
+      builder.setLog(status.getLog());
+    }
+    if (status.getThrowable() != null) {
+      builder.setThrowable(ByteString.copyFrom(serialize(status.getThrowable())));
+    }
+    return builder.build();
+  }
+
+  public static ActionStatus convert(ActionStatusProto proto) {
+    ActionStatus status = new ActionStatus(proto.getCmdletId(), proto.getLastAction(),
+        proto.getActionId(), proto.getPercentage(), proto.hasResult() ? proto.getResult() : null,
+        proto.hasLog() ? proto.getLog() : null, proto.getStartTime(), proto.getFinishTime(),
+        proto.hasThrowable() ? deserialize(proto.getThrowable()) : null, proto.getFinished());
+    status.setResultOffset(proto.getResultOffset());
+    status.setLogOffset(proto.getLogOffset());
+    return status;
+  }
+
+  private static byte[] serialize(Throwable t) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(t);
+    } catch (IOException e) {
+      // Not serializable, keep its message and stack trace only
+      Exception copy = new Exception(t.toString());
+      copy.setStackTrace(t.getStackTrace());
+      return serialize(copy);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Throwable deserialize(ByteString bytes) {
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (Throwable) in.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      return new Exception("Failed to deserialize the exception of the action", e);
+    }
+  }
+}
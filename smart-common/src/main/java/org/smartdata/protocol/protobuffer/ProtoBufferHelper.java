@@ -17,7 +17,9 @@
  */
 package org.smartdata.protocol.protobuffer;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.ServiceException;
+import org.smartdata.BloomFilter;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.ActionDescriptor;
 import org.smartdata.model.ActionInfo;
@@ -28,9 +30,12 @@
 import org.smartdata.model.CompressionFileState;
 import org.smartdata.model.FileContainerInfo;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
 import org.smartdata.model.NormalFileState;
 import org.smartdata.model.RuleInfo;
 import org.smartdata.model.RuleState;
+import org.smartdata.model.S3FileState;
 import org.smartdata.protocol.AdminServerProto.ActionDescriptorProto;
 import org.smartdata.protocol.AdminServerProto.ActionInfoProto;
 import org.smartdata.protocol.AdminServerProto.ActionInfoProto.Builder;
@@ -39,11 +44,15 @@
 import org.smartdata.protocol.ClientServerProto.CompactFileStateProto;
 import org.smartdata.protocol.ClientServerProto.CompressionFileStateProto;
 import org.smartdata.protocol.ClientServerProto.FileStateProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
-import org.smartdata.protocol.ClientServerProto.S3FileStateProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -119,9 +128,66 @@ public static ReportFileAccessEventRequestProto convert(FileAccessEvent event) {
         .setFilePath(event.getPath())
         .setAccessedBy(event.getAccessedBy())
         .setFileId(event.getFileId())
+        .setAccessCount(event.getCount())
         .build();
   }
 
+  public static ReportFileAccessEventsRequestProto convert(List<FileAccessEvent> events) {
+    ReportFileAccessEventsRequestProto.Builder builder =
+        ReportFileAccessEventsRequestProto.newBuilder();
+    for (FileAccessEvent event : events) {
+      builder.addFilePath(event.getPath())
+          .addAccessCount(event.getCount())
+          .addAccessedBy(event.getAccessedBy() == null ? "" : event.getAccessedBy());
+    }
+    return builder.build();
+  }
+
+  public static GetFileStateChangesResponseProto convert(FileStateChanges changes) {
+    return GetFileStateChangesResponseProto.newBuilder()
+        .setServerId(changes.getServerId())
+        .setEpoch(changes.getEpoch())
+        .setReset(changes.isReset())
+        .addAllPaths(changes.getPaths())
+        .build();
+  }
+
+  public static FileStateChanges convert(GetFileStateChangesResponseProto proto) {
+    return new FileStateChanges(proto.getServerId(), proto.getEpoch(),
+        proto.getReset(), new ArrayList<>(proto.getPathsList()));
+  }
+
+  public static GetFileStateFilterResponseProto convert(FileStateFilter filter) {
+    return GetFileStateFilterResponseProto.newBuilder()
+        .setServerId(filter.getServerId())
+        .setEpoch(filter.getEpoch())
+        .setBitSize(filter.getFilter().getBitSize())
+        .setBits(ByteString.copyFrom(filter.getFilter().toByteArray()))
+        .build();
+  }
+
+  public static FileStateFilter convert(GetFileStateFilterResponseProto proto) {
+    return new FileStateFilter(proto.getServerId(), proto.getEpoch(),
+        new BloomFilter(proto.getBitSize(), proto.getBits().toByteArray()));
+  }
+
+  public static List<FileAccessEvent> convert(
+      final ReportFileAccessEventsRequestProto proto) throws IOException {
+    int num = proto.getFilePathCount();
+    if (proto.getAccessCountCount() != num || proto.getAccessedByCount() != num) {
+      throw new IOException("Mismatched access event batch: " + num
+          + " paths but " + proto.getAccessCountCount() + " counts and "
+          + proto.getAccessedByCount() + " users");
+    }
+    List<FileAccessEvent> events = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      String accessedBy = proto.getAccessedBy(i);
+      events.add(new FileAccessEvent(proto.getFilePath(i), 0,
+          accessedBy.isEmpty() ? null : accessedBy, proto.getAccessCount(i)));
+    }
+    return events;
+  }
+
   public static ActionInfoProto convert(ActionInfo actionInfo) {
     Builder builder = ActionInfoProto.newBuilder();
     builder.setActionName(actionInfo.getActionName())
@@ -161,7 +227,8 @@ public static ActionInfo convert(ActionInfoProto infoProto) {
 
 
   public static FileAccessEvent convert(final ReportFileAccessEventRequestProto event) {
-    return new FileAccessEvent(event.getFilePath(), 0, event.getAccessedBy());
+    return new FileAccessEvent(event.getFilePath(), 0,
+        event.getAccessedBy(), event.getAccessCount());
   }
 
   public static ActionDescriptor convert(ActionDescriptorProto proto) {
@@ -204,18 +271,24 @@ public static FileState convert(FileStateProto proto) {
         fileState = new NormalFileState(path);
         break;
       case COMPACT:
+        if (!proto.hasCompactFileState()) {
+          fileState = new FileState(path, type, stage);
+          break;
+        }
         CompactFileStateProto compactProto = proto.getCompactFileState();
         fileState = new CompactFileState(path, convert(compactProto));
         break;
       case COMPRESSION:
+        if (!proto.hasCompressionFileState()) {
+          fileState = new FileState(path, type, stage);
+          break;
+        }
         CompressionFileStateProto compressionProto = proto.getCompressionFileState();
         // convert to CompressionFileState
         fileState = convert(path, stage, compressionProto);
         break;
       case S3:
-        S3FileStateProto s3Proto = proto.getS3FileState();
-        // convert to S3FileState
-        // fileState = convert(path, type, stage, s3Proto);
+        fileState = new S3FileState(path);
         break;
       default:
     }
@@ -245,6 +318,22 @@ public static FileStateProto convert(FileState fileState) {
     return builder.build();
   }
 
+  public static GetFileStatesResponseProto convertFileStates(List<FileState> fileStates) {
+    GetFileStatesResponseProto.Builder builder = GetFileStatesResponseProto.newBuilder();
+    for (FileState fileState : fileStates) {
+      builder.addFileStates(convert(fileState));
+    }
+    return builder.build();
+  }
+
+  public static List<FileState> convert(GetFileStatesResponseProto proto) {
+    List<FileState> fileStates = new ArrayList<>(proto.getFileStatesCount());
+    for (FileStateProto fileStateProto : proto.getFileStatesList()) {
+      fileStates.add(convert(fileStateProto));
+    }
+    return fileStates;
+  }
+
   public static CompressionFileState convert(String path,
       FileState.FileStage stage, CompressionFileStateProto proto) {
     CompressionFileState.Builder builder = CompressionFileState.newBuilder();
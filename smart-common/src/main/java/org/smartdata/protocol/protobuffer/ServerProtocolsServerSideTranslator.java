@@ -66,10 +66,19 @@
 import org.smartdata.protocol.AdminServerProto.SubmitRuleRequestProto;
 import org.smartdata.protocol.AdminServerProto.SubmitRuleResponseProto;
 import org.smartdata.protocol.ClientServerProto;
+import org.smartdata.protocol.ClientServerProto.GetChildFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateChangesResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStateFilterResponseProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateRequestProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateResponseProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesRequestProto;
+import org.smartdata.protocol.ClientServerProto.GetFileStatesResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventResponseProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsResponseProto;
 import org.smartdata.protocol.SmartServerProtocols;
 
 import java.io.IOException;
@@ -331,6 +340,18 @@ public ReportFileAccessEventResponseProto reportFileAccessEvent(
     }
   }
 
+  @Override
+  public ReportFileAccessEventsResponseProto reportFileAccessEvents(
+      RpcController controller, ReportFileAccessEventsRequestProto req)
+      throws ServiceException {
+    try {
+      server.reportFileAccessEvents(ProtoBufferHelper.convert(req));
+      return ReportFileAccessEventsResponseProto.newBuilder().build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetFileStateResponseProto getFileState(RpcController controller,
       GetFileStateRequestProto req) throws ServiceException {
@@ -344,4 +365,44 @@ public GetFileStateResponseProto getFileState(RpcController controller,
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public GetFileStatesResponseProto getFileStates(RpcController controller,
+      GetFileStatesRequestProto req) throws ServiceException {
+    try {
+      return ProtoBufferHelper.convertFileStates(server.getFileStates(req.getFilePathsList()));
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public GetFileStatesResponseProto getChildFileStates(RpcController controller,
+      GetChildFileStatesRequestProto req) throws ServiceException {
+    try {
+      return ProtoBufferHelper.convertFileStates(server.getChildFileStates(req.getDirPath()));
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public GetFileStateChangesResponseProto getFileStateChanges(RpcController controller,
+      GetFileStateChangesRequestProto req) throws ServiceException {
+    try {
+      return ProtoBufferHelper.convert(server.getFileStateChanges(req.getSinceEpoch()));
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public GetFileStateFilterResponseProto getFileStateFilter(RpcController controller,
+      GetFileStateFilterRequestProto req) throws ServiceException {
+    try {
+      return ProtoBufferHelper.convert(server.getFileStateFilter());
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
 }
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBloomFilter {
+
+  @Test
+  public void testSerialization() {
+    BloomFilter filter = new BloomFilter(1000);
+    Assert.assertEquals(1024, filter.getBitSize());
+    filter.addElement("/dir/file1");
+    filter.addElement("/dir/file2");
+
+    BloomFilter restored = new BloomFilter(filter.getBitSize(), filter.toByteArray());
+    Assert.assertTrue(restored.contains("/dir/file1"));
+    Assert.assertTrue(restored.contains("/dir/file2"));
+    Assert.assertFalse(new BloomFilter(1024, new byte[0]).contains("/dir/file1"));
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    int specialNum = 100000;
+    int normalNum = 2000000;
+    BloomFilter filter = new BloomFilter(1 << 23);
+    for (int i = 0; i < specialNum; i++) {
+      filter.addElement(specialPath(i));
+    }
+    byte[] bits = filter.toByteArray();
+    filter = new BloomFilter(1 << 23, bits);
+
+    for (int i = 0; i < specialNum; i++) {
+      Assert.assertTrue(filter.contains(specialPath(i)));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < normalNum; i++) {
+      if (filter.contains("/user/data/logs/day" + (i % 365) + "/app-" + i + ".log")) {
+        falsePositives++;
+      }
+    }
+    Assert.assertTrue((double) falsePositives / normalNum < 0.01);
+  }
+
+  private static String specialPath(int i) {
+    return "/user/hive/warehouse/db" + (i % 100) + "/table" + (i % 1000)
+        + "/part-" + i + ".orc";
+  }
+}
@@ -103,4 +103,32 @@ public void testEquals() throws Exception {
     Assert.assertEquals(false, actionInfo1.equals(actionInfo2));
     Assert.assertEquals(false, actionInfo2.equals(actionInfo1));
   }
+
+  @Test
+  public void testAppendReportedLog() {
+    ActionInfo actionInfo = new ActionInfo();
+    actionInfo.appendReportedLog("ab", 0);
+    actionInfo.appendReportedLog("cd", 2);
+    Assert.assertEquals("abcd", actionInfo.getLog());
+    // Overlapping and duplicated reports
+    actionInfo.appendReportedLog("def", 3);
+    actionInfo.appendReportedLog("cd", 2);
+    actionInfo.appendReportedLog("ab", 0);
+    Assert.assertEquals("abcdef", actionInfo.getLog());
+
+    // "ghijklmn" is lost, shorter or longer than the mark
+    actionInfo.appendReportedLog("o", 14);
+    actionInfo.appendReportedLog("p", 15);
+    actionInfo.appendReportedLog("op", 14);
+    Assert.assertEquals("abcdef" + ActionInfo.LOST_REPORTS_MARK + "op", actionInfo.getLog());
+    actionInfo.appendReportedLog("s", 18);
+    actionInfo.appendReportedLog("t", 19);
+    Assert.assertEquals("abcdef" + ActionInfo.LOST_REPORTS_MARK + "op"
+        + ActionInfo.LOST_REPORTS_MARK + "st", actionInfo.getLog());
+
+    // The result is tracked apart from the log
+    actionInfo.appendReportedResult("r", 3);
+    actionInfo.appendReportedResult("s", 4);
+    Assert.assertEquals(ActionInfo.LOST_REPORTS_MARK + "rs", actionInfo.getResult());
+  }
 }
@@ -21,7 +21,13 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 public class TestCompressionFileState {
   private CompressionFileState compressionFileState;
@@ -165,4 +171,97 @@ public void testLocateCompressionTrunk() throws IOException {
     Assert.assertEquals(32L, compressionTrunk.getCompressedOffset());
     Assert.assertEquals(2L, compressionTrunk.getCompressedLength());
   }
+
+  @Test
+  public void testSerialization() throws Exception {
+    CompressionFileState deserialized =
+        (CompressionFileState) deserialize(serialize(compressionFileState));
+    Assert.assertEquals(compressionFileState, deserialized);
+    Assert.assertEquals(compressedLength, deserialized.getCompressedLength());
+    Assert.assertArrayEquals(originalPos, deserialized.getOriginalPos());
+    Assert.assertArrayEquals(compressedPos, deserialized.getCompressedPos());
+    Assert.assertEquals(5, deserialized.getPosIndexByOriginalOffset(55));
+  }
+
+  @Test
+  public void testReadBoxedPositions() throws Exception {
+    // Serialized when the positions were stored as Long[]
+    String serialized = ""
+      + "rO0ABXNyAChvcmcuc21hcnRkYXRhLm1vZGVsLkNvbXByZXNzaW9uRmlsZVN0YXRlsdvFnFGgYYkC"
+      + "AAZJAApidWZmZXJTaXplSgAQY29tcHJlc3NlZExlbmd0aEoADm9yaWdpbmFsTGVuZ3RoWwANY29t"
+      + "cHJlc3NlZFBvc3QAEVtMamF2YS9sYW5nL0xvbmc7TAAPY29tcHJlc3Npb25JbXBsdAASTGphdmEv"
+      + "bGFuZy9TdHJpbmc7WwALb3JpZ2luYWxQb3NxAH4AAXhyAB1vcmcuc21hcnRkYXRhLm1vZGVsLkZp"
+      + "bGVTdGF0ZY/peTPZ++6aAgADTAAJZmlsZVN0YWdldAApTG9yZy9zbWFydGRhdGEvbW9kZWwvRmls"
+      + "ZVN0YXRlJEZpbGVTdGFnZTtMAAhmaWxlVHlwZXQAKExvcmcvc21hcnRkYXRhL21vZGVsL0ZpbGVT"
+      + "dGF0ZSRGaWxlVHlwZTtMAARwYXRocQB+AAJ4cH5yACdvcmcuc21hcnRkYXRhLm1vZGVsLkZpbGVT"
+      + "dGF0ZSRGaWxlU3RhZ2UAAAAAAAAAABIAAHhyAA5qYXZhLmxhbmcuRW51bQAAAAAAAAAAEgAAeHB0"
+      + "AARET05FfnIAJm9yZy5zbWFydGRhdGEubW9kZWwuRmlsZVN0YXRlJEZpbGVUeXBlAAAAAAAAAAAS"
+      + "AAB4cQB+AAh0AAtDT01QUkVTU0lPTnQABS9maWxlAAAACgAAAAAAAAAOAAAAAAAAABl1cgARW0xq"
+      + "YXZhLmxhbmcuTG9uZzt94Qqyu7xjKwIAAHhwAAAAA3NyAA5qYXZhLmxhbmcuTG9uZzuL5JDMjyPf"
+      + "AgABSgAFdmFsdWV4cgAQamF2YS5sYW5nLk51bWJlcoaslR0LlOCLAgAAeHAAAAAAAAAAAHNxAH4A"
+      + "EQAAAAAAAAAGc3EAfgARAAAAAAAAAAt0AARabGlidXEAfgAPAAAAA3EAfgATc3EAfgARAAAAAAAA"
+      + "AApzcQB+ABEAAAAAAAAAFA==";
+    CompressionFileState fileState =
+        (CompressionFileState) deserialize(Base64.getDecoder().decode(serialized));
+    Assert.assertEquals("/file", fileState.getPath());
+    Assert.assertEquals("Zlib", fileState.getCompressionImpl());
+    Assert.assertEquals(10, fileState.getBufferSize());
+    Assert.assertEquals(25, fileState.getOriginalLength());
+    Assert.assertEquals(14, fileState.getCompressedLength());
+    Assert.assertArrayEquals(new Long[]{0L, 10L, 20L}, fileState.getOriginalPos());
+    Assert.assertArrayEquals(new Long[]{0L, 6L, 11L}, fileState.getCompressedPos());
+  }
+
+  @Test
+  public void testPackedPositions() throws Exception {
+    int trunks = 100000;
+    long[] original = new long[trunks];
+    long[] compressed = new long[trunks];
+    for (int i = 1; i < trunks; i++) {
+      original[i] = original[i - 1] + 1024 * 1024;
+      compressed[i] = compressed[i - 1] + 300000 + i % 1000;
+    }
+    CompressionFileState fileState = new CompressionFileState("/file", 1024 * 1024);
+    fileState.setPositionMapping(original, compressed);
+    fileState.setOriginalLength(original[trunks - 1] + 1024 * 1024);
+
+    CompressionFileState deserialized =
+        (CompressionFileState) deserialize(serialize(fileState));
+    Assert.assertEquals(trunks, deserialized.getTrunkCount());
+    Assert.assertEquals(compressed[trunks - 1], deserialized.getCompressedOffset(trunks - 1));
+    CompressionTrunk trunk = deserialized.locateCompressionTrunk(false,
+        original[777] + 10);
+    Assert.assertEquals(777, trunk.getIndex());
+    Assert.assertEquals(compressed[777], trunk.getCompressedOffset());
+    Assert.assertEquals(compressed[778] - compressed[777], trunk.getCompressedLength());
+  }
+
+  @Test
+  public void testSerializePackedPositionsOnly() throws Exception {
+    byte[] serialized = serialize(compressionFileState);
+    String text = new String(serialized, StandardCharsets.ISO_8859_1);
+    Assert.assertFalse(text.contains("originalPos"));
+    Assert.assertFalse(text.contains("java.lang.Long"));
+    Assert.assertTrue(text.contains("packedPositions"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectMismatchedPositions() {
+    new CompressionFileState(fileName, bufferSize, compressionImpl, originalLength,
+        compressedLength, originalPos, new Long[]{0L, 4L});
+  }
+
+  private static byte[] serialize(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(object);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes) throws Exception {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return in.readObject();
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.protocol.protobuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.model.CmdletDispatchPolicy;
+import org.smartdata.model.CmdletState;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.message.ActionStatus;
+import org.smartdata.protocol.message.CmdletStatusUpdate;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.protocol.message.StopCmdlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestCmdletMessageSerializer {
+
+  @Test
+  public void testLaunchCmdlet() throws Exception {
+    Map<String, String> args = new HashMap<>();
+    args.put("-file", "/dir/file");
+    args.put("-flag", null);
+    LaunchCmdlet cmdlet = new LaunchCmdlet(10, Arrays.asList(
+        new LaunchAction(100, "allssd", args),
+        new LaunchAction(101, "sleep", new HashMap<String, String>())));
+    cmdlet.setDispPolicy(CmdletDispatchPolicy.PREFER_AGENT);
+    cmdlet.setNodeId("agent1");
+
+    LaunchCmdlet result = (LaunchCmdlet) roundTrip(cmdlet);
+    Assert.assertEquals(10, result.getCmdletId());
+    Assert.assertEquals(CmdletDispatchPolicy.PREFER_AGENT, result.getDispPolicy());
+    Assert.assertEquals("agent1", result.getNodeId());
+    Assert.assertEquals(2, result.getLaunchActions().size());
+    LaunchAction action = result.getLaunchActions().get(0);
+    Assert.assertEquals(100, action.getActionId());
+    Assert.assertEquals("allssd", action.getActionType());
+    Assert.assertEquals(args, action.getArgs());
+    Assert.assertTrue(result.getLaunchActions().get(1).getArgs().isEmpty());
+
+    cmdlet.setNodeId(null);
+    Assert.assertNull(((LaunchCmdlet) roundTrip(cmdlet)).getNodeId());
+  }
+
+  @Test
+  public void testStatusMessages() throws Exception {
+    Exception error = new IOException("Disk failure");
+    ActionStatus incremental = new ActionStatus(1, true, 2, 0.5f, "result", "log", 3, 4, null,
+        false);
+    incremental.setResultOffset(10);
+    incremental.setLogOffset(20);
+    StatusReport report = new StatusReport(Arrays.asList(
+        incremental, new ActionStatus(5, false, 6, "", 7, 8, error, true)));
+
+    StatusReport result = (StatusReport) roundTrip(report);
+    Assert.assertEquals(2, result.getActionStatuses().size());
+    ActionStatus status = result.getActionStatuses().get(0);
+    Assert.assertEquals(1, status.getCmdletId());
+    Assert.assertTrue(status.isLastAction());
+    Assert.assertEquals(2, status.getActionId());
+    Assert.assertEquals(0.5f, status.getPercentage(), 0);
+    Assert.assertEquals("result", status.getResult());
+    Assert.assertEquals("log", status.getLog());
+    Assert.assertEquals(3, status.getStartTime());
+    Assert.assertEquals(4, status.getFinishTime());
+    Assert.assertNull(status.getThrowable());
+    Assert.assertFalse(status.isFinished());
+    Assert.assertEquals(10, status.getResultOffset());
+    Assert.assertEquals(20, status.getLogOffset());
+
+    status = result.getActionStatuses().get(1);
+    Assert.assertEquals("", status.getResult());
+    Assert.assertEquals("", status.getLog());
+    Assert.assertTrue(status.isFinished());
+    Assert.assertTrue(status.getThrowable() instanceof IOException);
+    Assert.assertEquals("Disk failure", status.getThrowable().getMessage());
+    Assert.assertArrayEquals(error.getStackTrace(), status.getThrowable().getStackTrace());
+
+    CmdletStatusUpdate update = (CmdletStatusUpdate) roundTrip(
+        new CmdletStatusUpdate(1, 2, CmdletState.DONE));
+    Assert.assertEquals(1, update.getCmdletId());
+    Assert.assertEquals(2, update.getTimestamp());
+    Assert.assertEquals(CmdletState.DONE, update.getCurrentState());
+    Assert.assertEquals(3, ((StopCmdlet) roundTrip(new StopCmdlet(3))).getCmdletId());
+  }
+
+  @Test
+  public void testSmallerThanJavaSerialization() throws Exception {
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      log.append("Moving block ").append(i).append(" of /dir/file to SSD\n");
+    }
+    StatusReport report = new StatusReport(Arrays.asList(
+        new ActionStatus(1, true, 2, 1.0f, "", log.toString(), 3, 4, null, true)));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(report);
+    }
+    Assert.assertTrue(CmdletMessageSerializer.serialize(report).length < bytes.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedMessage() {
+    CmdletMessageSerializer.serialize("message");
+  }
+
+  private static Object roundTrip(Object message) throws Exception {
+    Assert.assertTrue(CmdletMessageSerializer.isSupported(message));
+    return CmdletMessageSerializer.deserialize(CmdletMessageSerializer.serialize(message));
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.cluster;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import org.smartdata.protocol.protobuffer.CmdletMessageSerializer;
+
+import java.io.IOException;
+
+/**
+ * Hazelcast serializer of the cmdlet messages published between the
+ * active server and the standby servers.
+ */
+public class CmdletMessageStreamSerializer implements StreamSerializer<Object> {
+  public static final int TYPE_ID = 5701;
+
+  /**
+   * Register the serializer for all the cmdlet messages.
+   */
+  public static void register(SerializationConfig config) {
+    CmdletMessageStreamSerializer serializer = new CmdletMessageStreamSerializer();
+    for (Class<?> clazz : CmdletMessageSerializer.MESSAGE_CLASSES) {
+      config.addSerializerConfig(
+          new SerializerConfig().setImplementation(serializer).setTypeClass(clazz));
+    }
+  }
+
+  @Override
+  public void write(ObjectDataOutput out, Object message) throws IOException {
+    out.writeByteArray(CmdletMessageSerializer.serialize(message));
+  }
+
+  @Override
+  public Object read(ObjectDataInput in) throws IOException {
+    return CmdletMessageSerializer.deserialize(in.readByteArray());
+  }
+
+  @Override
+  public int getTypeId() {
+    return TYPE_ID;
+  }
+}
@@ -71,6 +71,7 @@ public static HazelcastInstance getInstance() {
     if (instance == null) {
       ClasspathXmlConfig config = new ClasspathXmlConfig(CONFIG_FILE);
       addMemberConfig(config);
+      CmdletMessageStreamSerializer.register(config.getSerializationConfig());
       instance = Hazelcast.newHazelcastInstance(config);
       Runtime.getRuntime().addShutdownHook(new Thread(){
         @Override public void run() {
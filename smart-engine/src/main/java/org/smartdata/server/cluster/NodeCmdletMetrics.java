@@ -30,6 +30,10 @@ public class NodeCmdletMetrics {
 
   private long cmdletsExecuted;
   private int cmdletsInExecution;
+  // The estimated bytes to be read or written by the cmdlets in execution
+  private volatile long bytesInExecution;
+  // The cmdlets in execution which read or write file data
+  private int ioCmdletsInExecution;
 
   public NodeInfo getNodeInfo() {
     return nodeInfo;
@@ -79,6 +83,28 @@ public synchronized void incCmdletsInExecution() {
     cmdletsInExecution++;
   }
 
+  public long getBytesInExecution() {
+    return bytesInExecution;
+  }
+
+  public int getIoCmdletsInExecution() {
+    return ioCmdletsInExecution;
+  }
+
+  public synchronized void addBytesInExecution(long bytes, boolean io) {
+    bytesInExecution += bytes;
+    if (io) {
+      ioCmdletsInExecution++;
+    }
+  }
+
+  public synchronized void removeBytesInExecution(long bytes, boolean io) {
+    bytesInExecution = Math.max(0, bytesInExecution - bytes);
+    if (io && ioCmdletsInExecution > 0) {
+      ioCmdletsInExecution--;
+    }
+  }
+
   public synchronized void finishCmdlet() {
     cmdletsExecuted++;
     if (cmdletsInExecution > 0) { // TODO: restore
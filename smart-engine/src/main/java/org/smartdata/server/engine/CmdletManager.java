@@ -56,6 +56,8 @@
 import org.smartdata.server.cluster.NodeCmdletMetrics;
 import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
 import org.smartdata.server.engine.cmdlet.CmdletExecutorService;
+import org.smartdata.server.engine.cmdlet.CmdletQueue;
+import org.smartdata.server.engine.cmdlet.DeferredCmdletQueue;
 import org.smartdata.server.engine.cmdlet.TaskTracker;
 import org.smartdata.utils.StringUtil;
 
@@ -63,23 +65,26 @@
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * When a Cmdlet is submitted, it's string descriptor will be stored into set submittedCmdlets
- * to avoid duplicated Cmdlet, then enqueue into pendingCmdlet. When the Cmdlet is scheduled it
- * will be remove out of the queue and marked in the runningCmdlets.
+ * to avoid duplicated Cmdlet, then enqueue into pendingCmdlet, or into deferredCmdlet until
+ * the time it is deferred to. When the Cmdlet is scheduled it will be moved to scheduledCmdlet,
+ * and marked in the runningCmdlets once dispatched. These queues are indexed by cmdlet id, so
+ * a Cmdlet is removed from them without scanning.
  *
  * <p>The map idToCmdlets stores all the recent CmdletInfos, including pending and running Cmdlets.
  * After the Cmdlet is finished or cancelled or failed, it's status will be flush to DB.
@@ -98,11 +103,11 @@ public class CmdletManager extends AbstractService {
   private int cacheCmdTh;
 
   private int maxNumPendingCmdlets;
-  private List<Long> pendingCmdlet;
-  private List<Long> schedulingCmdlet;
-  private Queue<Long> scheduledCmdlet;
+  private CmdletQueue pendingCmdlet;
+  private DeferredCmdletQueue deferredCmdlet;
+  private CmdletQueue scheduledCmdlet;
   private Map<Long, LaunchCmdlet> idToLaunchCmdlet;
-  private List<Long> runningCmdlets;
+  private Set<Long> runningCmdlets;
   private Map<Long, CmdletInfo> idToCmdlets;
   // Track a CmdletDescriptor from the submission to
   // the finish.
@@ -111,6 +116,7 @@ public class CmdletManager extends AbstractService {
   private Map<Long, CmdletInfo> cacheCmd;
   private List<Long> tobeDeletedCmd;
   private ListMultimap<String, ActionScheduler> schedulers = ArrayListMultimap.create();
+  private Map<String, ActionType> actionTypes = new ConcurrentHashMap<>();
   private List<ActionSchedulerService> schedulerServices = new ArrayList<>();
 
   private AtomicLong numCmdletsGen = new AtomicLong(0);
@@ -129,10 +135,10 @@ public CmdletManager(ServerContext context) throws IOException {
 
     this.metaStore = context.getMetaStore();
     this.executorService = Executors.newScheduledThreadPool(4);
-    this.runningCmdlets = new ArrayList<>();
-    this.pendingCmdlet = new LinkedList<>();
-    this.schedulingCmdlet = new LinkedList<>();
-    this.scheduledCmdlet = new LinkedBlockingQueue<>();
+    this.runningCmdlets = ConcurrentHashMap.newKeySet();
+    this.pendingCmdlet = new CmdletQueue();
+    this.deferredCmdlet = new DeferredCmdletQueue();
+    this.scheduledCmdlet = new CmdletQueue();
     this.idToLaunchCmdlet = new ConcurrentHashMap<>();
     this.idToCmdlets = new ConcurrentHashMap<>();
     this.tracker = new TaskTracker();
@@ -166,7 +172,7 @@ public void setTimeout(long timeout) {
   }
 
   @VisibleForTesting
-  void setDispatcher(CmdletDispatcher dispatcher) {
+  public void setDispatcher(CmdletDispatcher dispatcher) {
     this.dispatcher = dispatcher;
   }
 
@@ -411,14 +417,72 @@ public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("Received Cmdlet -> [ %s ]", cmdletDescriptor.getCmdletString()));
     }
-    if (maxNumPendingCmdlets <= pendingCmdlet.size() + schedulingCmdlet.size()) {
+    if (maxNumPendingCmdlets <= getNumPendingScheduleCmdlets()) {
       throw new QueueFullException("Pending cmdlets exceeds value specified by key '"
           + SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY + "' = " + maxNumPendingCmdlets);
     }
+    long cid = maxCmdletId.getAndIncrement();
+    submitCmdlet(cmdletDescriptor, cid,
+        maxActionId.getAndAdd(cmdletDescriptor.getActionSize()),
+        System.currentTimeMillis(), WhitelistHelper.isEnabled(getContext().getConf()));
+    return cid;
+  }
+
+  /**
+   * Submit the cmdlets in one batch, e.g. the ones generated by a rule.
+   * Cmdlet and action ids are allocated in ranges, the cmdlets repeated or
+   * tracked already are refused in one pass, and the cmdlets are inserted to
+   * metastore in batches with the other cached cmdlets.
+   *
+   * @return the ids of the cmdlets in the given order, -1 for the ones refused,
+   *     i.e. repeated, invalid or beyond the max number of pending cmdlets
+   * @throws QueueFullException if no more cmdlet can be pending
+   */
+  public List<Long> submitCmdlets(List<CmdletDescriptor> cmdletDescriptors)
+      throws IOException {
+    int numToSubmit = maxNumPendingCmdlets - getNumPendingScheduleCmdlets();
+    if (numToSubmit <= 0) {
+      throw new QueueFullException("Pending cmdlets exceeds value specified by key '"
+          + SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY + "' = " + maxNumPendingCmdlets);
+    }
+    List<Long> cids = new ArrayList<>(Collections.nCopies(cmdletDescriptors.size(), -1L));
+    // Indexes of the cmdlets to submit
+    List<Integer> toSubmit = new ArrayList<>();
+    Set<CmdletDescriptor> descriptors = new HashSet<>();
+    int numActions = 0;
+    for (int i = 0; i < cmdletDescriptors.size() && toSubmit.size() < numToSubmit; i++) {
+      CmdletDescriptor cmdletDescriptor = cmdletDescriptors.get(i);
+      if (tracker.contains(cmdletDescriptor) || !descriptors.add(cmdletDescriptor)) {
+        LOG.debug("Refuse to repeatedly submit Cmdlet for {}", cmdletDescriptor);
+        continue;
+      }
+      toSubmit.add(i);
+      numActions += cmdletDescriptor.getActionSize();
+    }
+
+    long cid = maxCmdletId.getAndAdd(toSubmit.size());
+    long actionId = maxActionId.getAndAdd(numActions);
     long submitTime = System.currentTimeMillis();
+    boolean whitelistEnabled = WhitelistHelper.isEnabled(getContext().getConf());
+    for (int i : toSubmit) {
+      CmdletDescriptor cmdletDescriptor = cmdletDescriptors.get(i);
+      try {
+        submitCmdlet(cmdletDescriptor, cid, actionId, submitTime, whitelistEnabled);
+        cids.set(i, cid);
+      } catch (IOException e) {
+        LOG.debug("Failed to submit Cmdlet for {}", cmdletDescriptor, e);
+      }
+      cid++;
+      actionId += cmdletDescriptor.getActionSize();
+    }
+    return cids;
+  }
+
+  private void submitCmdlet(CmdletDescriptor cmdletDescriptor, long cid,
+      long firstActionId, long submitTime, boolean whitelistEnabled) throws IOException {
     CmdletInfo cmdletInfo =
       new CmdletInfo(
-        maxCmdletId.getAndIncrement(),
+        cid,
         cmdletDescriptor.getRuleId(),
         CmdletState.PENDING,
         cmdletDescriptor.getCmdletString(),
@@ -426,11 +490,11 @@ public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
         submitTime,
         submitTime + cmdletDescriptor.getDeferIntervalMs());
     List<ActionInfo> actionInfos =
-        createActionInfos(cmdletDescriptor, cmdletInfo.getCid());
+        createActionInfos(cmdletDescriptor, cmdletInfo.getCid(), firstActionId);
     // Check action names
     checkActionNames(cmdletDescriptor);
     // Check if action path is in whitelist
-    if (WhitelistHelper.isEnabled(getContext().getConf())) {
+    if (whitelistEnabled) {
       if (!WhitelistHelper.isCmdletInWhitelist(cmdletDescriptor)) {
         throw new IOException("This path is not in the whitelist.");
       }
@@ -442,7 +506,6 @@ public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
     // Track in the submission portal. For cmdlets recovered from DB
     // (see #recover), they will be not be tracked.
     tracker.track(cmdletInfo.getCid(), cmdletDescriptor);
-    return cmdletInfo.getCid();
   }
 
   /**
@@ -463,7 +526,9 @@ private void syncCmdAction(CmdletInfo cmdletInfo,
     if (cmdletInfo.getState() == CmdletState.PENDING) {
       numCmdletsGen.incrementAndGet();
       cacheCmd.put(cmdletInfo.getCid(), cmdletInfo);
-      synchronized (pendingCmdlet) {
+      if (cmdletInfo.getDeferedToTime() > System.currentTimeMillis()) {
+        deferredCmdlet.add(cmdletInfo.getCid(), cmdletInfo.getDeferedToTime());
+      } else {
         pendingCmdlet.add(cmdletInfo.getCid());
       }
     } else if (cmdletInfo.getState() == CmdletState.DISPATCHED) {
@@ -553,17 +618,15 @@ private void batchSyncCmdAction() throws Exception {
     }
   }
 
-  private boolean shouldStopSchedule() {
-    int left = dispatcher.getTotalSlotsLeft();
-    int total = dispatcher.getTotalSlots();
-    if (scheduledCmdlet.size() >= left + total * 0.2) {
-      return true;
-    }
-    return false;
+  /**
+   * Get the max number of scheduled cmdlets waiting for dispatch.
+   */
+  private double getMaxNumScheduledCmdlets() {
+    return dispatcher.getTotalSlotsLeft() + dispatcher.getTotalSlots() * 0.2;
   }
 
   private int getNumPendingScheduleCmdlets() {
-    return pendingCmdlet.size() + schedulingCmdlet.size();
+    return pendingCmdlet.size() + deferredCmdlet.size();
   }
 
   public void updateNodeCmdletMetrics(ActiveServerNodeCmdletMetrics metrics) {
@@ -577,79 +640,78 @@ public Collection<NodeCmdletMetrics> getAllNodeCmdletMetrics() {
 
   private int scheduleCmdlet() throws IOException {
     int nScheduled = 0;
-
-    synchronized (pendingCmdlet) {
-      if (pendingCmdlet.size() > 0) {
-        schedulingCmdlet.addAll(pendingCmdlet);
-        pendingCmdlet.clear();
-      }
-    }
+    // Cmdlets to retry, which are put back to the head of queue in order
+    List<Long> notScheduled = new ArrayList<>();
 
     long curr = System.currentTimeMillis();
-    Iterator<Long> it = schedulingCmdlet.iterator();
-    while (it.hasNext() && !shouldStopSchedule()) {
-      long id = it.next();
-      if (nScheduled % 20 == 0) {
-        curr = System.currentTimeMillis();
-      }
-      CmdletInfo cmdlet = idToCmdlets.get(id);
-      if (cmdlet == null) {
-        it.remove();
-        continue;
-      }
-
-      synchronized (cmdlet) {
-        switch (cmdlet.getState()) {
-          case CANCELLED:
-          case DISABLED:
-            it.remove();
-            break;
+    for (long cid : deferredCmdlet.pollDue(curr)) {
+      pendingCmdlet.add(cid);
+    }
+    // Slots are released concurrently, so they are checked again in next pass
+    double maxNumScheduled = getMaxNumScheduledCmdlets();
+    try {
+      Long id;
+      while (scheduledCmdlet.size() < maxNumScheduled
+          && (id = pendingCmdlet.poll()) != null) {
+        if (nScheduled % 20 == 0) {
+          curr = System.currentTimeMillis();
+        }
+        CmdletInfo cmdlet = idToCmdlets.get(id);
+        if (cmdlet == null) {
+          continue;
+        }
 
-          case PENDING:
-            if (cmdlet.getDeferedToTime() > curr) {
-              break;
-            }
+        synchronized (cmdlet) {
+          if (cmdlet.getState() != CmdletState.PENDING) {
+            // Cancelled or disabled
+            continue;
+          }
+          if (cmdlet.getDeferedToTime() > curr) {
+            deferredCmdlet.add(id, cmdlet.getDeferedToTime());
+            continue;
+          }
 
-            LaunchCmdlet launchCmdlet = createLaunchCmdlet(cmdlet);
-            ScheduleResult result;
-            try {
-              result = scheduleCmdletActions(cmdlet, launchCmdlet);
-            } catch (Throwable t) {
-              LOG.error("Schedule " + cmdlet + " failed.", t);
-              result = ScheduleResult.FAIL;
-            }
-            if (result != ScheduleResult.RETRY) {
-              it.remove();
-            } else {
-              continue;
-            }
-            try {
-              if (result == ScheduleResult.SUCCESS) {
-                idToLaunchCmdlet.put(cmdlet.getCid(), launchCmdlet);
-                cmdlet.setState(CmdletState.SCHEDULED);
-                cmdlet.setStateChangedTime(System.currentTimeMillis());
-                scheduledCmdlet.add(id);
-                nScheduled++;
-              } else if (result == ScheduleResult.FAIL) {
-                cmdlet.updateState(CmdletState.CANCELLED);
-                CmdletStatus cmdletStatus = new CmdletStatus(
-                    cmdlet.getCid(), cmdlet.getStateChangedTime(), cmdlet.getState());
-                // Mark all actions as finished
-                cmdletFinishedInternal(cmdlet, false);
-                onCmdletStatusUpdate(cmdletStatus);
-              } else if (result == ScheduleResult.SUCCESS_NO_EXECUTION) {
-                cmdlet.updateState(CmdletState.DONE);
-                cmdletFinishedInternal(cmdlet, true);
-                CmdletStatus cmdletStatus = new CmdletStatus(
-                    cmdlet.getCid(), cmdlet.getStateChangedTime(), cmdlet.getState());
-                onCmdletStatusUpdate(cmdletStatus);
-              }
-            } catch (Throwable t) {
-              LOG.error("Post schedule cmdlet " + cmdlet + " error.", t);
+          LaunchCmdlet launchCmdlet = createLaunchCmdlet(cmdlet);
+          ScheduleResult result;
+          try {
+            result = scheduleCmdletActions(cmdlet, launchCmdlet);
+          } catch (Throwable t) {
+            LOG.error("Schedule " + cmdlet + " failed.", t);
+            result = ScheduleResult.FAIL;
+          }
+          if (result == ScheduleResult.RETRY) {
+            notScheduled.add(id);
+            continue;
+          }
+          try {
+            if (result == ScheduleResult.SUCCESS) {
+              idToLaunchCmdlet.put(cmdlet.getCid(), launchCmdlet);
+              cmdlet.setState(CmdletState.SCHEDULED);
+              cmdlet.setStateChangedTime(System.currentTimeMillis());
+              dispatcher.onCmdletScheduled(launchCmdlet);
+              scheduledCmdlet.add(id);
+              nScheduled++;
+            } else if (result == ScheduleResult.FAIL) {
+              cmdlet.updateState(CmdletState.CANCELLED);
+              CmdletStatus cmdletStatus = new CmdletStatus(
+                  cmdlet.getCid(), cmdlet.getStateChangedTime(), cmdlet.getState());
+              // Mark all actions as finished
+              cmdletFinishedInternal(cmdlet, false);
+              onCmdletStatusUpdate(cmdletStatus);
+            } else if (result == ScheduleResult.SUCCESS_NO_EXECUTION) {
+              cmdlet.updateState(CmdletState.DONE);
+              cmdletFinishedInternal(cmdlet, true);
+              CmdletStatus cmdletStatus = new CmdletStatus(
+                  cmdlet.getCid(), cmdlet.getStateChangedTime(), cmdlet.getState());
+              onCmdletStatusUpdate(cmdletStatus);
             }
-            break;
+          } catch (Throwable t) {
+            LOG.error("Post schedule cmdlet " + cmdlet + " error.", t);
+          }
         }
       }
+    } finally {
+      pendingCmdlet.addAllFirst(notScheduled);
     }
     return nScheduled;
   }
@@ -830,19 +892,9 @@ public void disableCmdlet(long cid) throws IOException {
       onCmdletStatusUpdate(
         new CmdletStatus(info.getCid(), System.currentTimeMillis(), CmdletState.DISABLED));
 
-      synchronized (pendingCmdlet) {
-        if (pendingCmdlet.contains(cid)) {
-          pendingCmdlet.remove(cid);
-        }
-      }
-
-      if (schedulingCmdlet.contains(cid)) {
-        schedulingCmdlet.remove(cid);
-      }
-
-      if (scheduledCmdlet.contains(cid)) {
-        scheduledCmdlet.remove(cid);
-      }
+      pendingCmdlet.remove(cid);
+      deferredCmdlet.remove(cid);
+      scheduledCmdlet.remove(cid);
 
       // Wait status update from status reporter, so need to update to MetaStore
       if (runningCmdlets.contains(cid)) {
@@ -1151,21 +1203,37 @@ public void updateStatus(StatusMessage status) {
     }
   }
 
+  /**
+   * Apply the action statuses of a report as a batch. The statuses are
+   * grouped by cmdlet and applied in order, and the storage policies
+   * changed by the finished actions are written to metastore at once.
+   */
   private void onStatusReport(StatusReport report) throws IOException, ActionException {
     List<ActionStatus> actionStatusList = report.getActionStatuses();
     if (actionStatusList == null) {
       return;
     }
+    Map<Long, List<ActionStatus>> cmdletStatuses = new LinkedHashMap<>();
     for (ActionStatus actionStatus : actionStatusList) {
-      onStatusUpdate(actionStatus);
+      cmdletStatuses.computeIfAbsent(
+          actionStatus.getCmdletId(), cid -> new ArrayList<>()).add(actionStatus);
+    }
+    Map<String, String> storagePolicies = new HashMap<>();
+    try {
+      for (Map.Entry<Long, List<ActionStatus>> entry : cmdletStatuses.entrySet()) {
+        CmdletInfo cmdletInfo = idToCmdlets.get(entry.getKey());
+        if (cmdletInfo == null) {
+          continue;
+        }
+        for (ActionStatus actionStatus : entry.getValue()) {
+          ActionInfo actionInfo =
+              onActionStatusUpdate(cmdletInfo, actionStatus, storagePolicies);
+          inferCmdletStatus(cmdletInfo, actionInfo, storagePolicies);
+        }
+      }
+    } finally {
+      updateStoragePolicies(storagePolicies);
     }
-  }
-
-  private void onStatusUpdate(ActionStatus actionStatus) throws IOException,
-      ActionException {
-    onActionStatusUpdate(actionStatus);
-    ActionInfo actionInfo = idToActions.get(actionStatus.getActionId());
-    inferCmdletStatus(actionInfo);
   }
 
   public void onCmdletStatusUpdate(CmdletStatus status) throws IOException {
@@ -1196,61 +1264,68 @@ public void onActionStatusUpdate(ActionStatus status)
     if (status == null) {
       return;
     }
+    Map<String, String> storagePolicies = new HashMap<>();
+    onActionStatusUpdate(idToCmdlets.get(status.getCmdletId()), status, storagePolicies);
+    updateStoragePolicies(storagePolicies);
+  }
+
+  /**
+   * Update the action by its status.
+   *
+   * @param storagePolicies storage policies to update by file path, which the
+   *     storage policy changed by the action is added to
+   * @return the action, or null if it is not pending or running
+   */
+  private ActionInfo onActionStatusUpdate(CmdletInfo cmdletInfo, ActionStatus status,
+      Map<String, String> storagePolicies) throws ActionException {
     long actionId = status.getActionId();
-    if (idToActions.containsKey(actionId)) {
-      ActionInfo actionInfo = idToActions.get(actionId);
-      CmdletInfo cmdletInfo = idToCmdlets.get(status.getCmdletId());
-      synchronized (actionInfo) {
-        if (!actionInfo.isFinished()) {
-          actionInfo.setLog(status.getLog());
-          actionInfo.setResult(status.getResult());
-          if (!status.isFinished()) {
-            actionInfo.setProgress(status.getPercentage());
-            if (actionInfo.getCreateTime() == 0) {
-              actionInfo.setCreateTime(cmdletInfo.getGenerateTime());
-            }
-            actionInfo.setFinishTime(System.currentTimeMillis());
+    ActionInfo actionInfo = idToActions.get(actionId);
+    if (actionInfo == null || cmdletInfo == null) {
+      // Updating action info which is not pending or running
+      return null;
+    }
+    synchronized (actionInfo) {
+      if (!actionInfo.isFinished()) {
+        actionInfo.appendReportedLog(status.getLog(), status.getLogOffset());
+        actionInfo.appendReportedResult(status.getResult(), status.getResultOffset());
+        if (!status.isFinished()) {
+          actionInfo.setProgress(status.getPercentage());
+          if (actionInfo.getCreateTime() == 0) {
+            actionInfo.setCreateTime(cmdletInfo.getGenerateTime());
+          }
+          actionInfo.setFinishTime(System.currentTimeMillis());
+        } else {
+          actionInfo.setProgress(1.0F);
+          actionInfo.setFinished(true);
+          actionInfo.setCreateTime(status.getStartTime());
+          actionInfo.setFinishTime(status.getFinishTime());
+          if (status.getThrowable() != null) {
+            actionInfo.setSuccessful(false);
           } else {
-            actionInfo.setProgress(1.0F);
-            actionInfo.setFinished(true);
-            actionInfo.setCreateTime(status.getStartTime());
-            actionInfo.setFinishTime(status.getFinishTime());
-            if (status.getThrowable() != null) {
-              actionInfo.setSuccessful(false);
-            } else {
-              actionInfo.setSuccessful(true);
-              updateStorageIfNeeded(actionInfo);
-            }
-            int actionIndex = 0;
-            for (long id : cmdletInfo.getAids()) {
-              if (id == actionId) {
-                break;
-              }
-              actionIndex++;
-            }
-            for (ActionScheduler p : schedulers.get(actionInfo.getActionName())) {
-              p.onActionFinished(cmdletInfo, actionInfo, actionIndex);
-            }
+            actionInfo.setSuccessful(true);
+            updateStorageIfNeeded(actionInfo, storagePolicies);
+          }
+          int actionIndex = getActionIndex(cmdletInfo, actionId);
+          for (ActionScheduler p : schedulers.get(actionInfo.getActionName())) {
+            p.onActionFinished(cmdletInfo, actionInfo, actionIndex);
           }
         }
       }
-    } else {
-      // Updating action info which is not pending or running
     }
+    return actionInfo;
   }
 
-  private void inferCmdletStatus(ActionInfo actionInfo) throws IOException, ActionException {
+  private void inferCmdletStatus(CmdletInfo cmdletInfo, ActionInfo actionInfo,
+      Map<String, String> storagePolicies) throws IOException, ActionException {
     if (actionInfo == null) {
       return;
     }
     if (!actionInfo.isFinished()) {
       return;
     }
-    long actionId = actionInfo.getActionId();
-    long cmdletId = actionInfo.getCmdletId();
-    CmdletInfo cmdletInfo = idToCmdlets.get(cmdletId);
+    long cmdletId = cmdletInfo.getCid();
     List<Long> aids = cmdletInfo.getAids();
-    int index = aids.indexOf(actionId);
+    int index = getActionIndex(cmdletInfo, actionInfo.getActionId());
     if (!actionInfo.isSuccessful()) {
       for (int i = index + 1; i < aids.size(); i++) {
         // Use current action's finish time to set start/finish time for
@@ -1258,7 +1333,7 @@ private void inferCmdletStatus(ActionInfo actionInfo) throws IOException, Action
         ActionStatus actionStatus = ActionStatusFactory.createSkipActionStatus(
             cmdletId, i == aids.size() - 1, aids.get(i),
             actionInfo.getFinishTime(), actionInfo.getFinishTime());
-        onActionStatusUpdate(actionStatus);
+        onActionStatusUpdate(cmdletInfo, actionStatus, storagePolicies);
       }
       CmdletStatus cmdletStatus =
         new CmdletStatus(cmdletId, actionInfo.getFinishTime(), CmdletState.FAILED);
@@ -1272,40 +1347,85 @@ private void inferCmdletStatus(ActionInfo actionInfo) throws IOException, Action
     }
   }
 
+  /**
+   * Get the index of the action in the cmdlet. The actions of a cmdlet are
+   * given consecutive ids on submission, so the index is computed from the
+   * first id, the cmdlets recovered from metastore are searched otherwise.
+   */
+  private static int getActionIndex(CmdletInfo cmdletInfo, long actionId) {
+    List<Long> aids = cmdletInfo.getAids();
+    long index = aids.isEmpty() ? -1 : actionId - aids.get(0);
+    if (index >= 0 && index < aids.size() && aids.get((int) index) == actionId) {
+      return (int) index;
+    }
+    return aids.indexOf(actionId);
+  }
+
   private void flushCmdletInfo(CmdletInfo info) throws IOException {
     cacheCmd.put(info.getCid(), info);
   }
 
-  //Todo: remove this implementation
-  private void updateStorageIfNeeded(ActionInfo info) throws ActionException {
-    SmartAction action = ActionRegistry.createAction(info.getActionName());
-    if (action instanceof AbstractMoveFileAction) {
-      String policy = ((AbstractMoveFileAction) action).getStoragePolicy();
-      Map<String, String> args = info.getArgs();
-      if (policy == null) {
-        policy = args.get(AbstractMoveFileAction.STORAGE_POLICY);
-      }
-      String path = args.get(AbstractMoveFileAction.FILE_PATH);
-      try {
-        String result = info.getResult();
-        result = result == null ? "" : result;
-        if (!result.contains("UpdateStoragePolicy=false")) {
-          metaStore.updateFileStoragePolicy(path, policy);
-        }
-      } catch (MetaStoreException e) {
-        LOG.error("Failed to update storage policy {} for file {}", policy, path, e);
-      }
+  private void updateStorageIfNeeded(ActionInfo info, Map<String, String> storagePolicies)
+      throws ActionException {
+    ActionType actionType = getActionType(info.getActionName());
+    if (!actionType.isMoveAction) {
+      return;
+    }
+    String policy = actionType.storagePolicy;
+    Map<String, String> args = info.getArgs();
+    if (policy == null) {
+      policy = args.get(AbstractMoveFileAction.STORAGE_POLICY);
+    }
+    String path = args.get(AbstractMoveFileAction.FILE_PATH);
+    if (policy == null || path == null) {
+      LOG.error("Failed to update storage policy {} for file {}", policy, path);
+      return;
+    }
+    String result = info.getResult();
+    result = result == null ? "" : result;
+    if (!result.contains("UpdateStoragePolicy=false")) {
+      storagePolicies.put(path, policy);
+    }
+  }
+
+  private void updateStoragePolicies(Map<String, String> storagePolicies) {
+    try {
+      metaStore.updateFileStoragePolicies(storagePolicies);
+    } catch (MetaStoreException e) {
+      LOG.error("Failed to update storage policies {}", storagePolicies, e);
     }
   }
 
+  /**
+   * Get the type info of the action, which is created once per action name.
+   */
+  private ActionType getActionType(String actionName) throws ActionException {
+    ActionType actionType = actionTypes.get(actionName);
+    if (actionType == null) {
+      actionType = new ActionType(ActionRegistry.createAction(actionName));
+      actionTypes.put(actionName, actionType);
+    }
+    return actionType;
+  }
+
   protected List<ActionInfo> createActionInfos(CmdletDescriptor cmdletDescriptor, long cid)
     throws IOException {
+    return createActionInfos(cmdletDescriptor, cid,
+        maxActionId.getAndAdd(cmdletDescriptor.getActionSize()));
+  }
+
+  /**
+   * Create the actions of the cmdlet with consecutive ids from the given one,
+   * see #getActionIndex.
+   */
+  private List<ActionInfo> createActionInfos(CmdletDescriptor cmdletDescriptor, long cid,
+      long firstActionId) {
     List<ActionInfo> actionInfos = new ArrayList<>();
     for (int index = 0; index < cmdletDescriptor.getActionSize(); index++) {
       Map<String, String> args = cmdletDescriptor.getActionArgs(index);
       ActionInfo actionInfo =
         new ActionInfo(
-          maxActionId.getAndIncrement(),
+          firstActionId + index,
           cid,
           cmdletDescriptor.getActionName(index),
           args,
@@ -1403,6 +1523,7 @@ public void run() {
       try {
         List<Long> cids = new ArrayList<>();
         cids.addAll(idToLaunchCmdlet.keySet());
+        List<ActionStatus> actionStatuses = new ArrayList<>();
         for (Long cid : cids) {
           CmdletInfo cmdletInfo = idToCmdlets.get(cid);
           if (cmdletInfo == null) {
@@ -1418,19 +1539,16 @@ public void run() {
               // For timeout action, speculate its status and set result
               // if needed.
               if (isSuccessfulBySpeculation(actionInfo)) {
-                ActionStatus actionStatus =
-                    ActionStatusFactory.createSuccessActionStatus(
-                        cmdletInfo, actionInfo);
-                onStatusUpdate(actionStatus);
+                actionStatuses.add(ActionStatusFactory.createSuccessActionStatus(
+                    cmdletInfo, actionInfo));
               } else {
-                ActionStatus actionStatus =
-                    ActionStatusFactory.createTimeoutActionStatus(
-                        cmdletInfo, actionInfo);
-                onStatusUpdate(actionStatus);
+                actionStatuses.add(ActionStatusFactory.createTimeoutActionStatus(
+                    cmdletInfo, actionInfo));
               }
             }
           }
         }
+        onStatusReport(new StatusReport(actionStatuses));
       } catch (ActionException e) {
         LOG.error(e.getMessage());
       } catch (IOException e) {
@@ -1459,4 +1577,19 @@ public boolean isSuccessfulBySpeculation(ActionInfo actionInfo) {
       return false;
     }
   }
+
+  /**
+   * What status updates need to know about the actions of a type.
+   */
+  private static class ActionType {
+    private final boolean isMoveAction;
+    // Null if given by action args
+    private final String storagePolicy;
+
+    private ActionType(SmartAction action) {
+      this.isMoveAction = action instanceof AbstractMoveFileAction;
+      this.storagePolicy = isMoveAction
+          ? ((AbstractMoveFileAction) action).getStoragePolicy() : null;
+    }
+  }
 }
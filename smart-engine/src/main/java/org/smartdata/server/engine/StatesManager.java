@@ -24,6 +24,7 @@
 import org.smartdata.conf.ReconfigurableRegistry;
 import org.smartdata.conf.ReconfigureException;
 import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
 import org.smartdata.metastore.dao.AccessCountTable;
 import org.smartdata.metastore.dao.AccessCountTableManager;
@@ -33,12 +34,14 @@
 import org.smartdata.model.CachedFileStatus;
 import org.smartdata.model.FileAccessInfo;
 import org.smartdata.model.FileInfo;
+import org.smartdata.model.FileStateFilter;
 import org.smartdata.model.PathChecker;
 import org.smartdata.model.StorageCapacity;
 import org.smartdata.model.Utilization;
 import org.smartdata.server.engine.data.AccessEventFetcher;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -56,6 +59,8 @@ public class StatesManager extends AbstractService implements Reconfigurable {
   private FileAccessEventSource fileAccessEventSource;
   private AbstractService statesUpdaterService;
   private PathChecker pathChecker;
+  private FileStateFilter fileStateFilter;
+  private long fileStateFilterBuildTime;
   private volatile boolean working = false;
 
   public static final Logger LOG = LoggerFactory.getLogger(StatesManager.class);
@@ -140,20 +145,45 @@ public List<AccessCountTable> getTablesInLast(long timeInMills) throws MetaStore
   }
 
   public void reportFileAccessEvent(FileAccessEvent event) {
+    if (!shouldAccept(event)) {
+      return;
+    }
+    event.setTimeStamp(System.currentTimeMillis());
+    this.fileAccessEventSource.insertEventFromSmartClient(event);
+  }
+
+  /**
+   * Report a batch of file access events. All accepted events are stamped
+   * with the same server time and handed to the event source in one step.
+   */
+  public void reportFileAccessEvents(List<FileAccessEvent> events) {
+    long now = System.currentTimeMillis();
+    List<FileAccessEvent> accepted = new ArrayList<>(events.size());
+    for (FileAccessEvent event : events) {
+      if (shouldAccept(event)) {
+        event.setTimeStamp(now);
+        accepted.add(event);
+      }
+    }
+    if (!accepted.isEmpty()) {
+      this.fileAccessEventSource.insertEventsFromSmartClient(accepted);
+    }
+  }
+
+  private boolean shouldAccept(FileAccessEvent event) {
     String path = event.getPath();
     path = path + (path.endsWith("/") ? "" : "/");
 
     if (pathChecker.isIgnored(path)) {
       LOG.debug("Path {} is in the ignore list. Skip report file access event.", path);
-      return;
+      return false;
     }
 
     if (!pathChecker.isCovered(path)) {
       LOG.debug("Path {} is not in the whitelist. Report file access event failed.", path);
-      return;
+      return false;
     }
-    event.setTimeStamp(System.currentTimeMillis());
-    this.fileAccessEventSource.insertEventFromSmartClient(event);
+    return true;
   }
 
   public List<FileAccessInfo> getHotFiles(List<AccessCountTable> tables,
@@ -205,6 +235,32 @@ public FileInfo getFileInfo(String path) throws IOException {
     }
   }
 
+  /**
+   * Get the bloom filter of files not in normal state. The filter is rebuilt
+   * at most once per rebuild interval, and only if any file state changed.
+   */
+  public synchronized FileStateFilter getFileStateFilter() throws IOException {
+    MetaStore metaStore = serverContext.getMetaStore();
+    long now = System.currentTimeMillis();
+    long rebuildInterval = serverContext.getConf().getLong(
+        SmartConfKeys.SMART_FILE_STATE_FILTER_REBUILD_INTERVAL_MS,
+        SmartConfKeys.SMART_FILE_STATE_FILTER_REBUILD_INTERVAL_MS_DEFAULT);
+    if (fileStateFilter != null
+        && (now - fileStateFilterBuildTime < rebuildInterval
+        || fileStateFilter.getEpoch() == metaStore.getFileStateEpoch())) {
+      return fileStateFilter;
+    }
+    try {
+      fileStateFilter = metaStore.buildFileStateFilter(serverContext.getConf().getInt(
+          SmartConfKeys.SMART_FILE_STATE_FILTER_BITS,
+          SmartConfKeys.SMART_FILE_STATE_FILTER_BITS_DEFAULT));
+      fileStateFilterBuildTime = now;
+      return fileStateFilter;
+    } catch (MetaStoreException e) {
+      throw new IOException(e);
+    }
+  }
+
   public void reconfigureProperty(String property, String newVal)
       throws ReconfigureException {
     LOG.debug("Received reconfig event: property={} newVal={}",
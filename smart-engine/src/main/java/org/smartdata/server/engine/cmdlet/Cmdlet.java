@@ -136,7 +136,7 @@ public synchronized List<ActionStatus> getActionStatuses() throws UnsupportedEnc
     Iterator<SmartAction> iter = actionReportList.iterator();
     while (iter.hasNext()) {
       SmartAction action = iter.next();
-      ActionStatus status = action.getActionStatus();
+      ActionStatus status = action.getIncrementalActionStatus();
       statuses.add(status);
       if (status.isFinished()) {
         iter.remove();
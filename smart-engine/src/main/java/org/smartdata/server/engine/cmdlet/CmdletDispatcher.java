@@ -17,6 +17,7 @@
  */
 package org.smartdata.server.engine.cmdlet;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ListMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,7 @@
 import org.smartdata.server.cluster.NodeCmdletMetrics;
 import org.smartdata.server.engine.ActiveServerInfo;
 import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.cmdlet.DataLocalityResolver.DataLocality;
 import org.smartdata.server.engine.message.NodeMessage;
 
 import java.io.IOException;
@@ -46,18 +48,19 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CmdletDispatcher {
   private static final Logger LOG = LoggerFactory.getLogger(CmdletDispatcher.class);
-  private Queue<Long> pendingCmdlets;
+  private final CmdletQueue pendingCmdlets;
   private final CmdletManager cmdletManager;
-  private final List<Long> runningCmdlets;
+  private final Set<Long> runningCmdlets;
   private final Map<Long, LaunchCmdlet> idToLaunchCmdlet;
   private final ListMultimap<String, ActionScheduler> schedulers;
 
@@ -84,13 +87,20 @@ public class CmdletDispatcher {
   private Map<String, NodeCmdletMetrics> regNodeInfos = new HashMap<>();
 
   private List<List<String>> cmdExecSrvNodeIds = new ArrayList<>();
-  private String[] completeOn = new String[ExecutorType.values().length];
+
+  private DataLocalityResolver localityResolver;
+  private final AtomicLong localBytes = new AtomicLong();
+  private final AtomicLong remoteBytes = new AtomicLong();
+  // The estimated cost of an action besides the file data, in bytes
+  private final long actionCost;
+  // The file data bytes of the dispatched cmdlets
+  private final Map<Long, Long> dispatchedDataBytes = new ConcurrentHashMap<>();
 
   private SmartConf conf;
 
   public CmdletDispatcher(SmartContext smartContext, CmdletManager cmdletManager,
-      Queue<Long> scheduledCmdlets, Map<Long, LaunchCmdlet> idToLaunchCmdlet,
-      List<Long> runningCmdlets, ListMultimap<String, ActionScheduler> schedulers) {
+      CmdletQueue scheduledCmdlets, Map<Long, LaunchCmdlet> idToLaunchCmdlet,
+      Set<Long> runningCmdlets, ListMultimap<String, ActionScheduler> schedulers) {
     this.conf = smartContext.getConf();
     this.cmdletManager = cmdletManager;
     this.pendingCmdlets = scheduledCmdlets;
@@ -133,6 +143,14 @@ public CmdletDispatcher(SmartContext smartContext, CmdletManager cmdletManager,
     this.outputDispMetricsInterval = conf.getInt(
         SmartConfKeys.SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_KEY,
         SmartConfKeys.SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_DEFAULT);
+    this.localityResolver = new DataLocalityResolver(conf);
+    this.actionCost = conf.getLong(SmartConfKeys.SMART_CMDLET_DISPATCHER_ACTION_COST_KEY,
+        SmartConfKeys.SMART_CMDLET_DISPATCHER_ACTION_COST_DEFAULT);
+  }
+
+  @VisibleForTesting
+  public void setLocalityResolver(DataLocalityResolver localityResolver) {
+    this.localityResolver = localityResolver;
   }
 
   public void registerExecutorService(CmdletExecutorService executorService) {
@@ -292,25 +310,141 @@ public void run() {
     }
 
     private boolean dispatch(LaunchCmdlet cmdlet) {
+      DataLocality locality = localityResolver.getResolved(cmdlet.getCmdletId());
+      int srvId = locality == null ? -1 : reserveLocalNode(cmdlet, locality);
+      if (srvId < 0) {
+        srvId = reserveNode(cmdlet);
+      }
+      if (srvId < 0) {
+        return false;
+      }
+      CmdletExecutorService selected = cmdExecServices[srvId];
+      String nodeId = cmdlet.getNodeId();
+
+      boolean dispSucc = false;
+      try {
+        dispSucc = selected.execute(cmdlet) != null;
+      } finally {
+        if (!dispSucc) {
+          AtomicInteger counter = regNodes.get(nodeId);
+          if (counter != null) {
+            counter.incrementAndGet();
+          }
+          execSrvSlotsLeft[srvId].incrementAndGet();
+        }
+      }
+      if (!dispSucc) {
+        return false;
+      }
+
+      localityResolver.remove(cmdlet.getCmdletId());
+      long dataBytes = locality == null ? 0 : locality.getTotalBytes();
+      dispatchedDataBytes.put(cmdlet.getCmdletId(), dataBytes);
+      NodeCmdletMetrics metrics = regNodeInfos.get(nodeId);
+      if (metrics != null) {
+        metrics.incCmdletsInExecution();
+        metrics.addBytesInExecution(getCost(cmdlet, dataBytes), dataBytes > 0);
+      }
+      if (locality != null) {
+        long local = metrics == null ? 0 : locality.getBytes(metrics.getNodeInfo().getHost());
+        localBytes.addAndGet(local);
+        remoteBytes.addAndGet(locality.getLocatedBytes() - local);
+      }
+      updateCmdActionStatus(cmdlet, nodeId);
+      dispatchedToSrvs.put(cmdlet.getCmdletId(), selected.getExecutorType());
+
+      if (logDispResult) {
+        LOG.info(String.format("Dispatching cmdlet->[%s] to executor: %s",
+            cmdlet.getCmdletId(), nodeId));
+      }
+      return true;
+    }
+
+    /**
+     * Reserve a slot on the node holding the most data of the cmdlet.
+     *
+     * @return the executor service of the node, or -1 if no node holding
+     *     the data has a free slot
+     */
+    private int reserveLocalNode(LaunchCmdlet cmdlet, final DataLocality locality) {
+      List<NodeCmdletMetrics> candidates = new ArrayList<>();
+      synchronized (cmdExecSrvInsts) {
+        for (int t = 0; t < cmdExecServices.length; t++) {
+          if (cmdExecServices[t] == null) {
+            continue;
+          }
+          for (String nodeId : cmdExecSrvNodeIds.get(t)) {
+            NodeCmdletMetrics metrics = regNodeInfos.get(nodeId);
+            if (metrics != null && locality.getBytes(metrics.getNodeInfo().getHost()) > 0
+                && cmdExecServices[t].canAcceptMore(nodeId)) {
+              candidates.add(metrics);
+            }
+          }
+        }
+      }
+      Collections.sort(candidates, new Comparator<NodeCmdletMetrics>() {
+        @Override
+        public int compare(NodeCmdletMetrics a, NodeCmdletMetrics b) {
+          int cmp = Long.compare(locality.getBytes(b.getNodeInfo().getHost()),
+              locality.getBytes(a.getNodeInfo().getHost()));
+          return cmp != 0 ? cmp : Long.compare(a.getBytesInExecution(), b.getBytesInExecution());
+        }
+      });
+      for (NodeCmdletMetrics metrics : candidates) {
+        String nodeId = metrics.getNodeInfo().getId();
+        int srvId = metrics.getNodeInfo().getExecutorType().ordinal();
+        AtomicInteger counter = regNodes.get(nodeId);
+        if (counter == null || !tryAcquire(execSrvSlotsLeft[srvId])) {
+          continue;
+        }
+        if (tryAcquire(counter)) {
+          cmdlet.setNodeId(nodeId);
+          return srvId;
+        }
+        execSrvSlotsLeft[srvId].incrementAndGet();
+      }
+      return -1;
+    }
+
+    private boolean tryAcquire(AtomicInteger slots) {
+      int left;
+      while ((left = slots.get()) > 0) {
+        if (slots.compareAndSet(left, left - 1)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Reserve a slot on the node with the least bytes in execution, the
+     * nodes with the same bytes are taken in round-robin.
+     *
+     * @return the executor service of the node, or -1 if no slot is free
+     */
+    private int reserveNode(LaunchCmdlet cmdlet) {
       int mod = index.incrementAndGet() % cmdExecSrvTotalInsts;
       int idx = 0;
 
       for (int nround = 0; nround < 2 && mod >= 0; nround++) {
+        if (nround > 0) {
+          // Wait for the executor services being updated
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            // ignore
+          }
+        }
         for (idx = 0; idx < cmdExecSrvInsts.length; idx++) {
           mod -= cmdExecSrvInsts[idx];
           if (mod < 0) {
             break;
           }
         }
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          // ignore
-        }
       }
 
       if (mod >= 0) {
-        return false;
+        return -1;
       }
 
       CmdletExecutorService selected = null;
@@ -335,58 +469,41 @@ private boolean dispatch(LaunchCmdlet cmdlet) {
 
       if (selected == null) {
         LOG.error("No cmdlet executor service available. " + cmdlet);
-        return false;
+        return -1;
       }
 
       int srvId = selected.getExecutorType().ordinal();
 
-      boolean sFlag = true;
       String nodeId;
-      AtomicInteger counter;
+      AtomicInteger selectedCounter;
       do {
-        dispInstIdxs[srvId] = (dispInstIdxs[srvId] + 1) % cmdExecSrvNodeIds.get(srvId).size();
-        nodeId = cmdExecSrvNodeIds.get(srvId).get(dispInstIdxs[srvId]);
-        counter = regNodes.get(nodeId);
-        int left = counter.get();
-        if (left > 0) {
-          if (counter.compareAndSet(left, left - 1)) {
-            break;
+        List<String> nodeIds = cmdExecSrvNodeIds.get(srvId);
+        dispInstIdxs[srvId] = nodeIds.isEmpty() ? 0 : (dispInstIdxs[srvId] + 1) % nodeIds.size();
+        nodeId = null;
+        selectedCounter = null;
+        long minBytes = Long.MAX_VALUE;
+        for (int i = 0; i < nodeIds.size(); i++) {
+          String id = nodeIds.get((dispInstIdxs[srvId] + i) % nodeIds.size());
+          AtomicInteger counter = regNodes.get(id);
+          if (counter == null || counter.get() <= 0 || !selected.canAcceptMore(id)) {
+            continue;
+          }
+          NodeCmdletMetrics metrics = regNodeInfos.get(id);
+          long bytes = metrics == null ? 0 : metrics.getBytesInExecution();
+          if (bytes < minBytes) {
+            nodeId = id;
+            selectedCounter = counter;
+            minBytes = bytes;
           }
         }
-
-        if (sFlag && completeOn[srvId] != null) {
-          dispInstIdxs[srvId] = cmdExecSrvNodeIds.get(srvId).indexOf(completeOn[srvId]);
-          sFlag = false;
+        if (selectedCounter == null) {
+          // No node can accept more, e.g. agents have not granted credits
+          execSrvSlotsLeft[srvId].incrementAndGet();
+          return -1;
         }
-      } while (true);
+      } while (!tryAcquire(selectedCounter));
       cmdlet.setNodeId(nodeId);
-
-      boolean dispSucc = false;
-      try {
-        selected.execute(cmdlet);
-        dispSucc = true;
-      } finally {
-        if (!dispSucc) {
-          counter.incrementAndGet();
-          execSrvSlotsLeft[idx].incrementAndGet();
-        }
-      }
-      if (!dispSucc) {
-        return false;
-      }
-
-      NodeCmdletMetrics metrics = regNodeInfos.get(nodeId);
-      if (metrics != null) {
-        metrics.incCmdletsInExecution();
-      }
-      updateCmdActionStatus(cmdlet, nodeId);
-      dispatchedToSrvs.put(cmdlet.getCmdletId(), selected.getExecutorType());
-
-      if (logDispResult) {
-        LOG.info(String.format("Dispatching cmdlet->[%s] to executor: %s",
-            cmdlet.getCmdletId(), nodeId));
-      }
-      return true;
+      return srvId;
     }
   }
 
@@ -410,10 +527,11 @@ public void run() {
       if (!(stat.getStatDispatched() == 0 && stat.getStatRound() == stat.getStatNoMoreCmdlet())) {
         if (cmdExecSrvTotalInsts != 0 || stat.getStatFull() != 0) {
           LOG.info("timeInterval={} statRound={} statFail={} statDispatched={} "
-                  + "statNoMoreCmdlet={} statFull={} pendingCmdlets={} numExecutor={}",
+                  + "statNoMoreCmdlet={} statFull={} pendingCmdlets={} numExecutor={} "
+                  + "localBytes={} remoteBytes={}",
               curr - lastInfo, stat.getStatRound(), stat.getStatFail(), stat.getStatDispatched(),
               stat.getStatNoMoreCmdlet(), stat.getStatFull(), pendingCmdlets.size(),
-              cmdExecSrvTotalInsts);
+              cmdExecSrvTotalInsts, localBytes.get(), remoteBytes.get());
         } else {
           if (curr - lastReportNoExecutor >= 600 * 1000L) {
             LOG.info("No cmdlet executor. pendingCmdlets={}", pendingCmdlets.size());
@@ -435,7 +553,16 @@ public void cmdletPreExecutionProcess(LaunchCmdlet cmdlet) {
     }
   }
 
+  /**
+   * Resolve the data locality of the scheduled cmdlet before it is
+   * dispatched.
+   */
+  public void onCmdletScheduled(LaunchCmdlet cmdlet) {
+    localityResolver.prefetch(cmdlet);
+  }
+
   public void onCmdletFinished(long cmdletId) {
+    localityResolver.remove(cmdletId);
     synchronized (dispatchedToSrvs) {
       if (dispatchedToSrvs.containsKey(cmdletId)) {
         LaunchCmdlet cmdlet = idToLaunchCmdlet.get(cmdletId);
@@ -446,18 +573,29 @@ public void onCmdletFinished(long cmdletId) {
           regNodes.get(cmdlet.getNodeId()).incrementAndGet();
         }
 
+        Long dataBytes = dispatchedDataBytes.remove(cmdletId);
         NodeCmdletMetrics metrics = regNodeInfos.get(cmdlet.getNodeId());
         if (metrics != null) {
           metrics.finishCmdlet();
+          if (dataBytes != null) {
+            metrics.removeBytesInExecution(getCost(cmdlet, dataBytes), dataBytes > 0);
+          }
         }
 
         ExecutorType t = dispatchedToSrvs.remove(cmdletId);
         updateSlotsLeft(t.ordinal(), 1);
-        completeOn[t.ordinal()] = cmdlet.getNodeId();
       }
     }
   }
 
+  /**
+   * Get the estimated cost of the cmdlet in bytes, by the file data it reads
+   * or writes and the number of its actions.
+   */
+  private long getCost(LaunchCmdlet cmdlet, long dataBytes) {
+    return dataBytes + actionCost * cmdlet.getLaunchActions().size();
+  }
+
   /**
    * Maintain SSM cluster nodes. Add the node if {@code isAdd} is true.
    * Otherwise, remove the node.
@@ -551,6 +689,22 @@ public void freeExecSlot() {
     totalSlotsLeft.incrementAndGet();
   }
 
+  /**
+   * Get the bytes of the data moved by the dispatched cmdlets, which are
+   * held by the host of the executor.
+   */
+  public long getLocalBytes() {
+    return localBytes.get();
+  }
+
+  /**
+   * Get the bytes of the data moved by the dispatched cmdlets, which are
+   * not held by the host of the executor.
+   */
+  public long getRemoteBytes() {
+    return remoteBytes.get();
+  }
+
   public int getTotalSlots() {
     return cmdExecSrvTotalInsts * defaultSlots;
   }
@@ -602,5 +756,6 @@ public void start() {
   public void stop() {
     CmdletDispatcherHelper.getInst().unregister();
     schExecService.shutdownNow();
+    localityResolver.close();
   }
 }
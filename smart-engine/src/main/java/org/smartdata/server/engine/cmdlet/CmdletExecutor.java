@@ -22,14 +22,18 @@
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartdata.action.SmartAction;
 import org.smartdata.conf.SmartConf;
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.model.CmdletState;
 import org.smartdata.protocol.message.ActionStatus;
 import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.utils.StringUtil;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -38,6 +42,9 @@
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //Todo: 1. make this a interface so that we could have different executor implementation
 //      2. add api providing available resource
@@ -48,8 +55,12 @@ public class CmdletExecutor {
   private Map<Long, Future> listenableFutures;
   private Map<Long, Cmdlet> runningCmdlets;
   private Map<Long, Cmdlet> idToReportCmdlet;
+  // The cmdlets finished since last polled
+  private final AtomicInteger numFinished = new AtomicInteger();
 
   private ListeningExecutorService executorService;
+  // Deletes the spill files of actions, if they are spilled
+  private ScheduledExecutorService spillPurger;
 
   public CmdletExecutor(SmartConf smartConf) {
     this.smartConf = smartConf;
@@ -61,14 +72,44 @@ public CmdletExecutor(SmartConf smartConf) {
             SmartConfKeys.SMART_CMDLET_EXECUTORS_KEY,
             SmartConfKeys.SMART_CMDLET_EXECUTORS_DEFAULT);
     this.executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(nThreads));
+    File spillDir = SmartAction.getSpillDir(smartConf);
+    if (spillDir != null) {
+      schedulePurgeSpillFiles(spillDir);
+    }
+  }
+
+  /**
+   * Delete the spill files of actions once they are as old as the action
+   * records purged from metastore.
+   */
+  private void schedulePurgeSpillFiles(File spillDir) {
+    String lifeString = smartConf.get(SmartConfKeys.SMART_CMDLET_HIST_MAX_RECORD_LIFETIME_KEY,
+        SmartConfKeys.SMART_CMDLET_HIST_MAX_RECORD_LIFETIME_DEFAULT);
+    long maxLifeTime = StringUtil.pharseTimeString(lifeString);
+    if (maxLifeTime == -1) {
+      LOG.warn("Invalid value {} of {}, the spill files of actions are kept", lifeString,
+          SmartConfKeys.SMART_CMDLET_HIST_MAX_RECORD_LIFETIME_KEY);
+      return;
+    }
+    long interval = Math.max(maxLifeTime / 20, 5000);
+    spillPurger = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("SpillFilePurger").build());
+    spillPurger.scheduleAtFixedRate(() -> {
+      int deleted = SmartAction.purgeSpillFiles(spillDir,
+          System.currentTimeMillis() - maxLifeTime);
+      if (deleted > 0) {
+        LOG.info("Deleted {} spill files of actions in {}", deleted, spillDir);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
   }
 
   public void execute(Cmdlet cmdlet) {
-    ListenableFuture<?> future = this.executorService.submit(cmdlet);
-    Futures.addCallback(future, new CmdletCallBack(cmdlet), executorService);
-    this.listenableFutures.put(cmdlet.getId(), future);
+    // Tracked before submitted, since a short cmdlet may finish at once
     this.runningCmdlets.put(cmdlet.getId(), cmdlet);
     idToReportCmdlet.put(cmdlet.getId(), cmdlet);
+    ListenableFuture<?> future = this.executorService.submit(cmdlet);
+    this.listenableFutures.put(cmdlet.getId(), future);
+    Futures.addCallback(future, new CmdletCallBack(cmdlet), executorService);
   }
 
   public void stop(Long cmdletId) {
@@ -81,6 +122,31 @@ public void stop(Long cmdletId) {
 
   public void shutdown() {
     this.executorService.shutdown();
+    if (spillPurger != null) {
+      spillPurger.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the number of cmdlets in execution or waiting for a thread.
+   */
+  public int getNumCmdlets() {
+    return runningCmdlets.size();
+  }
+
+  /**
+   * Get the number of cmdlets finished since the last call.
+   */
+  public int pollNumFinished() {
+    return numFinished.getAndSet(0);
+  }
+
+  /**
+   * Count a launched cmdlet which fails to start as finished, so that the
+   * credit taken by it is granted back.
+   */
+  public void onLaunchFailed() {
+    numFinished.incrementAndGet();
   }
 
   public StatusReport getStatusReport() {
@@ -108,7 +174,9 @@ public StatusReport getStatusReport() {
   }
 
   private void removeCmdlet(long cmdletId) {
-    this.runningCmdlets.remove(cmdletId);
+    if (this.runningCmdlets.remove(cmdletId) != null) {
+      numFinished.incrementAndGet();
+    }
     this.listenableFutures.remove(cmdletId);
   }
 
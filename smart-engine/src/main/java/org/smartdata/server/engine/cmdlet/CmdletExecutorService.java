@@ -38,6 +38,13 @@ public void start() {
 
   public abstract boolean canAcceptMore();
 
+  /**
+   * Whether more cmdlets can be executed on the given node.
+   */
+  public boolean canAcceptMore(String nodeId) {
+    return true;
+  }
+
   // TODO: to be refined
   /**
    * Send cmdlet to end executor for execution.
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * A FIFO queue of cmdlet ids with O(1) enqueue, dequeue and removal by id.
+ * Removed ids are only dropped from the underlying deque when they reach its
+ * head. It is lock free and safe for concurrent producers and consumers.
+ */
+public class CmdletQueue {
+  private final Deque<Long> queue = new ConcurrentLinkedDeque<>();
+  // The ids in queue, the ones in deque but not here are removed
+  private final Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Add the cmdlet to the tail of the queue.
+   *
+   * @return false if the cmdlet is already in the queue
+   */
+  public boolean add(long cid) {
+    if (!ids.add(cid)) {
+      return false;
+    }
+    queue.addLast(cid);
+    return true;
+  }
+
+  /**
+   * Add the cmdlets back to the head of the queue, in the given order.
+   * Used to return the cmdlets polled but not consumed.
+   */
+  public void addAllFirst(List<Long> cids) {
+    ListIterator<Long> it = cids.listIterator(cids.size());
+    while (it.hasPrevious()) {
+      long cid = it.previous();
+      if (ids.add(cid)) {
+        queue.addFirst(cid);
+      }
+    }
+  }
+
+  /**
+   * Remove the cmdlet at the head of the queue.
+   *
+   * @return the id of the cmdlet, or null if the queue is empty
+   */
+  public Long poll() {
+    Long cid;
+    while ((cid = queue.pollFirst()) != null) {
+      if (ids.remove(cid)) {
+        return cid;
+      }
+    }
+    return null;
+  }
+
+  public boolean remove(long cid) {
+    return ids.remove(cid);
+  }
+
+  public boolean contains(long cid) {
+    return ids.contains(cid);
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+  public boolean isEmpty() {
+    return ids.isEmpty();
+  }
+}
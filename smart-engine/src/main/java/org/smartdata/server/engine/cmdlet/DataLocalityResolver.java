@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.hdfs.HadoopUtil;
+import org.smartdata.model.CmdletDescriptor;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.message.LaunchCmdlet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Resolves the hosts holding the blocks of the files moved by a cmdlet,
+ * so that the cmdlet can be dispatched to an executor on one of them, and
+ * the length of the files read by it, by which it is weighed. The locality
+ * is resolved once per cmdlet in background when it is scheduled, as
+ * getting block locations or file status is an RPC to NameNode.
+ */
+public class DataLocalityResolver {
+  private static final Logger LOG = LoggerFactory.getLogger(DataLocalityResolver.class);
+  private static final int NUM_RESOLVER_THREADS = 4;
+
+  private final SmartConf conf;
+  private final Set<String> actions;
+  private final Set<String> costActions;
+  private final ExecutorService executor;
+  // The locality of the scheduled cmdlets, by cmdlet id
+  private final Map<Long, Future<DataLocality>> localities = new ConcurrentHashMap<>();
+  private DFSClient client;
+  private volatile boolean disabled;
+
+  public DataLocalityResolver(SmartConf conf) {
+    this.conf = conf;
+    this.actions = parseActions(conf.get(
+        SmartConfKeys.SMART_CMDLET_DISPATCHER_LOCALITY_ACTIONS_KEY,
+        SmartConfKeys.SMART_CMDLET_DISPATCHER_LOCALITY_ACTIONS_DEFAULT));
+    this.costActions = parseActions(conf.get(
+        SmartConfKeys.SMART_CMDLET_DISPATCHER_COST_ACTIONS_KEY,
+        SmartConfKeys.SMART_CMDLET_DISPATCHER_COST_ACTIONS_DEFAULT));
+    this.disabled = actions.isEmpty() && costActions.isEmpty();
+    this.executor = Executors.newFixedThreadPool(NUM_RESOLVER_THREADS,
+        new ThreadFactoryBuilder().setNameFormat("DataLocalityResolver-%d")
+            .setDaemon(true).build());
+  }
+
+  private static Set<String> parseActions(String value) {
+    Set<String> parsed = new HashSet<>();
+    for (String action : value.split(",")) {
+      if (!action.trim().isEmpty()) {
+        parsed.add(action.trim());
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Start resolving the locality of the data moved by the scheduled cmdlet
+   * in background, so that it is ready when the cmdlet is dispatched.
+   */
+  public void prefetch(final LaunchCmdlet cmdlet) {
+    if (disabled || !movesData(cmdlet)) {
+      return;
+    }
+    try {
+      localities.put(cmdlet.getCmdletId(), executor.submit(() -> resolve(cmdlet)));
+    } catch (RejectedExecutionException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Get the locality resolved in background without blocking, or null if
+   * the cmdlet does not read data or its locality is not resolved yet.
+   */
+  public DataLocality getResolved(long cmdletId) {
+    Future<DataLocality> future = localities.get(cmdletId);
+    if (future == null || !future.isDone() || future.isCancelled()) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException | ExecutionException e) {
+      LOG.debug("Failed to resolve data locality of cmdlet {}", cmdletId, e);
+      return null;
+    }
+  }
+
+  /**
+   * Drop the locality of the dispatched or finished cmdlet.
+   */
+  public void remove(long cmdletId) {
+    Future<DataLocality> future = localities.remove(cmdletId);
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  private boolean movesData(LaunchCmdlet cmdlet) {
+    for (LaunchAction action : cmdlet.getLaunchActions()) {
+      String type = action.getActionType();
+      if (action.getArgs() != null
+          && (actions.contains(type) || costActions.contains(type))
+          && action.getArgs().get(CmdletDescriptor.HDFS_FILE_PATH) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the locality of the data moved by the cmdlet, and the length of the
+   * data read by it, or null if it does not read the data of any file. It
+   * blocks on the RPCs to NameNode.
+   */
+  DataLocality resolve(LaunchCmdlet cmdlet) {
+    if (disabled) {
+      return null;
+    }
+    DataLocality locality = null;
+    for (LaunchAction action : cmdlet.getLaunchActions()) {
+      String path = action.getArgs() == null
+          ? null : action.getArgs().get(CmdletDescriptor.HDFS_FILE_PATH);
+      if (path == null) {
+        continue;
+      }
+      if (actions.contains(action.getActionType())) {
+        BlockLocation[] blocks;
+        try {
+          blocks = getBlockLocations(path);
+        } catch (IOException e) {
+          LOG.debug("Failed to get block locations of {}", path, e);
+          continue;
+        }
+        if (blocks == null) {
+          continue;
+        }
+        if (locality == null) {
+          locality = new DataLocality();
+        }
+        for (BlockLocation block : blocks) {
+          locality.add(block);
+        }
+      } else if (costActions.contains(action.getActionType())) {
+        // Only weighed, the blocks are not got
+        long length;
+        try {
+          length = getFileLength(path);
+        } catch (IOException e) {
+          LOG.debug("Failed to get file status of {}", path, e);
+          continue;
+        }
+        if (length < 0) {
+          continue;
+        }
+        if (locality == null) {
+          locality = new DataLocality();
+        }
+        locality.addLength(length);
+      }
+    }
+    return locality;
+  }
+
+  protected BlockLocation[] getBlockLocations(String path) throws IOException {
+    DFSClient dfsClient = getClient();
+    return dfsClient == null ? null : dfsClient.getBlockLocations(path, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Get the length of the file, or -1 if it does not exist.
+   */
+  protected long getFileLength(String path) throws IOException {
+    DFSClient dfsClient = getClient();
+    HdfsFileStatus status = dfsClient == null ? null : dfsClient.getFileInfo(path);
+    return status == null ? -1 : status.getLen();
+  }
+
+  private synchronized DFSClient getClient() {
+    if (client == null && !disabled) {
+      try {
+        client = HadoopUtil.getDFSClient(HadoopUtil.getNameNodeUri(conf), conf);
+      } catch (IOException e) {
+        LOG.warn("Locality-aware dispatch is disabled, failed to connect to HDFS: "
+            + e.getMessage());
+        disabled = true;
+      }
+    }
+    return client;
+  }
+
+  public synchronized void close() {
+    disabled = true;
+    executor.shutdownNow();
+    localities.clear();
+    if (client != null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close DFSClient", e);
+      }
+      client = null;
+    }
+  }
+
+  /**
+   * The bytes of the data read by a cmdlet in total, and of the data moved
+   * by it in total and by the hosts holding a replica of them.
+   */
+  public static class DataLocality {
+    private long totalBytes;
+    private long locatedBytes;
+    private final Map<String, Long> hostBytes = new HashMap<>();
+
+    void add(BlockLocation block) {
+      totalBytes += block.getLength();
+      locatedBytes += block.getLength();
+      Set<String> hosts = new HashSet<>();
+      try {
+        for (String host : block.getHosts()) {
+          hosts.add(host);
+        }
+        // Executors may be registered by IP
+        for (String name : block.getNames()) {
+          int index = name.lastIndexOf(':');
+          hosts.add(index < 0 ? name : name.substring(0, index));
+        }
+      } catch (IOException e) {
+        return;
+      }
+      for (String host : hosts) {
+        Long bytes = hostBytes.get(host);
+        hostBytes.put(host, bytes == null ? block.getLength() : bytes + block.getLength());
+      }
+    }
+
+    void addLength(long length) {
+      totalBytes += length;
+    }
+
+    /**
+     * Get the bytes of all the data read by the cmdlet, which weighs it.
+     */
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    /**
+     * Get the bytes of the data whose blocks are located.
+     */
+    public long getLocatedBytes() {
+      return locatedBytes;
+    }
+
+    public long getBytes(String host) {
+      Long bytes = hostBytes.get(host);
+      return bytes == null ? 0 : bytes;
+    }
+  }
+}
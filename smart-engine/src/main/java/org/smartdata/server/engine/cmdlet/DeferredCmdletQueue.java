@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A queue of cmdlet ids ordered by the time they are deferred to. Only the
+ * cmdlets due are polled, so checking the queue costs nothing when none of
+ * them is due, however many cmdlets are deferred. Adding, polling and
+ * removing a cmdlet by id are O(log n). It is lock free and safe for
+ * concurrent producers and consumers.
+ */
+public class DeferredCmdletQueue {
+  private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+  // Due time of the cmdlets in queue
+  private final Map<Long, Long> dueTimes = new ConcurrentHashMap<>();
+
+  /**
+   * Add the cmdlet which is due at the given time.
+   *
+   * @return false if the cmdlet is already in the queue
+   */
+  public boolean add(long cid, long dueTime) {
+    if (dueTimes.putIfAbsent(cid, dueTime) != null) {
+      return false;
+    }
+    entries.add(new Entry(dueTime, cid));
+    return true;
+  }
+
+  /**
+   * Remove the cmdlets due at or before the given time.
+   *
+   * @return the ids of the cmdlets in order of their due time
+   */
+  public List<Long> pollDue(long now) {
+    List<Long> cids = new ArrayList<>();
+    Entry entry;
+    while ((entry = first()) != null && entry.dueTime <= now) {
+      // The entry may be polled or removed concurrently
+      if (entries.remove(entry) && dueTimes.remove(entry.cid, entry.dueTime)) {
+        cids.add(entry.cid);
+      }
+    }
+    return cids;
+  }
+
+  public boolean remove(long cid) {
+    Long dueTime = dueTimes.remove(cid);
+    if (dueTime == null) {
+      return false;
+    }
+    entries.remove(new Entry(dueTime, cid));
+    return true;
+  }
+
+  public boolean contains(long cid) {
+    return dueTimes.containsKey(cid);
+  }
+
+  public int size() {
+    return dueTimes.size();
+  }
+
+  public boolean isEmpty() {
+    return dueTimes.isEmpty();
+  }
+
+  private Entry first() {
+    // Not first(), which throws if the queue is emptied concurrently
+    return entries.ceiling(Entry.MIN);
+  }
+
+  private static class Entry implements Comparable<Entry> {
+    private static final Entry MIN = new Entry(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    private final long dueTime;
+    private final long cid;
+
+    private Entry(long dueTime, long cid) {
+      this.dueTime = dueTime;
+      this.cid = cid;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int result = Long.compare(dueTime, other.dueTime);
+      return result != 0 ? result : Long.compare(cid, other.cid);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) o;
+      return dueTime == other.dueTime && cid == other.cid;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(dueTime) * 31 + Long.hashCode(cid);
+    }
+  }
+}
@@ -57,7 +57,9 @@ public void run() {
     if (statusReport != null) {
       List<ActionStatus> actionStatuses = statusReport.getActionStatuses();
       for (ActionStatus actionStatus : actionStatuses) {
-        idToActionStatus.put(actionStatus.getActionId(), actionStatus);
+        ActionStatus pending = idToActionStatus.get(actionStatus.getActionId());
+        idToActionStatus.put(actionStatus.getActionId(),
+            pending == null ? actionStatus : merge(pending, actionStatus));
       }
       if (!idToActionStatus.values().isEmpty()) {
         int finishedNum = 0;
@@ -76,4 +78,20 @@ public void run() {
       }
     }
   }
+
+  /**
+   * Merge the result and log of the status not reported yet into the status
+   * following it, which carries only the ones appended after.
+   */
+  private static ActionStatus merge(ActionStatus pending, ActionStatus status) {
+    if (status.getResultOffset() > 0) {
+      status.setResult(pending.getResult() + status.getResult());
+      status.setResultOffset(pending.getResultOffset());
+    }
+    if (status.getLogOffset() > 0) {
+      status.setLog(pending.getLog() + status.getLog());
+      status.setLogOffset(pending.getLogOffset());
+    }
+    return status;
+  }
 }
@@ -22,6 +22,7 @@
 import org.smartdata.conf.SmartConf;
 import org.smartdata.protocol.message.LaunchCmdlet;
 import org.smartdata.protocol.message.StopCmdlet;
+import org.smartdata.server.engine.cmdlet.Cmdlet;
 import org.smartdata.server.engine.cmdlet.CmdletExecutor;
 import org.smartdata.server.engine.cmdlet.CmdletFactory;
 
@@ -55,7 +56,14 @@ public void stop() throws IOException {
   @Override
   public void execute(Message message) throws Exception {
     if (message instanceof LaunchCmdlet) {
-      executor.execute(factory.createCmdlet((LaunchCmdlet) message));
+      Cmdlet cmdlet;
+      try {
+        cmdlet = factory.createCmdlet((LaunchCmdlet) message);
+      } catch (Exception e) {
+        executor.onLaunchFailed();
+        throw e;
+      }
+      executor.execute(cmdlet);
     } else if (message instanceof StopCmdlet) {
       executor.stop(((StopCmdlet) message).getCmdletId());
     } else {
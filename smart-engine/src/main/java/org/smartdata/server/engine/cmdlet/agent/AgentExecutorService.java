@@ -43,6 +43,11 @@ public boolean canAcceptMore() {
     return master.canAcceptMore();
   }
 
+  @Override
+  public boolean canAcceptMore(String nodeId) {
+    return master.canAcceptMore(nodeId);
+  }
+
   @Override
   public String execute(LaunchCmdlet cmdlet) {
     return master.launchCmdlet(cmdlet);
@@ -30,6 +30,8 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AgentManager {
 
@@ -39,6 +41,8 @@ public class AgentManager {
   private List<ActorRef> resources = new ArrayList<>();
   private List<NodeInfo> nodeInfos = new LinkedList<>();
   private int dispatchIndex = 0;
+  // The cmdlets can be launched on each agent, granted by the agent
+  private final Map<String, AtomicInteger> credits = new ConcurrentHashMap<>();
 
   void addAgent(ActorRef agent, AgentId id) {
     agents.put(agent, id);
@@ -48,6 +52,7 @@ void addAgent(ActorRef agent, AgentId id) {
     nodeInfos.add(info);
     agentNodeInfos.put(agent, info);
     agentActorRefs.put(info.getId(), agent);
+    credits.put(info.getId(), new AtomicInteger(0));
     EngineEventBus.post(new AddNodeMessage(info));
   }
 
@@ -57,6 +62,7 @@ AgentId removeAgent(ActorRef agent) {
     NodeInfo info = agentNodeInfos.remove(agent);
     nodeInfos.remove(info);
     agentActorRefs.remove(info.getId());
+    credits.remove(info.getId());
     EngineEventBus.post(new RemoveNodeMessage(info));
     return id;
   }
@@ -69,6 +75,53 @@ ActorRef dispatch(String nodeId) {
     return agentActorRefs.get(nodeId);
   }
 
+  void grantCredits(ActorRef agent, int num) {
+    NodeInfo info = agentNodeInfos.get(agent);
+    AtomicInteger credit = info == null ? null : credits.get(info.getId());
+    if (credit != null) {
+      credit.addAndGet(num);
+    }
+  }
+
+  boolean hasCredit(String nodeId) {
+    AtomicInteger credit = credits.get(nodeId);
+    return credit != null && credit.get() > 0;
+  }
+
+  /**
+   * Take a credit to launch a cmdlet on the agent.
+   *
+   * @return false if the agent has not granted any more credits
+   */
+  boolean acquireCredit(String nodeId) {
+    AtomicInteger credit = credits.get(nodeId);
+    if (credit == null) {
+      return false;
+    }
+    int left;
+    while ((left = credit.get()) > 0) {
+      if (credit.compareAndSet(left, left - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Give back the credit taken by a cmdlet which is not launched.
+   */
+  void refundCredit(String nodeId) {
+    AtomicInteger credit = credits.get(nodeId);
+    if (credit != null) {
+      credit.incrementAndGet();
+    }
+  }
+
+  int getCredits(String nodeId) {
+    AtomicInteger credit = credits.get(nodeId);
+    return credit == null ? 0 : credit.get();
+  }
+
   Map<ActorRef, AgentId> getAgents() {
     return agents;
   }
@@ -37,6 +37,7 @@
 import org.smartdata.protocol.message.StopCmdlet;
 import org.smartdata.server.engine.CmdletManager;
 import org.smartdata.server.engine.cmdlet.CmdletDispatcherHelper;
+import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.GrantCredits;
 import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.RegisterAgent;
 import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.RegisterNewAgent;
 import org.smartdata.server.engine.cmdlet.agent.messages.MasterToAgent.AgentId;
@@ -113,15 +114,27 @@ public boolean canAcceptMore() {
     return agentManager.hasFreeAgent();
   }
 
+  /**
+   * Whether the agent has granted credits to launch more cmdlets on it.
+   */
+  public boolean canAcceptMore(String nodeId) {
+    return agentManager.hasCredit(nodeId);
+  }
+
+  /**
+   * Launch the cmdlet on the agent given by its node id, within the
+   * credits granted by the agent. The cmdlet is sent asynchronously.
+   *
+   * @return the id of the agent, or null if the agent has no credit
+   */
   public String launchCmdlet(LaunchCmdlet launch) {
-    try {
-      AgentId agentId = (AgentId) askMaster(launch);
-      return agentId.getId();
-    } catch (Exception e) {
-      LOG.error(
-          "Failed to launch Cmdlet {} due to {}", launch, e.getMessage());
+    if (!agentManager.acquireCredit(launch.getNodeId())) {
+      LOG.debug("No credit to launch cmdlet {} on agent {}",
+          launch.getCmdletId(), launch.getNodeId());
       return null;
     }
+    master.tell(launch, ActorRef.noSender());
+    return launch.getNodeId();
   }
 
   public void stopCmdlet(long cmdletId) {
@@ -268,6 +281,9 @@ private boolean handleAgentMessage(Object message) {
       } else if (message instanceof StatusMessage) {
         AgentMaster.statusUpdater.updateStatus((StatusMessage) message);
         return true;
+      } else if (message instanceof GrantCredits) {
+        agentManager.grantCredits(getSender(), ((GrantCredits) message).getCredits());
+        return true;
       } else {
         return false;
       }
@@ -275,14 +291,18 @@ private boolean handleAgentMessage(Object message) {
 
     private boolean handleClientMessage(Object message) {
       if (message instanceof LaunchCmdlet) {
-        if (agentManager.hasFreeAgent()) {
-          LaunchCmdlet launch = (LaunchCmdlet) message;
-          ActorRef agent = this.agentManager.dispatch(launch.getNodeId());
-          AgentId agentId = this.agentManager.getAgentId(agent);
-          agent.tell(launch, getSelf());
-          dispatches.put(launch.getCmdletId(), agent);
-          getSender().tell(agentId, getSelf());
+        LaunchCmdlet launch = (LaunchCmdlet) message;
+        ActorRef agent = this.agentManager.dispatch(launch.getNodeId());
+        if (agent == null) {
+          // The failure will be detected by the missing status report
+          LOG.warn("Agent {} for cmdlet {} is removed",
+              launch.getNodeId(), launch.getCmdletId());
+          // Give back its credit, if still tracked for the agent
+          this.agentManager.refundCredit(launch.getNodeId());
+          return true;
         }
+        agent.tell(launch, getSelf());
+        dispatches.put(launch.getCmdletId(), agent);
         return true;
       } else if (message instanceof StopCmdlet) {
         long cmdletId = ((StopCmdlet) message).getCmdletId();
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet.agent;
+
+import akka.serialization.JSerializer;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.smartdata.protocol.protobuffer.CmdletMessageSerializer;
+
+import java.io.NotSerializableException;
+
+/**
+ * Akka serializer of the cmdlet messages exchanged between the master and
+ * the agents, bound to their classes in {@link AgentConstants#AKKA_CONF_FILE}.
+ */
+public class AgentMessageSerializer extends JSerializer {
+  // Ids from 0 to 40 are reserved by Akka
+  public static final int IDENTIFIER = 5701;
+
+  @Override
+  public int identifier() {
+    return IDENTIFIER;
+  }
+
+  @Override
+  public boolean includeManifest() {
+    return false;
+  }
+
+  @Override
+  public byte[] toBinary(Object o) {
+    return CmdletMessageSerializer.serialize(o);
+  }
+
+  @Override
+  public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+    try {
+      return CmdletMessageSerializer.deserialize(bytes);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalArgumentException(new NotSerializableException(e.getMessage()));
+    }
+  }
+}
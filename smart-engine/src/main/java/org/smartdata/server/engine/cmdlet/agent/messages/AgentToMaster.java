@@ -93,4 +93,27 @@ public String toString() {
       return "RegisterAgent{ id=" + id + "}";
     }
   }
+
+  /**
+   * Grant the master the credits to launch the given number of more
+   * cmdlets on the agent.
+   */
+  public static class GrantCredits implements Serializable {
+
+    private static final long serialVersionUID = 3640915806183497021L;
+    private final int credits;
+
+    public GrantCredits(int credits) {
+      this.credits = credits;
+    }
+
+    public int getCredits() {
+      return credits;
+    }
+
+    @Override
+    public String toString() {
+      return "GrantCredits{credits=" + credits + "}";
+    }
+  }
 }
@@ -53,6 +53,8 @@ public class RuleExecutor implements Runnable {
   private long exitTime;
   private Stack<String> dynamicCleanups = new Stack<>();
   private static final Logger LOG = LoggerFactory.getLogger(RuleExecutor.class.getName());
+  // Number of cmdlets submitted to CmdletManager at a time
+  private static final int SUBMIT_BATCH_SIZE = 1000;
 
   private static Pattern varPattern = Pattern.compile("\\$([a-zA-Z_]+[a-zA-Z0-9_]*)");
   private static Pattern callPattern =
@@ -442,30 +444,35 @@ private int submitCmdlets(RuleInfo ruleInfo, List<String> files) {
     int nSubmitted = 0;
     List<RuleExecutorPlugin> plugins = RuleExecutorPluginManager.getPlugins();
     String template = tr.getCmdDescriptor().toCmdletString();
-    for (String file : files) {
-      if (!exited) {
-        try {
-          CmdletDescriptor cmd = new CmdletDescriptor(template, ruleId);
-          cmd.setCmdletParameter(CmdletDescriptor.HDFS_FILE_PATH, file);
-          for (RuleExecutorPlugin plugin : plugins) {
-            cmd = plugin.preSubmitCmdletDescriptor(ruleInfo, tr, cmd);
-          }
-          long cid = ruleManager.getCmdletManager().submitCmdlet(cmd);
+    List<CmdletDescriptor> cmds = new ArrayList<>(SUBMIT_BATCH_SIZE);
+    for (int i = 0; i < files.size() && !exited; i++) {
+      String file = files.get(i);
+      try {
+        CmdletDescriptor cmd = new CmdletDescriptor(template, ruleId);
+        cmd.setCmdletParameter(CmdletDescriptor.HDFS_FILE_PATH, file);
+        for (RuleExecutorPlugin plugin : plugins) {
+          cmd = plugin.preSubmitCmdletDescriptor(ruleInfo, tr, cmd);
+        }
+        cmds.add(cmd);
+      } catch (ParseException e) {
+        LOG.error("Failed to submit cmdlet for file: " + file, e);
+      }
+      if (cmds.isEmpty() || (cmds.size() < SUBMIT_BATCH_SIZE && i < files.size() - 1)) {
+        continue;
+      }
+      try {
+        for (long cid : ruleManager.getCmdletManager().submitCmdlets(cmds)) {
           // Not really submitted if cid is -1.
           if (cid != -1) {
             nSubmitted++;
           }
-        } catch (QueueFullException e) {
-          break;
-        } catch (IOException e) {
-          // it's common here, ignore this and continue submit
-          LOG.debug("Failed to submit cmdlet for file: " + file, e);
-        } catch (ParseException e) {
-          LOG.error("Failed to submit cmdlet for file: " + file, e);
         }
-      } else {
+      } catch (QueueFullException e) {
         break;
+      } catch (IOException e) {
+        LOG.error("Failed to submit cmdlets for rule " + ruleId, e);
       }
+      cmds.clear();
     }
     return nSubmitted;
   }
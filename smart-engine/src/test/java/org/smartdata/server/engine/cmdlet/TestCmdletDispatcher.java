@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import com.google.common.collect.ArrayListMultimap;
+import org.apache.hadoop.fs.BlockLocation;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.SmartContext;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.model.CmdletDescriptor;
+import org.smartdata.model.ExecutorType;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.model.action.ActionScheduler;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.server.cluster.NodeInfo;
+import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.message.NodeMessage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+public class TestCmdletDispatcher {
+  private CmdletQueue scheduledCmdlets;
+  private Map<Long, LaunchCmdlet> idToLaunchCmdlet;
+  private CmdletDispatcher dispatcher;
+  private DataLocalityResolver resolver;
+  private final AtomicInteger numResolved = new AtomicInteger();
+  private final CountDownLatch resolvable = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    CmdletDispatcherHelper.init();
+  }
+
+  @After
+  public void tearDown() {
+    resolvable.countDown();
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
+  }
+
+  private SmartConf createConf(int slots) {
+    SmartConf conf = new SmartConf();
+    conf.setBoolean(SmartConfKeys.SMART_ACTION_LOCAL_EXECUTION_DISABLED_KEY, true);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_EXECUTORS_KEY, slots);
+    conf.setInt(SmartConfKeys.SMART_DISPATCH_CMDLETS_EXTRA_NUM_KEY, 0);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_DISPATCHERS_KEY, 1);
+    conf.setInt(SmartConfKeys.SMART_CMDLET_DISPATCHER_LOG_DISP_METRICS_INTERVAL_KEY, 0);
+    return conf;
+  }
+
+  /**
+   * Create a dispatcher with agent1 on host-a and agent2 on host-b, every
+   * file has one block on the host given by its name, e.g. /host-b/file.
+   */
+  private void createDispatcher(SmartConf conf, CmdletExecutorService agentService) {
+    scheduledCmdlets = new CmdletQueue();
+    idToLaunchCmdlet = new ConcurrentHashMap<>();
+    Set<Long> runningCmdlets = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    dispatcher = new CmdletDispatcher(new SmartContext(conf), mock(CmdletManager.class),
+        scheduledCmdlets, idToLaunchCmdlet, runningCmdlets,
+        ArrayListMultimap.<String, ActionScheduler>create());
+
+    dispatcher.registerExecutorService(agentService);
+    dispatcher.onNodeMessage(new NodeMessage(
+        new NodeInfo("agent1", "host-a:7048", ExecutorType.AGENT)), true);
+    dispatcher.onNodeMessage(new NodeMessage(
+        new NodeInfo("agent2", "host-b:7048", ExecutorType.AGENT)), true);
+
+    resolver = new DataLocalityResolver(conf) {
+      @Override
+      protected BlockLocation[] getBlockLocations(String path) throws IOException {
+        numResolved.incrementAndGet();
+        if (path.endsWith("/slow")) {
+          try {
+            resolvable.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+        String host = path.split("/")[1];
+        return new BlockLocation[] {new BlockLocation(new String[] {host + ":9866"},
+            new String[] {host}, 0, lengthOf(path))};
+      }
+
+      @Override
+      protected long getFileLength(String path) {
+        numResolved.incrementAndGet();
+        return lengthOf(path);
+      }
+    };
+    dispatcher.setLocalityResolver(resolver);
+  }
+
+  @Test
+  public void testDispatchToLocalExecutor() throws Exception {
+    createDispatcher(createConf(1), new AgentService());
+    LaunchCmdlet local = addCmdlet(1, "copy", "/host-b/file");
+    dispatcher.start();
+    waitDispatched(local);
+    Assert.assertEquals("agent2", local.getNodeId());
+    Assert.assertEquals(100, dispatcher.getLocalBytes());
+    Assert.assertEquals(0, dispatcher.getRemoteBytes());
+
+    // The only slot of host-b is taken
+    LaunchCmdlet remote = addCmdlet(2, "copy", "/host-b/file");
+    waitDispatched(remote);
+    Assert.assertEquals("agent1", remote.getNodeId());
+    Assert.assertEquals(100, dispatcher.getLocalBytes());
+    Assert.assertEquals(100, dispatcher.getRemoteBytes());
+  }
+
+  @Test
+  public void testDispatchOtherActions() throws Exception {
+    createDispatcher(createConf(1), new AgentService());
+    LaunchCmdlet cmdlet = addCmdlet(1, "sleep", "/host-b/file");
+    dispatcher.start();
+    waitDispatched(cmdlet);
+    Assert.assertEquals(0, dispatcher.getLocalBytes());
+    Assert.assertEquals(0, dispatcher.getRemoteBytes());
+  }
+
+  @Test
+  public void testDispatchWithinCredits() throws Exception {
+    // Only agent1 has granted credits
+    createDispatcher(createConf(1), new AgentService() {
+      @Override
+      public boolean canAcceptMore(String nodeId) {
+        return "agent1".equals(nodeId);
+      }
+    });
+    LaunchCmdlet cmdlet = addCmdlet(1, "copy", "/host-b/file");
+    dispatcher.start();
+    waitDispatched(cmdlet);
+    Assert.assertEquals("agent1", cmdlet.getNodeId());
+
+    // No more cmdlets are dispatched until credits are granted
+    LaunchCmdlet pending = addCmdlet(2, "copy", "/host-b/file");
+    Thread.sleep(500);
+    Assert.assertNull(pending.getNodeId());
+    // The slot is given back after each try
+    int slotsLeft = dispatcher.getTotalSlotsLeft();
+    for (int i = 0; i < 100 && slotsLeft != dispatcher.getTotalSlots() - 1; i++) {
+      Thread.sleep(1);
+      slotsLeft = dispatcher.getTotalSlotsLeft();
+    }
+    Assert.assertEquals(dispatcher.getTotalSlots() - 1, slotsLeft);
+    // The locality is not resolved again on retries
+    Assert.assertEquals(2, numResolved.get());
+  }
+
+  @Test
+  public void testDispatchBeforeResolved() throws Exception {
+    createDispatcher(createConf(1), new AgentService());
+    dispatcher.start();
+    // Dispatched without waiting for its locality
+    LaunchCmdlet cmdlet = new LaunchCmdlet(1, Collections.singletonList(
+        new LaunchAction(1, "copy",
+            Collections.singletonMap(CmdletDescriptor.HDFS_FILE_PATH, "/host-b/slow"))));
+    idToLaunchCmdlet.put(1L, cmdlet);
+    dispatcher.onCmdletScheduled(cmdlet);
+    scheduledCmdlets.add(1L);
+    waitDispatched(cmdlet);
+    Assert.assertEquals(0, dispatcher.getLocalBytes() + dispatcher.getRemoteBytes());
+
+    resolvable.countDown();
+    dispatcher.onCmdletFinished(1);
+    Assert.assertNull(resolver.getResolved(1));
+  }
+
+  @Test
+  public void testDispatchByCost() throws Exception {
+    createDispatcher(createConf(3), new AgentService());
+    LaunchCmdlet big = addCmdlet(1, "copy", "/host-c/big");
+    LaunchCmdlet small1 = addCmdlet(2, "copy", "/host-c/small");
+    LaunchCmdlet small2 = addCmdlet(3, "copy", "/host-c/small");
+    dispatcher.start();
+    waitDispatched(small2);
+    // The small cmdlets go to the node without the big one
+    Assert.assertNotEquals(big.getNodeId(), small1.getNodeId());
+    Assert.assertEquals(small1.getNodeId(), small2.getNodeId());
+
+    dispatcher.onCmdletFinished(1);
+    LaunchCmdlet small3 = addCmdlet(4, "copy", "/host-c/small");
+    waitDispatched(small3);
+    Assert.assertEquals(big.getNodeId(), small3.getNodeId());
+  }
+
+  @Test
+  public void testDispatchByCostWithoutLocality() throws Exception {
+    // Movers are weighed by the file length, though not dispatched by locality
+    createDispatcher(createConf(3), new AgentService());
+    LaunchCmdlet big = addCmdlet(1, "allssd", "/host-a/big");
+    LaunchCmdlet small1 = addCmdlet(2, "allssd", "/host-a/small");
+    LaunchCmdlet small2 = addCmdlet(3, "allssd", "/host-a/small");
+    dispatcher.start();
+    waitDispatched(small2);
+    Assert.assertNotEquals(big.getNodeId(), small1.getNodeId());
+    Assert.assertEquals(small1.getNodeId(), small2.getNodeId());
+    Assert.assertEquals(0, dispatcher.getLocalBytes() + dispatcher.getRemoteBytes());
+  }
+
+  private static long lengthOf(String path) {
+    if (path.endsWith("/big")) {
+      return 300L << 20;
+    }
+    return path.endsWith("/small") ? 10L << 20 : 100;
+  }
+
+  private LaunchCmdlet addCmdlet(long cid, String action, String path)
+      throws InterruptedException {
+    LaunchCmdlet cmdlet = new LaunchCmdlet(cid, Collections.singletonList(
+        new LaunchAction(cid, action,
+            Collections.singletonMap(CmdletDescriptor.HDFS_FILE_PATH, path))));
+    idToLaunchCmdlet.put(cid, cmdlet);
+    dispatcher.onCmdletScheduled(cmdlet);
+    if (!"sleep".equals(action)) {
+      waitResolved(cid);
+    }
+    scheduledCmdlets.add(cid);
+    return cmdlet;
+  }
+
+  private void waitResolved(long cid) throws InterruptedException {
+    for (int i = 0; i < 100 && resolver.getResolved(cid) == null; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertNotNull(resolver.getResolved(cid));
+  }
+
+  private void waitDispatched(LaunchCmdlet cmdlet) throws InterruptedException {
+    for (int i = 0; i < 100 && cmdlet.getNodeId() == null; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertNotNull(cmdlet.getNodeId());
+  }
+
+  private static class AgentService extends CmdletExecutorService {
+    AgentService() {
+      super(null, ExecutorType.AGENT);
+    }
+
+    @Override
+    public boolean canAcceptMore() {
+      return true;
+    }
+
+    @Override
+    public String execute(LaunchCmdlet cmdlet) {
+      return cmdlet.getNodeId();
+    }
+
+    @Override
+    public void stop(long cmdletId) {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public int getNumNodes() {
+      return 2;
+    }
+
+    @Override
+    public List<NodeInfo> getNodesInfo() {
+      return Collections.emptyList();
+    }
+  }
+}
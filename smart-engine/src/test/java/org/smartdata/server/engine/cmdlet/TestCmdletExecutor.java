@@ -73,6 +73,62 @@ public void report(StatusMessage status) {
     executor.shutdown();
   }
 
+  @Test
+  public void testIncrementalLog() throws InterruptedException {
+    final List<ActionStatus> statuses = new Vector<>();
+    StatusReporter reporter =
+        new StatusReporter() {
+          @Override
+          public void report(StatusMessage status) {
+            statuses.addAll(((StatusReport) status).getActionStatuses());
+          }
+        };
+    SmartConf conf = new SmartConf();
+    CmdletExecutor executor = new CmdletExecutor(conf);
+    StatusReportTask statusReportTask = new StatusReportTask(reporter, executor, conf);
+    ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    executorService.scheduleAtFixedRate(
+        statusReportTask, 100, 10, TimeUnit.MILLISECONDS);
+    LoggingAction action = new LoggingAction();
+    action.setActionId(101);
+    Cmdlet cmdlet = new Cmdlet(Arrays.asList((SmartAction) action));
+    cmdlet.setId(10);
+
+    executor.execute(cmdlet);
+    Thread.sleep(3000);
+    executorService.shutdown();
+    executor.shutdown();
+
+    Assert.assertTrue(statuses.get(statuses.size() - 1).isFinished());
+    StringBuilder log = new StringBuilder();
+    for (ActionStatus status : statuses) {
+      // Each status carries the log appended since the one before
+      Assert.assertEquals(log.length(), status.getLogOffset());
+      log.append(status.getLog());
+    }
+    Assert.assertTrue(statuses.size() > 1);
+    Assert.assertEquals(action.getExpectedLog(), log.toString());
+  }
+
+  class LoggingAction extends SmartAction {
+    private final StringBuilder expectedLog = new StringBuilder();
+
+    @Override
+    protected void execute() throws Exception {
+      for (int i = 0; i < 20; i++) {
+        // Including multi-byte chars
+        String line = "Copied block " + i + " \u00e9\u4e2d";
+        appendLog(line);
+        expectedLog.append(line).append(System.lineSeparator());
+        Thread.sleep(50);
+      }
+    }
+
+    String getExpectedLog() {
+      return expectedLog.toString();
+    }
+  }
+
   class HangingAction extends SmartAction {
     @Override
     protected void execute() throws Exception {
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestCmdletQueue {
+
+  @Test
+  public void testQueue() {
+    CmdletQueue queue = new CmdletQueue();
+    for (long cid = 1; cid <= 5; cid++) {
+      Assert.assertTrue(queue.add(cid));
+    }
+    Assert.assertFalse(queue.add(3));
+    Assert.assertEquals(5, queue.size());
+
+    Assert.assertTrue(queue.remove(2));
+    Assert.assertFalse(queue.remove(2));
+    Assert.assertFalse(queue.contains(2));
+    Assert.assertEquals(4, queue.size());
+
+    Assert.assertEquals(Long.valueOf(1), queue.poll());
+    Assert.assertEquals(Long.valueOf(3), queue.poll());
+    // Put back to the head in order
+    queue.addAllFirst(Arrays.asList(1L, 3L));
+    Assert.assertTrue(queue.add(2));
+    Assert.assertEquals(5, queue.size());
+
+    List<Long> polled = new ArrayList<>();
+    Long cid;
+    while ((cid = queue.poll()) != null) {
+      polled.add(cid);
+    }
+    Assert.assertEquals(Arrays.asList(1L, 3L, 4L, 5L, 2L), polled);
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    CmdletQueue queue = new CmdletQueue();
+    int producers = 4;
+    int cmdletsPerProducer = 50000;
+    Set<Long> polled = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(producers + 2);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < producers; i++) {
+        final long base = (long) i * cmdletsPerProducer;
+        futures.add(executor.submit(() -> {
+          for (long cid = base; cid < base + cmdletsPerProducer; cid++) {
+            queue.add(cid);
+            // Every tenth cmdlet is removed, e.g. by disabling it
+            if (cid % 10 == 0) {
+              queue.remove(cid);
+            }
+          }
+        }));
+      }
+      List<Future<?>> consumers = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        consumers.add(executor.submit(() -> {
+          while (polled.size() < producers * cmdletsPerProducer * 9 / 10) {
+            Long cid = queue.poll();
+            if (cid != null) {
+              Assert.assertTrue(polled.add(cid));
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      for (Future<?> future : consumers) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    for (long cid : polled) {
+      Assert.assertTrue(cid % 10 != 0);
+    }
+    Assert.assertTrue(queue.isEmpty());
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TestDeferredCmdletQueue {
+
+  @Test
+  public void testPollDue() {
+    DeferredCmdletQueue queue = new DeferredCmdletQueue();
+    Assert.assertTrue(queue.add(1, 300));
+    Assert.assertTrue(queue.add(2, 100));
+    Assert.assertTrue(queue.add(3, 200));
+    Assert.assertTrue(queue.add(4, 100));
+    Assert.assertFalse(queue.add(3, 50));
+    Assert.assertEquals(4, queue.size());
+
+    Assert.assertEquals(Collections.emptyList(), queue.pollDue(99));
+    Assert.assertTrue(queue.remove(4));
+    Assert.assertFalse(queue.remove(4));
+    Assert.assertFalse(queue.contains(4));
+    Assert.assertEquals(Arrays.asList(2L, 3L), queue.pollDue(250));
+    Assert.assertEquals(1, queue.size());
+    Assert.assertTrue(queue.add(2, 250));
+    Assert.assertEquals(Arrays.asList(2L, 1L), queue.pollDue(300));
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testPollWithManyDeferred() {
+    DeferredCmdletQueue queue = new DeferredCmdletQueue();
+    int numDeferred = 10000;
+    long now = 1000;
+    for (long cid = numDeferred - 1; cid >= 0; cid--) {
+      queue.add(cid, now + 1 + cid);
+    }
+    Assert.assertTrue(queue.pollDue(now).isEmpty());
+    Assert.assertEquals(numDeferred, queue.size());
+    // Polled in the order of due time
+    List<Long> expected = new ArrayList<>();
+    for (long cid = 0; cid < 100; cid++) {
+      expected.add(cid);
+    }
+    Assert.assertEquals(expected, queue.pollDue(now + 100));
+    Assert.assertEquals(numDeferred - 100, queue.size());
+    Assert.assertFalse(queue.contains(99));
+    Assert.assertTrue(queue.contains(100));
+  }
+}
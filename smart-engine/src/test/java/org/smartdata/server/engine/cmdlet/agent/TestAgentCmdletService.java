@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet.agent;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.action.ActionException;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.protocol.message.StatusReporter;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.mockito.Mockito.mock;
+
+public class TestAgentCmdletService {
+
+  @Test
+  public void testCreditOfCmdletFailedToStart() throws Exception {
+    AgentCmdletService service = new AgentCmdletService();
+    service.setContext(new SmartAgentContext(new SmartConf(), mock(StatusReporter.class)));
+    service.init();
+    try {
+      LaunchCmdlet launch = new LaunchCmdlet(1, Collections.singletonList(
+          new LaunchAction(1, "not-an-action", new HashMap<String, String>())));
+      try {
+        service.execute(launch);
+        Assert.fail("Cmdlet with unknown action should not be created");
+      } catch (ActionException e) {
+        // Expected
+      }
+      // Counted as finished, so the credit is granted back to master
+      Assert.assertEquals(0, service.getCmdletExecutor().getNumCmdlets());
+      Assert.assertEquals(1, service.getCmdletExecutor().pollNumFinished());
+    } finally {
+      service.stop();
+    }
+  }
+}
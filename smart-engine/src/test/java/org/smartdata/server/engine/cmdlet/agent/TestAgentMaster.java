@@ -17,11 +17,13 @@
  */
 package org.smartdata.server.engine.cmdlet.agent;
 
+import akka.actor.ActorRef;
 import org.junit.Test;
 import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster;
 import org.smartdata.server.engine.cmdlet.agent.messages.MasterToAgent;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TestAgentMaster {
@@ -41,4 +43,32 @@ public void testAgentMaster() throws Exception {
     MasterToAgent.AgentRegistered registered = (MasterToAgent.AgentRegistered) answer;
     assertEquals(instId, registered.getAgentId().getId());
   }
+
+  @Test
+  public void testCredits() throws Exception {
+    AgentMaster master = AgentMaster.getAgentMaster();
+    while (master.getMasterActor() == null) {
+      // Do nothing
+    }
+    // Any actor can stand for the agent
+    ActorRef agent = master.getMasterActor();
+    AgentManager agentManager = new AgentManager();
+    agentManager.addAgent(agent, new MasterToAgent.AgentId("agent-0"));
+    assertFalse(agentManager.hasCredit("agent-0"));
+    assertFalse(agentManager.acquireCredit("agent-0"));
+
+    agentManager.grantCredits(agent, 2);
+    assertTrue(agentManager.acquireCredit("agent-0"));
+    assertTrue(agentManager.acquireCredit("agent-0"));
+    assertFalse(agentManager.acquireCredit("agent-0"));
+
+    agentManager.grantCredits(agent, 1);
+    assertEquals(1, agentManager.getCredits("agent-0"));
+    agentManager.refundCredit("agent-0");
+    assertEquals(2, agentManager.getCredits("agent-0"));
+    agentManager.removeAgent(agent);
+    assertFalse(agentManager.hasCredit("agent-0"));
+    agentManager.refundCredit("agent-0");
+    assertFalse(agentManager.hasCredit("agent-0"));
+  }
 }
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet.agent;
+
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.model.LaunchAction;
+import org.smartdata.protocol.message.ActionStatus;
+import org.smartdata.protocol.message.LaunchCmdlet;
+import org.smartdata.protocol.message.StatusReport;
+import org.smartdata.server.engine.cmdlet.agent.messages.AgentToMaster.GrantCredits;
+
+import java.util.Collections;
+
+public class TestAgentMessageSerializer extends ActorSystemHarness {
+
+  @Test
+  public void testBinding() {
+    Serialization serialization = SerializationExtension.get(getActorSystem());
+    LaunchCmdlet cmdlet = new LaunchCmdlet(1, Collections.singletonList(
+        new LaunchAction(2, "echo", Collections.singletonMap("-msg", "hello"))));
+    Serializer serializer = serialization.findSerializerFor(cmdlet);
+    Assert.assertTrue(serializer instanceof AgentMessageSerializer);
+    LaunchCmdlet result = (LaunchCmdlet) serialization.deserialize(
+        serializer.toBinary(cmdlet), serializer.identifier(), "").get();
+    Assert.assertEquals("hello", result.getLaunchActions().get(0).getArgs().get("-msg"));
+
+    StatusReport report = new StatusReport(Collections.singletonList(
+        new ActionStatus(1, true, 2, "log", 3, 4, null, true)));
+    Assert.assertTrue(serialization.findSerializerFor(report) instanceof AgentMessageSerializer);
+    // The other messages are still serialized by Java serialization
+    Assert.assertFalse(serialization.findSerializerFor(new GrantCredits(1))
+        instanceof AgentMessageSerializer);
+  }
+}
@@ -18,6 +18,8 @@
 package org.apache.hadoop.hdfs;
 
 import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.io.ByteBufferPool;
 import org.smartdata.model.CompactFileState;
@@ -31,10 +33,18 @@
 import java.util.EnumSet;
 import java.util.List;
 
+/**
+ * Input stream of a small file compacted into a container file.
+ *
+ * <p>This stream is the view of the small file, with positions relative to
+ * its start. The container file is read by a separate stream, so positions
+ * never need to be translated back for the inherited DFSInputStream code.
+ */
 public class CompactInputStream extends SmartInputStream {
-  private FileContainerInfo fileContainerInfo;
+  private final FileContainerInfo fileContainerInfo;
+  // The view of the container file
+  private final DFSInputStream containerStream;
   private boolean closed = false;
-  private static final String INHERITED_CLASS = "org.apache.hadoop.hdfs.DFSInputStream";
 
   CompactInputStream(DFSClient dfsClient, boolean verifyChecksum,
                      FileState fileState) throws IOException {
@@ -43,22 +53,19 @@ public class CompactInputStream extends SmartInputStream {
           verifyChecksum,
           fileState);
     this.fileContainerInfo = ((CompactFileState) fileState).getFileContainerInfo();
-    super.seek(fileContainerInfo.getOffset());
+    this.containerStream = new DFSInputStream(dfsClient,
+        fileContainerInfo.getContainerFilePath(), verifyChecksum);
+    containerStream.seek(fileContainerInfo.getOffset());
   }
 
   @Override
   public long getFileLength() {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return fileContainerInfo.getLength() + fileContainerInfo.getOffset();
-    } else {
-      return fileContainerInfo.getLength();
-    }
+    return fileContainerInfo.getLength();
   }
 
   @Override
   public List<LocatedBlock> getAllBlocks() throws IOException {
-    List<LocatedBlock> blocks = super.getAllBlocks();
+    List<LocatedBlock> blocks = containerStream.getAllBlocks();
     List<LocatedBlock> ret = new ArrayList<>(16);
     long off = fileContainerInfo.getOffset();
     long len = fileContainerInfo.getLength();
@@ -77,7 +84,7 @@ public synchronized int read(final byte[] buf, int off, int len) throws IOExcept
     if (realLen == 0) {
       return -1;
     } else {
-      return super.read(buf, off, realLen);
+      return containerStream.read(buf, off, realLen);
     }
   }
 
@@ -88,7 +95,7 @@ public synchronized int read(final ByteBuffer buf) throws IOException {
       return -1;
     } else {
       buf.limit(realLen + buf.position());
-      return super.read(buf);
+      return containerStream.read(buf);
     }
   }
 
@@ -96,21 +103,16 @@ public synchronized int read(final ByteBuffer buf) throws IOException {
   public int read(long position, byte[] buffer, int offset, int length) throws IOException {
     long realPos = position + fileContainerInfo.getOffset();
     int realLen = (int) Math.min(length, fileContainerInfo.getLength() - position);
-    if (realLen == 0) {
+    if (realLen <= 0) {
       return -1;
     } else {
-      return super.read(realPos, buffer, offset, realLen);
+      return containerStream.read(realPos, buffer, offset, realLen);
     }
   }
 
   @Override
   public synchronized long getPos() throws IOException {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return super.getPos();
-    } else {
-      return super.getPos() - fileContainerInfo.getOffset();
-    }
+    return containerStream.getPos() - fileContainerInfo.getOffset();
   }
 
   @Override
@@ -124,38 +126,33 @@ public synchronized int available() throws IOException {
 
   @Override
   public synchronized void seek(long targetPos) throws IOException {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      super.seek(targetPos);
-    } else {
-      if (targetPos > fileContainerInfo.getLength()) {
-        throw new EOFException("Cannot seek after EOF");
-      }
-      if (targetPos < 0) {
-        throw new EOFException("Cannot seek to negative offset");
-      }
-      super.seek(fileContainerInfo.getOffset() + targetPos);
+    if (targetPos > fileContainerInfo.getLength()) {
+      throw new EOFException("Cannot seek after EOF");
+    }
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek to negative offset");
     }
+    containerStream.seek(fileContainerInfo.getOffset() + targetPos);
   }
 
   @Override
   public synchronized boolean seekToNewSource(long targetPos) throws IOException {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return super.seekToNewSource(targetPos);
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek after EOF");
     } else {
-      if (targetPos < 0) {
-        throw new EOFException("Cannot seek after EOF");
-      } else {
-        return super.seekToNewSource(fileContainerInfo.getOffset() + targetPos);
-      }
+      return containerStream.seekToNewSource(fileContainerInfo.getOffset() + targetPos);
     }
   }
 
   @Override
   public synchronized void setReadahead(Long readahead) throws IOException {
     long realReadAhead = Math.min(readahead, fileContainerInfo.getLength() - getPos());
-    super.setReadahead(realReadAhead);
+    containerStream.setReadahead(realReadAhead);
+  }
+
+  @Override
+  public synchronized void setDropBehind(Boolean dropBehind) throws IOException {
+    containerStream.setDropBehind(dropBehind);
   }
 
   @Override
@@ -163,12 +160,36 @@ public synchronized ByteBuffer read(ByteBufferPool bufferPool,
                                       int maxLength, EnumSet<ReadOption> opts)
       throws IOException, UnsupportedOperationException {
     int realMaxLen = (int) Math.min(maxLength, fileContainerInfo.getLength() - getPos());
-    return super.read(bufferPool, realMaxLen, opts);
+    return containerStream.read(bufferPool, realMaxLen, opts);
+  }
+
+  @Override
+  public synchronized void releaseBuffer(ByteBuffer buffer) {
+    containerStream.releaseBuffer(buffer);
+  }
+
+  @Override
+  public synchronized DatanodeInfo getCurrentDatanode() {
+    return containerStream.getCurrentDatanode();
+  }
+
+  @Override
+  public synchronized ExtendedBlock getCurrentBlock() {
+    return containerStream.getCurrentBlock();
+  }
+
+  @Override
+  public synchronized ReadStatistics getReadStatistics() {
+    return containerStream.getReadStatistics();
   }
 
   @Override
   public synchronized void close() throws IOException {
-    super.close();
+    try {
+      containerStream.close();
+    } finally {
+      super.close();
+    }
     this.closed = true;
   }
 }
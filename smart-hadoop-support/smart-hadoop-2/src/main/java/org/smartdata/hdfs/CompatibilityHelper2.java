@@ -29,6 +29,7 @@
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.server.balancer.KeyManager;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import org.apache.hadoop.security.token.Token;
 import org.smartdata.SmartConstants;
 import org.smartdata.hdfs.action.move.DBlock;
@@ -79,6 +80,11 @@ public byte getErasureCodingPolicy(HdfsFileStatus fileStatus) {
     return (byte) 0;
   }
 
+  @Override
+  public byte getErasureCodingPolicy(FsImageProto.INodeSection.INodeFile file) {
+    return (byte) 0;
+  }
+
   @Override
   public String getErasureCodingPolicyName(HdfsFileStatus fileStatus) {
     return SmartConstants.REPLICATION_CODEC_NAME;
@@ -34,6 +34,7 @@
 import org.apache.hadoop.hdfs.server.balancer.KeyManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
 import org.apache.hadoop.hdfs.server.namenode.ErasureCodingPolicyManager;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.security.token.Token;
@@ -234,6 +235,12 @@ public byte getErasureCodingPolicy(HdfsFileStatus fileStatus) {
     return fileStatus.getErasureCodingPolicy().getId();
   }
 
+  @Override
+  public byte getErasureCodingPolicy(FsImageProto.INodeSection.INodeFile file) {
+    // Only striped files have erasure coding policy id in fsimage
+    return file.hasErasureCodingPolicyID() ? (byte) file.getErasureCodingPolicyID() : (byte) 0;
+  }
+
   @Override
   public String getErasureCodingPolicyName(HdfsFileStatus fileStatus) {
     ErasureCodingPolicy erasureCodingPolicy = fileStatus.getErasureCodingPolicy();
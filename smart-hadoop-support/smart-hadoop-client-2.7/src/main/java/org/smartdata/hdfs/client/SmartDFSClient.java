@@ -42,6 +42,7 @@
 import org.smartdata.SmartConstants;
 import org.smartdata.client.SmartClient;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
+import org.smartdata.hdfs.ListedFileStates;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.CompactFileState;
 import org.smartdata.model.CompressionFileState;
@@ -56,7 +57,9 @@
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SmartDFSClient extends DFSClient {
   private static final Logger LOG = LoggerFactory.getLogger(SmartDFSClient.class);
@@ -392,17 +395,14 @@ public BlockLocation[] getBlockLocations(String src, long start,
       FileState fileState = getFileState(src);
       if (fileState instanceof CompressionFileState) {
         CompressionFileState compressionInfo = (CompressionFileState) fileState;
-        Long[] originalPos =
-            compressionInfo.getOriginalPos().clone();
-        Long[] compressedPos =
-            compressionInfo.getCompressedPos().clone();
         int startIndex = compressionInfo.getPosIndexByOriginalOffset(start);
         int endIndex =
             compressionInfo.getPosIndexByOriginalOffset(start + length - 1);
-        long compressedStart = compressedPos[startIndex];
+        long compressedStart = compressionInfo.getCompressedOffset(startIndex);
         long compressedLength = 0;
-        if (endIndex < compressedPos.length - 1) {
-          compressedLength = compressedPos[endIndex + 1] - compressedStart;
+        if (endIndex < compressionInfo.getTrunkCount() - 1) {
+          compressedLength =
+              compressionInfo.getCompressedOffset(endIndex + 1) - compressedStart;
         } else {
           compressedLength =
               compressionInfo.getCompressedLength() - compressedStart;
@@ -720,6 +720,71 @@ public String getExceptionMsg(String operation, String fileType) {
    * @throws IOException e
    */
   public FileState getFileState(String filePath) throws IOException {
+    if (smartClient != null) {
+      return smartClient.getFileState(filePath, this::loadFileState);
+    }
+    return loadFileState(filePath);
+  }
+
+  /**
+   * Get file states of the given files with one call to SSM server. The
+   * files not recorded by SSM server are in normal state. The files are
+   * loaded one by one only if SSM server can not be reached.
+   *
+   * @param filePaths the paths of source files
+   * @return file states of the files which are not in normal state
+   * @throws IOException e
+   */
+  public Map<String, FileState> getFileStates(List<String> filePaths)
+      throws IOException {
+    List<FileState> recorded = null;
+    if (smartClient != null && !filePaths.isEmpty()) {
+      try {
+        recorded = smartClient.getFileStates(filePaths);
+      } catch (IOException e) {
+        LOG.debug("Failed to get file states from SmartServer: " + e.getMessage());
+      }
+    }
+    return ListedFileStates.resolve(filePaths, recorded, this::loadFileStates);
+  }
+
+  /**
+   * Get file states of all direct children of the given directory with one
+   * call to SSM server. The listed children not recorded by SSM server are
+   * in normal state. They are loaded one by one only if SSM server can not
+   * be reached.
+   *
+   * @param dirPath the path of the directory
+   * @param childPaths the paths of the listed children
+   * @return file states of the children which are not in normal state
+   * @throws IOException e
+   */
+  public Map<String, FileState> getChildFileStates(String dirPath,
+      List<String> childPaths) throws IOException {
+    List<FileState> recorded = null;
+    if (smartClient != null && !childPaths.isEmpty()) {
+      try {
+        recorded = smartClient.getChildFileStates(dirPath);
+      } catch (IOException e) {
+        LOG.debug("Failed to get file states from SmartServer: " + e.getMessage());
+      }
+    }
+    return ListedFileStates.resolve(childPaths, recorded, this::loadFileStates);
+  }
+
+  private Map<String, FileState> loadFileStates(List<String> filePaths)
+      throws IOException {
+    if (smartClient != null) {
+      return smartClient.getFileStates(filePaths, this::loadFileState);
+    }
+    Map<String, FileState> stateMap = new HashMap<>();
+    for (String filePath : filePaths) {
+      stateMap.put(filePath, loadFileState(filePath));
+    }
+    return stateMap;
+  }
+
+  private FileState loadFileState(String filePath) throws IOException {
     try {
       byte[] fileState = getXAttr(filePath, SmartConstants.SMART_FILE_STATE_XATTR_NAME);
       if (fileState != null) {
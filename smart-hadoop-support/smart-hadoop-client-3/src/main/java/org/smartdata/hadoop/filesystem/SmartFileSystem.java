@@ -42,6 +42,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsNamedFileStatus;
 import org.apache.hadoop.util.Progressable;
+import org.smartdata.hdfs.ListedFileStates;
 import org.smartdata.hdfs.client.SmartDFSClient;
 import org.smartdata.model.CompactFileState;
 import org.smartdata.model.CompressionFileState;
@@ -56,6 +57,7 @@
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -190,13 +192,14 @@ public FileStatus getFileStatus(Path f) throws IOException {
   public FileStatus[] listStatus(Path p) throws IOException {
     FileStatus[] oldStatus = super.listStatus(p);
     ArrayList<FileStatus> newStatus = new ArrayList<>(oldStatus.length);
+    Map<String, FileState> fileStates = getListedFileStates(p, oldStatus);
     for (FileStatus status : oldStatus) {
       if (oldStatus == null) {
         newStatus.add(null);
         continue;
       }
       if (status.getLen() == 0) {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
+        FileState fileState = fileStates.get(getPathName(status.getPath()));
         if (fileState instanceof CompactFileState) {
           long len = ((CompactFileState) fileState).getFileContainerInfo().getLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -207,7 +210,7 @@ public FileStatus[] listStatus(Path p) throws IOException {
           newStatus.add(status);
         }
       } else {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
+        FileState fileState = fileStates.get(getPathName(status.getPath()));
         if (fileState instanceof CompressionFileState) {
           long len = ((CompressionFileState) fileState).getOriginalLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -222,6 +225,20 @@ public FileStatus[] listStatus(Path p) throws IOException {
     return newStatus.toArray(new FileStatus[oldStatus.length]);
   }
 
+  /**
+   * Get file states of the listed files with one call to SSM server.
+   */
+  private Map<String, FileState> getListedFileStates(Path p, FileStatus[] statuses)
+      throws IOException {
+    List<String> paths = ListedFileStates.getFilePaths(statuses);
+    String src = getPathName(p);
+    // Only the file itself is listed if the given path is a file
+    if (paths.size() == 1 && paths.get(0).equals(src)) {
+      return smartDFSClient.getFileStates(paths);
+    }
+    return smartDFSClient.getChildFileStates(src, paths);
+  }
+
   @Override
   public BlockLocation[] getFileBlockLocations(Path p, final long start,
       final long len) throws IOException {
@@ -557,6 +574,7 @@ public RemoteIterator<LocatedFileStatus> next(final FileSystem fs, final Path p)
       implements RemoteIterator<T> {
 
     private DirectoryListing thisListing;
+    private Map<String, FileState> fileStates;
     private int i;
     private Path p;
     private String src;
@@ -578,6 +596,7 @@ private SmartDirListingIterator(Path p, PathFilter filter,
       if (thisListing == null) {
         throw new FileNotFoundException("File " + p + " does not exist.");
       }
+      fileStates = getListingFileStates();
       i = 0;
     }
 
@@ -598,7 +617,7 @@ public boolean hasNext() throws IOException {
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -618,7 +637,7 @@ public boolean hasNext() throws IOException {
                   blockLocations);
             }
           } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompressionFileState) {
               next = getCompressedFileStatus(fileState, next);
             }
@@ -629,7 +648,7 @@ public boolean hasNext() throws IOException {
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -646,7 +665,7 @@ public boolean hasNext() throws IOException {
                   next.getPath());
             }
           } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompressionFileState) {
               next = getCompressedFileStatus(fileState, next);
             }
@@ -767,6 +786,19 @@ private void convertBlockLocation(BlockLocation blockLocation,
       blockLocation.setLength(originEnd - originStart + 1);
     }
 
+    /**
+     * Get file states of the files in current listing with one call to SSM server.
+     */
+    private Map<String, FileState> getListingFileStates() throws IOException {
+      List<String> paths = new ArrayList<>();
+      for (HdfsFileStatus fileStat : thisListing.getPartialListing()) {
+        if (!fileStat.isDirectory()) {
+          paths.add(fileStat.getFullName(src));
+        }
+      }
+      return smartDFSClient.getFileStates(paths);
+    }
+
     /**
      * Check if there is a next item before applying the given filter
      */
@@ -782,6 +814,7 @@ private boolean hasNextNoFilter() throws IOException {
         if (thisListing == null) {
           return false;
         }
+        fileStates = getListingFileStates();
         i = 0;
       }
       return (i < thisListing.getPartialListing().length);
@@ -43,6 +43,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.util.Progressable;
 import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.hdfs.ListedFileStates;
 import org.smartdata.hdfs.client.SmartDFSClient;
 import org.smartdata.model.CompactFileState;
 import org.smartdata.model.CompressionFileState;
@@ -57,6 +58,7 @@
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * SmartFileSystem Deploy Guide
@@ -191,13 +193,14 @@ public FileStatus getFileStatus(Path f) throws IOException {
   public FileStatus[] listStatus(Path p) throws IOException {
     FileStatus[] oldStatus = super.listStatus(p);
     ArrayList<FileStatus> newStatus = new ArrayList<>(oldStatus.length);
+    Map<String, FileState> fileStates = getListedFileStates(p, oldStatus);
     for (FileStatus status : oldStatus) {
       if (oldStatus == null) {
         newStatus.add(null);
         continue;
       }
       if (status.getLen() == 0) {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
+        FileState fileState = fileStates.get(getPathName(status.getPath()));
         if (fileState instanceof CompactFileState) {
           long len = ((CompactFileState) fileState).getFileContainerInfo().getLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -208,7 +211,7 @@ public FileStatus[] listStatus(Path p) throws IOException {
           newStatus.add(status);
         }
       } else {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
+        FileState fileState = fileStates.get(getPathName(status.getPath()));
         if (fileState instanceof CompressionFileState) {
           long len = ((CompressionFileState) fileState).getOriginalLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -223,6 +226,20 @@ public FileStatus[] listStatus(Path p) throws IOException {
     return newStatus.toArray(new FileStatus[oldStatus.length]);
   }
 
+  /**
+   * Get file states of the listed files with one call to SSM server.
+   */
+  private Map<String, FileState> getListedFileStates(Path p, FileStatus[] statuses)
+      throws IOException {
+    List<String> paths = ListedFileStates.getFilePaths(statuses);
+    String src = getPathName(p);
+    // Only the file itself is listed if the given path is a file
+    if (paths.size() == 1 && paths.get(0).equals(src)) {
+      return smartDFSClient.getFileStates(paths);
+    }
+    return smartDFSClient.getChildFileStates(src, paths);
+  }
+
   @Override
   public BlockLocation[] getFileBlockLocations(Path p, final long start,
       final long len) throws IOException {
@@ -558,6 +575,7 @@ public RemoteIterator<LocatedFileStatus> next(final FileSystem fs, final Path p)
       implements RemoteIterator<T> {
 
     private DirectoryListing thisListing;
+    private Map<String, FileState> fileStates;
     private int i;
     private Path p;
     private String src;
@@ -579,6 +597,7 @@ private SmartDirListingIterator(Path p, PathFilter filter,
       if (thisListing == null) {
         throw new FileNotFoundException("File " + p + " does not exist.");
       }
+      fileStates = getListingFileStates();
       i = 0;
     }
 
@@ -599,7 +618,7 @@ public boolean hasNext() throws IOException {
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -619,7 +638,7 @@ public boolean hasNext() throws IOException {
                   blockLocations);
             }
           } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompressionFileState) {
               CompressionFileState compressionFileState = (CompressionFileState) fileState;
               long fileLen = compressionFileState.getOriginalLength();
@@ -648,7 +667,7 @@ public boolean hasNext() throws IOException {
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -665,7 +684,7 @@ public boolean hasNext() throws IOException {
                   next.getPath());
             }
           } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
+            FileState fileState = fileStates.get(fileName);
             if (fileState instanceof CompressionFileState) {
               CompressionFileState compressionFileState = (CompressionFileState) fileState;
               long fileLen = compressionFileState.getOriginalLength();
@@ -735,6 +754,19 @@ private void convertBlockLocation(BlockLocation blockLocation,
     }
 
 
+    /**
+     * Get file states of the files in current listing with one call to SSM server.
+     */
+    private Map<String, FileState> getListingFileStates() throws IOException {
+      List<String> paths = new ArrayList<>();
+      for (HdfsFileStatus fileStat : thisListing.getPartialListing()) {
+        if (!fileStat.isDir()) {
+          paths.add(fileStat.getFullName(src));
+        }
+      }
+      return smartDFSClient.getFileStates(paths);
+    }
+
     /**
      * Check if there is a next item before applying the given filter
      */
@@ -750,6 +782,7 @@ private boolean hasNextNoFilter() throws IOException {
         if (thisListing == null) {
           return false;
         }
+        fileStates = getListingFileStates();
         i = 0;
       }
       return (i < thisListing.getPartialListing().length);
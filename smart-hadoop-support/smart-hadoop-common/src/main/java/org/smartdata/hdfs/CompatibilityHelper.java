@@ -28,6 +28,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.InotifyProtos;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.server.balancer.KeyManager;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.security.token.Token;
@@ -100,6 +101,8 @@ HdfsFileStatus createHdfsFileStatus(
 
   String getErasureCodingPolicyName(HdfsFileStatus fileStatus);
 
+  byte getErasureCodingPolicy(FsImageProto.INodeSection.INodeFile file);
+
   byte getErasureCodingPolicyByName(DFSClient client, String ecPolicyName) throws IOException;
 
   Map<Byte, String> getErasureCodingPolicies(DFSClient client) throws IOException;
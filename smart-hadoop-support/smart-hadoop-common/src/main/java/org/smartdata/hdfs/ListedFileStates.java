@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.smartdata.model.FileState;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the file states of listed files, shared by the SmartFileSystem
+ * and SmartDFSClient of all Hadoop versions. The states recorded by SSM
+ * server are got in one call, and a file not recorded is in normal state.
+ * Files are only loaded one by one from their xattr if SSM server can not
+ * be reached, or if they are under processing without detailed state.
+ */
+public class ListedFileStates {
+
+  /**
+   * Loads the file states of files one by one, from their xattr or cache.
+   */
+  public interface Loader {
+    Map<String, FileState> load(List<String> paths) throws IOException;
+  }
+
+  private ListedFileStates() {
+  }
+
+  /**
+   * Get the paths of the listed files, directories excluded.
+   */
+  public static List<String> getFilePaths(FileStatus[] statuses) {
+    List<String> paths = new ArrayList<>(statuses.length);
+    for (FileStatus status : statuses) {
+      if (status != null && !status.isDirectory()) {
+        paths.add(status.getPath().toUri().getPath());
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Get the file states of the given files which are not in normal state.
+   *
+   * @param paths the paths of the files
+   * @param recorded the states recorded by SSM server, or null if SSM
+   *     server can not be reached
+   * @param loader the loader of the files not resolved by the recorded ones
+   * @return the file states of the files not in normal state
+   * @throws IOException
+   */
+  public static Map<String, FileState> resolve(List<String> paths,
+      List<FileState> recorded, Loader loader) throws IOException {
+    Map<String, FileState> stateMap = new HashMap<>();
+    List<String> unresolved = new ArrayList<>();
+    if (recorded == null) {
+      unresolved.addAll(paths);
+    } else {
+      for (FileState fileState : recorded) {
+        if (fileState.getFileType() == FileState.FileType.NORMAL) {
+          continue;
+        }
+        // A file under processing has no detailed state in SSM server yet
+        if (fileState.getClass() == FileState.class) {
+          unresolved.add(fileState.getPath());
+        } else {
+          stateMap.put(fileState.getPath(), fileState);
+        }
+      }
+    }
+    if (!unresolved.isEmpty()) {
+      for (Map.Entry<String, FileState> entry : loader.load(unresolved).entrySet()) {
+        FileState fileState = entry.getValue();
+        if (fileState != null && fileState.getFileType() != FileState.FileType.NORMAL) {
+          stateMap.put(entry.getKey(), fileState);
+        }
+      }
+    }
+    return stateMap;
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.model.CompressionFileState;
+import org.smartdata.model.FileState;
+import org.smartdata.model.NormalFileState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestListedFileStates {
+
+  @Test
+  public void testTrustRecordedStates() throws Exception {
+    List<String> loaded = new ArrayList<>();
+    ListedFileStates.Loader loader = paths -> {
+      loaded.addAll(paths);
+      Map<String, FileState> states = new HashMap<>();
+      for (String path : paths) {
+        states.put(path, path.equals("/dir/c")
+            ? new CompressionFileState(path, FileState.FileStage.DONE)
+            : new NormalFileState(path));
+      }
+      return states;
+    };
+    List<FileState> recorded = Arrays.asList(
+        new CompressionFileState("/dir/a", FileState.FileStage.DONE),
+        // Under processing, without detailed state
+        new FileState("/dir/c", FileState.FileType.COMPRESSION, FileState.FileStage.PROCESSING));
+
+    Map<String, FileState> states = ListedFileStates.resolve(
+        Arrays.asList("/dir/a", "/dir/b", "/dir/c", "/dir/d"), recorded, loader);
+    // Files not recorded are normal, only the one under processing is loaded
+    Assert.assertEquals(Arrays.asList("/dir/c"), loaded);
+    Assert.assertEquals(2, states.size());
+    Assert.assertSame(recorded.get(0), states.get("/dir/a"));
+    Assert.assertTrue(states.get("/dir/c") instanceof CompressionFileState);
+  }
+
+  @Test
+  public void testLoadAllWithoutServer() throws Exception {
+    List<String> loaded = new ArrayList<>();
+    Map<String, FileState> states = ListedFileStates.resolve(
+        Arrays.asList("/a", "/b"), null, paths -> {
+          loaded.addAll(paths);
+          return Collections.emptyMap();
+        });
+    Assert.assertEquals(Arrays.asList("/a", "/b"), loaded);
+    Assert.assertTrue(states.isEmpty());
+  }
+}
@@ -76,6 +76,7 @@ public class CompressionAction extends HdfsAction {
   // This default value limits the minimum buffer size.
   private int bufferSize = 1024 * 1024;
   private int maxSplit;
+  private int threads;
   // Can be set in config or action arg.
   private String compressCodec;
   // Specified by user in action arg.
@@ -99,6 +100,9 @@ public void init(Map<String, String> args) {
     this.maxSplit = conf.getInt(
         SmartConfKeys.SMART_COMPRESSION_MAX_SPLIT,
         SmartConfKeys.SMART_COMPRESSION_MAX_SPLIT_DEFAULT);
+    this.threads = conf.getInt(
+        SmartConfKeys.SMART_COMPRESSION_THREADS,
+        SmartConfKeys.SMART_COMPRESSION_THREADS_DEFAULT);
     this.filePath = args.get(FILE_PATH);
     if (args.containsKey(BUF_SIZE) && !args.get(BUF_SIZE).isEmpty()) {
       this.userDefinedBufferSize = (int) StringUtil.parseToByte(args.get(BUF_SIZE));
@@ -224,7 +228,7 @@ protected void execute() throws Exception {
   private void compress(InputStream inputStream, OutputStream outputStream) throws IOException {
     // We use 'progress' (a percentage) to track compression progress.
     SmartCompressorStream smartCompressorStream = new SmartCompressorStream(
-        inputStream, outputStream, bufferSize, compressionFileState, progress);
+        inputStream, outputStream, bufferSize, compressionFileState, progress, threads);
     smartCompressorStream.convert();
   }
 
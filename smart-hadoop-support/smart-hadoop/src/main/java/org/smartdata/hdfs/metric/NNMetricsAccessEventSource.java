@@ -21,6 +21,8 @@
 import org.smartdata.metrics.FileAccessEventCollector;
 import org.smartdata.metrics.FileAccessEventSource;
 
+import java.util.List;
+
 public class NNMetricsAccessEventSource implements FileAccessEventSource {
   private final NNMetricsAccessEventCollector collector;
 
@@ -38,6 +40,11 @@ public void insertEventFromSmartClient(FileAccessEvent event) {
     // Do nothing.
   }
 
+  @Override
+  public void insertEventsFromSmartClient(List<FileAccessEvent> events) {
+    // Do nothing.
+  }
+
   @Override
   public void close() {
     this.collector.close();
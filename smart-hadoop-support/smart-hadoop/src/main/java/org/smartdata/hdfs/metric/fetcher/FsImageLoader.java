@@ -0,0 +1,430 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import com.google.common.io.ByteStreams;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeDirectorySection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeReferenceSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.NameSystemSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.StringTableSection;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.PathChecker;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.smartdata.hdfs.CompatibilityHelperLoader.getHelper;
+
+/**
+ * Loads the file table from a local fsimage file in the protobuf format,
+ * so that the initial namespace fetch does not send any request to
+ * NameNode. The image is streamed section by section. Only the parent of
+ * every inode and the names and paths of directories are kept in memory.
+ */
+public class FsImageLoader {
+  public static final Logger LOG = LoggerFactory.getLogger(FsImageLoader.class);
+
+  private static final Pattern IMAGE_NAME_PATTERN = Pattern.compile("fsimage_(\\d+)");
+  private static final long NO_PARENT = -1;
+  private static final long PROGRESS_LOG_INTERVAL_MS = 10000;
+
+  private final File imageFile;
+  private final MetaStore metaStore;
+  private final SmartConf conf;
+  private final PathChecker pathChecker;
+  private final int batchSize;
+
+  private final InodeParentMap parents = new InodeParentMap();
+  private final Map<Long, String> dirNames = new HashMap<>();
+  // Path of directories in current tree, null for the ignored ones
+  private final Map<Long, String> dirPaths = new HashMap<>();
+  private final Map<Integer, String> stringTable = new HashMap<>();
+
+  // The inode section is scanned twice, for directory names and for files
+  private volatile long numInodesToScan;
+  private volatile long numInodesScanned;
+  private long lastProgressLogTime;
+
+  public FsImageLoader(File imageFile, MetaStore metaStore, SmartConf conf) {
+    this.imageFile = imageFile;
+    this.metaStore = metaStore;
+    this.conf = conf;
+    this.pathChecker = new PathChecker(conf);
+    this.batchSize = conf.getInt(SmartConfKeys.SMART_NAMESPACE_FETCHER_BATCH_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_BATCH_DEFAULT);
+  }
+
+  /**
+   * Get the image file of the given path. For a directory, the latest
+   * image in it is returned.
+   */
+  public static File getImageFile(String path) throws IOException {
+    File file = new File(path);
+    if (!file.isDirectory()) {
+      if (!file.isFile()) {
+        throw new IOException("Fsimage file not found: " + path);
+      }
+      return file;
+    }
+    File latest = null;
+    long latestTxid = -1;
+    File[] children = file.listFiles();
+    for (File child : children == null ? new File[0] : children) {
+      Matcher matcher = IMAGE_NAME_PATTERN.matcher(child.getName());
+      if (matcher.matches() && Long.parseLong(matcher.group(1)) > latestTxid) {
+        latestTxid = Long.parseLong(matcher.group(1));
+        latest = child;
+      }
+    }
+    if (latest == null) {
+      throw new IOException("No fsimage file found in " + path);
+    }
+    return latest;
+  }
+
+  /**
+   * Get the id of the last transaction included in the image.
+   */
+  public long getTransactionId() throws IOException {
+    try (RandomAccessFile file = openImage();
+         FileInputStream in = new FileInputStream(file.getFD())) {
+      FileSummary summary = FSImageUtil.loadSummary(file);
+      return NameSystemSection.parseDelimitedFrom(
+          openSection(in, summary, SectionName.NS_INFO)).getTransactionId();
+    }
+  }
+
+  /**
+   * Get the progress of loading, from 0 to 1.
+   */
+  public float getProgress() {
+    long toScan = numInodesToScan;
+    return toScan == 0 ? 0 : (float) numInodesScanned / toScan;
+  }
+
+  /**
+   * Replace all files in metastore with the files in the image.
+   */
+  public void load() throws IOException, MetaStoreException {
+    long startTime = System.currentTimeMillis();
+    lastProgressLogTime = startTime;
+    metaStore.deleteAllFileInfo();
+    try (RandomAccessFile file = openImage();
+         FileInputStream in = new FileInputStream(file.getFD())) {
+      FileSummary summary = FSImageUtil.loadSummary(file);
+      loadStringTable(openSection(in, summary, SectionName.STRING_TABLE));
+      long[] referredIds = loadReferences(openSection(in, summary, SectionName.INODE_REFERENCE));
+      loadParents(openSection(in, summary, SectionName.INODE_DIR), referredIds);
+      loadDirectoryNames(openSection(in, summary, SectionName.INODE));
+      long numLoaded = loadFiles(openSection(in, summary, SectionName.INODE));
+      LOG.info("Loaded {} files and directories from fsimage {} in {} ms",
+          numLoaded, imageFile, System.currentTimeMillis() - startTime);
+    } finally {
+      parents.clear();
+      dirNames.clear();
+      dirPaths.clear();
+      stringTable.clear();
+    }
+  }
+
+  private RandomAccessFile openImage() throws IOException {
+    RandomAccessFile file = new RandomAccessFile(imageFile, "r");
+    if (!FSImageUtil.checkFileFormat(file)) {
+      file.close();
+      throw new IOException("Unrecognized fsimage format: " + imageFile);
+    }
+    return file;
+  }
+
+  private InputStream openSection(FileInputStream in, FileSummary summary,
+      SectionName name) throws IOException {
+    for (FileSummary.Section section : summary.getSectionsList()) {
+      if (SectionName.fromString(section.getName()) == name) {
+        in.getChannel().position(section.getOffset());
+        return FSImageUtil.wrapInputStreamForCompression(conf, summary.getCodec(),
+            new BufferedInputStream(ByteStreams.limit(in, section.getLength())));
+      }
+    }
+    return null;
+  }
+
+  private void loadStringTable(InputStream in) throws IOException {
+    if (in == null) {
+      return;
+    }
+    StringTableSection section = StringTableSection.parseDelimitedFrom(in);
+    for (int i = 0; i < section.getNumEntry(); i++) {
+      StringTableSection.Entry entry = StringTableSection.Entry.parseDelimitedFrom(in);
+      stringTable.put(entry.getId(), entry.getStr());
+    }
+  }
+
+  private long[] loadReferences(InputStream in) throws IOException {
+    if (in == null) {
+      return new long[0];
+    }
+    long[] referredIds = new long[16];
+    int numReferences = 0;
+    INodeReferenceSection.INodeReference reference;
+    while ((reference = INodeReferenceSection.INodeReference.parseDelimitedFrom(in)) != null) {
+      if (numReferences == referredIds.length) {
+        referredIds = Arrays.copyOf(referredIds, numReferences * 2);
+      }
+      referredIds[numReferences++] = reference.getReferredId();
+    }
+    return Arrays.copyOf(referredIds, numReferences);
+  }
+
+  private void loadParents(InputStream in, long[] referredIds) throws IOException {
+    if (in == null) {
+      throw new IOException("No directory section in fsimage " + imageFile);
+    }
+    INodeDirectorySection.DirEntry entry;
+    while ((entry = INodeDirectorySection.DirEntry.parseDelimitedFrom(in)) != null) {
+      for (long child : entry.getChildrenList()) {
+        parents.put(child, entry.getParent());
+      }
+      // Inodes renamed after a snapshot are children by reference
+      for (int reference : entry.getRefChildrenList()) {
+        parents.put(referredIds[reference], entry.getParent());
+      }
+    }
+  }
+
+  private void loadDirectoryNames(InputStream in) throws IOException {
+    INodeSection section = INodeSection.parseDelimitedFrom(in);
+    numInodesToScan = section.getNumInodes() * 2;
+    for (long i = 0; i < section.getNumInodes(); i++) {
+      INodeSection.INode inode = INodeSection.INode.parseDelimitedFrom(in);
+      if (inode.getType() == INodeSection.INode.Type.DIRECTORY) {
+        dirNames.put(inode.getId(), inode.getName().toStringUtf8());
+      }
+      numInodesScanned++;
+    }
+  }
+
+  private long loadFiles(InputStream in) throws IOException, MetaStoreException {
+    List<FileInfo> batch = new ArrayList<>(batchSize);
+    long numLoaded = 0;
+    INodeSection section = INodeSection.parseDelimitedFrom(in);
+    for (long i = 0; i < section.getNumInodes(); i++) {
+      INodeSection.INode inode = INodeSection.INode.parseDelimitedFrom(in);
+      numInodesScanned++;
+      FileInfo fileInfo = toFileInfo(inode);
+      if (fileInfo == null) {
+        continue;
+      }
+      batch.add(fileInfo);
+      if (batch.size() >= batchSize) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Loading fsimage " + imageFile + " is interrupted");
+        }
+        metaStore.insertFiles(batch.toArray(new FileInfo[0]));
+        numLoaded += batch.size();
+        batch.clear();
+        logProgress(numLoaded);
+      }
+    }
+    if (!batch.isEmpty()) {
+      metaStore.insertFiles(batch.toArray(new FileInfo[0]));
+      numLoaded += batch.size();
+    }
+    return numLoaded;
+  }
+
+  private void logProgress(long numLoaded) {
+    long now = System.currentTimeMillis();
+    if (now - lastProgressLogTime >= PROGRESS_LOG_INTERVAL_MS) {
+      lastProgressLogTime = now;
+      LOG.info("Loading fsimage {}: {}% done, {} files and directories loaded",
+          imageFile, (int) (getProgress() * 100), numLoaded);
+    }
+  }
+
+  /**
+   * Convert the inode to file info, or return null if the inode should not
+   * be in the file table.
+   */
+  private FileInfo toFileInfo(INodeSection.INode inode) {
+    switch (inode.getType()) {
+      case DIRECTORY:
+        String dirPath = getDirPath(inode.getId());
+        if (dirPath == null || !pathChecker.isCovered(withSlash(dirPath))) {
+          return null;
+        }
+        INodeSection.INodeDirectory dir = inode.getDirectory();
+        return new FileInfo(dirPath, inode.getId(), 0, true, (short) 0, 0,
+            dir.getModificationTime(), 0, getMode(dir.getPermission()),
+            getOwner(dir.getPermission()), getGroup(dir.getPermission()),
+            (byte) 0, (byte) 0);
+      case FILE:
+        String parentPath = getDirPath(parents.get(inode.getId()));
+        if (parentPath == null) {
+          return null;
+        }
+        String path = withSlash(parentPath) + inode.getName().toStringUtf8();
+        if (pathChecker.isIgnored(path) || !pathChecker.isCovered(path)) {
+          return null;
+        }
+        INodeSection.INodeFile file = inode.getFile();
+        long length = 0;
+        for (HdfsProtos.BlockProto block : file.getBlocksList()) {
+          length += block.getNumBytes();
+        }
+        return new FileInfo(path, inode.getId(), length, false,
+            (short) file.getReplication(), file.getPreferredBlockSize(),
+            file.getModificationTime(), file.getAccessTime(),
+            getMode(file.getPermission()), getOwner(file.getPermission()),
+            getGroup(file.getPermission()), (byte) file.getStoragePolicyID(),
+            getHelper().getErasureCodingPolicy(file));
+      default:
+        // Symlinks are not kept in the file table
+        return null;
+    }
+  }
+
+  /**
+   * Get the path of the directory, or null if it is not in current tree
+   * or is ignored.
+   */
+  private String getDirPath(long id) {
+    if (id == INodeId.ROOT_INODE_ID) {
+      return "/";
+    }
+    if (dirPaths.containsKey(id)) {
+      return dirPaths.get(id);
+    }
+    String path = null;
+    long parent = parents.get(id);
+    String name = dirNames.get(id);
+    if (parent != NO_PARENT && name != null) {
+      String parentPath = getDirPath(parent);
+      if (parentPath != null) {
+        path = withSlash(parentPath) + name;
+        if (pathChecker.isIgnored(withSlash(path))) {
+          path = null;
+        }
+      }
+    }
+    dirPaths.put(id, path);
+    return path;
+  }
+
+  private static String withSlash(String path) {
+    return path.endsWith("/") ? path : path + "/";
+  }
+
+  // See PermissionStatusFormat in HDFS for the layout of permission
+  private static short getMode(long permission) {
+    return (short) (permission & 0xFFFF);
+  }
+
+  private String getGroup(long permission) {
+    return stringTable.get((int) ((permission >>> 16) & 0xFFFFFF));
+  }
+
+  private String getOwner(long permission) {
+    return stringTable.get((int) ((permission >>> 40) & 0xFFFFFF));
+  }
+
+  /**
+   * An open addressing hash map from inode id to parent id, which keeps
+   * entries in a primitive array to load large namespaces.
+   */
+  private static class InodeParentMap {
+    private static final long FREE = -1;
+
+    // Pairs of inode id and parent id
+    private long[] entries = newEntries(1 << 16);
+    private int size;
+
+    void put(long id, long parent) {
+      if ((size + 1) * 4L > entries.length) {
+        rehash();
+      }
+      int slot = find(entries, id);
+      if (entries[slot] == FREE) {
+        size++;
+      }
+      entries[slot] = id;
+      entries[slot + 1] = parent;
+    }
+
+    long get(long id) {
+      int slot = find(entries, id);
+      return entries[slot] == FREE ? NO_PARENT : entries[slot + 1];
+    }
+
+    void clear() {
+      entries = newEntries(2);
+      size = 0;
+    }
+
+    private void rehash() {
+      long[] old = entries;
+      entries = newEntries(old.length);
+      for (int i = 0; i < old.length; i += 2) {
+        if (old[i] != FREE) {
+          int slot = find(entries, old[i]);
+          entries[slot] = old[i];
+          entries[slot + 1] = old[i + 1];
+        }
+      }
+    }
+
+    private static int find(long[] entries, long id) {
+      int mask = entries.length / 2 - 1;
+      long h = id * 0x9E3779B97F4A7C15L;
+      int slot = (int) (h ^ (h >>> 32)) & mask;
+      while (entries[slot * 2] != FREE && entries[slot * 2] != id) {
+        slot = (slot + 1) & mask;
+      }
+      return slot * 2;
+    }
+
+    private static long[] newEntries(int capacity) {
+      long[] entries = new long[capacity * 2];
+      Arrays.fill(entries, FREE);
+      return entries;
+    }
+  }
+}
@@ -19,11 +19,13 @@
 
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.XAttrHelper;
 import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.io.WritableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartdata.SmartConstants;
 import org.smartdata.conf.SmartConf;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
 import org.smartdata.hdfs.HadoopUtil;
@@ -35,30 +37,44 @@
 import org.smartdata.model.FileInfo;
 import org.smartdata.model.FileInfoDiff;
 
+import org.smartdata.model.PathChecker;
+
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
-import org.smartdata.model.PathChecker;
 
 /**
  * This is a very preliminary and buggy applier, can further enhance by referring to
  * {@link org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader}
+ *
+ * <p>Events given together are collapsed by {@link InotifyEventCoalescer} and
+ * applied in one metastore transaction, or in a transaction each if that
+ * fails, so that a failed event only loses itself.
  */
 public class InotifyEventApplier {
   private static final String ROOT_DIRECTORY = "/";
 
   private final MetaStore metaStore;
   private final PathChecker pathChecker;
+  private final InotifyEventCoalescer eventCoalescer;
   private DFSClient client;
   private static final Logger LOG =
       LoggerFactory.getLogger(InotifyEventFetcher.class);
   private NamespaceFetcher namespaceFetcher;
+  // Status of the created and renamed files of the events being applied,
+  // fetched before the transaction to keep it short
+  private final Map<String, FileInfo> fetchedFileInfos = new HashMap<>();
+  // Dirs to fetch after the transaction, since fetcher writes in other threads
+  private final List<String> dirsToFetch = new ArrayList<>();
 
   public InotifyEventApplier(MetaStore metaStore, DFSClient client) {
     this(new SmartConf(), metaStore, client);
@@ -73,11 +89,28 @@ public InotifyEventApplier(SmartConf conf, MetaStore metaStore, DFSClient client
     this.metaStore = metaStore;
     this.client = client;
     this.pathChecker = new PathChecker(conf);
+    this.eventCoalescer = new InotifyEventCoalescer(pathChecker);
   }
 
   public void apply(List<Event> events) throws IOException, MetaStoreException, InterruptedException {
-    for (Event event : events) {
-      apply(event);
+    List<Event> coalescedEvents = eventCoalescer.coalesce(events);
+    LOG.debug("Apply {} of {} inotify events", coalescedEvents.size(), events.size());
+    try {
+      fetchFileInfos(coalescedEvents);
+      try {
+        metaStore.runInTransaction(() -> applyInTransaction(coalescedEvents));
+      } catch (MetaStoreException | RuntimeException e) {
+        LOG.warn("Failed to apply {} inotify events together, apply them one by one",
+            coalescedEvents.size(), e);
+        dirsToFetch.clear();
+        applyOneByOne(coalescedEvents);
+      }
+      for (String dir : dirsToFetch) {
+        fetchNamespace(dir);
+      }
+    } finally {
+      fetchedFileInfos.clear();
+      dirsToFetch.clear();
     }
   }
 
@@ -85,7 +118,57 @@ public void apply(Event[] events) throws IOException, MetaStoreException, Interr
     this.apply(Arrays.asList(events));
   }
 
-  private void apply(Event event) throws IOException, MetaStoreException, InterruptedException {
+  /**
+   * Apply the events in a transaction each, so that an event failed to
+   * apply doesn't lose the others given together with it.
+   */
+  private void applyOneByOne(List<Event> events) {
+    for (Event event : events) {
+      int dirsFetched = dirsToFetch.size();
+      try {
+        metaStore.runInTransaction(
+            () -> applyInTransaction(Collections.singletonList(event)));
+      } catch (MetaStoreException | RuntimeException e) {
+        LOG.error("Failed to apply inotify event {}, skip it", event, e);
+        dirsToFetch.subList(dirsFetched, dirsToFetch.size()).clear();
+      }
+    }
+  }
+
+  private void fetchFileInfos(List<Event> events) throws IOException {
+    for (Event event : events) {
+      String path;
+      if (event.getEventType() == Event.EventType.CREATE) {
+        path = ((Event.CreateEvent) event).getPath();
+      } else if (event.getEventType() == Event.EventType.RENAME) {
+        path = ((Event.RenameEvent) event).getDstPath();
+      } else {
+        continue;
+      }
+      if (!fetchedFileInfos.containsKey(path)) {
+        fetchedFileInfos.put(path, getFileInfo(path));
+      }
+    }
+  }
+
+  private void applyInTransaction(List<Event> events) throws MetaStoreException {
+    // The coalescer moves file creations to the end, write them in one batch
+    List<FileInfo> createdFiles = new ArrayList<>();
+    for (Event event : events) {
+      if (event.getEventType() == Event.EventType.CREATE
+          && ((Event.CreateEvent) event).getiNodeType() == Event.CreateEvent.INodeType.FILE) {
+        FileInfo fileInfo = fetchedFileInfos.get(((Event.CreateEvent) event).getPath());
+        if (fileInfo != null) {
+          createdFiles.add(fileInfo);
+        }
+      } else {
+        apply(event);
+      }
+    }
+    applyCreate(createdFiles);
+  }
+
+  private void apply(Event event) throws MetaStoreException {
     String path;
     String srcPath, dstPath;
     LOG.debug("Even Type = {}", event.getEventType());
@@ -131,8 +214,8 @@ private void apply(Event event) throws IOException, MetaStoreException, Interrup
   }
 
   //Todo: times and ec policy id, etc.
-  private void applyCreate(Event.CreateEvent createEvent) throws IOException, MetaStoreException {
-    FileInfo fileInfo = getFileInfo(createEvent.getPath());
+  private void applyCreate(Event.CreateEvent createEvent) throws MetaStoreException {
+    FileInfo fileInfo = fetchedFileInfos.get(createEvent.getPath());
     if (fileInfo == null) {
       return;
     }
@@ -143,8 +226,22 @@ private void applyCreate(Event.CreateEvent createEvent) throws IOException, Meta
     metaStore.insertFile(fileInfo);
   }
 
-  private void applyRenameIgnoredFile(Event.RenameEvent renameEvent) throws IOException, MetaStoreException {
-    FileInfo fileInfo = getFileInfo(renameEvent.getDstPath());
+  private void applyCreate(List<FileInfo> fileInfos) throws MetaStoreException {
+    List<FileDiff> fileDiffs = new ArrayList<>();
+    for (FileInfo fileInfo : fileInfos) {
+      FileDiff fileDiff = getCreateFileDiff(fileInfo);
+      if (fileDiff != null) {
+        fileDiffs.add(fileDiff);
+      }
+    }
+    if (!fileDiffs.isEmpty()) {
+      metaStore.insertFileDiffs(fileDiffs.toArray(new FileDiff[0]));
+    }
+    metaStore.insertOrReplaceFiles(fileInfos);
+  }
+
+  private void applyRenameIgnoredFile(Event.RenameEvent renameEvent) throws MetaStoreException {
+    FileInfo fileInfo = fetchedFileInfos.get(renameEvent.getDstPath());
     if (fileInfo == null) {
       return;
     }
@@ -166,12 +263,18 @@ private FileInfo getFileInfo(String path) throws IOException {
   }
 
   private void applyCreateFileDiff(FileInfo fileInfo) throws MetaStoreException {
+    FileDiff fileDiff = getCreateFileDiff(fileInfo);
+    if (fileDiff != null) {
+      metaStore.insertFileDiff(fileDiff);
+    }
+  }
+
+  private FileDiff getCreateFileDiff(FileInfo fileInfo) throws MetaStoreException {
     if (inBackup(fileInfo.getPath())) {
       if (fileInfo.isdir()) {
         FileDiff fileDiff = new FileDiff(FileDiffType.MKDIR);
         fileDiff.setSrc(fileInfo.getPath());
-        metaStore.insertFileDiff(fileDiff);
-        return;
+        return fileDiff;
       }
       FileDiff fileDiff = new FileDiff(FileDiffType.APPEND);
       fileDiff.setSrc(fileInfo.getPath());
@@ -190,8 +293,9 @@ private void applyCreateFileDiff(FileInfo fileInfo) throws MetaStoreException {
       fileDiff.getParameters().put("-permission", "" + fileInfo.getPermission());
       //add replication count to file diff
       fileDiff.getParameters().put("-replication", "" + fileInfo.getBlockReplication());
-      metaStore.insertFileDiff(fileDiff);
+      return fileDiff;
     }
+    return null;
   }
 
   private boolean inBackup(String src) throws MetaStoreException {
@@ -233,8 +337,7 @@ private void applyClose(Event.CloseEvent closeEvent) throws MetaStoreException {
 //        truncateEvent.getFileSize(), truncateEvent.getTimestamp(), truncateEvent.getPath());
 //  }
 
-  private void applyRename(Event.RenameEvent renameEvent)
-      throws IOException, MetaStoreException, InterruptedException {
+  private void applyRename(Event.RenameEvent renameEvent) throws MetaStoreException {
     String src = renameEvent.getSrcPath();
     String dest = renameEvent.getDstPath();
 
@@ -243,7 +346,7 @@ private void applyRename(Event.RenameEvent renameEvent)
       return;
     }
 
-    HdfsFileStatus status = client.getFileInfo(dest);
+    FileInfo status = fetchedFileInfos.get(dest);
     FileInfo info = metaStore.getFile(src);
 
     // For backup data to use.
@@ -263,12 +366,7 @@ private void applyRename(Event.RenameEvent renameEvent)
       if (status != null) {
         //info = HadoopUtil.convertFileStatus(status, dest);
         //metaStore.insertFile(info);
-        namespaceFetcher.startFetch(dest);
-        while(!namespaceFetcher.fetchFinished()) {
-          LOG.info("Fetching the files under " + dest);
-          Thread.sleep(100);
-        }
-        namespaceFetcher.stop();
+        dirsToFetch.add(dest);
       }
       return;
     }
@@ -284,6 +382,15 @@ private void applyRename(Event.RenameEvent renameEvent)
     metaStore.renameFile(src, dest, info.isdir());
   }
 
+  private void fetchNamespace(String dir) throws IOException, InterruptedException {
+    namespaceFetcher.startFetch(dir);
+    while (!namespaceFetcher.fetchFinished()) {
+      LOG.info("Fetching the files under " + dir);
+      Thread.sleep(100);
+    }
+    namespaceFetcher.stop();
+  }
+
   private void generateFileDiff(Event.RenameEvent renameEvent)
       throws MetaStoreException {
     String src = renameEvent.getSrcPath();
@@ -386,6 +493,14 @@ private void applyMetadataUpdate(Event.MetadataUpdateEvent metadataUpdateEvent)
               .collect(Collectors.joining("\n"));
           LOG.debug(message);
         }
+        for (XAttr xAttr : metadataUpdateEvent.getxAttrs()) {
+          // File state xattr is set by SSM actions, let clients caching
+          // the file state know it
+          if (SmartConstants.SMART_FILE_STATE_XATTR_NAME.equals(
+              XAttrHelper.getPrefixedName(xAttr))) {
+            metaStore.fileStateChanged(metadataUpdateEvent.getPath());
+          }
+        }
         // The following code should be executed merely on HDFS3.x.
         for (XAttr xAttr : metadataUpdateEvent.getxAttrs()) {
           if (xAttr.getName().equals(EC_POLICY)) {
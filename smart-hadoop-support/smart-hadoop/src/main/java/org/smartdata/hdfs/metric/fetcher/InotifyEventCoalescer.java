@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.smartdata.model.PathChecker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Collapses a window of inotify events to their net effect on the file table.
+ *
+ * <p>Files created in the window are tracked until the end of it: their
+ * close, append and metadata events are dropped, renames just move them,
+ * and files deleted in the window are dropped with all their events.
+ * The creations of the remaining files are moved to the end of the result,
+ * since no later event in the window touches them or their ancestors, so
+ * they can be written to metastore in one batch. Other events are kept in
+ * their original order.
+ */
+public class InotifyEventCoalescer {
+  private static final String ROOT_DIRECTORY = "/";
+
+  private final PathChecker pathChecker;
+
+  public InotifyEventCoalescer(PathChecker pathChecker) {
+    this.pathChecker = pathChecker;
+  }
+
+  public List<Event> coalesce(List<Event> events) {
+    List<Event> result = new ArrayList<>(events.size());
+    // Files created in the window, by their current path
+    NavigableMap<String, PendingCreate> created = new TreeMap<>();
+    for (Event event : events) {
+      switch (event.getEventType()) {
+        case CREATE:
+          coalesceCreate((Event.CreateEvent) event, created, result);
+          break;
+        case CLOSE:
+          keepUnlessCreated(((Event.CloseEvent) event).getPath(), event, created, result);
+          break;
+        case APPEND:
+          keepUnlessCreated(((Event.AppendEvent) event).getPath(), event, created, result);
+          break;
+        case METADATA:
+          keepUnlessCreated(
+              ((Event.MetadataUpdateEvent) event).getPath(), event, created, result);
+          break;
+        case RENAME:
+          coalesceRename((Event.RenameEvent) event, created, result);
+          break;
+        case UNLINK:
+          coalesceUnlink((Event.UnlinkEvent) event, created, result);
+          break;
+        default:
+          result.add(event);
+      }
+    }
+    for (PendingCreate pendingCreate : created.values()) {
+      result.add(pendingCreate.event);
+    }
+    return result;
+  }
+
+  private void coalesceCreate(Event.CreateEvent event,
+      NavigableMap<String, PendingCreate> created, List<Event> result) {
+    // Directories may get children renamed from outside the window,
+    // so they are created in order
+    if (event.getiNodeType() != Event.CreateEvent.INodeType.FILE) {
+      result.add(event);
+      return;
+    }
+    PendingCreate overwritten = created.get(event.getPath());
+    // Only the first creation in the window may overwrite a stored file
+    created.put(event.getPath(), new PendingCreate(event,
+        overwritten != null ? overwritten.overwrites : event.getOverwrite()));
+  }
+
+  private void keepUnlessCreated(String path, Event event,
+      NavigableMap<String, PendingCreate> created, List<Event> result) {
+    // The status of created files is fetched when the window is applied,
+    // so later changes of them are already included
+    if (!created.containsKey(path)) {
+      result.add(event);
+    }
+  }
+
+  private void coalesceRename(Event.RenameEvent event,
+      NavigableMap<String, PendingCreate> created, List<Event> result) {
+    String src = event.getSrcPath();
+    String dest = event.getDstPath();
+    PendingCreate pendingCreate = created.remove(src);
+    if (pendingCreate == null) {
+      result.add(event);
+      created.remove(dest);
+      moveChildren(src, dest, created);
+      return;
+    }
+    if (pendingCreate.overwrites) {
+      result.add(unlinkEvent(src, event.getTimestamp()));
+    }
+    // The renamed file replaces the one stored under dest, if any
+    created.remove(dest);
+    if (!pathChecker.isIgnored(dest)) {
+      created.put(dest, new PendingCreate(
+          withPath(pendingCreate.event, dest), true));
+    }
+  }
+
+  private void coalesceUnlink(Event.UnlinkEvent event,
+      NavigableMap<String, PendingCreate> created, List<Event> result) {
+    String path = event.getPath();
+    if (!ROOT_DIRECTORY.equals(path) && path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    PendingCreate pendingCreate = created.remove(path);
+    if (pendingCreate == null) {
+      result.add(event);
+      getChildren(path, created).clear();
+    } else if (pendingCreate.overwrites) {
+      result.add(event);
+    }
+  }
+
+  private void moveChildren(String src, String dest,
+      NavigableMap<String, PendingCreate> created) {
+    NavigableMap<String, PendingCreate> children = getChildren(src, created);
+    if (children.isEmpty()) {
+      return;
+    }
+    List<PendingCreate> moved = new ArrayList<>(children.values());
+    children.clear();
+    // Children moved to an ignored dir are removed from file table
+    if (pathChecker.isIgnored(dest)) {
+      return;
+    }
+    for (PendingCreate pendingCreate : moved) {
+      String path = dest + pendingCreate.event.getPath().substring(src.length());
+      created.put(path, new PendingCreate(
+          withPath(pendingCreate.event, path), pendingCreate.overwrites));
+    }
+  }
+
+  private NavigableMap<String, PendingCreate> getChildren(String dir,
+      NavigableMap<String, PendingCreate> created) {
+    String prefix = dir.endsWith("/") ? dir : dir + "/";
+    // '0' is the character next to '/'
+    return created.subMap(prefix, true,
+        prefix.substring(0, prefix.length() - 1) + '0', false);
+  }
+
+  private static Event.CreateEvent withPath(Event.CreateEvent event, String path) {
+    return new Event.CreateEvent.Builder()
+        .iNodeType(event.getiNodeType())
+        .path(path)
+        .ctime(event.getCtime())
+        .ownerName(event.getOwnerName())
+        .groupName(event.getGroupName())
+        .perms(event.getPerms())
+        .replication(event.getReplication())
+        .symlinkTarget(event.getSymlinkTarget())
+        .defaultBlockSize(event.getDefaultBlockSize())
+        .overwrite(event.getOverwrite())
+        .build();
+  }
+
+  private static Event.UnlinkEvent unlinkEvent(String path, long timestamp) {
+    return new Event.UnlinkEvent.Builder()
+        .path(path)
+        .timestamp(timestamp)
+        .build();
+  }
+
+  private static class PendingCreate {
+    private final Event.CreateEvent event;
+    // Whether a file stored before the window may be replaced
+    private final boolean overwrites;
+
+    private PendingCreate(Event.CreateEvent event, boolean overwrites) {
+      this.event = event;
+      this.overwrites = overwrites;
+    }
+  }
+}
@@ -44,6 +44,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -62,6 +63,8 @@ public class InotifyEventFetcher {
   private Callable finishedCallback;
   private ScheduledFuture inotifyFetchFuture;
   private ScheduledFuture fetchAndApplyFuture;
+  private ListenableFuture<?> imageLoadFuture;
+  private InotifyFetchTask inotifyFetchTask;
   private EventApplyTask eventApplyTask;
   private java.io.File inotifyFile;
   private QueueFile queueFile;
@@ -99,7 +102,7 @@ public void start() throws IOException {
       if (lastTxid != null && lastTxid != -1 && canContinueFromLastTxid(client, lastTxid)
               && !isWhitelistChanged(conf, metaStore)) {
         startFromLastTxid(lastTxid);
-      } else {
+      } else if (!startWithLoadingFsImage()) {
         startWithFetchingNameSpace();
         LOG.info("Start fetch namespace fully!");
       }
@@ -142,15 +145,86 @@ private Long getLastTxid() {
     }
   }
 
-  private void startWithFetchingNameSpace() throws IOException {
-    ListeningExecutorService listeningExecutorService = MoreExecutors.listeningDecorator(scheduledExecutorService);
+  /**
+   * Load namespace from the configured fsimage instead of fetching it from
+   * NameNode, then apply the inotify events after the image. The image is
+   * loaded in background, like the fetching of namespace, while the events
+   * are tailed into a queue file, so that NameNode may purge the edits
+   * during the load. If some events are missed anyway, the namespace is
+   * fetched from NameNode after the load.
+   *
+   * @return false if no usable fsimage is configured
+   */
+  private boolean startWithLoadingFsImage() throws IOException {
+    String imagePath = conf.get(SmartConfKeys.SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_DEFAULT);
+    if (imagePath == null || imagePath.trim().isEmpty()) {
+      return false;
+    }
+    final FsImageLoader imageLoader;
+    final long imageTxid;
+    try {
+      imageLoader = new FsImageLoader(
+          FsImageLoader.getImageFile(imagePath.trim()), metaStore, conf);
+      imageTxid = imageLoader.getTransactionId();
+    } catch (IOException e) {
+      LOG.error("Failed to read fsimage " + imagePath
+          + ", fetch namespace from NameNode instead", e);
+      return false;
+    }
+    if (!canContinueFromLastTxid(client, imageTxid)) {
+      LOG.warn("Edit logs after fsimage {} with txid {} are not available, "
+          + "fetch namespace from NameNode instead", imagePath, imageTxid);
+      return false;
+    }
+    LOG.info("Start loading namespace from fsimage {} with txid {}", imagePath, imageTxid);
+    startTailing(imageTxid);
+    eventApplyTask = new EventApplyTask(nameSpaceFetcher, applier, queueFile, imageTxid, conf);
+    ListeningExecutorService listeningExecutorService =
+        MoreExecutors.listeningDecorator(scheduledExecutorService);
+    imageLoadFuture = listeningExecutorService.submit(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        nameSpaceFetcher.fetchErasureCodingPolicies();
+        imageLoader.load();
+        if (inotifyFetchTask.isMissingEvents()) {
+          throw new IOException("Edit logs after fsimage " + imagePath
+              + " with txid " + imageTxid + " are purged during the load");
+        }
+        metaStore.updateAndInsertIfNotExist(new SystemInfo(
+            SmartConstants.SMART_HDFS_LAST_INOTIFY_TXID, String.valueOf(imageTxid)));
+        eventApplyTask.applyQueued();
+        return null;
+      }
+    });
+    Futures.addCallback(imageLoadFuture, new FsImageLoaderCallBack(),
+        scheduledExecutorService);
+    return true;
+  }
+
+  /**
+   * Tail the inotify events from the given txid into a new queue file.
+   */
+  private void startTailing(long startId) throws IOException {
     inotifyFile = new File("/tmp/inotify" + new Random().nextLong());
     queueFile = new QueueFile(inotifyFile);
+    inotifyFetchTask = new InotifyFetchTask(queueFile, client, startId);
+    inotifyFetchFuture = scheduledExecutorService.scheduleAtFixedRate(
+        inotifyFetchTask, 0, 100, TimeUnit.MILLISECONDS);
+  }
+
+  private void stopTailing() throws IOException {
+    inotifyFetchFuture.cancel(false);
+    queueFile.close();
+    inotifyFile.delete();
+  }
+
+  private void startWithFetchingNameSpace() throws IOException {
+    ListeningExecutorService listeningExecutorService = MoreExecutors.listeningDecorator(scheduledExecutorService);
     long startId = client.getNamenode().getCurrentEditLogTxid();
     LOG.info("Start fetching namespace with current edit log txid = " + startId);
     nameSpaceFetcher.startFetch();
-    inotifyFetchFuture = scheduledExecutorService.scheduleAtFixedRate(
-      new InotifyFetchTask(queueFile, client, startId), 0, 100, TimeUnit.MILLISECONDS);
+    startTailing(startId);
     eventApplyTask = new EventApplyTask(nameSpaceFetcher, applier, queueFile, startId, conf);
     ListenableFuture<?> future = listeningExecutorService.submit(eventApplyTask);
     Futures.addCallback(future, new NameSpaceFetcherCallBack(), scheduledExecutorService);
@@ -198,7 +272,40 @@ public void onFailure(Throwable throwable) {
     }
   }
 
+  private class FsImageLoaderCallBack implements FutureCallback<Object> {
+
+    @Override
+    public void onSuccess(Object o) {
+      try {
+        stopTailing();
+        // The events tailed after the last applied one are fetched again
+        startFromLastTxid(eventApplyTask.getLastId());
+      } catch (IOException e) {
+        LOG.error("Failed to apply inotify events after fsimage", e);
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable throwable) {
+      if (imageLoadFuture.isCancelled()) {
+        return;
+      }
+      LOG.error("Failed to load namespace from fsimage, "
+          + "fetch namespace from NameNode instead", throwable);
+      try {
+        stopTailing();
+        startWithFetchingNameSpace();
+        LOG.info("Start fetch namespace fully!");
+      } catch (IOException e) {
+        LOG.error("Failed to fetch namespace", e);
+      }
+    }
+  }
+
   public void stop() {
+    if (imageLoadFuture != null) {
+      imageLoadFuture.cancel(true);
+    }
     if (inotifyFile != null) {
       inotifyFile.delete();
     }
@@ -239,6 +346,7 @@ public static boolean isWhitelistChanged(SmartConf conf, MetaStore metaStore) {
   private static class InotifyFetchTask implements Runnable {
     private final QueueFile queueFile;
     private DFSInotifyEventInputStream inotifyEventInputStream;
+    private volatile boolean missingEvents = false;
 
     public InotifyFetchTask(QueueFile queueFile, DFSClient client, long startId) throws IOException {
       this.queueFile = queueFile;
@@ -253,10 +361,20 @@ public void run() {
           this.queueFile.add(EventBatchSerializer.serialize(eventBatch));
           eventBatch = inotifyEventInputStream.poll();
         }
-      } catch (IOException | MissingEventsException e) {
+      } catch (MissingEventsException e) {
+        missingEvents = true;
+        LOG.error("Inotify enqueue error", e);
+      } catch (IOException e) {
         LOG.error("Inotify enqueue error", e);
       }
     }
+
+    /**
+     * Whether some events were purged by NameNode before being tailed.
+     */
+    public boolean isMissingEvents() {
+      return missingEvents;
+    }
   }
 
   private static class EventApplyTask implements Runnable {
@@ -265,6 +383,7 @@ private static class EventApplyTask implements Runnable {
     private final QueueFile queueFile;
     private long lastId;
     private final INotifyEventFilter eventFilter;
+    private final int applyBatchSize;
 
     public EventApplyTask(NamespaceFetcher namespaceFetcher, InotifyEventApplier applier,
         QueueFile queueFile, long lastId, SmartConf conf) {
@@ -273,6 +392,9 @@ public EventApplyTask(NamespaceFetcher namespaceFetcher, InotifyEventApplier app
       this.applier = applier;
       this.lastId = lastId;
       this.eventFilter = new INotifyEventFilter(conf);
+      this.applyBatchSize = conf.getInt(
+          SmartConfKeys.SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_KEY,
+          SmartConfKeys.SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_DEFAULT);
     }
 
     @Override
@@ -282,16 +404,7 @@ public void run() {
           if (!namespaceFetcher.fetchFinished()) {
             Thread.sleep(100);
           } else {
-            while (!queueFile.isEmpty()) {
-              EventBatch batch = EventBatchSerializer.deserialize(queueFile.peek());
-              queueFile.remove();
-              Event[] event = batch.getEvents();
-              event = eventFilter.filterIgnored(event);
-              if (event.length > 0) {
-                this.applier.apply(event);
-                this.lastId = batch.getTxid();
-              }
-            }
+            applyQueued();
             break;
           }
         }
@@ -300,6 +413,37 @@ public void run() {
       }
     }
 
+    /**
+     * Apply the events in the queue file, in batches.
+     */
+    public void applyQueued() throws IOException, MetaStoreException, InterruptedException {
+      List<Event> events = new ArrayList<>();
+      long txid = lastId;
+      while (!queueFile.isEmpty()) {
+        EventBatch batch = EventBatchSerializer.deserialize(queueFile.peek());
+        queueFile.remove();
+        Event[] event = batch.getEvents();
+        event = eventFilter.filterIgnored(event);
+        if (event.length > 0) {
+          Collections.addAll(events, event);
+          txid = batch.getTxid();
+        }
+        if (events.size() >= applyBatchSize) {
+          apply(events, txid);
+        }
+      }
+      apply(events, txid);
+    }
+
+    private void apply(List<Event> events, long txid)
+        throws IOException, MetaStoreException, InterruptedException {
+      if (!events.isEmpty()) {
+        this.applier.apply(events.toArray(new Event[0]));
+        this.lastId = txid;
+        events.clear();
+      }
+    }
+
     public long getLastId() {
       return this.lastId;
     }
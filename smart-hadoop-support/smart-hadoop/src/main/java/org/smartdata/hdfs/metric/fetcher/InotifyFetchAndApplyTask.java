@@ -26,12 +26,19 @@
 import org.smartdata.SmartConstants;
 import org.smartdata.conf.SmartConf;
 import org.smartdata.metastore.MetaStore;
+import org.smartdata.metastore.MetaStoreException;
 import org.smartdata.model.SystemInfo;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.smartdata.conf.SmartConfKeys.SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_KEY;
+
 public class InotifyFetchAndApplyTask implements Runnable {
   static final Logger LOG = LoggerFactory.getLogger(InotifyFetchAndApplyTask.class);
 
@@ -40,6 +47,7 @@ public class InotifyFetchAndApplyTask implements Runnable {
   private final InotifyEventApplier applier;
   private final DFSInotifyEventInputStream inotifyEventInputStream;
   private final INotifyEventFilter eventFilter;
+  private final int applyBatchSize;
 
   public InotifyFetchAndApplyTask(DFSClient client, MetaStore metaStore,
                                   InotifyEventApplier applier, long startId, SmartConf conf)
@@ -49,30 +57,52 @@ public InotifyFetchAndApplyTask(DFSClient client, MetaStore metaStore,
     this.lastId = new AtomicLong(startId);
     this.inotifyEventInputStream = client.getInotifyEventStream(startId);
     this.eventFilter = new INotifyEventFilter(conf);
+    this.applyBatchSize = conf.getInt(SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_KEY,
+        SMART_NAMESPACE_FETCHER_INOTIFY_APPLY_BATCH_DEFAULT);
   }
 
   @Override
   public void run() {
     LOG.trace("InotifyFetchAndApplyTask run at " +  new Date());
     try {
+      // Events of several batches are applied together, so that the changes
+      // of one file in them can be collapsed
+      List<Event> events = new ArrayList<>();
+      long txid = lastId.get();
       EventBatch eventBatch = inotifyEventInputStream.poll();
       while (eventBatch != null) {
-        Event[] filteredEvents = eventFilter.filterIgnored(eventBatch.getEvents());
-        if (filteredEvents.length != 0) {
-          applier.apply(filteredEvents);
+        Collections.addAll(events, eventFilter.filterIgnored(eventBatch.getEvents()));
+        txid = eventBatch.getTxid();
+        if (events.size() >= applyBatchSize) {
+          apply(events, txid);
+          events.clear();
         }
-
-        lastId.getAndSet(eventBatch.getTxid());
-        metaStore.updateAndInsertIfNotExist(
-            new SystemInfo(
-                SmartConstants.SMART_HDFS_LAST_INOTIFY_TXID, String.valueOf(lastId.get())));
         eventBatch = inotifyEventInputStream.poll();
       }
+      if (txid != lastId.get()) {
+        apply(events, txid);
+      }
     } catch (Throwable t) {
       LOG.error("Inotify Apply Events error", t);
     }
   }
 
+  private void apply(List<Event> events, long txid)
+      throws IOException, MetaStoreException, InterruptedException {
+    if (!events.isEmpty()) {
+      applier.apply(events.toArray(new Event[0]));
+    }
+    lastId.getAndSet(txid);
+    // Estimated number of transactions the applied events are behind NameNode
+    long txidLag = inotifyEventInputStream.getTxidsBehindEstimate();
+    metaStore.updateAndInsertIfNotExist(
+        new SystemInfo(
+            SmartConstants.SMART_HDFS_LAST_INOTIFY_TXID, String.valueOf(lastId.get())));
+    metaStore.updateAndInsertIfNotExist(
+        new SystemInfo(
+            SmartConstants.SMART_HDFS_INOTIFY_TXID_LAG, String.valueOf(txidLag)));
+  }
+
   public long getLastId() {
     return this.lastId.get();
   }
@@ -98,22 +98,8 @@ public static void init(SmartConf conf) {
   }
 
   public void startFetch() throws IOException {
-    try {
-      init(conf);
-      metaStore.deleteAllEcPolicies();
-      Map<Byte, String> idToPolicyName =
-          CompatibilityHelperLoader.getHelper().getErasureCodingPolicies(client);
-      if (idToPolicyName != null) {
-        ArrayList<ErasureCodingPolicyInfo> ecInfos = new ArrayList<>();
-        for (Byte id : idToPolicyName.keySet()) {
-          ecInfos.add(new ErasureCodingPolicyInfo(id, idToPolicyName.get(id)));
-        }
-        metaStore.insertEcPolicies(ecInfos);
-        LOG.info("Finished fetching all EC policies!");
-      }
-    } catch (MetaStoreException e) {
-      throw new IOException("Failed to clean and fetch EC policies!", e);
-    }
+    init(conf);
+    fetchErasureCodingPolicies();
 
     try {
       metaStore.deleteAllFileInfo();
@@ -134,6 +120,27 @@ public void startFetch() throws IOException {
     LOG.info("Started.");
   }
 
+  /**
+   * Replace EC policies in metastore with the ones supported by the cluster.
+   */
+  public void fetchErasureCodingPolicies() throws IOException {
+    try {
+      metaStore.deleteAllEcPolicies();
+      Map<Byte, String> idToPolicyName =
+          CompatibilityHelperLoader.getHelper().getErasureCodingPolicies(client);
+      if (idToPolicyName != null) {
+        ArrayList<ErasureCodingPolicyInfo> ecInfos = new ArrayList<>();
+        for (Byte id : idToPolicyName.keySet()) {
+          ecInfos.add(new ErasureCodingPolicyInfo(id, idToPolicyName.get(id)));
+        }
+        metaStore.insertEcPolicies(ecInfos);
+        LOG.info("Finished fetching all EC policies!");
+      }
+    } catch (MetaStoreException e) {
+      throw new IOException("Failed to clean and fetch EC policies!", e);
+    }
+  }
+
   public static void init(String dir) {
     IngestionTask.init(dir);
   }
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.FileContainerInfo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestCompactInputStream extends MiniClusterHarness {
+  private static final String CONTAINER_FILE = "/test/container_file";
+  private static final int FILE_LENGTH = 40;
+  private static final int FILES = 20;
+
+  private byte[] createContainerFile() throws Exception {
+    byte[] data = new byte[FILE_LENGTH * FILES];
+    new Random(2018).nextBytes(data);
+    try (FSDataOutputStream out = dfs.create(new Path(CONTAINER_FILE), (short) 1)) {
+      out.write(data);
+    }
+    return data;
+  }
+
+  private DFSInputStream openSmallFile(int index) throws Exception {
+    return SmartInputStreamFactory.create(dfsClient, "/test/file_" + index, true,
+        new CompactFileState("/test/file_" + index, new FileContainerInfo(
+            CONTAINER_FILE, (long) index * FILE_LENGTH, FILE_LENGTH)));
+  }
+
+  @Test
+  public void testReadSmallFile() throws Exception {
+    byte[] data = createContainerFile();
+    byte[] expected = Arrays.copyOfRange(data, 3 * FILE_LENGTH, 4 * FILE_LENGTH);
+    try (DFSInputStream in = openSmallFile(3)) {
+      Assert.assertEquals(FILE_LENGTH, in.getFileLength());
+      Assert.assertEquals(0, in.getPos());
+      Assert.assertEquals(FILE_LENGTH, in.available());
+
+      byte[] buf = new byte[FILE_LENGTH * 2];
+      int read = 0;
+      int n;
+      while ((n = in.read(buf, read, buf.length - read)) > 0) {
+        read += n;
+      }
+      Assert.assertEquals(FILE_LENGTH, read);
+      Assert.assertArrayEquals(expected, Arrays.copyOf(buf, read));
+      Assert.assertEquals(FILE_LENGTH, in.getPos());
+      Assert.assertEquals(-1, in.read());
+
+      in.seek(10);
+      Assert.assertEquals(10, in.getPos());
+      Assert.assertEquals(expected[10] & 0xff, in.read());
+
+      buf = new byte[15];
+      Assert.assertEquals(5, in.read(FILE_LENGTH - 5, buf, 0, 15));
+      Assert.assertArrayEquals(Arrays.copyOfRange(expected, FILE_LENGTH - 5, FILE_LENGTH),
+          Arrays.copyOf(buf, 5));
+      Assert.assertEquals(-1, in.read(FILE_LENGTH, buf, 0, 15));
+      // Positional reads don't move the stream
+      Assert.assertEquals(11, in.getPos());
+    }
+  }
+
+  @Test
+  public void testRandomPread() throws Exception {
+    byte[] data = createContainerFile();
+    Random random = new Random(2018);
+    for (int index : new int[]{0, 5, FILES - 1}) {
+      byte[] expected = Arrays.copyOfRange(
+          data, index * FILE_LENGTH, (index + 1) * FILE_LENGTH);
+      try (DFSInputStream in = openSmallFile(index)) {
+        for (int i = 0; i < 100; i++) {
+          int pos = random.nextInt(FILE_LENGTH);
+          byte[] buf = new byte[random.nextInt(FILE_LENGTH) + 1];
+          int read = in.read(pos, buf, 0, buf.length);
+          // Bytes of the neighbouring files in container are never read
+          Assert.assertEquals(Math.min(buf.length, FILE_LENGTH - pos), read);
+          Assert.assertArrayEquals(Arrays.copyOfRange(expected, pos, pos + read),
+              Arrays.copyOf(buf, read));
+          Assert.assertEquals(0, in.getPos());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TestCompressionCodec {
+  private static final String CODEC = CompressionCodec.ZLIB;
+
+  @Test
+  public void testReuseCompressor() throws Exception {
+    // Distinct buffer size from other tests, so that the pool starts empty
+    int bufferSize = 1024 * 1024 + 1;
+    long hits = CompressionCodec.getPoolHits();
+    long misses = CompressionCodec.getPoolMisses();
+    long leased = CompressionCodec.getLeasedCompressors();
+
+    Compressor compressor = CompressionCodec.getCompressor(bufferSize, CODEC);
+    Assert.assertEquals(misses + 1, CompressionCodec.getPoolMisses());
+    Assert.assertEquals(leased + 1, CompressionCodec.getLeasedCompressors());
+    CompressionCodec.returnCompressor(compressor, bufferSize, CODEC);
+    Assert.assertEquals(leased, CompressionCodec.getLeasedCompressors());
+
+    Assert.assertSame(compressor, CompressionCodec.getCompressor(bufferSize, CODEC));
+    Assert.assertEquals(hits + 1, CompressionCodec.getPoolHits());
+    // Compressors of other buffer sizes are not shared
+    Compressor other = CompressionCodec.getCompressor(bufferSize + 1, CODEC);
+    Assert.assertNotSame(compressor, other);
+    Assert.assertEquals(misses + 2, CompressionCodec.getPoolMisses());
+    CompressionCodec.returnCompressor(compressor, bufferSize, CODEC);
+    CompressionCodec.returnCompressor(other, bufferSize + 1, CODEC);
+  }
+
+  @Test
+  public void testBoundedDecompressorPool() throws Exception {
+    int bufferSize = 1024 * 1024 + 3;
+    List<Decompressor> decompressors = new ArrayList<>();
+    long leased = CompressionCodec.getLeasedDecompressors();
+    for (int i = 0; i < CompressionCodec.MAX_POOLED_PER_KEY + 4; i++) {
+      decompressors.add(CompressionCodec.getDecompressor(bufferSize, CODEC));
+    }
+    Assert.assertEquals(leased + CompressionCodec.MAX_POOLED_PER_KEY + 4,
+        CompressionCodec.getLeasedDecompressors());
+    for (Decompressor decompressor : decompressors) {
+      CompressionCodec.returnDecompressor(decompressor, bufferSize, CODEC);
+    }
+    Assert.assertEquals(leased, CompressionCodec.getLeasedDecompressors());
+
+    // Only the decompressors kept in the pool are reused
+    long misses = CompressionCodec.getPoolMisses();
+    for (int i = 0; i < CompressionCodec.MAX_POOLED_PER_KEY + 1; i++) {
+      CompressionCodec.getDecompressor(bufferSize, CODEC);
+    }
+    Assert.assertEquals(misses + 1, CompressionCodec.getPoolMisses());
+  }
+
+  @Test
+  public void testEndRejectedAndEvicted() throws Exception {
+    int bufferSize = 2 * 1024 * 1024;
+    List<Compressor> compressors = new ArrayList<>();
+    for (int i = 0; i < CompressionCodec.MAX_POOLED_PER_KEY + 1; i++) {
+      Compressor compressor = mock(Compressor.class);
+      compressors.add(compressor);
+      CompressionCodec.returnCompressor(compressor, bufferSize, CODEC);
+    }
+    // Rejected by the full pool
+    verify(compressors.get(CompressionCodec.MAX_POOLED_PER_KEY)).end();
+    verify(compressors.get(0), never()).end();
+
+    // Evicted with the least recently used buffer size
+    List<Compressor> others = new ArrayList<>();
+    for (int i = 1; i < CompressionCodec.MAX_POOL_KEYS; i++) {
+      Compressor other = mock(Compressor.class);
+      others.add(other);
+      CompressionCodec.returnCompressor(other, bufferSize + i, CODEC);
+    }
+    verify(compressors.get(0), never()).end();
+    CompressionCodec.returnCompressor(mock(Compressor.class),
+        bufferSize + CompressionCodec.MAX_POOL_KEYS, CODEC);
+    for (int i = 0; i < CompressionCodec.MAX_POOLED_PER_KEY; i++) {
+      verify(compressors.get(i)).end();
+    }
+    verify(others.get(0), never()).end();
+    long misses = CompressionCodec.getPoolMisses();
+    CompressionCodec.returnCompressor(
+        CompressionCodec.getCompressor(bufferSize, CODEC), bufferSize, CODEC);
+    Assert.assertEquals(misses + 1, CompressionCodec.getPoolMisses());
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.commons.lang.mutable.MutableFloat;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompressionFileState;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestSmartCompressionInputStream extends MiniClusterHarness {
+  private static final String FILE = "/test/compressed_file";
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private byte[] data;
+  private CompressionFileState fileState;
+
+  @Override
+  @Before
+  public void init() throws Exception {
+    DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    super.init();
+  }
+
+  private void createCompressedFile(int length) throws Exception {
+    // Compressible data, with a small alphabet
+    data = new byte[length];
+    Random random = new Random(2018);
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+    fileState = new CompressionFileState(FILE, BUFFER_SIZE, CompressionCodec.ZLIB);
+    fileState.setOriginalLength(length);
+    try (FSDataOutputStream out = dfs.create(new Path(FILE), (short) 1)) {
+      new SmartCompressorStream(new ByteArrayInputStream(data), out, BUFFER_SIZE,
+          fileState, new MutableFloat()).convert();
+    }
+    fileState.setCompressedLength(dfs.getFileStatus(new Path(FILE)).getLen());
+  }
+
+  private DFSInputStream open(int cacheTrunks) throws Exception {
+    DFSClient client = new DFSClient(dfs.getUri(), dfs.getConf());
+    client.getConfiguration().setInt(
+        SmartConfKeys.SMART_COMPRESSION_READ_CACHE_TRUNKS, cacheTrunks);
+    return SmartInputStreamFactory.create(client, FILE, true, fileState);
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    createCompressedFile(3 * BUFFER_SIZE + 123);
+    try (DFSInputStream in = open(2)) {
+      byte[] buf = new byte[data.length + 10];
+      int read = 0;
+      int n;
+      while ((n = in.read(buf, read, buf.length - read)) > 0) {
+        read += n;
+      }
+      Assert.assertEquals(data.length, read);
+      Assert.assertArrayEquals(data, Arrays.copyOf(buf, read));
+      Assert.assertEquals(-1, in.read());
+
+      in.seek(BUFFER_SIZE - 5);
+      Assert.assertEquals(BUFFER_SIZE - 5, in.getPos());
+      buf = new byte[10];
+      Assert.assertEquals(10, in.read(buf, 0, 10));
+      Assert.assertArrayEquals(Arrays.copyOfRange(data, BUFFER_SIZE - 5, BUFFER_SIZE + 5), buf);
+      Assert.assertEquals(BUFFER_SIZE + 5, in.getPos());
+
+      // Positional reads across trunks, which don't move the stream
+      buf = new byte[2 * BUFFER_SIZE];
+      Assert.assertEquals(buf.length, in.read(100, buf, 0, buf.length));
+      Assert.assertArrayEquals(Arrays.copyOfRange(data, 100, 100 + buf.length), buf);
+      Assert.assertEquals(23, in.read(data.length - 23, buf, 0, buf.length));
+      Assert.assertEquals(-1, in.read(data.length, buf, 0, buf.length));
+      Assert.assertEquals(BUFFER_SIZE + 5, in.getPos());
+    }
+  }
+
+  @Test
+  public void testSmallReadsWithoutCache() throws Exception {
+    createCompressedFile(4 * BUFFER_SIZE);
+    try (DFSInputStream in = open(0)) {
+      long borrowsBefore = CompressionCodec.getPoolHits() + CompressionCodec.getPoolMisses();
+      byte[] buf = new byte[1000];
+      int read = 0;
+      int n;
+      while ((n = in.read(buf, 0, buf.length)) > 0) {
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, read, read + n),
+            Arrays.copyOf(buf, n));
+        read += n;
+      }
+      Assert.assertEquals(data.length, read);
+      // A decompressor is borrowed for each decompressed trunk
+      long borrows = CompressionCodec.getPoolHits() + CompressionCodec.getPoolMisses()
+          - borrowsBefore;
+      Assert.assertEquals(4, borrows);
+    }
+  }
+
+  @Test
+  public void testConcurrentPread() throws Exception {
+    createCompressedFile(8 * BUFFER_SIZE);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // With no cached trunk, and with fewer cached trunks than readers
+      for (int cacheTrunks : new int[]{0, 2}) {
+        try (DFSInputStream in = open(cacheTrunks)) {
+          List<Future<?>> futures = new ArrayList<>();
+          for (int i = 0; i < 4; i++) {
+            final long seed = i;
+            futures.add(executor.submit(() -> {
+              Random random = new Random(seed);
+              byte[] buf = new byte[1000];
+              for (int j = 0; j < 200; j++) {
+                int pos = random.nextInt(data.length - buf.length);
+                in.readFully(pos, buf);
+                Assert.assertArrayEquals(Arrays.copyOfRange(data, pos, pos + buf.length), buf);
+              }
+              return null;
+            }));
+          }
+          for (Future<?> future : futures) {
+            future.get();
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
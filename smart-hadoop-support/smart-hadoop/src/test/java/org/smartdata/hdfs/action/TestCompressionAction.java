@@ -17,13 +17,22 @@
  */
 package org.smartdata.hdfs.action;
 
+import org.apache.commons.lang.mutable.MutableFloat;
+import org.apache.hadoop.hdfs.CompressionCodec;
+import org.apache.hadoop.hdfs.SmartCompressorStream;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompressionFileState;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.HashMap;
@@ -108,6 +117,48 @@ public void testExecute() throws Exception {
     }
   }
 
+  @Test
+  public void testParallelCompression() throws Exception {
+    File file = createLocalFile(10 * 1024 * 1024 + 123);
+    int bufferSize = 1024 * 1024;
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    CompressionFileState expectedState = compressLocalFile(file, bufferSize, 1, expected);
+    for (int threads : new int[]{2, 4}) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      CompressionFileState state = compressLocalFile(file, bufferSize, threads, compressed);
+      Assert.assertArrayEquals(expected.toByteArray(), compressed.toByteArray());
+      Assert.assertArrayEquals(expectedState.getOriginalPos(), state.getOriginalPos());
+      Assert.assertArrayEquals(expectedState.getCompressedPos(), state.getCompressedPos());
+    }
+    Assert.assertEquals(11, expectedState.getOriginalPos().length);
+  }
+
+  private CompressionFileState compressLocalFile(File file, int bufferSize, int threads,
+      OutputStream out) throws IOException {
+    CompressionFileState state = new CompressionFileState(
+        file.getPath(), bufferSize, CompressionCodec.ZLIB);
+    state.setOriginalLength(file.length());
+    try (InputStream in = new FileInputStream(file)) {
+      new SmartCompressorStream(in, out, bufferSize, state, new MutableFloat(0.0F),
+          threads).convert();
+    }
+    return state;
+  }
+
+  private File createLocalFile(int size) throws IOException {
+    File file = File.createTempFile("compression", ".dat");
+    file.deleteOnExit();
+    try (OutputStream out = new FileOutputStream(file)) {
+      int written = 0;
+      while (written < size) {
+        byte[] bytes = BytesGenerator.get(Math.min(1024 * 1024, size - written));
+        out.write(bytes);
+        written += bytes.length;
+      }
+    }
+    return file;
+  }
+
   static final class BytesGenerator {
     private static final byte[] CACHE = new byte[] { 0x0, 0x1, 0x2, 0x3, 0x4,
       0x5, 0x6, 0x7, 0x8, 0x9, 0xA, 0xB, 0xC, 0xD, 0xE, 0xF };
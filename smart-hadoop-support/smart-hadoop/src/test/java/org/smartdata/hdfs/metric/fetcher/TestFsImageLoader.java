@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.model.FileInfo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.smartdata.conf.SmartConfKeys.SMART_IGNORE_DIRS_KEY;
+
+public class TestFsImageLoader {
+  private final Map<String, FileInfo> filesInDB = new HashMap<>();
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private MetaStore metaStore;
+
+  @Before
+  public void setUp() throws Exception {
+    SmartConf conf = new SmartConf();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    dfs = cluster.getFileSystem();
+
+    dfs.mkdirs(new Path("/user/dir"), new FsPermission("750"));
+    DFSTestUtil.createFile(dfs, new Path("/user/file1"), 1500, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, new Path("/user/dir/file2"), 0, (short) 1, 0);
+    dfs.setStoragePolicy(new Path("/user/file1"), "COLD");
+    dfs.setOwner(new Path("/user/dir"), "user1", "group1");
+    dfs.mkdirs(new Path("/tmp"));
+    DFSTestUtil.createFile(dfs, new Path("/tmp/file3"), 10, (short) 1, 0);
+
+    // Files renamed or deleted after a snapshot
+    dfs.mkdirs(new Path("/snap"));
+    DFSTestUtil.createFile(dfs, new Path("/snap/renamed"), 10, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, new Path("/snap/deleted"), 10, (short) 1, 0);
+    dfs.allowSnapshot(new Path("/snap"));
+    dfs.createSnapshot(new Path("/snap"), "s1");
+    dfs.rename(new Path("/snap/renamed"), new Path("/user/dir/file4"));
+    dfs.delete(new Path("/snap/deleted"), false);
+
+    dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_ENTER);
+    dfs.saveNamespace();
+    dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE);
+
+    filesInDB.clear();
+    metaStore = mock(MetaStore.class);
+    doAnswer(invocation -> {
+      for (FileInfo fileInfo : (FileInfo[]) invocation.getArguments()[0]) {
+        filesInDB.put(fileInfo.getPath(), fileInfo);
+      }
+      return null;
+    }).when(metaStore).insertFiles(any(FileInfo[].class));
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testLoadFsImage() throws Exception {
+    File imageFile = getImageFile();
+    FsImageLoader loader = new FsImageLoader(imageFile, metaStore, new SmartConf());
+    Assert.assertEquals(imageFile.getName(), "fsimage_" + String.format(
+        "%019d", loader.getTransactionId()));
+    Assert.assertEquals(0, loader.getProgress(), 0);
+    loader.load();
+    Assert.assertEquals(1, loader.getProgress(), 0);
+
+    verify(metaStore).deleteAllFileInfo();
+    Assert.assertEquals(Sets.newHashSet("/", "/user", "/user/dir", "/user/file1",
+        "/user/dir/file2", "/user/dir/file4", "/tmp", "/tmp/file3", "/snap"),
+        filesInDB.keySet());
+    for (FileInfo fileInfo : filesInDB.values()) {
+      HdfsFileStatus status = dfs.getClient().getFileInfo(fileInfo.getPath());
+      Assert.assertEquals(status.getFileId(), fileInfo.getFileId());
+      Assert.assertEquals(status.getLen(), fileInfo.getLength());
+      Assert.assertEquals(status.isDir(), fileInfo.isdir());
+      Assert.assertEquals(status.getReplication(), fileInfo.getBlockReplication());
+      Assert.assertEquals(status.getBlockSize(), fileInfo.getBlocksize());
+      Assert.assertEquals(status.getModificationTime(), fileInfo.getModificationTime());
+      Assert.assertEquals(status.getPermission().toShort(), fileInfo.getPermission());
+      Assert.assertEquals(status.getOwner(), fileInfo.getOwner());
+      Assert.assertEquals(status.getGroup(), fileInfo.getGroup());
+      if (!status.isDir()) {
+        Assert.assertEquals(status.getAccessTime(), fileInfo.getAccessTime());
+        Assert.assertEquals(status.getStoragePolicy(), fileInfo.getStoragePolicy());
+      }
+    }
+  }
+
+  @Test
+  public void testLoadIgnoredDirs() throws Exception {
+    SmartConf conf = new SmartConf();
+    conf.set(SMART_IGNORE_DIRS_KEY, "/tmp,/user/dir");
+    new FsImageLoader(getImageFile(), metaStore, conf).load();
+    Assert.assertEquals(Sets.newHashSet("/", "/user", "/user/file1", "/snap"),
+        filesInDB.keySet());
+
+    filesInDB.clear();
+    conf = new SmartConf();
+    conf.setCoverDir(Lists.newArrayList("/user"));
+    new FsImageLoader(getImageFile(), metaStore, conf).load();
+    Assert.assertEquals(Sets.newHashSet("/user", "/user/dir", "/user/file1",
+        "/user/dir/file2", "/user/dir/file4"), filesInDB.keySet());
+  }
+
+  private File getImageFile() throws Exception {
+    File nameDir = new File(cluster.getNameDirs(0).iterator().next());
+    return FsImageLoader.getImageFile(new File(nameDir, "current").getPath());
+  }
+}
@@ -29,6 +29,7 @@
 import org.smartdata.conf.SmartConf;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
 import org.smartdata.hdfs.HadoopUtil;
+import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.TestDaoBase;
 import org.smartdata.model.BackUpInfo;
 import org.smartdata.model.FileDiff;
@@ -302,6 +303,79 @@ public void testApplierRenameEvent() throws Exception {
     Assert.assertTrue(info4 == null && info5 != null);
   }
 
+  @Test
+  public void testApplierCoalescedEvents() throws Exception {
+    DFSClient client = Mockito.mock(DFSClient.class);
+    InotifyEventApplier applier = new InotifyEventApplier(metaStore, client);
+    metaStore.insertFiles(new FileInfo[]{
+        HadoopUtil.convertFileStatus(getDummyDirStatus("/dir", 100), "/dir"),
+        HadoopUtil.convertFileStatus(getDummyFileStatus("/dir/old", 101), "/dir/old")});
+    Mockito.when(client.getFileInfo("/dir1")).thenReturn(getDummyDirStatus("/dir1", 100));
+    Mockito.when(client.getFileInfo("/dir1/old")).thenReturn(
+        getDummyFileStatus("/dir1/old", 200));
+    Mockito.when(client.getFileInfo("/dir1/new")).thenReturn(
+        getDummyFileStatus("/dir1/new", 300));
+
+    List<Event> events = new ArrayList<>();
+    // Staging file renamed over an existing one
+    events.add(getFileCreateEvent("/tmp1"));
+    events.add(new Event.CloseEvent("/tmp1", 1024, 1));
+    events.add(new Event.RenameEvent.Builder().srcPath("/tmp1").dstPath("/dir/old").build());
+    // Temporary file
+    events.add(getFileCreateEvent("/tmp2"));
+    events.add(new Event.CloseEvent("/tmp2", 1024, 1));
+    events.add(new Event.UnlinkEvent.Builder().path("/tmp2").build());
+    // File in a renamed dir
+    events.add(getFileCreateEvent("/dir/new"));
+    events.add(new Event.RenameEvent.Builder().srcPath("/dir").dstPath("/dir1").build());
+    applier.apply(events);
+
+    Mockito.verify(client, Mockito.never()).getFileInfo("/tmp1");
+    Mockito.verify(client, Mockito.never()).getFileInfo("/tmp2");
+    Mockito.verify(client, Mockito.never()).getFileInfo("/dir/old");
+    Mockito.verify(client, Mockito.never()).getFileInfo("/dir/new");
+    Assert.assertNull(metaStore.getFile("/tmp1"));
+    Assert.assertNull(metaStore.getFile("/tmp2"));
+    Assert.assertNull(metaStore.getFile("/dir"));
+    Assert.assertNull(metaStore.getFile("/dir/old"));
+    Assert.assertEquals(100, metaStore.getFile("/dir1").getFileId());
+    Assert.assertEquals(200, metaStore.getFile("/dir1/old").getFileId());
+    Assert.assertEquals(300, metaStore.getFile("/dir1/new").getFileId());
+  }
+
+  @Test
+  public void testApplierFailedEvent() throws Exception {
+    DFSClient client = Mockito.mock(DFSClient.class);
+    MetaStore failingMetaStore = Mockito.spy(metaStore);
+    Mockito.doThrow(new IllegalStateException("Injected failure"))
+        .when(failingMetaStore).unlinkFile("/bad", false);
+    InotifyEventApplier applier = new InotifyEventApplier(failingMetaStore, client);
+    metaStore.insertFiles(new FileInfo[]{
+        HadoopUtil.convertFileStatus(getDummyFileStatus("/bad", 100), "/bad"),
+        HadoopUtil.convertFileStatus(getDummyFileStatus("/good", 101), "/good")});
+    Mockito.when(client.getFileInfo("/new")).thenReturn(getDummyFileStatus("/new", 200));
+
+    // Only the failed event is lost, not the others applied together with it
+    applier.apply(Arrays.asList(
+        new Event.UnlinkEvent.Builder().path("/bad").build(),
+        new Event.UnlinkEvent.Builder().path("/good").build(),
+        getFileCreateEvent("/new")));
+    Assert.assertNotNull(metaStore.getFile("/bad"));
+    Assert.assertNull(metaStore.getFile("/good"));
+    Assert.assertEquals(200, metaStore.getFile("/new").getFileId());
+  }
+
+  private Event.CreateEvent getFileCreateEvent(String path) {
+    return new Event.CreateEvent.Builder()
+        .iNodeType(Event.CreateEvent.INodeType.FILE)
+        .path(path)
+        .ownerName("owner")
+        .groupName("group")
+        .perms(new FsPermission("777"))
+        .replication(1)
+        .build();
+  }
+
   private HdfsFileStatus getDummyFileStatus(String file, long fid) {
     return doGetDummyStatus(file, fid, false);
   }
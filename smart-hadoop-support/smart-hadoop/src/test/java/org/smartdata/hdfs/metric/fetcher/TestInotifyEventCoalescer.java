@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.model.PathChecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestInotifyEventCoalescer {
+  private InotifyEventCoalescer coalescer;
+
+  @Before
+  public void setUp() {
+    SmartConf conf = new SmartConf();
+    conf.set(SmartConfKeys.SMART_IGNORE_DIRS_KEY, "/trash");
+    coalescer = new InotifyEventCoalescer(new PathChecker(conf));
+  }
+
+  @Test
+  public void testCollapseFileEvents() {
+    List<Event> events = coalescer.coalesce(Arrays.asList(
+        create("/file", false),
+        new Event.CloseEvent("/file", 10, 1),
+        new Event.AppendEvent.Builder().path("/file").build(),
+        new Event.CloseEvent("/file", 20, 2),
+        new Event.MetadataUpdateEvent.Builder().path("/file")
+            .metadataType(Event.MetadataUpdateEvent.MetadataType.REPLICATION)
+            .replication(2).build(),
+        new Event.CloseEvent("/other", 20, 2)));
+    Assert.assertEquals(Arrays.asList("CLOSE /other", "CREATE /file"), describe(events));
+  }
+
+  @Test
+  public void testDropTemporaryFiles() {
+    List<Event> events = coalescer.coalesce(Arrays.asList(
+        create("/tmp", false),
+        new Event.CloseEvent("/tmp", 10, 1),
+        unlink("/tmp"),
+        // May replace a stored file, so the deletion is kept
+        create("/file", true),
+        unlink("/file"),
+        create("/dir/file", false),
+        unlink("/dir"),
+        create("/file2", false),
+        rename("/file2", "/trash/file2")));
+    Assert.assertEquals(Arrays.asList("UNLINK /file", "UNLINK /dir"), describe(events));
+  }
+
+  @Test
+  public void testRenameCreatedFiles() {
+    List<Event> events = coalescer.coalesce(Arrays.asList(
+        // The stored file replaced by the creation is removed
+        create("/tmp", true),
+        rename("/tmp", "/out"),
+        create("/staging/part-0", false),
+        new Event.CloseEvent("/staging/part-0", 10, 1),
+        create("/staging/part-1", true),
+        rename("/staging/part-0", "/staging/part-1"),
+        rename("/staging", "/output"),
+        create("/output/part-2", false),
+        rename("/output/part-2", "/file")));
+    Assert.assertEquals(Arrays.asList("UNLINK /tmp", "RENAME /staging /output",
+        "CREATE /file", "CREATE /out", "CREATE /output/part-1"), describe(events));
+  }
+
+  private static Event create(String path, boolean overwrite) {
+    return new Event.CreateEvent.Builder()
+        .iNodeType(Event.CreateEvent.INodeType.FILE)
+        .path(path)
+        .perms(new FsPermission("755"))
+        .overwrite(overwrite)
+        .build();
+  }
+
+  private static Event rename(String src, String dest) {
+    return new Event.RenameEvent.Builder().srcPath(src).dstPath(dest).build();
+  }
+
+  private static Event unlink(String path) {
+    return new Event.UnlinkEvent.Builder().path(path).build();
+  }
+
+  private static List<String> describe(List<Event> events) {
+    List<String> descriptions = new ArrayList<>();
+    for (Event event : events) {
+      switch (event.getEventType()) {
+        case CREATE:
+          descriptions.add("CREATE " + ((Event.CreateEvent) event).getPath());
+          break;
+        case CLOSE:
+          descriptions.add("CLOSE " + ((Event.CloseEvent) event).getPath());
+          break;
+        case RENAME:
+          descriptions.add("RENAME " + ((Event.RenameEvent) event).getSrcPath()
+              + " " + ((Event.RenameEvent) event).getDstPath());
+          break;
+        case UNLINK:
+          descriptions.add("UNLINK " + ((Event.UnlinkEvent) event).getPath());
+          break;
+        default:
+          descriptions.add(event.getEventType().name());
+      }
+    }
+    return descriptions;
+  }
+}
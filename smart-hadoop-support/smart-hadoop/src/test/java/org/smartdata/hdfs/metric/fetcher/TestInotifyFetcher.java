@@ -26,10 +26,12 @@
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.junit.Assert;
 import org.junit.Test;
 import org.smartdata.SmartConstants;
@@ -40,10 +42,12 @@
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.SqliteTestDaoBase;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -53,7 +57,7 @@ public class TestInotifyFetcher extends SqliteTestDaoBase {
   private static final int BLOCK_SIZE = 1024;
 
   private static class EventApplierForTest extends InotifyEventApplier {
-    private final List<Event> events = new ArrayList<>();
+    private final List<Event> events = Collections.synchronizedList(new ArrayList<>());
 
     public EventApplierForTest(MetaStore metaStore, DFSClient client) {
       super(metaStore, client);
@@ -210,6 +214,50 @@ public void run() {
     }
   }
 
+  @Test(timeout = 60000)
+  public void testFetcherWithFsImage() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    MiniDFSCluster cluster = MiniClusterFactory.get().create(1, conf);
+    try {
+      cluster.waitActive();
+      DistributedFileSystem dfs = cluster.getFileSystem();
+      DFSClient client = dfs.getClient();
+      DFSTestUtil.createFile(dfs, new Path("/file_in_image"), BLOCK_SIZE, (short) 1, 0L);
+      dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_ENTER);
+      dfs.saveNamespace();
+      dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE);
+      DFSTestUtil.createFile(dfs, new Path("/file_after_image"), BLOCK_SIZE, (short) 1, 0L);
+
+      File nameDir = new File(cluster.getNameDirs(0).iterator().next());
+      SmartConf smartConf = new SmartConf();
+      smartConf.set(SmartConfKeys.SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_KEY,
+          new File(nameDir, "current").getPath());
+      EventApplierForTest applierForTest = new EventApplierForTest(metaStore, client);
+      InotifyEventFetcher fetcher = new InotifyEventFetcher(client, metaStore,
+          Executors.newScheduledThreadPool(2), applierForTest, () -> null, smartConf);
+      fetcher.start();
+      DFSTestUtil.createFile(dfs, new Path("/file_after_start"), BLOCK_SIZE, (short) 1, 0L);
+
+      // The events after the image are applied, whether tailed during the load or not
+      List<String> created = new ArrayList<>();
+      while (!created.contains("/file_after_start")) {
+        Thread.sleep(100);
+        created.clear();
+        for (Event event : new ArrayList<>(applierForTest.getEvents())) {
+          if (event.getEventType() == Event.EventType.CREATE) {
+            created.add(((Event.CreateEvent) event).getPath());
+          }
+        }
+      }
+      Assert.assertEquals(Arrays.asList("/file_after_image", "/file_after_start"), created);
+      Assert.assertNotNull(metaStore.getFile("/file_in_image"));
+      fetcher.stop();
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   public HdfsDataOutputStream append(DFSClient client, String src, int bufferSize)
       throws IOException {
     return (HdfsDataOutputStream) CompatibilityHelperLoader.getHelper()
@@ -37,8 +37,16 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * This class decide which compressor type for SmartCompressorStream 
@@ -51,9 +59,25 @@ public class CompressionCodec {
   public static final String ZLIB = "Zlib";
   public static final List<String> CODEC_LIST = Arrays.asList(LZ4, BZIP2, SNAPPY, ZLIB);
 
+  // Max number of idle compressors or decompressors kept for a codec and buffer size
+  public static final int MAX_POOLED_PER_KEY = 16;
+  // Max number of codec and buffer size pairs kept in a pool, the least
+  // recently used one is evicted beyond it
+  public static final int MAX_POOL_KEYS = 16;
+
   private static Configuration conf = new Configuration();
   private static boolean nativeCodeLoaded = NativeCodeLoader.isNativeCodeLoaded();
 
+  // Idle compressors and decompressors, by codec and buffer size
+  private static final CodecPool<Compressor> compressorPool =
+      new CodecPool<>(Compressor::end);
+  private static final CodecPool<Decompressor> decompressorPool =
+      new CodecPool<>(Decompressor::end);
+  private static final AtomicLong poolHits = new AtomicLong();
+  private static final AtomicLong poolMisses = new AtomicLong();
+  private static final AtomicLong leasedCompressors = new AtomicLong();
+  private static final AtomicLong leasedDecompressors = new AtomicLong();
+
   public static boolean getNativeCodeLoaded() {
     return nativeCodeLoaded;
   }
@@ -175,4 +199,153 @@ public static Decompressor creatDecompressor(int bufferSize, String codec) throw
         throw new IOException("Unsupported codec: " + codec);
     }
   }
+
+  /**
+   * Borrow a compressor from the pool, or create one if there is no idle
+   * compressor for the codec and buffer size. It should be returned by
+   * {@link #returnCompressor} with the same codec and buffer size.
+   */
+  public static Compressor getCompressor(int bufferSize, String codec) throws IOException {
+    Compressor compressor = compressorPool.poll(getPoolKey(bufferSize, codec));
+    if (compressor == null) {
+      compressor = createCompressor(bufferSize, codec);
+    }
+    leasedCompressors.incrementAndGet();
+    return compressor;
+  }
+
+  /**
+   * Return a compressor to the pool, it is ended if the pool is full.
+   * Compressors evicted with their buffer size are ended too.
+   */
+  public static void returnCompressor(Compressor compressor, int bufferSize, String codec) {
+    if (compressor == null) {
+      return;
+    }
+    leasedCompressors.decrementAndGet();
+    compressor.reset();
+    compressorPool.offer(getPoolKey(bufferSize, codec), compressor);
+  }
+
+  /**
+   * Borrow a decompressor from the pool, or create one if there is no idle
+   * decompressor for the codec and buffer size. It should be returned by
+   * {@link #returnDecompressor} with the same codec and buffer size.
+   */
+  public static Decompressor getDecompressor(int bufferSize, String codec) throws IOException {
+    Decompressor decompressor = decompressorPool.poll(getPoolKey(bufferSize, codec));
+    if (decompressor == null) {
+      decompressor = creatDecompressor(bufferSize, codec);
+    }
+    leasedDecompressors.incrementAndGet();
+    return decompressor;
+  }
+
+  /**
+   * Return a decompressor to the pool, it is ended if the pool is full.
+   * Decompressors evicted with their buffer size are ended too.
+   */
+  public static void returnDecompressor(Decompressor decompressor, int bufferSize,
+      String codec) {
+    if (decompressor == null) {
+      return;
+    }
+    leasedDecompressors.decrementAndGet();
+    decompressor.reset();
+    decompressorPool.offer(getPoolKey(bufferSize, codec), decompressor);
+  }
+
+  /**
+   * Get the number of borrows served by an idle compressor or decompressor.
+   */
+  public static long getPoolHits() {
+    return poolHits.get();
+  }
+
+  /**
+   * Get the number of borrows which created a compressor or decompressor.
+   */
+  public static long getPoolMisses() {
+    return poolMisses.get();
+  }
+
+  /**
+   * Get the number of compressors borrowed and not returned.
+   */
+  public static long getLeasedCompressors() {
+    return leasedCompressors.get();
+  }
+
+  /**
+   * Get the number of decompressors borrowed and not returned.
+   */
+  public static long getLeasedDecompressors() {
+    return leasedDecompressors.get();
+  }
+
+  private static String getPoolKey(int bufferSize, String codec) {
+    return codec + ":" + bufferSize;
+  }
+
+  /**
+   * Idle compressors or decompressors, by codec and buffer size. Both the
+   * number of keys and the number of instances per key are bounded, the
+   * instances not kept are ended to release their native resources.
+   */
+  private static class CodecPool<T> {
+    private final Consumer<T> ender;
+    // In access order, to evict the least recently used key
+    private final Map<String, Deque<T>> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    CodecPool(Consumer<T> ender) {
+      this.ender = ender;
+    }
+
+    T poll(String key) {
+      T pooled;
+      synchronized (this) {
+        Deque<T> queue = idle.get(key);
+        pooled = queue == null ? null : queue.pollFirst();
+      }
+      if (pooled == null) {
+        poolMisses.incrementAndGet();
+      } else {
+        poolHits.incrementAndGet();
+      }
+      return pooled;
+    }
+
+    void offer(String key, T instance) {
+      List<T> rejected;
+      synchronized (this) {
+        Deque<T> queue = idle.get(key);
+        if (queue == null) {
+          rejected = evictEldest();
+          queue = new ArrayDeque<>();
+          idle.put(key, queue);
+        } else {
+          rejected = new ArrayList<>();
+        }
+        if (queue.size() < MAX_POOLED_PER_KEY) {
+          queue.offerFirst(instance);
+        } else {
+          rejected.add(instance);
+        }
+      }
+      // Ended out of the lock
+      for (T ended : rejected) {
+        ender.accept(ended);
+      }
+    }
+
+    private List<T> evictEldest() {
+      List<T> evicted = new ArrayList<>();
+      if (idle.size() >= MAX_POOL_KEYS) {
+        Iterator<Deque<T>> iterator = idle.values().iterator();
+        evicted.addAll(iterator.next());
+        iterator.remove();
+      }
+      return evicted;
+    }
+  }
 }
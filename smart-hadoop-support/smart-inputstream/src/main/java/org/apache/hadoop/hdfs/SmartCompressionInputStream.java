@@ -21,6 +21,7 @@
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.model.CompressionFileState;
 import org.smartdata.model.CompressionTrunk;
 import org.smartdata.model.FileState;
@@ -29,12 +30,25 @@
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Input stream of a compressed file. Each read decompresses the whole
+ * compression trunks it covers, which are kept in a small LRU cache, so
+ * random reads within a trunk decompress it only once. The trunk under
+ * sequential read is kept apart from the cache, so that small reads don't
+ * decompress it again even when the cache is disabled. Positional reads
+ * don't take the stream lock, readers of different trunks decompress them
+ * in parallel.
+ */
 public class SmartCompressionInputStream extends SmartInputStream {
-  private Decompressor decompressor = null;
-  private byte[] buffer;
-  private boolean closed = false;
+  private final TrunkCache trunkCache;
+  private volatile boolean closed = false;
   private long pos = 0;
+  // The trunk under sequential read, guarded by the stream lock
+  private int currentTrunkIndex = -1;
+  private byte[] currentTrunk;
 
   private CompressionFileState compressionFileState;
   private final long originalLength;
@@ -48,10 +62,11 @@ public class SmartCompressionInputStream extends SmartInputStream {
       throw new IOException("Compression info cannot be fetched");
     }
     originalLength = compressionFileState.getOriginalLength();
-    int bufferSize = compressionFileState.getBufferSize();
-    this.buffer = new byte[bufferSize];
-    this.decompressor = CompressionCodec.creatDecompressor(bufferSize,
-        compressionFileState.getCompressionImpl());
+    // Fail fast if the codec is not available
+    returnDecompressor(getDecompressor());
+    trunkCache = new TrunkCache(dfsClient.getConfiguration().getInt(
+        SmartConfKeys.SMART_COMPRESSION_READ_CACHE_TRUNKS,
+        SmartConfKeys.SMART_COMPRESSION_READ_CACHE_TRUNKS_DEFAULT));
   }
 
   @Override
@@ -69,8 +84,10 @@ public synchronized int read(final byte b[], int off, int len) throws IOExceptio
       return 0;
     }
 
-    int n = decompress(b, off, len);
-    pos += n;
+    int n = readTrunks(pos, b, off, len, true);
+    if (n > 0) {
+      pos += n;
+    }
     return n;
   }
 
@@ -79,71 +96,149 @@ public synchronized int read(final ByteBuffer buf) throws IOException {
     return read(buf.array(), buf.position(), buf.remaining());
   }
 
+  /**
+   * Read from the given position without the stream lock, the position of
+   * the stream is not changed.
+   */
   @Override
   public int read(long position, byte[] buffer, int offset, int length)
       throws IOException {
-    seek(position);
-    return read(buffer, offset, length);
+    if ((offset | length | (offset + length) | (buffer.length - (offset + length))) < 0) {
+      throw new IndexOutOfBoundsException();
+    } else if (length == 0) {
+      return 0;
+    }
+    if (position < 0) {
+      throw new EOFException("Cannot read from negative offset");
+    }
+    return readTrunks(position, buffer, offset, length, false);
   }
 
   @Override
   public synchronized void close() throws IOException {
     super.close();
     this.closed = true;
+    trunkCache.clear();
+    currentTrunkIndex = -1;
+    currentTrunk = null;
   }
 
-  private int decompress(byte[] b, int off, int len) throws IOException {
+  /**
+   * Copy the original data from the given position, decompressing the
+   * trunks not cached.
+   *
+   * @param sequential whether called with the stream lock by a sequential
+   *                   read, which keeps the trunk it reads
+   * @return the number of bytes read, or -1 at the end of file
+   */
+  private int readTrunks(long position, byte[] b, int off, int len, boolean sequential)
+      throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (position >= originalLength) {
+      return -1;
+    }
     int n = 0;
-    while ((n = decompressor.decompress(b, off, len)) == 0) {
-      if (decompressor.needsInput()) {
-        int m;
-        try {
-          m = getCompressedData();
-        } catch (EOFException e) {
-          return -1;
+    while (n < len && position + n < originalLength) {
+      CompressionTrunk trunk = compressionFileState.locateCompressionTrunk(
+          false, position + n);
+      byte[] data;
+      if (sequential) {
+        if (currentTrunkIndex != trunk.getIndex()) {
+          currentTrunk = getTrunk(trunk);
+          currentTrunkIndex = trunk.getIndex();
         }
-        // Send the read data to the decompressor
-        decompressor.reset();
-        decompressor.setInput(buffer, 0, m);
+        data = currentTrunk;
+      } else {
+        data = getTrunk(trunk);
       }
+      int start = (int) (position + n - trunk.getOriginOffset());
+      int count = Math.min(len - n, data.length - start);
+      System.arraycopy(data, start, b, off + n, count);
+      n += count;
     }
-
-    // Note the no. of decompressed bytes read from 'current' block
-    //noUncompressedBytes += n;
-
     return n;
   }
 
-  private int getCompressedData() throws IOException {
-    // Get the size of the compressed chunk (always non-negative)
-    int len = rawReadInt();
+  private byte[] getTrunk(CompressionTrunk trunk) throws IOException {
+    byte[] data = trunkCache.get(trunk.getIndex());
+    if (data == null) {
+      // Concurrent readers of the same trunk may both decompress it
+      data = decompressTrunk(trunk);
+      trunkCache.put(trunk.getIndex(), data);
+    }
+    return data;
+  }
+
+  private byte[] decompressTrunk(CompressionTrunk trunk) throws IOException {
+    byte[] compressed = new byte[(int) trunk.getCompressedLength()];
+    readCompressedData(trunk.getCompressedOffset(), compressed);
+    byte[] data = new byte[(int) trunk.getOriginLength()];
 
-    // Read len bytes from underlying stream
-    if (len > buffer.length) {
-      buffer = new byte[len];
+    // Borrowed for each trunk, so that concurrent readers use their own
+    Decompressor decompressor = getDecompressor();
+    try {
+      decompressor.reset();
+      int in = 0;
+      int n = 0;
+      while (n < data.length) {
+        int count = decompressor.decompress(data, n, data.length - n);
+        if (count == 0 && !decompressor.needsInput() && decompressor.finished()) {
+          throw new EOFException("Unexpected end of compression trunk "
+              + trunk.getIndex());
+        }
+        if (count == 0 && decompressor.needsInput()) {
+          // The trunk is written as a sequence of length-prefixed blocks
+          if (in + 4 > compressed.length) {
+            throw new EOFException("Unexpected end of compression trunk "
+                + trunk.getIndex());
+          }
+          int blockLength = readInt(compressed, in);
+          in += 4;
+          if (blockLength < 0 || in + blockLength > compressed.length) {
+            throw new IOException("Corrupted compression trunk " + trunk.getIndex());
+          }
+          // A block continues the compressed stream unless the last one finished it
+          if (decompressor.finished()) {
+            decompressor.reset();
+          }
+          decompressor.setInput(compressed, in, blockLength);
+          in += blockLength;
+        }
+        n += count;
+      }
+    } finally {
+      returnDecompressor(decompressor);
     }
-    int n = 0, off = 0;
-    while (n < len) {
-      int count = super.read(buffer, off + n, len - n);
+    return data;
+  }
+
+  private Decompressor getDecompressor() throws IOException {
+    return CompressionCodec.getDecompressor(compressionFileState.getBufferSize(),
+        compressionFileState.getCompressionImpl());
+  }
+
+  private void returnDecompressor(Decompressor decompressor) {
+    CompressionCodec.returnDecompressor(decompressor, compressionFileState.getBufferSize(),
+        compressionFileState.getCompressionImpl());
+  }
+
+  private void readCompressedData(long position, byte[] buf) throws IOException {
+    int n = 0;
+    while (n < buf.length) {
+      // Positional read of the compressed file, which doesn't move the stream
+      int count = super.read(position + n, buf, n, buf.length - n);
       if (count < 0) {
         throw new EOFException("Unexpected end of block in input stream");
       }
       n += count;
     }
-
-    return len;
   }
 
-  private int rawReadInt() throws IOException {
-    byte[] bytes = new byte[4];
-    int b1 = super.read(bytes, 0, 1);
-    int b2 = super.read(bytes, 1, 1);
-    int b3 = super.read(bytes, 2, 1);
-    int b4 = super.read(bytes, 3, 1);
-    if ((b1 | b2 | b3 | b4) < 0)
-      throw new EOFException();
-    return (((bytes[0] & 0xff) << 24) + ((bytes[1] & 0xff) << 16)
-        + ((bytes[2] & 0xff) << 8) + ((bytes[3] & 0xff) << 0));
+  private static int readInt(byte[] bytes, int off) {
+    return (((bytes[off] & 0xff) << 24) + ((bytes[off + 1] & 0xff) << 16)
+        + ((bytes[off + 2] & 0xff) << 8) + ((bytes[off + 3] & 0xff) << 0));
   }
 
  /* @Override
@@ -164,25 +259,7 @@ public synchronized void seek(long targetPos) throws IOException {
     if (targetPos < 0) {
       throw new EOFException("Cannot seek to negative offset");
     }
-    if(targetPos == pos) {
-      return;
-    }
-
-    // Seek to the start of the compression trunk
-    CompressionTrunk compressionTrunk = compressionFileState.locateCompressionTrunk(
-        false, targetPos);
-    long hdfsFilePos = compressionTrunk.getCompressedOffset();
-    super.seek(hdfsFilePos);
-
-    // Decompress the trunk until reaching the targetPos of the original file
-    int startPos = (int)(targetPos - compressionTrunk.getOriginOffset());
-    decompressor.reset();
-    int m = getCompressedData();
-    decompressor.setInput(buffer, 0, m);
-    if (startPos > 0) {
-      byte[] temp = new byte[startPos];
-      decompress(temp, 0, startPos);
-    }
+    // The trunk is decompressed when read
     pos = targetPos;
   }
 
@@ -228,4 +305,32 @@ public synchronized ByteBuffer read(ByteBufferPool bufferPool,
     throw new RuntimeException("Read(ByteBufferPool, int, EnumSet) not supported " +
         "for compressed file");
   }
+
+  /**
+   * LRU cache of the decompressed trunks, by trunk index.
+   */
+  private static class TrunkCache {
+    private final Map<Integer, byte[]> trunks;
+
+    private TrunkCache(final int capacity) {
+      this.trunks = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+
+    private synchronized byte[] get(int index) {
+      return trunks.get(index);
+    }
+
+    private synchronized void put(int index, byte[] data) {
+      trunks.put(index, data);
+    }
+
+    private synchronized void clear() {
+      trunks.clear();
+    }
+  }
 }
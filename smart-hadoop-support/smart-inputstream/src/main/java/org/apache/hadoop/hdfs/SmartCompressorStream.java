@@ -25,18 +25,34 @@
 import org.apache.hadoop.io.compress.zlib.ZlibCompressor;
 import org.smartdata.model.CompressionFileState;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SmartOutputStream.
  */
 public class SmartCompressorStream {
+  // Shared by the streams compressing in parallel, with a thread per CPU at
+  // most, since compression is CPU bound
+  private static final ThreadPoolExecutor COMPRESS_EXECUTOR = createExecutor();
 
   private Compressor compressor;
+  // The codec which the compressors are borrowed for
+  private final String codec;
   private byte[] buffer;
   private final int bufferSize;
   private CompressionFileState compressionInfo;
@@ -45,6 +61,8 @@ public class SmartCompressorStream {
   private InputStream in;
   private final int maxLength;
   private MutableFloat progress;
+  // Number of chunks compressed concurrently
+  private final int threads;
 
   private long originPos = 0;
   private long compressedPos = 0;
@@ -53,10 +71,17 @@ public class SmartCompressorStream {
 
   public SmartCompressorStream(InputStream inputStream, OutputStream outputStream,
       int bufferSize, CompressionFileState compressionInfo, MutableFloat progress) throws IOException {
+    this(inputStream, outputStream, bufferSize, compressionInfo, progress, 1);
+  }
+
+  public SmartCompressorStream(InputStream inputStream, OutputStream outputStream,
+      int bufferSize, CompressionFileState compressionInfo, MutableFloat progress,
+      int threads) throws IOException {
     this.out = outputStream;
     this.in = inputStream;
     this.compressionInfo = compressionInfo;
     this.progress = progress;
+    this.threads = threads;
 
     // This bufferSize is equal to chunk size
     this.bufferSize = bufferSize;
@@ -67,9 +92,8 @@ public SmartCompressorStream(InputStream inputStream, OutputStream outputStream,
     // Add overhead to buffer, such that actual buff is larger than bufferSize
     this.maxLength = bufferSize;
     buffer = new byte[bufferSize + overHead];
-    this.compressor = CompressionCodec
-        .createCompressor(bufferSize + overHead,
-            compressionInfo.getCompressionImpl());
+    this.codec = compressionInfo.getCompressionImpl();
+    this.compressor = CompressionCodec.getCompressor(bufferSize + overHead, codec);
     checkCompressor();
   }
 
@@ -86,9 +110,22 @@ private void checkCompressor() {
   }
 
   /**
-   * Convert the original input stream to compressed output stream.
+   * Convert the original input stream to compressed output stream. The
+   * compressor is returned to the pool afterwards.
    */
   public void convert() throws IOException {
+    try {
+      if (threads > 1) {
+        convertInParallel();
+      } else {
+        convertInSequence();
+      }
+    } finally {
+      CompressionCodec.returnCompressor(compressor, buffer.length, codec);
+    }
+  }
+
+  private void convertInSequence() throws IOException {
     byte[] buf = new byte[bufferSize];
     while (true) {
       int off = 0;
@@ -112,6 +149,143 @@ public void convert() throws IOException {
     }
   }
 
+  /**
+   * Compress the chunks on the shared pool of threads, each with its own compressor,
+   * and write them out in order. The output is the same as the one of a
+   * single thread.
+   */
+  private void convertInParallel() throws IOException {
+    BlockingQueue<ChunkCompressor> compressors = new ArrayBlockingQueue<>(threads);
+    compressors.add(new ChunkCompressor(compressor, buffer));
+    // Compressed chunks in the original order, at most one per thread
+    Deque<Future<CompressedChunk>> pendingChunks = new ArrayDeque<>(threads);
+    try {
+      for (int i = 1; i < threads; i++) {
+        compressors.add(new ChunkCompressor(
+            CompressionCodec.getCompressor(buffer.length, codec), new byte[buffer.length]));
+      }
+      boolean eof = false;
+      while (!eof || !pendingChunks.isEmpty()) {
+        while (!eof && pendingChunks.size() < threads) {
+          byte[] chunk = new byte[bufferSize];
+          int len = readChunk(chunk);
+          if (len > 0) {
+            pendingChunks.add(
+                COMPRESS_EXECUTOR.submit(() -> compressChunk(compressors, chunk, len)));
+          }
+          eof = len < bufferSize;
+        }
+        if (!pendingChunks.isEmpty()) {
+          writeChunk(pendingChunks.poll().get());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      // Compressors are returned only after the chunks using them are done
+      if (cancelChunks(pendingChunks)) {
+        for (ChunkCompressor chunkCompressor : compressors) {
+          if (chunkCompressor.compressor != compressor) {
+            CompressionCodec.returnCompressor(chunkCompressor.compressor, buffer.length, codec);
+          }
+        }
+      }
+    }
+    // All the chunks are compressed, the initial compressor is idle
+    finish();
+    out.close();
+    compressionInfo.setPositionMapping(originPositions.toArray(new Long[0]),
+        compressedPositions.toArray(new Long[0]));
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    int cpus = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(cpus, cpus, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "SmartCompressor");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Cancel the chunks not started yet and wait for the running ones.
+   *
+   * @return true if none of the chunks is running
+   */
+  private static boolean cancelChunks(Deque<Future<CompressedChunk>> chunks) {
+    for (Future<CompressedChunk> chunk : chunks) {
+      chunk.cancel(false);
+    }
+    for (Future<CompressedChunk> chunk : chunks) {
+      try {
+        if (!chunk.isCancelled()) {
+          chunk.get();
+        }
+      } catch (ExecutionException e) {
+        // Failed chunks are done as well
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int readChunk(byte[] chunk) throws IOException {
+    int off = 0;
+    while (off < chunk.length) {
+      int len = in.read(chunk, off, chunk.length - off);
+      if (len <= 0) {
+        break;
+      }
+      off += len;
+    }
+    return off;
+  }
+
+  private CompressedChunk compressChunk(BlockingQueue<ChunkCompressor> compressors,
+      byte[] chunk, int len) throws IOException, InterruptedException {
+    ChunkCompressor chunkCompressor = compressors.take();
+    try {
+      Compressor codec = chunkCompressor.compressor;
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(len / 2);
+      codec.setInput(chunk, 0, len);
+      codec.finish();
+      while (!codec.finished()) {
+        int compressedLen = codec.compress(chunkCompressor.buffer, 0, bufferSize);
+        if (compressedLen > 0) {
+          compressed.write((compressedLen >>> 24) & 0xFF);
+          compressed.write((compressedLen >>> 16) & 0xFF);
+          compressed.write((compressedLen >>>  8) & 0xFF);
+          compressed.write((compressedLen >>>  0) & 0xFF);
+          compressed.write(chunkCompressor.buffer, 0, compressedLen);
+        }
+      }
+      codec.reset();
+      return new CompressedChunk(len, compressed);
+    } finally {
+      compressors.add(chunkCompressor);
+    }
+  }
+
+  private void writeChunk(CompressedChunk chunk) throws IOException {
+    originPositions.add(originPos);
+    compressedPositions.add(compressedPos);
+    chunk.compressed.writeTo(out);
+    compressedPos += chunk.compressed.size();
+    originPos += chunk.originalLength;
+    this.progress.setValue((float) originPos / compressionInfo.getOriginalLength());
+  }
+
   public void write(byte[] b, int off, int len) throws IOException {
     if (b == null) {
       throw new NullPointerException();
@@ -161,4 +335,24 @@ private void rawWriteInt(int v) throws IOException {
     out.write((v >>>  0) & 0xFF);
     compressedPos += 4;
   }
+
+  private static class ChunkCompressor {
+    private final Compressor compressor;
+    private final byte[] buffer;
+
+    private ChunkCompressor(Compressor compressor, byte[] buffer) {
+      this.compressor = compressor;
+      this.buffer = buffer;
+    }
+  }
+
+  private static class CompressedChunk {
+    private final int originalLength;
+    private final ByteArrayOutputStream compressed;
+
+    private CompressedChunk(int originalLength, ByteArrayOutputStream compressed) {
+      this.originalLength = originalLength;
+      this.compressed = compressed;
+    }
+  }
 }
@@ -38,6 +38,18 @@ public static Long submitCmdlet(String cmdString) {
     return new JsonPath(action.asString()).getLong("body");
   }
 
+  /**
+   * Submit cmdlets in a batch.
+   * @param cmdStrings
+   * @return cmdlet ids in order, -1 for the ones not submitted
+   */
+  public static List<Long> submitCmdlets(List<String> cmdStrings) {
+    Response action = RestAssured.with().body(String.join("\n", cmdStrings))
+        .post(CMDLETROOT + "/submit/batch");
+    action.then().body("status", Matchers.equalTo("CREATED"));
+    return new JsonPath(action.asString()).getList("body", Long.class);
+  }
+
   public static boolean waitCmdletComplete(long cmdletId) {
     return waitCmdletComplete(cmdletId, Integer.MAX_VALUE);
   }
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore;
+
+import org.smartdata.model.FileStateChanges;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps a bounded log of paths whose file state may have changed. Every
+ * change bumps an epoch number, so that clients caching file states can ask
+ * for the paths changed since the epoch they have seen. If the requested
+ * epoch is no longer covered by the log, clients are told to drop all
+ * cached states.
+ */
+public class FileStateChangeTracker {
+  public static final int DEFAULT_CAPACITY = 100000;
+
+  // Distinguishes this tracker from the one of a restarted or another server
+  private final long serverId;
+  private final String[] changedPaths;
+  private long epoch;
+  // Changes before this epoch are not tracked in detail
+  private long resetEpoch;
+
+  public FileStateChangeTracker() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public FileStateChangeTracker(int capacity) {
+    this.serverId = ThreadLocalRandom.current().nextLong();
+    this.changedPaths = new String[capacity];
+    this.epoch = 0;
+    this.resetEpoch = 0;
+  }
+
+  public long getServerId() {
+    return serverId;
+  }
+
+  public synchronized long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * Record a change of the given file's state.
+   */
+  public synchronized void fileChanged(String path) {
+    epoch++;
+    changedPaths[(int) (epoch % changedPaths.length)] = path;
+  }
+
+  /**
+   * Record a change of all files under the given directory.
+   */
+  public void directoryChanged(String path) {
+    fileChanged(path.endsWith("/") ? path : path + "/");
+  }
+
+  /**
+   * Record a change which may affect any file.
+   */
+  public synchronized void allChanged() {
+    epoch++;
+    resetEpoch = epoch;
+  }
+
+  /**
+   * Get the changes after the given epoch.
+   */
+  public synchronized FileStateChanges getChangesSince(long sinceEpoch) {
+    if (sinceEpoch > epoch || sinceEpoch < resetEpoch
+        || epoch - sinceEpoch > changedPaths.length) {
+      return new FileStateChanges(serverId, epoch, true, new ArrayList<>());
+    }
+    List<String> paths = new ArrayList<>((int) (epoch - sinceEpoch));
+    for (long e = sinceEpoch + 1; e <= epoch; e++) {
+      paths.add(changedPaths[(int) (e % changedPaths.length)]);
+    }
+    return new FileStateChanges(serverId, epoch, false, paths);
+  }
+}
@@ -19,6 +19,7 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartdata.BloomFilter;
 import org.smartdata.metaservice.BackupMetaService;
 import org.smartdata.metaservice.CmdletMetaService;
 import org.smartdata.metaservice.CopyMetaService;
@@ -51,6 +52,7 @@
 import org.smartdata.metastore.dao.XattrDao;
 import org.smartdata.metastore.db.DbSchemaManager;
 import org.smartdata.metastore.db.metadata.DbMetadataProvider;
+import org.smartdata.metastore.utils.FileAccessCountMap;
 import org.smartdata.metastore.utils.MetaStoreUtils;
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.model.ActionInfo;
@@ -73,6 +75,8 @@
 import org.smartdata.model.FileInfo;
 import org.smartdata.model.FileInfoDiff;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
 import org.smartdata.model.GlobalConfig;
 import org.smartdata.model.NormalFileState;
 import org.smartdata.model.RuleInfo;
@@ -84,6 +88,11 @@
 import org.smartdata.model.UserInfo;
 import org.smartdata.model.XAttribute;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -101,6 +110,8 @@
 public class MetaStore implements CopyMetaService,
     CmdletMetaService, BackupMetaService, AutoCloseable {
   static final Logger LOG = LoggerFactory.getLogger(MetaStore.class);
+  // Max number of paths in one IN query
+  private static final int PATH_QUERY_BATCH_SIZE = 500;
 
   private final DbSchemaManager dbSchemaManager;
 
@@ -137,6 +148,8 @@ public class MetaStore implements CopyMetaService,
   private final WhitelistDao whitelistDao;
   private final ReentrantLock accessCountLock;
   private final DBPool dbPool;
+  private final FileStateChangeTracker fileStateChangeTracker;
+  private final PlatformTransactionManager transactionManager;
 
   public MetaStore(DBPool pool,
                    DbSchemaManager dbSchemaManager,
@@ -171,6 +184,43 @@ public MetaStore(DBPool pool,
     ecDao = daoProvider.ecDao();
     whitelistDao = daoProvider.whitelistDao();
     accessCountLock = new ReentrantLock();
+    fileStateChangeTracker = new FileStateChangeTracker();
+    transactionManager = new DataSourceTransactionManager(pool.getDataSource());
+  }
+
+  /**
+   * Run the given metastore operations in one database transaction, which
+   * is rolled back if the operations fail. Operations of other threads are
+   * not part of the transaction.
+   *
+   * @param operation
+   * @throws MetaStoreException
+   */
+  public void runInTransaction(TransactionalOperation operation)
+      throws MetaStoreException {
+    TransactionStatus status;
+    try {
+      status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+    } catch (TransactionException e) {
+      throw new MetaStoreException(e);
+    }
+    try {
+      operation.run();
+      transactionManager.commit(status);
+    } catch (TransactionException e) {
+      throw new MetaStoreException(e);
+    } finally {
+      if (!status.isCompleted()) {
+        transactionManager.rollback(status);
+      }
+    }
+  }
+
+  /**
+   * Metastore operations to run in one transaction.
+   */
+  public interface TransactionalOperation {
+    void run() throws MetaStoreException;
   }
 
   public Long queryForLong(String sql) throws MetaStoreException {
@@ -205,6 +255,36 @@ public void insertFiles(FileInfo[] files)
     fileInfoDao.insert(files);
   }
 
+  /**
+   * Store files info into database, replacing the file info and file state
+   * of the files previously stored under the same paths.
+   *
+   * @param files
+   */
+  public void insertOrReplaceFiles(List<FileInfo> files)
+      throws MetaStoreException {
+    if (files.isEmpty()) {
+      return;
+    }
+    updateCache();
+    List<String> paths = new ArrayList<>(files.size());
+    for (FileInfo file : files) {
+      paths.add(file.getPath());
+    }
+    try {
+      fileInfoDao.batchDelete(paths);
+      fileStateDao.batchDelete(paths);
+      smallFileDao.batchDelete(paths);
+      compressionFileDao.batchDelete(paths);
+      fileInfoDao.insert(files.toArray(new FileInfo[0]));
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+    for (String path : paths) {
+      fileStateChangeTracker.fileChanged(path);
+    }
+  }
+
   public void updateFileByPath(String path, FileInfoDiff fileUpdate) {
     fileInfoDao.updateByPath(path, fileUpdate);
   }
@@ -213,18 +293,30 @@ public void unlinkRootDirectory() {
     fileInfoDao.deleteAll();
     fileStateDao.deleteAll();
     smallFileDao.deleteAll();
+    fileStateChangeTracker.allChanged();
   }
 
   public void unlinkFile(String path, boolean isDirectory) {
     fileInfoDao.deleteByPath(path, isDirectory);
     fileStateDao.deleteByPath(path, isDirectory);
     smallFileDao.deleteByPath(path, isDirectory);
+    fileStateChanged(path, isDirectory);
   }
 
   public void renameFile(String oldPath, String newPath, boolean isDirectory) {
     fileInfoDao.renameFile(oldPath, newPath, isDirectory);
     fileStateDao.renameFile(oldPath, newPath, isDirectory);
     smallFileDao.renameFile(oldPath, newPath, isDirectory);
+    fileStateChanged(oldPath, isDirectory);
+    fileStateChanged(newPath, isDirectory);
+  }
+
+  private void fileStateChanged(String path, boolean isDirectory) {
+    if (isDirectory) {
+      fileStateChangeTracker.directoryChanged(path);
+    } else {
+      fileStateChangeTracker.fileChanged(path);
+    }
   }
 
   public int updateFileStoragePolicy(String path, String policyName)
@@ -237,10 +329,47 @@ public int updateFileStoragePolicy(String path, String policyName)
           + policyName + "'");
     }
     try {
-      return storageDao.updateFileStoragePolicy(path, mapStoragePolicyNameId.get(policyName));
+      return fileInfoDao.update(path, mapStoragePolicyNameId.get(policyName));
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Update the storage policies of the files in one batch.
+   *
+   * @param pathPolicies storage policy names by file path
+   */
+  public void updateFileStoragePolicies(Map<String, String> pathPolicies)
+      throws MetaStoreException {
+    if (pathPolicies.isEmpty()) {
+      return;
+    }
+    if (mapStoragePolicyIdName == null) {
+      updateCache();
+    }
+    Map<String, Integer> storagePolicies = new HashMap<>();
+    String unknownPolicy = null;
+    for (Map.Entry<String, String> entry : pathPolicies.entrySet()) {
+      Integer sid = mapStoragePolicyNameId.get(entry.getValue());
+      if (sid == null) {
+        unknownPolicy = entry.getValue();
+      } else {
+        storagePolicies.put(entry.getKey(), sid);
+      }
+    }
+    try {
+      if (!storagePolicies.isEmpty()) {
+        fileInfoDao.updateStoragePolicies(storagePolicies);
+      }
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
+    // The files with known policies are updated anyway
+    if (unknownPolicy != null) {
+      throw new MetaStoreException("Unknown storage policy name '"
+          + unknownPolicy + "'");
+    }
   }
 
   public FileInfo getFile(long fid) throws MetaStoreException {
@@ -312,7 +441,16 @@ public List<FileInfo> getFilesByPaths(Collection<String> paths)
   public Map<String, Long> getFileIDs(Collection<String> paths)
       throws MetaStoreException {
     try {
-      return fileInfoDao.getPathFids(paths);
+      if (paths.size() <= PATH_QUERY_BATCH_SIZE) {
+        return fileInfoDao.getPathFids(paths);
+      }
+      Map<String, Long> pathToIds = new HashMap<>();
+      List<String> pathList = new ArrayList<>(paths);
+      for (int i = 0; i < pathList.size(); i += PATH_QUERY_BATCH_SIZE) {
+        pathToIds.putAll(fileInfoDao.getPathFids(pathList.subList(i,
+            Math.min(i + PATH_QUERY_BATCH_SIZE, pathList.size()))));
+      }
+      return pathToIds;
     } catch (EmptyResultDataAccessException e) {
       return new HashMap<>();
     } catch (Exception e) {
@@ -677,6 +815,28 @@ public CachedFileStatus getCachedFileStatus(
     }
   }
 
+  /**
+   * Create an access count table from the access counts aggregated in memory.
+   * An existing table with the same name is replaced.
+   */
+  public void createAccessCountTable(AccessCountTable table,
+      FileAccessCountMap accessCounts) throws MetaStoreException {
+    accessCountLock.lock();
+    try {
+      if (tableExists(table.getTableName())) {
+        dropTable(table.getTableName());
+      }
+      accessCountDao.createAccessCountTable(table, accessCounts);
+      insertAccessCountTable(table);
+    } catch (MetaStoreException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    } finally {
+      accessCountLock.unlock();
+    }
+  }
+
   public void createProportionTable(AccessCountTable dest,
                                     AccessCountTable source)
       throws MetaStoreException {
@@ -2269,6 +2429,7 @@ public void insertUpdateFileState(FileState fileState)
           break;
         default:
       }
+      fileStateChangeTracker.fileChanged(fileState.getPath());
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
@@ -2279,6 +2440,9 @@ public void insertCompactFileStates(CompactFileState[] compactFileStates)
     try {
       fileStateDao.batchInsertUpdate(compactFileStates);
       smallFileDao.batchInsertUpdate(compactFileStates);
+      for (CompactFileState compactFileState : compactFileStates) {
+        fileStateChangeTracker.fileChanged(compactFileState.getPath());
+      }
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
@@ -2334,6 +2498,48 @@ public Map<String, FileState> getFileStates(List<String> paths)
     }
   }
 
+  /**
+   * Get the specific file states of the given files, including compression,
+   * compact and s3 info. Each batch of paths is served by a single query.
+   * Files without stored state are not in the result.
+   *
+   * @param paths
+   * @return
+   * @throws MetaStoreException
+   */
+  public List<FileState> getDetailedFileStates(List<String> paths)
+      throws MetaStoreException {
+    List<FileState> fileStates = new ArrayList<>();
+    try {
+      for (int i = 0; i < paths.size(); i += PATH_QUERY_BATCH_SIZE) {
+        List<String> batch = paths.subList(i,
+            Math.min(i + PATH_QUERY_BATCH_SIZE, paths.size()));
+        fileStates.addAll(fileStateDao.getDetailedByPaths(batch));
+      }
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+    return fileStates;
+  }
+
+  /**
+   * Get the specific file states of all direct children of the given
+   * directory in a single query. Files without stored state are not in
+   * the result.
+   *
+   * @param dirPath
+   * @return
+   * @throws MetaStoreException
+   */
+  public List<FileState> getChildFileStates(String dirPath)
+      throws MetaStoreException {
+    try {
+      return fileStateDao.getDetailedByParent(dirPath);
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
   /**
    * Delete FileState of the given fileName (including its corresponding compression/
    * compact/s3 state).
@@ -2356,6 +2562,7 @@ public void deleteFileState(String filePath) throws MetaStoreException {
           break;
         default:
       }
+      fileStateChangeTracker.fileChanged(filePath);
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
@@ -2366,6 +2573,9 @@ public void deleteCompactFileStates(List<String> paths)
     try {
       fileStateDao.batchDelete(paths);
       smallFileDao.batchDelete(paths);
+      for (String path : paths) {
+        fileStateChangeTracker.fileChanged(path);
+      }
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
@@ -2403,9 +2613,57 @@ public synchronized void deleteAllFileState() throws MetaStoreException {
       fileStateDao.deleteAll();
       // Delete all other states
       deleteAllCompressedFile();
+      fileStateChangeTracker.allChanged();
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Notify that the file state of the given file has been changed outside
+   * of metastore, e.g. its file state xattr is updated in HDFS.
+   *
+   * @param path
+   */
+  public void fileStateChanged(String path) {
+    fileStateChangeTracker.fileChanged(path);
+  }
+
+  /**
+   * Get the paths whose file state has changed after the given epoch.
+   *
+   * @param sinceEpoch
+   * @return
+   */
+  public FileStateChanges getFileStateChanges(long sinceEpoch) {
+    return fileStateChangeTracker.getChangesSince(sinceEpoch);
+  }
+
+  public long getFileStateEpoch() {
+    return fileStateChangeTracker.getEpoch();
+  }
+
+  /**
+   * Build a bloom filter of all files not in normal state. Changes after the
+   * epoch of the filter can be got by {@link #getFileStateChanges}.
+   *
+   * @param bitSize
+   * @return
+   * @throws MetaStoreException
+   */
+  public FileStateFilter buildFileStateFilter(int bitSize)
+      throws MetaStoreException {
+    // Take the epoch first, so that changes during building are not missed
+    long epoch = fileStateChangeTracker.getEpoch();
+    BloomFilter filter = new BloomFilter(bitSize);
+    try {
+      for (String path : fileStateDao.getNonNormalPaths()) {
+        filter.addElement(path);
+      }
     } catch (Exception e) {
       throw new MetaStoreException(e);
     }
+    return new FileStateFilter(fileStateChangeTracker.getServerId(), epoch, filter);
   }
 
   /**
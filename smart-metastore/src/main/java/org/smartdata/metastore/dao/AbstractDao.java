@@ -96,6 +96,14 @@ protected int updateInternal(Map<String, Object> entityProperties,
     return jdbcTemplate.update(updateSql.toString(), argumentsArray);
   }
 
+  protected static List<Object[]> toBatchArgs(List<?> values) {
+    List<Object[]> batchArgs = new ArrayList<>(values.size());
+    for (Object value : values) {
+      batchArgs.add(new Object[] {value});
+    }
+    return batchArgs;
+  }
+
   protected interface EntityToMapConverter<T> {
     Map<String, Object> toMap(T entity);
   }
@@ -17,6 +17,8 @@
  */
 package org.smartdata.metastore.dao;
 
+import org.smartdata.metastore.utils.FileAccessCountMap;
+
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +45,11 @@ static String createAccessCountTableSQL(String tableName) {
 
   List<AccessCountTable> getAllSortedTables();
 
+  /**
+   * Create the given access count table and fill it with the access counts.
+   */
+  void createAccessCountTable(AccessCountTable table, FileAccessCountMap accessCounts);
+
   void aggregateTables(
       AccessCountTable destinationTable, List<AccessCountTable> tablesToAggregate);
 
@@ -37,6 +37,8 @@
 
 import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS;
 import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_KEY;
 import static org.smartdata.conf.SmartConfKeys.SMART_NUM_DAY_TABLES_TO_KEEP_DEFAULT;
 import static org.smartdata.conf.SmartConfKeys.SMART_NUM_DAY_TABLES_TO_KEEP_KEY;
 import static org.smartdata.conf.SmartConfKeys.SMART_NUM_HOUR_TABLES_TO_KEEP_DEFAULT;
@@ -74,7 +76,11 @@ public AccessCountTableManager(MetaStore adapter,
     int aggregationIntervalMs = configuration.getInt(
         SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS,
         SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS_DEFAULT);
-    this.accessEventAggregator = new AccessEventAggregator(adapter, this, aggregationIntervalMs);
+    boolean aggregateInMemory = configuration.getBoolean(
+        SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_KEY,
+        SMART_ACCESS_COUNT_AGGREGATION_IN_MEMORY_DEFAULT);
+    this.accessEventAggregator = new AccessEventAggregator(
+        adapter, this, aggregationIntervalMs, aggregateInMemory);
 
     initTables();
   }
@@ -168,7 +174,12 @@ public void addTable(AccessCountTable accessCountTable) {
     if (LOG.isDebugEnabled()) {
       LOG.debug(accessCountTable.toString());
     }
-    secondTableDeque.addAndNotifyListener(accessCountTable);
+    // Tables aggregated in memory are added as per minute tables
+    if (accessCountTable.getGranularity() == TimeGranularity.MINUTE) {
+      tableDeques.get(TimeGranularity.MINUTE).addAndNotifyListener(accessCountTable);
+    } else {
+      secondTableDeque.addAndNotifyListener(accessCountTable);
+    }
   }
 
   public void onAccessEventsArrived(List<FileAccessEvent> accessEvents) {
@@ -187,11 +198,18 @@ public static List<AccessCountTable> getTables(
     if (tableDeques.isEmpty()) {
       return new ArrayList<>();
     }
-    AccessCountTableDeque secondTableDeque = tableDeques.get(TimeGranularity.SECOND);
-    if (secondTableDeque == null || secondTableDeque.isEmpty()) {
+    // Per minute tables are the latest ones if access counts are aggregated in memory
+    long now = -1;
+    for (TimeGranularity granularity : new TimeGranularity[] {
+        TimeGranularity.SECOND, TimeGranularity.MINUTE}) {
+      AccessCountTableDeque deque = tableDeques.get(granularity);
+      if (deque != null && !deque.isEmpty()) {
+        now = Math.max(now, deque.getLast().getEndTime());
+      }
+    }
+    if (now < 0) {
       return new ArrayList<>();
     }
-    long now = secondTableDeque.getLast().getEndTime();
     return getTablesDuring(
         tableDeques, metaStore, lengthInMillis, now, TimeUtils.getGranularity(lengthInMillis));
   }
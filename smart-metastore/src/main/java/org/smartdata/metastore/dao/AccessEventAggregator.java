@@ -23,6 +23,7 @@
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
 import org.smartdata.metastore.dao.impl.DefaultAccessCountDao;
+import org.smartdata.metastore.utils.FileAccessCountMap;
 import org.smartdata.metrics.FileAccessEvent;
 
 import java.util.ArrayList;
@@ -35,13 +36,23 @@
 import java.util.stream.Collectors;
 
 import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_INTERVAL_MS_DEFAULT;
+import static org.smartdata.metastore.utils.Constants.ONE_MINUTE_IN_MILLIS;
 
+/**
+ * Aggregates file access events into access count tables. By default, a
+ * second-granularity table is created for every aggregation window. In
+ * in-memory mode, the counts of all windows in a minute are kept in memory
+ * and only the per-minute table is written to metastore.
+ */
 public class AccessEventAggregator {
   private final MetaStore adapter;
   private final long aggregationGranularity;
   private final AccessCountTableManager accessCountTableManager;
   private final List<FileAccessEvent> eventBuffer;
+  // Counts of current minute, null if not aggregating in memory
+  private final FileAccessCountMap minuteAccessCounts;
   private Window currentWindow;
+  private Window currentMinute;
   private Map<String, Integer> unmergedAccessCounts = new HashMap<>();
   public static final Logger LOG =
       LoggerFactory.getLogger(AccessEventAggregator.class);
@@ -52,22 +63,41 @@ public AccessEventAggregator(MetaStore adapter, AccessCountTableManager manager)
 
   public AccessEventAggregator(MetaStore adapter,
                                AccessCountTableManager manager, long aggregationGranularity) {
+    this(adapter, manager, aggregationGranularity, false);
+  }
+
+  public AccessEventAggregator(MetaStore adapter, AccessCountTableManager manager,
+      long aggregationGranularity, boolean inMemory) {
+    if (inMemory && ONE_MINUTE_IN_MILLIS % aggregationGranularity != 0) {
+      throw new IllegalArgumentException("Aggregation interval " + aggregationGranularity
+          + " ms should divide one minute to aggregate access events in memory");
+    }
     this.adapter = adapter;
     this.accessCountTableManager = manager;
     this.aggregationGranularity = aggregationGranularity;
     this.eventBuffer = new ArrayList<>();
+    this.minuteAccessCounts = inMemory ? new FileAccessCountMap() : null;
   }
 
   public void addAccessEvents(List<FileAccessEvent> eventList) {
     if (currentWindow == null && !eventList.isEmpty()) {
       currentWindow = assignWindow(eventList.get(0).getTimestamp());
+      currentMinute = assignMinute(currentWindow.start);
     }
     for (FileAccessEvent event : eventList) {
       if (!currentWindow.contains(event.getTimestamp())) {
         // New Window occurs
-        createTable();
+        if (minuteAccessCounts == null) {
+          createTable();
+        } else {
+          aggregateInMemory();
+        }
         currentWindow = assignWindow(event.getTimestamp());
         eventBuffer.clear();
+        if (minuteAccessCounts != null && !currentMinute.contains(currentWindow.start)) {
+          createMinuteTable();
+          currentMinute = assignMinute(currentWindow.start);
+        }
       }
       // Exclude watermark event
       if (!event.getPath().isEmpty()) {
@@ -92,31 +122,78 @@ private void createTable() {
 
     if (!eventBuffer.isEmpty() || !unmergedAccessCounts.isEmpty()) {
       Map<String, Integer> accessCounts = getAccessCountMap(eventBuffer);
-      Set<String> accessedFiles = new HashSet<>(accessCounts.keySet());
-      mergeMapsInPlace(accessCounts, unmergedAccessCounts);
-
       final Map<String, Long> pathToIDs;
       try {
-        pathToIDs = adapter.getFileIDs(accessCounts.keySet());
+        pathToIDs = getFileIDs(accessCounts);
       } catch (MetaStoreException e) {
         // TODO: dirty handle here
         LOG.error("Error fetching file ids for paths {}", accessCounts.keySet(), e);
         return;
       }
 
-      maybeLogUnmergedAccessCounts(pathToIDs.keySet());
-      unmergedAccessCounts = accessedFiles.stream()
-          .filter(file -> !pathToIDs.containsKey(file))
-          .collect(Collectors.toMap(
-              Function.identity(),
-              accessCounts::get
-          ));
-
       insertAccessCountsToMetastore(table, pathToIDs, accessCounts);
     }
     accessCountTableManager.addTable(table);
   }
 
+  private void aggregateInMemory() {
+    if (eventBuffer.isEmpty() && unmergedAccessCounts.isEmpty()) {
+      return;
+    }
+    Map<String, Integer> accessCounts = getAccessCountMap(eventBuffer);
+    final Map<String, Long> pathToIDs;
+    try {
+      pathToIDs = getFileIDs(accessCounts);
+    } catch (MetaStoreException e) {
+      LOG.error("Error fetching file ids for paths {}", accessCounts.keySet(), e);
+      return;
+    }
+
+    for (Map.Entry<String, Long> entry : pathToIDs.entrySet()) {
+      minuteAccessCounts.add(entry.getValue(), accessCounts.get(entry.getKey()));
+    }
+    if (!pathToIDs.isEmpty()) {
+      updateCachedFilesInMetastore(pathToIDs);
+    }
+  }
+
+  private void createMinuteTable() {
+    AccessCountTable table = new AccessCountTable(currentMinute.start, currentMinute.end);
+    try {
+      adapter.createAccessCountTable(table, minuteAccessCounts);
+      LOG.debug("Inserted access counts of {} files to table {}",
+          minuteAccessCounts.size(), table);
+    } catch (MetaStoreException e) {
+      LOG.error("Error creating access count table {}", table, e);
+      return;
+    } finally {
+      minuteAccessCounts.clear();
+    }
+    accessCountTableManager.addTable(table);
+  }
+
+  /**
+   * Get ids of the accessed files. The access counts of files not found in
+   * metastore are merged into the next window, as they may be created but not
+   * synced yet.
+   */
+  private Map<String, Long> getFileIDs(Map<String, Integer> accessCounts)
+      throws MetaStoreException {
+    Set<String> accessedFiles = new HashSet<>(accessCounts.keySet());
+    mergeMapsInPlace(accessCounts, unmergedAccessCounts);
+
+    final Map<String, Long> pathToIDs = adapter.getFileIDs(accessCounts.keySet());
+
+    maybeLogUnmergedAccessCounts(pathToIDs.keySet());
+    unmergedAccessCounts = accessedFiles.stream()
+        .filter(file -> !pathToIDs.containsKey(file))
+        .collect(Collectors.toMap(
+            Function.identity(),
+            accessCounts::get
+        ));
+    return pathToIDs;
+  }
+
   private void insertTableToMetastore(AccessCountTable table) throws MetaStoreException {
     String createTable = AccessCountDao.createAccessCountTableSQL(table.getTableName());
     if (adapter.tableExists(table.getTableName())) {
@@ -186,7 +263,7 @@ private Map<String, Integer> getAccessCountMap(List<FileAccessEvent> events) {
     return events.stream()
         .collect(Collectors.toMap(
             FileAccessEvent::getPath,
-            event -> 1,
+            FileAccessEvent::getCount,
             Integer::sum
         ));
   }
@@ -196,6 +273,11 @@ private Window assignWindow(long time) {
     return new Window(start, start + aggregationGranularity);
   }
 
+  private Window assignMinute(long time) {
+    long start = time - (time % ONE_MINUTE_IN_MILLIS);
+    return new Window(start, start + ONE_MINUTE_IN_MILLIS);
+  }
+
   private static class Window {
     private final long start;
     private final long end;
@@ -28,6 +28,8 @@ public interface CompressionFileDao {
 
   void deleteByPath(String filePath);
 
+  int[] batchDelete(List<String> paths);
+
   void deleteAll();
 
   List<CompressionFileState> getAll();
@@ -25,13 +25,17 @@
 
 public class DaoProviderFactory {
   public DaoProvider createDaoProvider(DBPool dbPool, DBType dbType) {
+    return createDaoProvider(dbPool, dbType, false);
+  }
+
+  public DaoProvider createDaoProvider(DBPool dbPool, DBType dbType, boolean fileTreeEnabled) {
     switch (dbType) {
       case POSTGRES:
-        return new PostgresDaoProvider(dbPool);
+        return new PostgresDaoProvider(dbPool, fileTreeEnabled);
       case SQLITE:
-        return new SqliteDaoProvider(dbPool);
+        return new SqliteDaoProvider(dbPool, fileTreeEnabled);
       default:
-        return new DefaultDaoProvider(dbPool);
+        return new DefaultDaoProvider(dbPool, fileTreeEnabled);
     }
   }
 }
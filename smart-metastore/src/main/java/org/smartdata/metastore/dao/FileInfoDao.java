@@ -51,12 +51,21 @@ Map<Long, String> getFidPaths(Collection<Long> ids)
 
   int update(String path, int storagePolicy);
 
+  /**
+   * Update the storage policies of the files in one batch.
+   *
+   * @param storagePolicies storage policy ids by file path
+   */
+  int[] updateStoragePolicies(Map<String, Integer> storagePolicies);
+
   int updateByPath(String path, FileInfoDiff fileUpdate);
 
   void deleteById(long fid);
 
   void deleteByPath(String path, boolean recursive);
 
+  int[] batchDelete(List<String> paths);
+
   void deleteAll();
 
   void renameFile(String oldPath, String newPath, boolean recursive);
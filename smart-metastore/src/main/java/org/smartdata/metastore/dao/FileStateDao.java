@@ -34,6 +34,12 @@ public interface FileStateDao {
 
   List<FileState> getAll();
 
+  List<String> getNonNormalPaths();
+
+  List<FileState> getDetailedByPaths(List<String> paths);
+
+  List<FileState> getDetailedByParent(String parentPath);
+
   void deleteByPath(String path, boolean recursive);
 
   int[] batchDelete(List<String> paths);
@@ -22,6 +22,7 @@
 import org.smartdata.metastore.dao.AbstractDao;
 import org.smartdata.metastore.dao.AccessCountDao;
 import org.smartdata.metastore.dao.AccessCountTable;
+import org.smartdata.metastore.utils.FileAccessCountMap;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 
@@ -29,6 +30,7 @@
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -38,6 +40,7 @@ public class DefaultAccessCountDao extends AbstractDao implements AccessCountDao
   static final Logger LOG = LoggerFactory.getLogger(DefaultAccessCountDao.class);
 
   private static final String TABLE_NAME = "access_count_table";
+  private static final int INSERT_BATCH_SIZE = 1000;
 
   public DefaultAccessCountDao(DataSource dataSource) {
     super(dataSource, TABLE_NAME);
@@ -81,6 +84,25 @@ public List<AccessCountTable> getAllSortedTables() {
     return jdbcTemplate.query(sql, new AccessCountRowMapper());
   }
 
+  @Override
+  public void createAccessCountTable(AccessCountTable table,
+      FileAccessCountMap accessCounts) {
+    jdbcTemplate.execute(AccessCountDao.createAccessCountTableSQL(table.getTableName()));
+    final String sql = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)",
+        table.getTableName(), FILE_FIELD, ACCESSCOUNT_FIELD);
+    final List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+    accessCounts.forEach((fid, count) -> {
+      batch.add(new Object[]{fid, count});
+      if (batch.size() == INSERT_BATCH_SIZE) {
+        jdbcTemplate.batchUpdate(sql, batch);
+        batch.clear();
+      }
+    });
+    if (!batch.isEmpty()) {
+      jdbcTemplate.batchUpdate(sql, batch);
+    }
+  }
+
   @Override
   public void aggregateTables(
       AccessCountTable destinationTable, List<AccessCountTable> tablesToAggregate) {
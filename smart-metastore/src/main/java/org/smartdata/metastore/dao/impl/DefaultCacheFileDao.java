@@ -101,7 +101,7 @@ public void update(Map<String, Long> pathToIds,
           if (!idToCount.containsKey(fid)) {
             idToCount.put(fid, 0);
           }
-          idToCount.put(fid, idToCount.get(fid) + 1);
+          idToCount.put(fid, idToCount.get(fid) + event.getCount());
           if (!idToLastTime.containsKey(fid)) {
             idToLastTime.put(fid, event.getTimestamp());
           }
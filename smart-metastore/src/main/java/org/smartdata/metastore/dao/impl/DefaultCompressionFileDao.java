@@ -69,6 +69,12 @@ public void deleteByPath(String filePath) {
     jdbcTemplate.update(sql, filePath);
   }
 
+  @Override
+  public int[] batchDelete(List<String> paths) {
+    final String sql = "DELETE FROM " + TABLE_NAME + " WHERE path = ?";
+    return jdbcTemplate.batchUpdate(sql, toBatchArgs(paths));
+  }
+
   @Override
   public void deleteAll() {
     final String sql = "DELETE FROM " + TABLE_NAME;
@@ -104,7 +110,7 @@ protected Map<String, Object> toMap(CompressionFileState compressionInfo) {
     return parameters;
   }
 
-  private static class CompressFileRowMapper implements RowMapper<CompressionFileState> {
+  static class CompressFileRowMapper implements RowMapper<CompressionFileState> {
     @Override
     public CompressionFileState mapRow(ResultSet resultSet, int i) throws SQLException {
       Gson gson = new Gson();
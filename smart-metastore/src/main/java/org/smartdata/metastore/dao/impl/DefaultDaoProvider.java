@@ -49,9 +49,15 @@
 
 public class DefaultDaoProvider implements DaoProvider {
   protected final DataSource dataSource;
+  protected final boolean fileTreeEnabled;
 
   public DefaultDaoProvider(DBPool dbPool) {
+    this(dbPool, false);
+  }
+
+  public DefaultDaoProvider(DBPool dbPool, boolean fileTreeEnabled) {
     this.dataSource = dbPool.getDataSource();
+    this.fileTreeEnabled = fileTreeEnabled;
   }
 
   @Override
@@ -71,6 +77,9 @@ public ActionDao actionDao() {
 
   @Override
   public FileInfoDao fileInfoDao() {
+    if (fileTreeEnabled) {
+      return new TreeFileInfoDao(dataSource);
+    }
     return new DefaultFileInfoDao(dataSource);
   }
 
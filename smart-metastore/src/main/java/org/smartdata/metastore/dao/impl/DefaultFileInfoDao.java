@@ -29,6 +29,7 @@
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -36,7 +37,7 @@
 
 public class DefaultFileInfoDao extends AbstractDao implements FileInfoDao {
 
-  private static final String TABLE_NAME = "file";
+  protected static final String TABLE_NAME = "file";
 
   public DefaultFileInfoDao(DataSource dataSource) {
     super(dataSource, TABLE_NAME);
@@ -133,6 +134,16 @@ public int update(String path, int storagePolicy) {
     return jdbcTemplate.update(sql, storagePolicy, path);
   }
 
+  @Override
+  public int[] updateStoragePolicies(Map<String, Integer> storagePolicies) {
+    final String sql = "UPDATE " + TABLE_NAME + " SET sid = ? WHERE path = ?";
+    List<Object[]> batchArgs = new ArrayList<>(storagePolicies.size());
+    for (Map.Entry<String, Integer> entry : storagePolicies.entrySet()) {
+      batchArgs.add(new Object[] {entry.getValue(), entry.getKey()});
+    }
+    return jdbcTemplate.batchUpdate(sql, batchArgs);
+  }
+
   @Override
   public int updateByPath(String path, FileInfoDiff fileUpdate) {
     return update(updateToMap(fileUpdate), "path = ?", path);
@@ -154,6 +165,12 @@ public void deleteByPath(String path,  boolean recursive) {
     }
   }
 
+  @Override
+  public int[] batchDelete(List<String> paths) {
+    final String sql = "DELETE FROM " + TABLE_NAME + " WHERE path = ?";
+    return jdbcTemplate.batchUpdate(sql, toBatchArgs(paths));
+  }
+
   @Override
   public void deleteAll() {
     final String sql = "DELETE FROM file";
@@ -175,7 +192,7 @@ protected void renameDirectoryFiles(String oldPath, String newPath) {
     jdbcTemplate.update(sql, newPath, oldPath.length() + 1, oldPath + "/%");
   }
 
-  private Map<String, Object> updateToMap(FileInfoDiff fileInfo) {
+  protected Map<String, Object> updateToMap(FileInfoDiff fileInfo) {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("path", fileInfo.getPath());
     parameters.put("length", fileInfo.getLength());
@@ -191,7 +208,7 @@ private Map<String, Object> updateToMap(FileInfoDiff fileInfo) {
     return parameters;
   }
 
-  private Map<String, Object> toMap(FileInfo fileInfo) {
+  protected Map<String, Object> toMap(FileInfo fileInfo) {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("path", fileInfo.getPath());
     parameters.put("fid", fileInfo.getFileId());
@@ -211,7 +228,7 @@ private Map<String, Object> toMap(FileInfo fileInfo) {
     return parameters;
   }
 
-  private static class FileInfoRowMapper implements RowMapper<FileInfo> {
+  protected static class FileInfoRowMapper implements RowMapper<FileInfo> {
     @Override
     public FileInfo mapRow(ResultSet resultSet, int i)
         throws SQLException {
@@ -19,7 +19,10 @@
 
 import org.smartdata.metastore.dao.AbstractDao;
 import org.smartdata.metastore.dao.FileStateDao;
+import org.smartdata.model.CompressionFileState;
 import org.smartdata.model.FileState;
+import org.smartdata.model.NormalFileState;
+import org.smartdata.model.S3FileState;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -36,6 +39,12 @@
 
 public class DefaultFileStateDao extends AbstractDao implements FileStateDao {
   private static final String TABLE_NAME = "file_state";
+  private static final String DETAILED_QUERY = "SELECT " + TABLE_NAME + ".path, type, stage,"
+      + " container_file_path, file_offset, length,"
+      + " buffer_size, compression_impl, original_length, compressed_length,"
+      + " original_pos, compressed_pos FROM " + TABLE_NAME
+      + " LEFT JOIN small_file ON " + TABLE_NAME + ".path = small_file.path"
+      + " LEFT JOIN compression_file ON " + TABLE_NAME + ".path = compression_file.path";
 
   public DefaultFileStateDao(DataSource dataSource) {
     super(dataSource, TABLE_NAME);
@@ -90,12 +99,44 @@ public Map<String, FileState> getByPaths(List<String> paths) {
     return fileStateMap;
   }
 
+  @Override
+  public List<FileState> getDetailedByPaths(List<String> paths) {
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate =
+        new NamedParameterJdbcTemplate(dataSource);
+    MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+    parameterSource.addValue("paths", paths);
+    return namedParameterJdbcTemplate.query(
+        DETAILED_QUERY + " WHERE " + TABLE_NAME + ".path IN (:paths)",
+        parameterSource,
+        new DetailedFileStateRowMapper());
+  }
+
+  @Override
+  public List<FileState> getDetailedByParent(String parentPath) {
+    String prefix = parentPath.endsWith("/") ? parentPath : parentPath + "/";
+    // '_' and '%' in the path are escaped to match themselves only
+    String pattern = escapeLike(prefix);
+    return jdbcTemplate.query(DETAILED_QUERY + " WHERE " + TABLE_NAME + ".path LIKE ? ESCAPE '!'"
+        + " AND " + TABLE_NAME + ".path NOT LIKE ? ESCAPE '!'",
+        new Object[]{pattern + "%", pattern + "%/%"}, new DetailedFileStateRowMapper());
+  }
+
+  private static String escapeLike(String text) {
+    return text.replace("!", "!!").replace("_", "!_").replace("%", "!%");
+  }
+
   @Override
   public List<FileState> getAll() {
     return jdbcTemplate.query("SELECT * FROM " + TABLE_NAME,
         new FileStateRowMapper());
   }
 
+  @Override
+  public List<String> getNonNormalPaths() {
+    return jdbcTemplate.queryForList("SELECT path FROM " + TABLE_NAME + " WHERE type <> ?",
+        String.class, FileState.FileType.NORMAL.getValue());
+  }
+
   @Override
   public void deleteByPath(String path, boolean recursive) {
     String sql = "DELETE FROM " + TABLE_NAME + " WHERE path = ?";
@@ -142,6 +183,46 @@ protected void renameDirectoryFiles(String oldPath, String newPath) {
     jdbcTemplate.update(sql, newPath, oldPath.length() + 1, oldPath + "/%");
   }
 
+  /**
+   * Maps a row of file_state joined with small_file and compression_file
+   * to the specific file state.
+   */
+  private static class DetailedFileStateRowMapper implements RowMapper<FileState> {
+    private final RowMapper<FileState> compactMapper =
+        new DefaultSmallFileDao.FileStateRowMapper();
+    private final RowMapper<CompressionFileState> compressionMapper =
+        new DefaultCompressionFileDao.CompressFileRowMapper();
+
+    @Override
+    public FileState mapRow(ResultSet resultSet, int i)
+        throws SQLException {
+      String path = resultSet.getString("path");
+      FileState.FileType type = FileState.FileType.fromValue(resultSet.getInt("type"));
+      FileState.FileStage stage = FileState.FileStage.fromValue(resultSet.getInt("stage"));
+      switch (type) {
+        case NORMAL:
+          return new NormalFileState(path);
+        case COMPACT:
+          if (resultSet.getString("container_file_path") != null) {
+            return compactMapper.mapRow(resultSet, i);
+          }
+          break;
+        case COMPRESSION:
+          if (resultSet.getString("compression_impl") != null) {
+            CompressionFileState compressionFileState =
+                compressionMapper.mapRow(resultSet, i);
+            compressionFileState.setFileStage(stage);
+            return compressionFileState;
+          }
+          break;
+        case S3:
+          return new S3FileState(path);
+        default:
+      }
+      return new FileState(path, type, stage);
+    }
+  }
+
   private static class FileStateRowMapper implements RowMapper<FileState> {
     @Override
     public FileState mapRow(ResultSet resultSet, int i)
@@ -135,7 +135,7 @@ protected void renameDirectoryFiles(String oldPath, String newPath) {
     jdbcTemplate.update(sql, newPath, oldPath.length() + 1, oldPath + "/%");
   }
 
-  private static class FileStateRowMapper implements RowMapper<FileState> {
+  static class FileStateRowMapper implements RowMapper<FileState> {
     @Override
     public FileState mapRow(ResultSet resultSet, int i)
         throws SQLException {
@@ -0,0 +1,701 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.dao.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.metastore.utils.FileTree;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.FileInfoDiff;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * File info dao storing every file by its parent file id and name, so that
+ * renaming a directory only updates the rows of the directory itself.
+ *
+ * <p>Paths are resolved by a {@link FileTree} loaded from file table on first
+ * access, the methods of this dao always see the renamed paths. The path
+ * column of the renamed file is updated with the rename, the ones of the
+ * files under a renamed directory are updated in background, in a
+ * transaction per 1000 files, to keep the queries on file table, e.g. the
+ * ones of rules, working. Until then, such queries see the old paths of
+ * the files not updated yet, {@link #hasPendingRepairs()} tells whether
+ * there are such files. The files failed to update are retried later.
+ */
+public class TreeFileInfoDao extends DefaultFileInfoDao {
+  static final Logger LOG = LoggerFactory.getLogger(TreeFileInfoDao.class);
+
+  private static final int QUERY_BATCH_SIZE = 500;
+  private static final int REPAIR_BATCH_SIZE = 1000;
+  private static final long REPAIR_RETRY_DELAY_MS = 1000;
+  private static final String REPAIR_SQL =
+      "UPDATE " + TABLE_NAME + " SET path = ?, parent_fid = ?, name = ? WHERE fid = ?";
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final FileTree fileTree = new FileTree();
+  private volatile boolean loaded = false;
+
+  private final TransactionTemplate transactionTemplate;
+  private final ScheduledThreadPoolExecutor repairExecutor;
+  private final Object repairLock = new Object();
+  // Files whose rows are out of date, with whether to repair their children
+  private final Map<Long, Boolean> pendingRepairs = new LinkedHashMap<>();
+  private final Set<Long> repairingFids = new HashSet<>();
+  // Files failed to repair, which are retried after a delay
+  private final Map<Long, Boolean> failedRepairs = new HashMap<>();
+  private boolean repairScheduled = false;
+
+  public TreeFileInfoDao(DataSource dataSource) {
+    super(dataSource);
+    this.transactionTemplate = new TransactionTemplate(
+        new DataSourceTransactionManager(dataSource));
+    this.repairExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("FilePathRepairer-%d").build());
+    repairExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+    repairExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public List<FileInfo> getAll() {
+    readLock();
+    try {
+      return withPaths(super.getAll());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<FileInfo> getFilesByPrefix(String path) {
+    readLock();
+    try {
+      return getByIds(fileTree.getFidsByPrefix(path));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<FileInfo> getFilesByPrefixInOrder(String path) {
+    List<FileInfo> files = getFilesByPrefix(path);
+    files.sort(Comparator.comparing(FileInfo::getPath));
+    return files;
+  }
+
+  @Override
+  public List<FileInfo> getFilesByPaths(Collection<String> paths) {
+    readLock();
+    try {
+      return getByIds(getFids(paths));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public FileInfo getById(long fid) {
+    readLock();
+    try {
+      return withPath(super.getById(fid));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public FileInfo getByPath(String path) {
+    readLock();
+    try {
+      long fid = fileTree.getFid(path);
+      if (fid == FileTree.UNKNOWN_FID) {
+        throw new EmptyResultDataAccessException(1);
+      }
+      return withPath(super.getById(fid));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Map<String, Long> getPathFids(Collection<String> paths) {
+    readLock();
+    try {
+      Map<String, Long> pathToId = new HashMap<>();
+      for (String path : paths) {
+        long fid = fileTree.getFid(path);
+        if (fid != FileTree.UNKNOWN_FID) {
+          pathToId.put(path, fid);
+        }
+      }
+      return pathToId;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Map<Long, String> getFidPaths(Collection<Long> ids) {
+    readLock();
+    try {
+      Map<Long, String> idToPath = new HashMap<>();
+      for (long fid : ids) {
+        String path = fileTree.getPath(fid);
+        if (path != null) {
+          idToPath.put(fid, path);
+        }
+      }
+      return idToPath;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void insert(FileInfo fileInfo) {
+    insert(new FileInfo[]{fileInfo});
+  }
+
+  @Override
+  public void insert(FileInfo[] fileInfos) {
+    writeLock();
+    try {
+      for (FileInfo fileInfo : fileInfos) {
+        // The children stored before have no parent id yet
+        for (long childFid : fileTree.add(fileInfo.getPath(), fileInfo.getFileId())) {
+          scheduleRepair(childFid, false);
+        }
+      }
+      super.insert(fileInfos);
+      rescheduleRepairing(fileInfos);
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public int update(String path, int storagePolicy) {
+    readLock();
+    try {
+      long fid = fileTree.getFid(path);
+      if (fid == FileTree.UNKNOWN_FID) {
+        return 0;
+      }
+      return jdbcTemplate.update(
+          "UPDATE " + TABLE_NAME + " SET sid = ? WHERE fid = ?", storagePolicy, fid);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int[] updateStoragePolicies(Map<String, Integer> storagePolicies) {
+    readLock();
+    try {
+      List<Object[]> batchArgs = new ArrayList<>(storagePolicies.size());
+      for (Map.Entry<String, Integer> entry : storagePolicies.entrySet()) {
+        long fid = fileTree.getFid(entry.getKey());
+        if (fid != FileTree.UNKNOWN_FID) {
+          batchArgs.add(new Object[] {entry.getValue(), fid});
+        }
+      }
+      if (batchArgs.isEmpty()) {
+        return new int[0];
+      }
+      return jdbcTemplate.batchUpdate(
+          "UPDATE " + TABLE_NAME + " SET sid = ? WHERE fid = ?", batchArgs);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int updateByPath(String path, FileInfoDiff fileUpdate) {
+    readLock();
+    try {
+      long fid = fileTree.getFid(path);
+      if (fid == FileTree.UNKNOWN_FID) {
+        return 0;
+      }
+      // Paths are changed by renames only
+      Map<String, Object> parameters = updateToMap(fileUpdate);
+      parameters.remove("path");
+      return update(parameters, "fid = ?", fid);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteById(long fid) {
+    writeLock();
+    try {
+      for (long childFid : fileTree.getChildFids(fid)) {
+        scheduleRepair(childFid, false);
+      }
+      fileTree.remove(fid);
+      super.deleteById(fid);
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteByPath(String path, boolean recursive) {
+    writeLock();
+    try {
+      if (!recursive) {
+        for (long childFid : fileTree.getChildFids(fileTree.getFid(path))) {
+          scheduleRepair(childFid, false);
+        }
+      }
+      deleteByIds(fileTree.remove(path, recursive));
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public int[] batchDelete(List<String> paths) {
+    writeLock();
+    try {
+      int[] deleted = new int[paths.size()];
+      for (int i = 0; i < paths.size(); i++) {
+        List<Long> fids = fileTree.remove(paths.get(i), false);
+        deleted[i] = fids.size();
+        deleteByIds(fids);
+      }
+      return deleted;
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void deleteAll() {
+    writeLock();
+    try {
+      super.deleteAll();
+      fileTree.clear();
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void renameFile(String oldPath, String newPath, boolean recursive) {
+    writeLock();
+    try {
+      long fid = fileTree.getFid(oldPath);
+      List<Object[]> args = new ArrayList<>();
+      List<Long> replaced = new ArrayList<>();
+      for (long movedFid : fileTree.move(oldPath, newPath, replaced)) {
+        args.add(getRepairArgs(movedFid));
+      }
+      // The files overwritten by the rename are gone
+      deleteByIds(replaced);
+      if (!args.isEmpty()) {
+        jdbcTemplate.batchUpdate(REPAIR_SQL, args);
+      }
+      if (fid != FileTree.UNKNOWN_FID) {
+        scheduleRepair(fid, true);
+      } else {
+        // Files under a dir not stored are moved by their own rows
+        for (Object[] movedArgs : args) {
+          scheduleRepair((Long) movedArgs[3], true);
+        }
+      }
+    } catch (RuntimeException e) {
+      invalidate();
+      throw e;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Update the path column of the files renamed with their parents.
+   * It's done in background, this method is to wait for it. The files
+   * failed to update are retried later.
+   */
+  public void repairPaths() {
+    synchronized (repairLock) {
+      Map.Entry<Long, Boolean> repair;
+      while ((repair = nextRepair()) != null) {
+        repair(repair.getKey(), repair.getValue());
+      }
+    }
+  }
+
+  /**
+   * Whether the path column of some files is not updated yet after their
+   * parents are renamed, so that queries on file table see their old paths.
+   */
+  public boolean hasPendingRepairs() {
+    synchronized (pendingRepairs) {
+      return repairScheduled || !failedRepairs.isEmpty();
+    }
+  }
+
+  @Override
+  protected Map<String, Object> toMap(FileInfo fileInfo) {
+    Map<String, Object> parameters = super.toMap(fileInfo);
+    long parentFid = fileTree.getParentFid(fileInfo.getFileId());
+    parameters.put("parent_fid", parentFid == FileTree.UNKNOWN_FID ? null : parentFid);
+    parameters.put("name", fileTree.getName(fileInfo.getFileId()));
+    return parameters;
+  }
+
+  private void repair(long fid, boolean recursive) {
+    List<Long> fids;
+    try {
+      readLock();
+      try {
+        fids = recursive ? fileTree.getSubtreeFids(fid)
+            : fileTree.contains(fid) ? Collections.singletonList(fid)
+            : Collections.emptyList();
+      } finally {
+        lock.readLock().unlock();
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to find the files under file {}, retry later", fid, e);
+      retryRepair(fid, recursive);
+      return;
+    }
+    for (List<Long> batch : Lists.partition(fids, REPAIR_BATCH_SIZE)) {
+      synchronized (pendingRepairs) {
+        repairingFids.addAll(batch);
+      }
+      try {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        readLock();
+        try {
+          for (long batchFid : batch) {
+            if (fileTree.contains(batchFid)) {
+              args.add(getRepairArgs(batchFid));
+            }
+          }
+        } finally {
+          lock.readLock().unlock();
+        }
+        // Written without the lock, files changed meanwhile are repaired again
+        writeRepairs(args);
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to update the paths of {} files under file {}, retry later",
+            batch.size(), fid, e);
+        for (long batchFid : batch) {
+          retryRepair(batchFid, false);
+        }
+      } finally {
+        synchronized (pendingRepairs) {
+          repairingFids.removeAll(batch);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the repaired rows of a batch of files in a transaction.
+   */
+  @VisibleForTesting
+  protected void writeRepairs(List<Object[]> args) {
+    transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(REPAIR_SQL, args));
+  }
+
+  private void retryRepair(long fid, boolean recursive) {
+    synchronized (pendingRepairs) {
+      if (failedRepairs.isEmpty()) {
+        repairExecutor.schedule(() -> {
+          synchronized (pendingRepairs) {
+            failedRepairs.forEach(this::scheduleRepair);
+            failedRepairs.clear();
+          }
+        }, REPAIR_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+      }
+      failedRepairs.merge(fid, recursive, Boolean::logicalOr);
+    }
+  }
+
+  private Map.Entry<Long, Boolean> nextRepair() {
+    synchronized (pendingRepairs) {
+      Iterator<Map.Entry<Long, Boolean>> iterator = pendingRepairs.entrySet().iterator();
+      if (!iterator.hasNext()) {
+        repairScheduled = false;
+        return null;
+      }
+      Map.Entry<Long, Boolean> repair = new AbstractMap.SimpleEntry<>(iterator.next());
+      iterator.remove();
+      return repair;
+    }
+  }
+
+  private void scheduleRepair(long fid, boolean recursive) {
+    synchronized (pendingRepairs) {
+      pendingRepairs.merge(fid, recursive, Boolean::logicalOr);
+      if (!repairScheduled) {
+        repairScheduled = true;
+        repairExecutor.execute(this::repairPaths);
+      }
+    }
+  }
+
+  private void rescheduleRepairing(FileInfo[] fileInfos) {
+    synchronized (pendingRepairs) {
+      if (repairingFids.isEmpty()) {
+        return;
+      }
+    }
+    for (FileInfo fileInfo : fileInfos) {
+      boolean repairing;
+      synchronized (pendingRepairs) {
+        repairing = repairingFids.contains(fileInfo.getFileId());
+      }
+      if (repairing) {
+        scheduleRepair(fileInfo.getFileId(), false);
+      }
+    }
+  }
+
+  private Object[] getRepairArgs(long fid) {
+    long parentFid = fileTree.getParentFid(fid);
+    return new Object[]{fileTree.getPath(fid),
+        parentFid == FileTree.UNKNOWN_FID ? null : parentFid, fileTree.getName(fid), fid};
+  }
+
+  private List<Long> getFids(Collection<String> paths) {
+    List<Long> fids = new ArrayList<>();
+    for (String path : paths) {
+      long fid = fileTree.getFid(path);
+      if (fid != FileTree.UNKNOWN_FID) {
+        fids.add(fid);
+      }
+    }
+    return fids;
+  }
+
+  private List<FileInfo> getByIds(List<Long> fids) {
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate =
+        new NamedParameterJdbcTemplate(dataSource);
+    List<FileInfo> files = new ArrayList<>(fids.size());
+    for (List<Long> batch : Lists.partition(fids, QUERY_BATCH_SIZE)) {
+      MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+      parameterSource.addValue("fids", batch);
+      files.addAll(namedParameterJdbcTemplate.query(
+          "SELECT * FROM " + TABLE_NAME + " WHERE fid IN (:fids)",
+          parameterSource, new FileInfoRowMapper()));
+    }
+    return withPaths(files);
+  }
+
+  private void deleteByIds(List<Long> fids) {
+    if (!fids.isEmpty()) {
+      jdbcTemplate.batchUpdate("DELETE FROM " + TABLE_NAME + " WHERE fid = ?",
+          toBatchArgs(fids));
+    }
+  }
+
+  private List<FileInfo> withPaths(List<FileInfo> files) {
+    for (FileInfo file : files) {
+      withPath(file);
+    }
+    return files;
+  }
+
+  private FileInfo withPath(FileInfo file) {
+    String path = fileTree.getPath(file.getFileId());
+    if (path != null) {
+      file.setPath(path);
+    }
+    return file;
+  }
+
+  private void readLock() {
+    while (true) {
+      if (!loaded) {
+        writeLock();
+        lock.writeLock().unlock();
+      }
+      lock.readLock().lock();
+      if (loaded) {
+        return;
+      }
+      lock.readLock().unlock();
+    }
+  }
+
+  private void writeLock() {
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        load();
+      }
+      invalidateOnRollback();
+    } catch (RuntimeException e) {
+      lock.writeLock().unlock();
+      throw e;
+    }
+  }
+
+  /**
+   * The tree is changed before the rows, so it's reloaded if the rows are
+   * rolled back.
+   */
+  private void invalidateOnRollback() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()
+        || TransactionSynchronizationManager.hasResource(this)) {
+      return;
+    }
+    TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TreeFileInfoDao.this);
+            if (status != STATUS_COMMITTED) {
+              invalidate();
+            }
+          }
+        });
+  }
+
+  private void invalidate() {
+    lock.writeLock().lock();
+    try {
+      loaded = false;
+      fileTree.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void load() {
+    Map<Long, FileRow> rows = new HashMap<>();
+    jdbcTemplate.query("SELECT fid, path, parent_fid, name FROM " + TABLE_NAME, resultSet -> {
+      long parentFid = resultSet.getLong("parent_fid");
+      if (resultSet.wasNull()) {
+        parentFid = FileTree.UNKNOWN_FID;
+      }
+      rows.put(resultSet.getLong("fid"), new FileRow(resultSet.getString("path"),
+          parentFid, resultSet.getString("name")));
+    });
+    fileTree.clear();
+    for (Map.Entry<Long, FileRow> row : rows.entrySet()) {
+      fileTree.add(resolvePath(row.getValue(), rows), row.getKey());
+    }
+    // The rows not renamed or linked to their parent yet
+    int outdated = 0;
+    for (Map.Entry<Long, FileRow> row : rows.entrySet()) {
+      long fid = row.getKey();
+      FileRow fileRow = row.getValue();
+      if (fileTree.contains(fid) && (!fileRow.path.equals(fileTree.getPath(fid))
+          || fileRow.parentFid != fileTree.getParentFid(fid)
+          || !Objects.equals(fileRow.name, fileTree.getName(fid)))) {
+        scheduleRepair(fid, false);
+        outdated++;
+      }
+    }
+    loaded = true;
+    LOG.info("Loaded {} files to file tree, {} of them to update", fileTree.size(), outdated);
+  }
+
+  /**
+   * Resolve the path of the file by its parents, or by the path column if
+   * the parent is not stored.
+   */
+  private static String resolvePath(FileRow row, Map<Long, FileRow> rows) {
+    Deque<FileRow> unresolved = new ArrayDeque<>();
+    FileRow current = row;
+    while (current.resolvedPath == null) {
+      FileRow parent = current.name == null ? null : rows.get(current.parentFid);
+      if (parent == null || parent.resolving) {
+        current.resolvedPath = current.path;
+        break;
+      }
+      current.resolving = true;
+      unresolved.push(current);
+      current = parent;
+    }
+    String parentPath = current.resolvedPath;
+    while (!unresolved.isEmpty()) {
+      current = unresolved.pop();
+      current.resolvedPath = parentPath.endsWith("/")
+          ? parentPath + current.name : parentPath + "/" + current.name;
+      current.resolving = false;
+      parentPath = current.resolvedPath;
+    }
+    return row.resolvedPath;
+  }
+
+  private static class FileRow {
+    private final String path;
+    private final long parentFid;
+    private final String name;
+    private String resolvedPath;
+    private boolean resolving;
+
+    private FileRow(String path, long parentFid, String name) {
+      this.path = path;
+      this.parentFid = parentFid;
+      this.name = name;
+    }
+  }
+}
@@ -31,6 +31,10 @@ public PostgresDaoProvider(DBPool dbPool) {
     super(dbPool);
   }
 
+  public PostgresDaoProvider(DBPool dbPool, boolean fileTreeEnabled) {
+    super(dbPool, fileTreeEnabled);
+  }
+
   @Override
   public StorageDao storageDao() {
     return new PostgresStorageDao(dataSource);
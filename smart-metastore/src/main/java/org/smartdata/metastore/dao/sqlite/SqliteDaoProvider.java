@@ -28,8 +28,15 @@ public SqliteDaoProvider(DBPool dbPool) {
     super(dbPool);
   }
 
+  public SqliteDaoProvider(DBPool dbPool, boolean fileTreeEnabled) {
+    super(dbPool, fileTreeEnabled);
+  }
+
   @Override
   public FileInfoDao fileInfoDao() {
+    if (fileTreeEnabled) {
+      return super.fileInfoDao();
+    }
     return new SqliteFileInfoDao(dataSource);
   }
 
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from file id to access count, which keeps
+ * keys and values in primitive arrays to avoid an object per file.
+ * Not thread safe.
+ */
+public class FileAccessCountMap {
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final float LOAD_FACTOR = 0.5f;
+  // File ids are never negative, so it marks a free slot
+  private static final long FREE_KEY = -1;
+
+  private long[] fids;
+  private int[] counts;
+  private int size;
+  private int resizeThreshold;
+
+  public FileAccessCountMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public FileAccessCountMap(int expectedSize) {
+    allocate(tableSizeFor(expectedSize));
+  }
+
+  /**
+   * Add the given count to the access count of the file.
+   */
+  public void add(long fid, int count) {
+    if (fid < 0) {
+      throw new IllegalArgumentException("Invalid file id: " + fid);
+    }
+    int mask = fids.length - 1;
+    int slot = hash(fid) & mask;
+    while (fids[slot] != FREE_KEY) {
+      if (fids[slot] == fid) {
+        counts[slot] += count;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    fids[slot] = fid;
+    counts[slot] = count;
+    if (++size > resizeThreshold) {
+      rehash(fids.length << 1);
+    }
+  }
+
+  /**
+   * Get the access count of the file, or 0 if it is not accessed.
+   */
+  public int get(long fid) {
+    int mask = fids.length - 1;
+    int slot = hash(fid) & mask;
+    while (fids[slot] != FREE_KEY) {
+      if (fids[slot] == fid) {
+        return counts[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove all entries. The allocated arrays are kept for reuse.
+   */
+  public void clear() {
+    Arrays.fill(fids, FREE_KEY);
+    size = 0;
+  }
+
+  public void forEach(Consumer consumer) {
+    for (int i = 0; i < fids.length; i++) {
+      if (fids[i] != FREE_KEY) {
+        consumer.accept(fids[i], counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Get the bytes taken by the arrays of this map.
+   */
+  public long getMemoryFootprint() {
+    return (long) fids.length * (Long.BYTES + Integer.BYTES);
+  }
+
+  /**
+   * Receives the entries of a {@link FileAccessCountMap}.
+   */
+  public interface Consumer {
+    void accept(long fid, int count);
+  }
+
+  private void rehash(int newCapacity) {
+    long[] oldFids = fids;
+    int[] oldCounts = counts;
+    allocate(newCapacity);
+    int mask = newCapacity - 1;
+    for (int i = 0; i < oldFids.length; i++) {
+      if (oldFids[i] != FREE_KEY) {
+        int slot = hash(oldFids[i]) & mask;
+        while (fids[slot] != FREE_KEY) {
+          slot = (slot + 1) & mask;
+        }
+        fids[slot] = oldFids[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    fids = new long[capacity];
+    counts = new int[capacity];
+    Arrays.fill(fids, FREE_KEY);
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    int capacity = 2;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int hash(long fid) {
+    // File ids are mostly sequential, spread them over the table
+    long h = fid * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,382 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory tree of the files in file table, which resolves paths to
+ * file ids and back. Directories not stored in file table yet, e.g. when
+ * their children are stored first, are kept as nodes with unknown file id.
+ * Not thread safe.
+ */
+public class FileTree {
+  public static final long UNKNOWN_FID = -1;
+  private static final String ROOT = "/";
+
+  private final Map<Long, Node> nodes = new HashMap<>();
+  private Node root = new Node(null, "");
+
+  /**
+   * Add the file at the given path, replacing the file stored at the path.
+   *
+   * @return the ids of the children of the file, whose parent id changes
+   */
+  public List<Long> add(String path, long fid) {
+    Node node = getOrCreateNode(path);
+    if (node.fid == fid) {
+      return Collections.emptyList();
+    }
+    if (node.fid != UNKNOWN_FID) {
+      nodes.remove(node.fid);
+    }
+    Node replaced = nodes.put(fid, node);
+    if (replaced != null && replaced != node) {
+      // The file is stored at another path before
+      replaced.fid = UNKNOWN_FID;
+      prune(replaced);
+    }
+    node.fid = fid;
+    return getChildFids(node);
+  }
+
+  public long getFid(String path) {
+    Node node = getNode(path);
+    return node == null ? UNKNOWN_FID : node.fid;
+  }
+
+  public boolean contains(long fid) {
+    return nodes.containsKey(fid);
+  }
+
+  /**
+   * Get the path of the file, or null if it is not in the tree.
+   */
+  public String getPath(long fid) {
+    Node node = nodes.get(fid);
+    return node == null ? null : getPath(node);
+  }
+
+  /**
+   * Get the id of the parent directory of the file, or {@link #UNKNOWN_FID}
+   * if the parent directory is not stored.
+   */
+  public long getParentFid(long fid) {
+    Node node = nodes.get(fid);
+    return node == null || node.parent == null ? UNKNOWN_FID : node.parent.fid;
+  }
+
+  public String getName(long fid) {
+    Node node = nodes.get(fid);
+    return node == null ? null : node.name;
+  }
+
+  /**
+   * Get the ids of the direct children of the file.
+   */
+  public List<Long> getChildFids(long fid) {
+    Node node = nodes.get(fid);
+    return node == null ? Collections.emptyList() : getChildFids(node);
+  }
+
+  /**
+   * Get the ids of the file and all files under it.
+   */
+  public List<Long> getSubtreeFids(long fid) {
+    Node node = nodes.get(fid);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+    List<Long> fids = new ArrayList<>();
+    collectFids(node, fids);
+    return fids;
+  }
+
+  /**
+   * Move the file with all its children from src to dest, replacing the
+   * files under dest.
+   *
+   * @param replaced to collect the ids of the replaced files under dest,
+   *     which are removed from the tree
+   * @return the ids of the moved files, whose parent id or path changes.
+   *     The other moved files are resolved by their parent.
+   */
+  public List<Long> move(String src, String dest, List<Long> replaced) {
+    Node node = getNode(src);
+    if (node == null || node == root) {
+      return Collections.emptyList();
+    }
+    Node destParent = getOrCreateNode(getParentPath(normalize(dest)));
+    Node destNode = destParent.getChild(getName(normalize(dest)));
+    if (destNode == node) {
+      return Collections.emptyList();
+    }
+    if (destNode != null) {
+      detach(destNode);
+      removeSubtree(destNode, replaced);
+    }
+    Node srcParent = node.parent;
+    detach(node);
+    node.name = getName(normalize(dest));
+    destParent.addChild(node);
+    prune(srcParent);
+
+    List<Long> moved = new ArrayList<>();
+    if (node.fid != UNKNOWN_FID) {
+      moved.add(node.fid);
+    }
+    // Files under unknown dirs are not resolved by their parent
+    Deque<Node> unknownDirs = new ArrayDeque<>();
+    if (node.fid == UNKNOWN_FID) {
+      unknownDirs.push(node);
+    }
+    while (!unknownDirs.isEmpty()) {
+      for (Node child : unknownDirs.pop().getChildren()) {
+        if (child.fid != UNKNOWN_FID) {
+          moved.add(child.fid);
+        } else {
+          unknownDirs.push(child);
+        }
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Remove the file at the given path, with all its children if recursive.
+   *
+   * @return the ids of the removed files
+   */
+  public List<Long> remove(String path, boolean recursive) {
+    Node node = getNode(path);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+    List<Long> removed = new ArrayList<>();
+    if (recursive) {
+      if (node == root) {
+        removed.addAll(nodes.keySet());
+        clear();
+        return removed;
+      }
+      detach(node);
+      Node parent = node.parent;
+      removeSubtree(node, removed);
+      prune(parent);
+    } else if (node.fid != UNKNOWN_FID) {
+      removed.add(node.fid);
+      nodes.remove(node.fid);
+      node.fid = UNKNOWN_FID;
+      prune(node);
+    }
+    return removed;
+  }
+
+  /**
+   * Remove the file with the given id, its children are kept.
+   */
+  public void remove(long fid) {
+    Node node = nodes.remove(fid);
+    if (node != null) {
+      node.fid = UNKNOWN_FID;
+      prune(node);
+    }
+  }
+
+  /**
+   * Get the ids of the files whose paths start with the given prefix.
+   */
+  public List<Long> getFidsByPrefix(String prefix) {
+    int index = prefix.lastIndexOf('/');
+    if (index < 0) {
+      return Collections.emptyList();
+    }
+    Node dir = index == 0 ? root : getNode(prefix.substring(0, index));
+    if (dir == null) {
+      return Collections.emptyList();
+    }
+    String namePrefix = prefix.substring(index + 1);
+    List<Long> fids = new ArrayList<>();
+    if (dir == root && namePrefix.isEmpty() && root.fid != UNKNOWN_FID) {
+      fids.add(root.fid);
+    }
+    for (Node child : dir.getChildren()) {
+      if (child.name.startsWith(namePrefix)) {
+        collectFids(child, fids);
+      }
+    }
+    return fids;
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+
+  public void clear() {
+    nodes.clear();
+    root = new Node(null, "");
+  }
+
+  private List<Long> getChildFids(Node node) {
+    List<Long> fids = new ArrayList<>();
+    for (Node child : node.getChildren()) {
+      if (child.fid != UNKNOWN_FID) {
+        fids.add(child.fid);
+      }
+    }
+    return fids;
+  }
+
+  private void collectFids(Node node, List<Long> fids) {
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(node);
+    while (!stack.isEmpty()) {
+      Node current = stack.pop();
+      if (current.fid != UNKNOWN_FID) {
+        fids.add(current.fid);
+      }
+      for (Node child : current.getChildren()) {
+        stack.push(child);
+      }
+    }
+  }
+
+  private void removeSubtree(Node node, List<Long> removed) {
+    List<Long> fids = new ArrayList<>();
+    collectFids(node, fids);
+    for (long fid : fids) {
+      nodes.remove(fid);
+    }
+    removed.addAll(fids);
+  }
+
+  private String getPath(Node node) {
+    if (node == root) {
+      return ROOT;
+    }
+    Deque<String> names = new ArrayDeque<>();
+    for (Node current = node; current != root; current = current.parent) {
+      names.push(current.name);
+    }
+    StringBuilder path = new StringBuilder();
+    for (String name : names) {
+      path.append('/').append(name);
+    }
+    return path.toString();
+  }
+
+  private Node getNode(String path) {
+    Node node = root;
+    for (String name : split(normalize(path))) {
+      node = node.getChild(name);
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  private Node getOrCreateNode(String path) {
+    Node node = root;
+    for (String name : split(normalize(path))) {
+      Node child = node.getChild(name);
+      if (child == null) {
+        child = new Node(node, name);
+        node.addChild(child);
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  private void detach(Node node) {
+    if (node.parent != null) {
+      node.parent.children.remove(node.name);
+    }
+  }
+
+  /**
+   * Remove the unknown dirs without children, from the node to the root.
+   */
+  private void prune(Node node) {
+    while (node != null && node != root && node.fid == UNKNOWN_FID
+        && node.getChildren().isEmpty() && node.parent.getChild(node.name) == node) {
+      detach(node);
+      node = node.parent;
+    }
+  }
+
+  private static String normalize(String path) {
+    if (path.length() > 1 && path.endsWith(ROOT)) {
+      return path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+
+  private static String getParentPath(String path) {
+    int index = path.lastIndexOf('/');
+    return index <= 0 ? ROOT : path.substring(0, index);
+  }
+
+  private static String getName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  private static String[] split(String path) {
+    if (ROOT.equals(path) || path.isEmpty()) {
+      return new String[0];
+    }
+    return path.substring(1).split("/");
+  }
+
+  private static class Node {
+    private Node parent;
+    private String name;
+    private long fid = UNKNOWN_FID;
+    // Created for directories only
+    private Map<String, Node> children;
+
+    private Node(Node parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    private Node getChild(String name) {
+      return children == null ? null : children.get(name);
+    }
+
+    private void addChild(Node child) {
+      if (children == null) {
+        children = new HashMap<>();
+      }
+      child.parent = this;
+      children.put(child.name, child);
+    }
+
+    private Collection<Node> getChildren() {
+      return children == null ? Collections.<Node>emptyList() : children.values();
+    }
+  }
+}
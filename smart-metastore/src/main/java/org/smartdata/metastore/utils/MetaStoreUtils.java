@@ -121,7 +121,9 @@ public static MetaStore getDBAdapter(
     DruidPool druidPool = new DruidPool(properties);
     DBType dbType = getDbType(druidPool);
 
-    DaoProvider daoProvider = daoProviderFactory.createDaoProvider(druidPool, dbType);
+    DaoProvider daoProvider = daoProviderFactory.createDaoProvider(druidPool, dbType,
+        conf.getBoolean(SmartConfKeys.SMART_METASTORE_FILE_TREE_ENABLED_KEY,
+            SmartConfKeys.SMART_METASTORE_FILE_TREE_ENABLED_DEFAULT));
     DbSchemaManager dbSchemaManager = dbHandlersFactory.createDbManager(druidPool, conf);
     DbMetadataProvider dbMetadataProvider = dbHandlersFactory
         .createDbMetadataProvider(druidPool, dbType);
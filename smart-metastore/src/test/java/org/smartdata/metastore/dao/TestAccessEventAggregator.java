@@ -18,13 +18,23 @@
 package org.smartdata.metastore.dao;
 
 import com.google.common.collect.Lists;
+import org.junit.Assert;
 import org.junit.Test;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.utils.FileAccessCountMap;
 import org.smartdata.metrics.FileAccessEvent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -54,4 +64,64 @@ public void testAccessEventAggregator() throws MetaStoreException {
     verify(adapter, times(3)).execute(anyString());
     verify(manager, times(3)).addTable(any(AccessCountTable.class));
   }
+
+  @Test
+  public void testInMemoryAggregation() throws MetaStoreException {
+    MetaStore adapter = mockFileIds();
+    List<Map<Long, Integer>> createdTables = recordCreatedTables(adapter);
+    AccessCountTableManager manager = mock(AccessCountTableManager.class);
+    AccessEventAggregator aggregator =
+        new AccessEventAggregator(adapter, manager, 5000, true);
+
+    aggregator.addAccessEvents(Lists.newArrayList(
+        new FileAccessEvent("/file1", 1000),
+        new FileAccessEvent("/file2", 2000),
+        new FileAccessEvent("/file1", 7000),
+        new FileAccessEvent("/file1", 59000)));
+    // Windows in the same minute are not written to metastore
+    verify(adapter, never()).execute(anyString());
+    verify(manager, never()).addTable(any(AccessCountTable.class));
+
+    aggregator.addAccessEvents(Lists.newArrayList(
+        new FileAccessEvent("/file2", 61000),
+        new FileAccessEvent("", 125000)));
+    verify(adapter, never()).execute(anyString());
+    verify(manager, times(2)).addTable(any(AccessCountTable.class));
+    verify(manager).addTable(new AccessCountTable(0L, 60000L));
+    verify(manager).addTable(new AccessCountTable(60000L, 120000L));
+    Assert.assertEquals(2, createdTables.size());
+    Assert.assertEquals(3, (int) createdTables.get(0).get(1L));
+    Assert.assertEquals(1, (int) createdTables.get(0).get(2L));
+    Assert.assertEquals(1, createdTables.get(1).size());
+    Assert.assertEquals(1, (int) createdTables.get(1).get(2L));
+  }
+
+  /**
+   * Mock the file ids in metastore as the number in the file name.
+   */
+  @SuppressWarnings("unchecked")
+  private MetaStore mockFileIds() throws MetaStoreException {
+    MetaStore adapter = mock(MetaStore.class);
+    doAnswer(invocation -> {
+      Map<String, Long> pathToIds = new HashMap<>();
+      for (String path : (Collection<String>) invocation.getArguments()[0]) {
+        pathToIds.put(path, Long.parseLong(path.substring("/file".length())));
+      }
+      return pathToIds;
+    }).when(adapter).getFileIDs(anyCollectionOf(String.class));
+    return adapter;
+  }
+
+  private List<Map<Long, Integer>> recordCreatedTables(MetaStore adapter)
+      throws MetaStoreException {
+    List<Map<Long, Integer>> createdTables = new ArrayList<>();
+    doAnswer(invocation -> {
+      Map<Long, Integer> accessCounts = new HashMap<>();
+      ((FileAccessCountMap) invocation.getArguments()[1]).forEach(accessCounts::put);
+      createdTables.add(accessCounts);
+      return null;
+    }).when(adapter).createAccessCountTable(
+        any(AccessCountTable.class), any(FileAccessCountMap.class));
+    return createdTables;
+  }
 }
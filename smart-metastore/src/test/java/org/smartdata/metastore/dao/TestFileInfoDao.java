@@ -98,5 +98,17 @@ public void testInsertUpdateFiles() throws Exception {
     FileInfo file = fileInfoDao.getById(fileId);
     fileInfo.setStoragePolicy((byte) 10);
     Assert.assertTrue(file.equals(fileInfo));
+
+    FileInfo fileInfo2 = new FileInfo(path + "2", fileId + 1, length, isDir, blockReplication,
+        blockSize, modTime, accessTime, permission, owner, group, storagePolicy,
+        erasureCodingPolicy);
+    fileInfoDao.insert(fileInfo2);
+    Map<String, Integer> storagePolicies = new HashMap<>();
+    storagePolicies.put(path, 12);
+    storagePolicies.put(path + "2", 7);
+    storagePolicies.put("/none", 7);
+    fileInfoDao.updateStoragePolicies(storagePolicies);
+    Assert.assertEquals(12, fileInfoDao.getById(fileId).getStoragePolicy());
+    Assert.assertEquals(7, fileInfoDao.getById(fileId + 1).getStoragePolicy());
   }
 }
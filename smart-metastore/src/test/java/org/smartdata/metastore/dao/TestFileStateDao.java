@@ -21,10 +21,18 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.smartdata.metastore.TestDaoBase;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.CompressionFileState;
+import org.smartdata.model.FileContainerInfo;
 import org.smartdata.model.FileState;
+import org.smartdata.model.NormalFileState;
+import org.smartdata.model.S3FileState;
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TestFileStateDao extends TestDaoBase {
   private FileStateDao fileStateDao;
@@ -82,4 +90,78 @@ public void testDelete() throws Exception {
     fileStates = fileStateDao.getAll();
     Assert.assertEquals(0, fileStates.size());
   }
+
+  @Test
+  public void testGetNonNormalPaths() throws Exception {
+    fileStateDao.insertUpdate(new FileState("/file1", FileState.FileType.NORMAL,
+        FileState.FileStage.DONE));
+    fileStateDao.insertUpdate(new FileState("/file2", FileState.FileType.COMPRESSION,
+        FileState.FileStage.PROCESSING));
+    fileStateDao.insertUpdate(new FileState("/file3", FileState.FileType.S3,
+        FileState.FileStage.DONE));
+    List<String> paths = fileStateDao.getNonNormalPaths();
+    Assert.assertEquals(2, paths.size());
+    Assert.assertTrue(paths.contains("/file2"));
+    Assert.assertTrue(paths.contains("/file3"));
+  }
+
+  @Test
+  public void testGetDetailedFileStates() throws Exception {
+    CompactFileState compactFileState = new CompactFileState("/dir/file1",
+        new FileContainerInfo("/container", 100, 200));
+    daoProvider.smallFileDao().insertUpdate(compactFileState);
+    fileStateDao.insertUpdate(compactFileState);
+    CompressionFileState compressionFileState = new CompressionFileState("/dir/file2",
+        131072, "Zlib", 1000, 500, new Long[]{0L}, new Long[]{0L});
+    daoProvider.compressionFileDao().insertUpdate(compressionFileState);
+    fileStateDao.insertUpdate(compressionFileState);
+    fileStateDao.insertUpdate(new FileState("/dir/file3", FileState.FileType.S3,
+        FileState.FileStage.DONE));
+    fileStateDao.insertUpdate(new FileState("/dir/file4", FileState.FileType.COMPRESSION,
+        FileState.FileStage.PROCESSING));
+    fileStateDao.insertUpdate(new FileState("/dir/sub/file5", FileState.FileType.S3,
+        FileState.FileStage.DONE));
+    fileStateDao.insertUpdate(new FileState("/dir2/file6", FileState.FileType.NORMAL,
+        FileState.FileStage.DONE));
+    // Matched by LIKE '/d_r/%' without escaping
+    fileStateDao.insertUpdate(new FileState("/d_r/file7", FileState.FileType.S3,
+        FileState.FileStage.DONE));
+
+    Map<String, FileState> fileStates = toMap(fileStateDao.getDetailedByPaths(
+        Arrays.asList("/dir/file1", "/dir/file2", "/dir2/file6", "/dir/none")));
+    Assert.assertEquals(3, fileStates.size());
+    CompactFileState compactResult = (CompactFileState) fileStates.get("/dir/file1");
+    Assert.assertEquals("/container",
+        compactResult.getFileContainerInfo().getContainerFilePath());
+    Assert.assertEquals(200, compactResult.getFileContainerInfo().getLength());
+    CompressionFileState compressionResult =
+        (CompressionFileState) fileStates.get("/dir/file2");
+    Assert.assertEquals(1000, compressionResult.getOriginalLength());
+    Assert.assertEquals(FileState.FileStage.DONE, compressionResult.getFileStage());
+    Assert.assertTrue(fileStates.get("/dir2/file6") instanceof NormalFileState);
+
+    // Only direct children of the directory are returned
+    fileStates = toMap(fileStateDao.getDetailedByParent("/dir"));
+    Assert.assertEquals(4, fileStates.size());
+    Assert.assertTrue(fileStates.get("/dir/file1") instanceof CompactFileState);
+    Assert.assertTrue(fileStates.get("/dir/file2") instanceof CompressionFileState);
+    Assert.assertTrue(fileStates.get("/dir/file3") instanceof S3FileState);
+    Assert.assertEquals(new FileState("/dir/file4", FileState.FileType.COMPRESSION,
+        FileState.FileStage.PROCESSING), fileStates.get("/dir/file4"));
+
+    // Wildcards in the directory do not match its siblings
+    fileStates = toMap(fileStateDao.getDetailedByParent("/d_r"));
+    Assert.assertEquals(1, fileStates.size());
+    Assert.assertTrue(fileStates.containsKey("/d_r/file7"));
+    Assert.assertTrue(fileStateDao.getDetailedByParent("/d%").isEmpty());
+    Assert.assertEquals(1, fileStateDao.getDetailedByParent("/dir/sub/").size());
+  }
+
+  private Map<String, FileState> toMap(List<FileState> fileStates) {
+    Map<String, FileState> stateMap = new HashMap<>();
+    for (FileState fileState : fileStates) {
+      stateMap.put(fileState.getPath(), fileState);
+    }
+    return stateMap;
+  }
 }
@@ -26,6 +26,7 @@
 import org.smartdata.metastore.DBTest;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.utils.FileAccessCountMap;
 import org.smartdata.model.FileAccessInfo;
 import org.smartdata.model.FileInfo;
 
@@ -93,6 +94,27 @@ public void testGetTopN() throws Exception {
     Assert.assertTrue(accessInfos2.containsAll(expected2));
   }
 
+  @Test
+  public void testCreateAccessCountTable() throws Exception {
+    prepareFiles(metaStore);
+    AccessCountTable table = new AccessCountTable(0L, 60000L);
+    FileAccessCountMap accessCounts = new FileAccessCountMap();
+    accessCounts.add(101L, 2);
+    metaStore.createAccessCountTable(table, accessCounts);
+
+    // The existing table is replaced
+    accessCounts.add(101L, 1);
+    accessCounts.add(103L, 5);
+    metaStore.createAccessCountTable(table, accessCounts);
+
+    List<FileAccessInfo> accessInfos =
+        metaStore.getHotFiles(Arrays.asList(table), 2);
+    Assert.assertEquals(2, accessInfos.size());
+    Assert.assertTrue(accessInfos.contains(new FileAccessInfo(103L, "/file3", 5)));
+    Assert.assertTrue(accessInfos.contains(new FileAccessInfo(101L, "/file1", 3)));
+    Assert.assertEquals(1, metaStore.getAllSortedTables().size());
+  }
+
   private void prepareFiles(MetaStore metaStore) throws MetaStoreException {
     List<FileInfo> statusInternals = new ArrayList<>();
     for (int id = 1; id < 6; id++) {
@@ -0,0 +1,283 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.dao;
+
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.metastore.SqliteTestDaoBase;
+import org.smartdata.metastore.dao.impl.TreeFileInfoDao;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.FileInfoDiff;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestTreeFileInfoDao extends SqliteTestDaoBase {
+  private TreeFileInfoDao fileInfoDao;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionTemplate transactionTemplate;
+
+  @Before
+  public void initFileDao() {
+    fileInfoDao = new TreeFileInfoDao(druidPool.getDataSource());
+    jdbcTemplate = new JdbcTemplate(druidPool.getDataSource());
+    transactionTemplate = new TransactionTemplate(
+        new DataSourceTransactionManager(druidPool.getDataSource()));
+  }
+
+  @Test
+  public void testInsertGetDeleteFiles() {
+    fileInfoDao.insert(new FileInfo[]{
+        file("/", 1, true), file("/dir", 2, true), file("/dir/file1", 3, false),
+        file("/dir/file2", 4, false), file("/dir2", 5, true)});
+
+    Assert.assertEquals("/dir/file1", fileInfoDao.getById(3).getPath());
+    Assert.assertEquals(3, fileInfoDao.getByPath("/dir/file1").getFileId());
+    Assert.assertEquals(Sets.newHashSet("/dir", "/dir/file1", "/dir/file2", "/dir2"),
+        getPaths(fileInfoDao.getFilesByPrefix("/dir")));
+    Assert.assertEquals(Arrays.asList("/dir/file1", "/dir/file2"),
+        getPathList(fileInfoDao.getFilesByPrefixInOrder("/dir/")));
+    Assert.assertEquals(Sets.newHashSet("/dir2", "/dir/file2"),
+        getPaths(fileInfoDao.getFilesByPaths(Arrays.asList("/dir2", "/dir/file2", "/none"))));
+    Assert.assertEquals(Long.valueOf(4),
+        fileInfoDao.getPathFids(Arrays.asList("/dir/file2", "/none")).get("/dir/file2"));
+    Assert.assertEquals(Long.valueOf(2), jdbcTemplate.queryForObject(
+        "SELECT parent_fid FROM file WHERE fid = 3", Long.class));
+
+    Map<String, Integer> storagePolicies = new HashMap<>();
+    storagePolicies.put("/dir/file1", 12);
+    storagePolicies.put("/dir/file2", 7);
+    storagePolicies.put("/none", 7);
+    fileInfoDao.updateStoragePolicies(storagePolicies);
+    Assert.assertEquals(12, fileInfoDao.getById(3).getStoragePolicy());
+    Assert.assertEquals(7, fileInfoDao.getByPath("/dir/file2").getStoragePolicy());
+
+    FileInfoDiff fileInfoDiff = new FileInfoDiff().setLength(100L);
+    Assert.assertEquals(1, fileInfoDao.updateByPath("/dir/file1", fileInfoDiff));
+    Assert.assertEquals(100L, fileInfoDao.getById(3).getLength());
+
+    fileInfoDao.deleteByPath("/dir", true);
+    Assert.assertEquals(Sets.newHashSet("/", "/dir2"), getPaths(fileInfoDao.getAll()));
+    try {
+      fileInfoDao.getByPath("/dir/file1");
+      Assert.fail();
+    } catch (EmptyResultDataAccessException e) {
+      // expected
+    }
+    fileInfoDao.deleteAll();
+    Assert.assertTrue(fileInfoDao.getAll().isEmpty());
+  }
+
+  @Test
+  public void testRenameDirectory() {
+    fileInfoDao.insert(new FileInfo[]{
+        file("/dir", 2, true), file("/dir/sub", 3, true), file("/dir/sub/file", 4, false),
+        file("/other/file", 5, false)});
+
+    fileInfoDao.renameFile("/dir", "/renamed", true);
+    Assert.assertEquals("/renamed/sub/file", fileInfoDao.getById(4).getPath());
+    Assert.assertEquals(4, fileInfoDao.getByPath("/renamed/sub/file").getFileId());
+    Assert.assertEquals(Sets.newHashSet("/renamed", "/renamed/sub", "/renamed/sub/file"),
+        getPaths(fileInfoDao.getFilesByPrefix("/renamed")));
+    Assert.assertTrue(fileInfoDao.getFilesByPrefix("/dir").isEmpty());
+
+    // The files under a dir not stored are moved by their own rows
+    fileInfoDao.renameFile("/other", "/renamed/other", true);
+    Assert.assertEquals("/renamed/other/file", jdbcTemplate.queryForObject(
+        "SELECT path FROM file WHERE fid = 5", String.class));
+
+    fileInfoDao.repairPaths();
+    Assert.assertEquals(Sets.newHashSet("/renamed", "/renamed/sub", "/renamed/sub/file",
+        "/renamed/other/file"), getPaths(jdbcTemplate.queryForList(
+            "SELECT path FROM file", String.class)));
+  }
+
+  @Test
+  public void testLoadFromTable() {
+    fileInfoDao.insert(new FileInfo[]{
+        file("/dir/sub/file", 4, false), file("/dir/sub", 3, true), file("/dir", 2, true)});
+    fileInfoDao.renameFile("/dir", "/renamed", true);
+    fileInfoDao.repairPaths();
+
+    // Rows stored before parent ids, and a rename not applied to the children
+    jdbcTemplate.update("INSERT INTO file (path, fid, length, block_replication, block_size,"
+        + " modification_time, access_time, is_dir, sid, owner, owner_group, permission,"
+        + " ec_policy_id) VALUES ('/renamed/legacy', 6, 0, 1, 0, 0, 0, 0, 0, 'root', 'root',"
+        + " 0, 0)");
+    jdbcTemplate.update("UPDATE file SET path = '/moved', name = 'moved' WHERE fid = 2");
+
+    TreeFileInfoDao reloaded = new TreeFileInfoDao(druidPool.getDataSource());
+    Assert.assertEquals("/moved/sub/file", reloaded.getById(4).getPath());
+    Assert.assertEquals("/renamed/legacy", reloaded.getById(6).getPath());
+    reloaded.repairPaths();
+    Assert.assertEquals("/moved/sub/file", jdbcTemplate.queryForObject(
+        "SELECT path FROM file WHERE fid = 4", String.class));
+    Assert.assertEquals("legacy", jdbcTemplate.queryForObject(
+        "SELECT name FROM file WHERE fid = 6", String.class));
+  }
+
+  @Test
+  public void testRenameDirectoryWithDescendants() {
+    int filesPerDir = 20;
+    List<FileInfo> files = new ArrayList<>();
+    files.add(file("/data", 1, true));
+    Map<Long, String> renamedPaths = new HashMap<>();
+    for (int i = 0; i < 300; i++) {
+      long fid = i + 2;
+      String path;
+      if (i % (filesPerDir + 1) == 0) {
+        path = "/dir" + i;
+        files.add(file("/data" + path, fid, true));
+      } else {
+        path = "/dir" + (i - i % (filesPerDir + 1)) + "/file" + i;
+        files.add(file("/data" + path, fid, false));
+      }
+      renamedPaths.put(fid, "/archive" + path);
+      if (files.size() == 100) {
+        // Committed per batch, as the inotify events are applied
+        FileInfo[] batch = files.toArray(new FileInfo[0]);
+        transactionTemplate.execute(status -> {
+          fileInfoDao.insert(batch);
+          return null;
+        });
+        files.clear();
+      }
+    }
+    fileInfoDao.insert(files.toArray(new FileInfo[0]));
+
+    fileInfoDao.renameFile("/data", "/archive", true);
+    for (Map.Entry<Long, String> entry : renamedPaths.entrySet()) {
+      Assert.assertEquals(entry.getValue(), fileInfoDao.getById(entry.getKey()).getPath());
+    }
+    Assert.assertEquals(renamedPaths.size(), fileInfoDao.getFilesByPrefix("/archive/").size());
+
+    fileInfoDao.repairPaths();
+    for (Map.Entry<Long, String> entry : renamedPaths.entrySet()) {
+      Assert.assertEquals(entry.getValue(), jdbcTemplate.queryForObject(
+          "SELECT path FROM file WHERE fid = ?", String.class, entry.getKey()));
+    }
+    Assert.assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM file WHERE path LIKE '/data%'", Integer.class));
+  }
+
+  @Test
+  public void testRenameOverwrite() {
+    fileInfoDao.insert(new FileInfo[]{
+        file("/", 1, true), file("/src", 2, true), file("/src/file", 3, false),
+        file("/dest", 4, true), file("/dest/old", 5, false)});
+
+    fileInfoDao.renameFile("/src", "/dest", true);
+    Assert.assertEquals("/dest/file", fileInfoDao.getById(3).getPath());
+    Assert.assertEquals(Sets.newHashSet("/dest", "/dest/file"),
+        getPaths(fileInfoDao.getFilesByPrefix("/dest")));
+    // The rows of the replaced files are deleted
+    Assert.assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM file WHERE fid IN (4, 5)", Integer.class));
+
+    TreeFileInfoDao reloaded = new TreeFileInfoDao(druidPool.getDataSource());
+    Assert.assertEquals("/dest/file", reloaded.getById(3).getPath());
+    Assert.assertEquals(3, reloaded.getAll().size());
+  }
+
+  @Test
+  public void testRepairWindowAndRetry() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicBoolean failNext = new AtomicBoolean(false);
+    AtomicInteger writes = new AtomicInteger();
+    TreeFileInfoDao dao = new TreeFileInfoDao(druidPool.getDataSource()) {
+      @Override
+      protected void writeRepairs(List<Object[]> args) {
+        writes.incrementAndGet();
+        if (failNext.compareAndSet(true, false)) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          throw new IllegalStateException("Injected failure");
+        }
+        super.writeRepairs(args);
+      }
+    };
+    dao.insert(new FileInfo[]{
+        file("/", 1, true), file("/dir", 2, true), file("/dir/file", 3, false),
+        file("/other", 4, false)});
+    dao.repairPaths();
+    Assert.assertFalse(dao.hasPendingRepairs());
+    failNext.set(true);
+    writes.set(0);
+
+    dao.renameFile("/dir", "/renamed", true);
+    // The renamed dir is updated with the rename, its children in background
+    Assert.assertTrue(dao.hasPendingRepairs());
+    Assert.assertEquals("/renamed/file", dao.getById(3).getPath());
+    Assert.assertEquals("/renamed", jdbcTemplate.queryForObject(
+        "SELECT path FROM file WHERE fid = 2", String.class));
+    Assert.assertEquals("/dir/file", jdbcTemplate.queryForObject(
+        "SELECT path FROM file WHERE fid = 3", String.class));
+
+    // A failed repair is retried without reloading the tree from the table
+    jdbcTemplate.update("UPDATE file SET path = '/moved', name = 'moved' WHERE fid = 4");
+    release.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (dao.hasPendingRepairs() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    Assert.assertFalse(dao.hasPendingRepairs());
+    // The failed batch of the dir and its child is retried file by file
+    Assert.assertEquals(3, writes.get());
+    Assert.assertEquals("/renamed/file", jdbcTemplate.queryForObject(
+        "SELECT path FROM file WHERE fid = 3", String.class));
+    Assert.assertEquals("/other", dao.getById(4).getPath());
+  }
+
+  private static FileInfo file(String path, long fid, boolean isDir) {
+    return new FileInfo(path, fid, 0, isDir, (short) 1, 0, 0, 0,
+        (short) 0, "root", "root", (byte) 0, (byte) 0);
+  }
+
+  private static Set<String> getPaths(Iterable<?> files) {
+    Set<String> paths = new HashSet<>();
+    for (Object file : files) {
+      paths.add(file instanceof FileInfo ? ((FileInfo) file).getPath() : (String) file);
+    }
+    return paths;
+  }
+
+  private static List<String> getPathList(List<FileInfo> files) {
+    List<String> paths = new ArrayList<>();
+    for (FileInfo file : files) {
+      paths.add(file.getPath());
+    }
+    return paths;
+  }
+}
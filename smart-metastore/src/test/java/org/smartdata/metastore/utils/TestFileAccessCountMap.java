@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestFileAccessCountMap {
+
+  @Test
+  public void testAddAndGet() {
+    FileAccessCountMap accessCounts = new FileAccessCountMap(4);
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 100000; i++) {
+      long fid = 16385L + (i * 7919L) % 5000;
+      accessCounts.add(fid, i % 3 + 1);
+      expected.merge(fid, i % 3 + 1, Integer::sum);
+    }
+    Assert.assertEquals(expected.size(), accessCounts.size());
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      Assert.assertEquals((int) entry.getValue(), accessCounts.get(entry.getKey()));
+    }
+    Assert.assertEquals(0, accessCounts.get(1L));
+
+    Map<Long, Integer> visited = new HashMap<>();
+    accessCounts.forEach(visited::put);
+    Assert.assertEquals(expected, visited);
+
+    accessCounts.clear();
+    Assert.assertTrue(accessCounts.isEmpty());
+    Assert.assertEquals(0, accessCounts.get(16385L));
+    accessCounts.add(0L, 5);
+    Assert.assertEquals(5, accessCounts.get(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFileId() {
+    new FileAccessCountMap().add(-1L, 1);
+  }
+}
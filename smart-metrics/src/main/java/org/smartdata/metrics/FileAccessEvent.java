@@ -24,6 +24,7 @@ public class FileAccessEvent implements DataAccessEvent {
   private final String path;
   private final String user;
   private long timeStamp;
+  private int count;
 
   public FileAccessEvent(String path) {
     this(path, -1);
@@ -34,9 +35,14 @@ public FileAccessEvent(String path, long timestamp) {
   }
 
   public FileAccessEvent(String path, long timeStamp, String user) {
+    this(path, timeStamp, user, 1);
+  }
+
+  public FileAccessEvent(String path, long timeStamp, String user, int count) {
     this.path = path;
     this.timeStamp = timeStamp;
     this.user = user;
+    this.count = count;
   }
 
   public FileAccessEvent(String path, String user) {
@@ -71,4 +77,17 @@ public long getTimestamp() {
   public void setTimeStamp(long timeStamp) {
     this.timeStamp = timeStamp;
   }
+
+  /**
+   * Get the number of accesses this event stands for. Clients may merge
+   * repeated accesses to the same file into a single event.
+   * @return access count
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  public void incrementCount(int delta) {
+    this.count += delta;
+  }
 }
@@ -17,6 +17,8 @@
  */
 package org.smartdata.metrics;
 
+import java.util.List;
+
 /**
  * This interface aims to collect file access event through different ways.
  */
@@ -33,6 +35,13 @@ public interface FileAccessEventSource {
    */
   void insertEventFromSmartClient(FileAccessEvent event);
 
+  /**
+   * Insert a batch of events generated from Smart clients in one step.
+   * The actual implementation of FileAccessEventSource doesn't have to support this.
+   * @param events The events that generated from Smart clients
+   */
+  void insertEventsFromSmartClient(List<FileAccessEvent> events);
+
   /**
    * Close the source, release resources if necessary.
    */
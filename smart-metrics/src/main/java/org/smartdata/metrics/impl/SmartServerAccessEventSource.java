@@ -23,6 +23,7 @@
 import org.smartdata.metrics.FileAccessEventCollector;
 import org.smartdata.metrics.FileAccessEventSource;
 
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -60,6 +61,12 @@ public void insertEventFromSmartClient(FileAccessEvent event) {
     }
   }
 
+  @Override
+  public void insertEventsFromSmartClient(List<FileAccessEvent> events) {
+    this.eventQueue.addAll(events);
+    LOG.trace("Access events: {}", events.size());
+  }
+
   @Override
   public void close() {
     this.timer.cancel();
@@ -35,6 +35,8 @@
 import org.smartdata.model.CmdletInfo;
 import org.smartdata.model.CmdletState;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateChanges;
+import org.smartdata.model.FileStateFilter;
 import org.smartdata.model.RuleInfo;
 import org.smartdata.model.RuleState;
 import org.smartdata.protocol.AdminServerProto;
@@ -248,6 +250,13 @@ public void reportFileAccessEvent(FileAccessEvent event)
     ssm.getStatesManager().reportFileAccessEvent(event);
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    checkIfActive();
+    ssm.getStatesManager().reportFileAccessEvents(events);
+  }
+
   @Override
   public long submitCmdlet(String cmd) throws IOException {
     checkIfActive();
@@ -268,4 +277,36 @@ public FileState getFileState(String filePath) throws IOException {
       throw new IOException(e);
     }
   }
+
+  @Override
+  public List<FileState> getFileStates(List<String> filePaths) throws IOException {
+    checkIfActive();
+    try {
+      return ssm.getMetaStore().getDetailedFileStates(filePaths);
+    } catch (MetaStoreException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public List<FileState> getChildFileStates(String dirPath) throws IOException {
+    checkIfActive();
+    try {
+      return ssm.getMetaStore().getChildFileStates(dirPath);
+    } catch (MetaStoreException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public FileStateChanges getFileStateChanges(long sinceEpoch) throws IOException {
+    checkIfActive();
+    return ssm.getMetaStore().getFileStateChanges(sinceEpoch);
+  }
+
+  @Override
+  public FileStateFilter getFileStateFilter() throws IOException {
+    checkIfActive();
+    return ssm.getStatesManager().getFileStateFilter();
+  }
 }
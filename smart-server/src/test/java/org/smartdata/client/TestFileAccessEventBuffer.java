@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smartdata.metrics.FileAccessEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class TestFileAccessEventBuffer {
+
+  @Test
+  public void testMergeRepeatedAccesses() throws Exception {
+    List<FileAccessEvent> reported = new ArrayList<>();
+    FileAccessEventBuffer buffer = new FileAccessEventBuffer(
+        events -> {
+          synchronized (reported) {
+            reported.addAll(events);
+          }
+        }, 100, 100, 60000);
+    try {
+      for (int i = 0; i < 10; i++) {
+        buffer.add(new FileAccessEvent("/file1", "user"));
+        buffer.add(new FileAccessEvent("/file2", "user"));
+      }
+      buffer.add(new FileAccessEvent("/file3", "user"));
+      Assert.assertEquals(3, buffer.size());
+      buffer.flush();
+    } finally {
+      buffer.close();
+    }
+
+    Map<String, Integer> counts = new HashMap<>();
+    for (FileAccessEvent event : reported) {
+      counts.merge(event.getPath(), event.getCount(), Integer::sum);
+    }
+    Assert.assertEquals(3, reported.size());
+    Assert.assertEquals(10, (int) counts.get("/file1"));
+    Assert.assertEquals(10, (int) counts.get("/file2"));
+    Assert.assertEquals(1, (int) counts.get("/file3"));
+  }
+
+  @Test
+  public void testMergeByUser() throws Exception {
+    List<FileAccessEvent> reported = new ArrayList<>();
+    FileAccessEventBuffer buffer = new FileAccessEventBuffer(reported::addAll, 100, 100, 60000);
+    try {
+      buffer.add(new FileAccessEvent("/file1", "user1"));
+      buffer.add(new FileAccessEvent("/file1", "user2"));
+      buffer.add(new FileAccessEvent("/file1", null));
+      buffer.add(new FileAccessEvent("/file1", "user1"));
+      Assert.assertEquals(3, buffer.size());
+      buffer.flush();
+    } finally {
+      buffer.close();
+    }
+
+    Map<String, Integer> counts = new HashMap<>();
+    for (FileAccessEvent event : reported) {
+      counts.put(event.getAccessedBy(), event.getCount());
+    }
+    Assert.assertEquals(2, (int) counts.get("user1"));
+    Assert.assertEquals(1, (int) counts.get("user2"));
+    Assert.assertEquals(1, (int) counts.get(null));
+  }
+
+  @Test(timeout = 30000)
+  public void testFlushOnBatchSize() throws Exception {
+    CountDownLatch reportedLatch = new CountDownLatch(1);
+    FileAccessEventBuffer buffer = new FileAccessEventBuffer(
+        events -> reportedLatch.countDown(), 100, 10, 60000);
+    try {
+      for (int i = 0; i < 10; i++) {
+        buffer.add(new FileAccessEvent("/file" + i, "user"));
+      }
+      // Flush interval is long enough, only the batch size triggers report
+      reportedLatch.await();
+    } finally {
+      buffer.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testAddNotBlockedBySlowServer() throws Exception {
+    CountDownLatch serverLatch = new CountDownLatch(1);
+    FileAccessEventBuffer buffer = new FileAccessEventBuffer(
+        events -> {
+          try {
+            serverLatch.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }, 1000, 100, 10);
+    try {
+      for (int i = 0; i < 100000; i++) {
+        buffer.add(new FileAccessEvent("/file" + (i % 5000), "user"));
+      }
+      // Events for new files are dropped rather than blocking the caller
+      Assert.assertTrue(buffer.size() <= 1000);
+      Assert.assertTrue(buffer.getDroppedEventCount() > 0);
+    } finally {
+      serverLatch.countDown();
+      buffer.close();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testFlusherSurvivesReporterFailure() throws Exception {
+    CountDownLatch reportedLatch = new CountDownLatch(1);
+    boolean[] failed = new boolean[1];
+    FileAccessEventBuffer buffer = new FileAccessEventBuffer(
+        events -> {
+          if (!failed[0]) {
+            failed[0] = true;
+            throw new IllegalStateException("Unexpected failure");
+          }
+          reportedLatch.countDown();
+        }, 100, 1, 60000);
+    try {
+      buffer.add(new FileAccessEvent("/file1", "user"));
+      while (buffer.getDroppedEventCount() == 0) {
+        Thread.sleep(10);
+      }
+      // The flusher is still running and reports the next event
+      buffer.add(new FileAccessEvent("/file2", "user"));
+      reportedLatch.await();
+      Assert.assertEquals(1, buffer.getDroppedEventCount());
+    } finally {
+      buffer.close();
+    }
+  }
+}
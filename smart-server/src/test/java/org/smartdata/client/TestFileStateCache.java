@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.BloomFilter;
+import org.smartdata.metastore.FileStateChangeTracker;
+import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateFilter;
+import org.smartdata.model.NormalFileState;
+import org.smartdata.model.S3FileState;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestFileStateCache {
+  private FileStateChangeTracker tracker;
+  private Map<String, FileState> states;
+  private AtomicInteger loads;
+  private FileStateCache.Loader loader;
+
+  @Before
+  public void init() {
+    tracker = new FileStateChangeTracker(100);
+    states = new HashMap<>();
+    loads = new AtomicInteger(0);
+    loader = path -> {
+      loads.incrementAndGet();
+      FileState state = states.get(path);
+      return state != null ? state : new NormalFileState(path);
+    };
+  }
+
+  @Test
+  public void testRepeatedAccessHitsCache() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(FileState.FileType.NORMAL,
+          cache.get("/file1", loader).getFileType());
+    }
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(9, cache.getHitCount());
+  }
+
+  @Test
+  public void testInvalidateChangedFile() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0);
+    cache.get("/file1", loader);
+    cache.get("/file2", loader);
+
+    states.put("/file1", new S3FileState("/file1"));
+    tracker.fileChanged("/file1");
+    Assert.assertEquals(FileState.FileType.S3, cache.get("/file1", loader).getFileType());
+    Assert.assertEquals(3, loads.get());
+    cache.get("/file2", loader);
+    Assert.assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testStaleWithinSyncInterval() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 300);
+    Assert.assertEquals(FileState.FileType.NORMAL, cache.get("/file1", loader).getFileType());
+
+    // The cached state is served until the change is synced
+    states.put("/file1", new S3FileState("/file1"));
+    tracker.fileChanged("/file1");
+    long changeTime = System.currentTimeMillis();
+    FileState state = cache.get("/file1", loader);
+    Assert.assertEquals(FileState.FileType.NORMAL, state.getFileType());
+    while (state.getFileType() == FileState.FileType.NORMAL) {
+      Assert.assertTrue(System.currentTimeMillis() - changeTime < 300 + 200);
+      Thread.sleep(10);
+      state = cache.get("/file1", loader);
+    }
+    Assert.assertEquals(FileState.FileType.S3, state.getFileType());
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testInvalidateChangedDirectory() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0);
+    cache.get("/dir/file1", loader);
+    cache.get("/dir/file2", loader);
+    cache.get("/dir2/file1", loader);
+    Assert.assertEquals(3, cache.size());
+
+    tracker.directoryChanged("/dir");
+    cache.get("/dir2/file1", loader);
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testClearOnReset() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0);
+    cache.get("/file1", loader);
+    cache.get("/file2", loader);
+    tracker.allChanged();
+    cache.get("/file1", loader);
+    Assert.assertEquals(1, cache.size());
+
+    // Too many changes to be tracked
+    for (int i = 0; i < 200; i++) {
+      tracker.fileChanged("/other" + i);
+    }
+    cache.get("/file2", loader);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testBypassCacheWithoutServer() throws Exception {
+    AtomicInteger failures = new AtomicInteger(0);
+    FileStateCache cache = new FileStateCache(epoch -> {
+      if (failures.get() > 0) {
+        failures.decrementAndGet();
+        throw new IOException("SmartServer unreachable");
+      }
+      return tracker.getChangesSince(epoch);
+    }, 100, 60000, 0);
+    cache.get("/file1", loader);
+    failures.set(1);
+    cache.get("/file1", loader);
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(0, cache.size());
+    cache.get("/file1", loader);
+    cache.get("/file1", loader);
+    Assert.assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testNotCacheProcessingState() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0);
+    states.put("/file1", new FileState("/file1", FileState.FileType.COMPRESSION,
+        FileState.FileStage.PROCESSING));
+    cache.get("/file1", loader);
+    cache.get("/file1", loader);
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testFilterSkipsNormalFiles() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 100, 60000, 0,
+        this::buildFilter, 60000);
+    states.put("/file1", new S3FileState("/file1"));
+    Assert.assertEquals(FileState.FileType.S3, cache.get("/file1", loader).getFileType());
+    Assert.assertEquals(FileState.FileType.NORMAL, cache.get("/file2", loader).getFileType());
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(1, cache.getFilterHitCount());
+
+    // Changed after the filter is built
+    states.put("/file2", new S3FileState("/file2"));
+    tracker.fileChanged("/file2");
+    states.put("/dir/file3", new S3FileState("/dir/file3"));
+    tracker.directoryChanged("/dir");
+    Assert.assertEquals(FileState.FileType.S3, cache.get("/file2", loader).getFileType());
+    Assert.assertEquals(FileState.FileType.S3, cache.get("/dir/file3", loader).getFileType());
+    Assert.assertEquals(3, loads.get());
+
+    // Filter is dropped if changes can not be tracked
+    tracker.allChanged();
+    cache.get("/file4", loader);
+    Assert.assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testFilterTrustedWithinSyncInterval() throws Exception {
+    AtomicInteger syncs = new AtomicInteger(0);
+    FileStateCache cache = new FileStateCache(epoch -> {
+      syncs.incrementAndGet();
+      return tracker.getChangesSince(epoch);
+    }, 100, 60000, 300, this::buildFilter, 60000);
+    Assert.assertEquals(FileState.FileType.NORMAL, cache.get("/file1", loader).getFileType());
+    Assert.assertEquals(0, loads.get());
+    int syncsBefore = syncs.get();
+
+    // Compressed right after the filter is built, not synced yet
+    states.put("/file1", new S3FileState("/file1"));
+    tracker.fileChanged("/file1");
+    for (int i = 0; i < 10; i++) {
+      cache.get("/file" + i, loader);
+    }
+    // No sync per file within the interval
+    Assert.assertEquals(syncsBefore, syncs.get());
+    Assert.assertEquals(0, loads.get());
+
+    Thread.sleep(400);
+    Assert.assertEquals(FileState.FileType.S3, cache.get("/file1", loader).getFileType());
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(syncsBefore + 1, syncs.get());
+  }
+
+  @Test
+  public void testGetAllWithinSyncInterval() throws Exception {
+    AtomicInteger syncs = new AtomicInteger(0);
+    FileStateCache cache = new FileStateCache(epoch -> {
+      syncs.incrementAndGet();
+      return tracker.getChangesSince(epoch);
+    }, 100, 60000, 60000, this::buildFilter, 60000);
+    states.put("/file1", new S3FileState("/file1"));
+    cache.get("/file0", loader);
+    syncs.set(0);
+
+    Map<String, FileState> result = cache.getAll(
+        Arrays.asList("/file1", "/file2", "/file3"), loader);
+    Assert.assertEquals(FileState.FileType.S3, result.get("/file1").getFileType());
+    Assert.assertEquals(FileState.FileType.NORMAL, result.get("/file3").getFileType());
+    Assert.assertEquals(0, syncs.get());
+    Assert.assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testFilterReducesLoads() throws Exception {
+    int fileNum = 1000000;
+    int specialNum = 10000;
+    for (int i = 0; i < specialNum; i++) {
+      String path = "/data/file" + (i * (fileNum / specialNum));
+      states.put(path, new S3FileState(path));
+    }
+    AtomicInteger syncs = new AtomicInteger(0);
+    FileStateCache cache = new FileStateCache(epoch -> {
+      syncs.incrementAndGet();
+      return tracker.getChangesSince(epoch);
+    }, 10000, 60000, 1000, this::buildFilter, 60000);
+    long start = System.currentTimeMillis();
+    int special = 0;
+    for (int i = 0; i < fileNum; i++) {
+      if (cache.get("/data/file" + i, loader).getFileType() != FileState.FileType.NORMAL) {
+        special++;
+      }
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    Assert.assertEquals(specialNum, special);
+    Assert.assertTrue(loads.get() < fileNum / 50);
+    // Synced per interval, besides the one with the filter downloaded
+    Assert.assertTrue(syncs.get() <= elapsed / 1000 + 2);
+  }
+
+  private FileStateFilter buildFilter() {
+    long epoch = tracker.getEpoch();
+    BloomFilter filter = new BloomFilter(1 << 20);
+    for (FileState state : states.values()) {
+      filter.addElement(state.getPath());
+    }
+    return new FileStateFilter(tracker.getServerId(), epoch, filter);
+  }
+
+  @Test
+  public void testCapacityAndTtl() throws Exception {
+    FileStateCache cache = new FileStateCache(tracker::getChangesSince, 10, 100, 0);
+    for (int i = 0; i < 20; i++) {
+      cache.get("/file" + i, loader);
+    }
+    Assert.assertEquals(10, cache.size());
+    cache.get("/file19", loader);
+    Assert.assertEquals(20, loads.get());
+    Thread.sleep(200);
+    cache.get("/file19", loader);
+    Assert.assertEquals(21, loads.get());
+  }
+}
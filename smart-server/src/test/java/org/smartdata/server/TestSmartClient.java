@@ -18,16 +18,25 @@
 package org.smartdata.server;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.smartdata.client.SmartClient;
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.metastore.MetaStore;
+import org.smartdata.metrics.FileAccessEvent;
+import org.smartdata.metrics.impl.SmartServerAccessEventSource;
 import org.smartdata.model.FileState;
 import org.smartdata.model.NormalFileState;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public class TestSmartClient extends MiniSmartClusterHarness {
+  private static final String ACCESS_EVENT_SOURCE = "smart.data.file.event.source";
 
   @Test
   @Ignore("Fails on CI, no success reproducing it locally")
@@ -64,4 +73,58 @@ public void testDataIgnoreAndCover() throws Exception {
           client.shouldIgnore("/test2/b.txt"));
     }
   }
+
+  @Test
+  public void testReportFileAccessEvents() throws Exception {
+    waitTillSSMExitSafeMode();
+    Configuration conf = new Configuration(smartContext.getConf());
+    conf.setBoolean(SmartConfKeys.SMART_CLIENT_REPORT_BUFFER_ENABLED, false);
+    int num = 2000;
+    List<FileAccessEvent> events = new ArrayList<>();
+    for (int i = 0; i < num; i++) {
+      events.add(new FileAccessEvent("/test/file" + i, "user"));
+    }
+    // Users may differ within a batch, and may be unknown
+    events.add(new FileAccessEvent("/test/file0", "other"));
+    events.add(new FileAccessEvent("/test/file0", null));
+    RecordingAccessEventSource.EVENTS.clear();
+    try (SmartClient client = new SmartClient(conf)) {
+      for (FileAccessEvent event : events) {
+        if (event.getAccessedBy() != null) {
+          client.reportFileAccessEvent(event);
+        }
+      }
+      client.reportFileAccessEvents(events);
+    }
+
+    // The events ingested by the server keep the user of each event
+    List<FileAccessEvent> ingested = RecordingAccessEventSource.EVENTS;
+    Assert.assertEquals(events.size(), ingested.size());
+    for (int i = 0; i < events.size(); i++) {
+      Assert.assertEquals(events.get(i).getPath(), ingested.get(i).getPath());
+      Assert.assertEquals(events.get(i).getAccessedBy(), ingested.get(i).getAccessedBy());
+      Assert.assertEquals(events.get(i).getCount(), ingested.get(i).getCount());
+      Assert.assertTrue(ingested.get(i).getTimestamp() > 0);
+    }
+  }
+
+  @Override
+  public MiniDFSCluster createCluster(Configuration conf)
+      throws IOException, IllegalAccessException, ClassNotFoundException, InstantiationException {
+    conf.set(ACCESS_EVENT_SOURCE, RecordingAccessEventSource.class.getName());
+    return super.createCluster(conf);
+  }
+
+  /**
+   * Records the events reported in batches by Smart clients.
+   */
+  public static class RecordingAccessEventSource extends SmartServerAccessEventSource {
+    static final List<FileAccessEvent> EVENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void insertEventsFromSmartClient(List<FileAccessEvent> events) {
+      EVENTS.addAll(events);
+      super.insertEventsFromSmartClient(events);
+    }
+  }
 }
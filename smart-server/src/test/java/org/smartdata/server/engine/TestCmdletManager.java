@@ -26,6 +26,7 @@
 import org.junit.rules.ExpectedException;
 import org.smartdata.action.ActionRegistry;
 import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
 import org.smartdata.model.ActionInfo;
@@ -39,6 +40,7 @@
 import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -211,6 +213,234 @@ public void testWithoutCluster() throws MetaStoreException, IOException, Interru
     cmdletManager.stop();
   }
 
+  @Test
+  public void testScheduleSubmittedCmdlets() throws Exception {
+    int numCmdlets = 500;
+    SmartConf conf = new SmartConf();
+    conf.setInt(SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY, numCmdlets);
+    CmdletManager cmdletManager = startWithoutDispatch(conf);
+    try {
+      List<Long> cids = new ArrayList<>(numCmdlets);
+      for (int i = 0; i < numCmdlets; i++) {
+        // Identical cmdlets are refused by the tracker
+        cids.add(cmdletManager.submitCmdlet("echo -msg " + i));
+      }
+      long deadline = System.currentTimeMillis() + 30000;
+      for (long cid : cids) {
+        CmdletInfo info = cmdletManager.getCmdletInfo(cid);
+        while (info.getState() == CmdletState.PENDING
+            && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        Assert.assertEquals(CmdletState.SCHEDULED, info.getState());
+        Assert.assertTrue(info.getStateChangedTime() >= info.getGenerateTime());
+      }
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  @Test
+  public void testDeferredCmdlets() throws Exception {
+    CmdletManager cmdletManager = startWithoutDispatch(new SmartConf());
+    try {
+      List<Long> deferred = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        CmdletDescriptor descriptor = new CmdletDescriptor("echo -msg deferred" + i);
+        descriptor.setDeferIntervalMs(i == 0 ? 1000 : 3600000);
+        deferred.add(cmdletManager.submitCmdlet(descriptor));
+      }
+      // Not delayed by the deferred cmdlets submitted before
+      long ready = cmdletManager.submitCmdlet("echo -msg ready");
+      Thread.sleep(500);
+      Assert.assertEquals(CmdletState.SCHEDULED, cmdletManager.getCmdletInfo(ready).getState());
+      Assert.assertEquals(CmdletState.PENDING,
+          cmdletManager.getCmdletInfo(deferred.get(0)).getState());
+      Thread.sleep(1000);
+      Assert.assertEquals(CmdletState.SCHEDULED,
+          cmdletManager.getCmdletInfo(deferred.get(0)).getState());
+      for (long cid : deferred.subList(1, deferred.size())) {
+        Assert.assertEquals(CmdletState.PENDING, cmdletManager.getCmdletInfo(cid).getState());
+      }
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  @Test
+  public void testBatchedStatusReports() throws Exception {
+    int numCmdlets = 50;
+    CmdletManager cmdletManager = startWithoutDispatch(new SmartConf());
+    try {
+      List<CmdletInfo> cmdlets = new ArrayList<>(numCmdlets);
+      for (int i = 0; i < numCmdlets; i++) {
+        long cid = cmdletManager.submitCmdlet("echo -msg " + i);
+        cmdlets.add(cmdletManager.getCmdletInfo(cid));
+      }
+
+      // Report the actions finished as an executor does, a batch at a time
+      List<ActionStatus> actionStatuses = new ArrayList<>();
+      for (CmdletInfo cmdlet : cmdlets) {
+        actionStatuses.add(new ActionStatus(cmdlet.getCid(), true, cmdlet.getAids().get(0),
+            null, 1, 2, null, true));
+        if (actionStatuses.size() == 20) {
+          cmdletManager.updateStatus(new StatusReport(actionStatuses));
+          actionStatuses = new ArrayList<>();
+        }
+      }
+      cmdletManager.updateStatus(new StatusReport(actionStatuses));
+
+      for (CmdletInfo cmdlet : cmdlets) {
+        Assert.assertEquals(CmdletState.DONE, cmdlet.getState());
+        Assert.assertTrue(cmdletManager.getActionInfo(cmdlet.getAids().get(0)).isFinished());
+      }
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  @Test
+  public void testIncrementalStatusReports() throws Exception {
+    CmdletManager cmdletManager = startWithoutDispatch(new SmartConf());
+    try {
+      long cid = cmdletManager.submitCmdlet("echo -msg incremental");
+      long aid = cmdletManager.getCmdletInfo(cid).getAids().get(0);
+      ActionInfo actionInfo = cmdletManager.getActionInfo(aid);
+
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line1\n", 0, false))));
+      Assert.assertEquals("line1\n", actionInfo.getLog());
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line2\n", 6, false))));
+      // A duplicated report is not appended again
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line2\n", 6, false))));
+      Assert.assertEquals("line1\nline2\n", actionInfo.getLog());
+      // A late duplicated first report does not replace the longer log
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line1\n", 0, false))));
+      Assert.assertEquals("line1\nline2\n", actionInfo.getLog());
+      // Nothing appended
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "", 12, false))));
+      Assert.assertEquals("line1\nline2\n", actionInfo.getLog());
+
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line3\n", 12, true))));
+      Assert.assertTrue(actionInfo.isFinished());
+      Assert.assertEquals("line1\nline2\nline3\n", actionInfo.getLog());
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  @Test
+  public void testWholeStatusReports() throws Exception {
+    CmdletManager cmdletManager = startWithoutDispatch(new SmartConf());
+    try {
+      long cid = cmdletManager.submitCmdlet("echo -msg whole");
+      long aid = cmdletManager.getCmdletInfo(cid).getAids().get(0);
+      ActionInfo actionInfo = cmdletManager.getActionInfo(aid);
+
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line1\nline2\n", 0, false))));
+      Assert.assertEquals("line1\nline2\n", actionInfo.getLog());
+      // A whole log shorter than the one reported before is a late report
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line3\n", 0, false))));
+      Assert.assertEquals("line1\nline2\n", actionInfo.getLog());
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "line1\nline2\nline3\n", 0, true))));
+      Assert.assertEquals("line1\nline2\nline3\n", actionInfo.getLog());
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  @Test
+  public void testStatusReportsAfterLostOnes() throws Exception {
+    CmdletManager cmdletManager = startWithoutDispatch(new SmartConf());
+    try {
+      long cid = cmdletManager.submitCmdlet("echo -msg lost");
+      long aid = cmdletManager.getCmdletInfo(cid).getAids().get(0);
+      ActionInfo actionInfo = cmdletManager.getActionInfo(aid);
+
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "a\n", 0, false))));
+      // The report of "bb\n" at offset 2 is lost
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "c\n", 5, false))));
+      Assert.assertEquals("a\n...\nc\n", actionInfo.getLog());
+      // Later reports go on from the offset of the executor, not the mark
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "dddddd\n", 7, false))));
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "dddddd\n", 7, false))));
+      cmdletManager.updateStatus(new StatusReport(Arrays.asList(
+          incrementalStatus(cid, aid, "e\n", 14, true))));
+      Assert.assertEquals("a\n...\nc\ndddddd\ne\n", actionInfo.getLog());
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  private static ActionStatus incrementalStatus(long cid, long aid, String log, int offset,
+      boolean finished) {
+    ActionStatus status = new ActionStatus(cid, true, aid, log, 1, 2, null, finished);
+    status.setLogOffset(offset);
+    return status;
+  }
+
+  @Test
+  public void testSubmitCmdlets() throws Exception {
+    SmartConf conf = new SmartConf();
+    conf.setInt(SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY, 5);
+    CmdletManager cmdletManager = startWithoutDispatch(conf);
+    try {
+      long tracked = cmdletManager.submitCmdlet("echo -msg tracked");
+      List<Long> cids = cmdletManager.submitCmdlets(Arrays.asList(
+          new CmdletDescriptor("echo -msg a"),
+          new CmdletDescriptor("echo -msg tracked"),
+          new CmdletDescriptor("echo -msg a"),
+          new CmdletDescriptor("none -msg b"),
+          new CmdletDescriptor("echo -msg c"),
+          new CmdletDescriptor("echo -msg d"),
+          new CmdletDescriptor("echo -msg e")));
+      Assert.assertEquals(7, cids.size());
+      Assert.assertEquals(Arrays.asList(-1L, -1L, -1L), Arrays.asList(
+          cids.get(1), cids.get(2), cids.get(3)));
+      // The ids are allocated in a range, the invalid cmdlet leaves a gap
+      Assert.assertEquals(tracked + 1, (long) cids.get(0));
+      Assert.assertEquals(tracked + 3, (long) cids.get(4));
+      Assert.assertEquals(tracked + 4, (long) cids.get(5));
+      // Beyond the max number of pending cmdlets
+      Assert.assertEquals(-1L, (long) cids.get(6));
+      Assert.assertEquals("echo -msg c",
+          cmdletManager.getCmdletInfo(cids.get(4)).getParameters());
+      long aid = cmdletManager.getCmdletInfo(cids.get(5)).getAids().get(0);
+      Assert.assertEquals(cids.get(5).longValue(), cmdletManager.getActionInfo(aid).getCmdletId());
+    } finally {
+      cmdletManager.stop();
+    }
+  }
+
+  private CmdletManager startWithoutDispatch(SmartConf conf) throws Exception {
+    MetaStore metaStore = mock(MetaStore.class);
+    when(metaStore.getMaxCmdletId()).thenReturn(0L);
+    when(metaStore.getMaxActionId()).thenReturn(0L);
+    // Scheduled cmdlets are not dispatched, so there are always slots left
+    CmdletDispatcher dispatcher = mock(CmdletDispatcher.class);
+    when(dispatcher.canDispatchMore()).thenReturn(true);
+    when(dispatcher.getTotalSlotsLeft()).thenReturn(Integer.MAX_VALUE / 2);
+    ServerContext serverContext = new ServerContext(conf, metaStore);
+    serverContext.setServiceMode(ServiceMode.HDFS);
+    CmdletManager cmdletManager = new CmdletManager(serverContext);
+    cmdletManager.init();
+    cmdletManager.setDispatcher(dispatcher);
+    cmdletManager.start();
+    return cmdletManager;
+  }
+
   @Test(timeout = 40000)
   public void testReloadCmdletsInDB() throws Exception {
     waitTillSSMExitSafeMode();
@@ -17,9 +17,11 @@
  */
 package org.smartdata.server.rest;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartdata.model.CmdletDescriptor;
 import org.smartdata.server.SmartEngine;
 import org.smartdata.server.rest.message.JsonResponse;
 
@@ -29,6 +31,8 @@
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Cmdlets APIs.
@@ -86,6 +90,30 @@ public Response submitCmdlet(String args) {
     }
   }
 
+  /**
+   * Submit cmdlets in one batch, one cmdlet per line.
+   *
+   * @return the ids of the cmdlets in order, -1 for the ones not submitted
+   */
+  @POST
+  @Path("/submit/batch")
+  public Response submitCmdlets(String args) {
+    try {
+      List<CmdletDescriptor> cmdletDescriptors = new ArrayList<>();
+      for (String cmdlet : args.split("\\r?\\n")) {
+        if (!StringUtils.isBlank(cmdlet)) {
+          cmdletDescriptors.add(CmdletDescriptor.fromCmdletString(cmdlet));
+        }
+      }
+      return new JsonResponse<>(Response.Status.CREATED, smartEngine.getCmdletManager()
+              .submitCmdlets(cmdletDescriptors)).build();
+    } catch (Exception e) {
+      logger.error("Exception in CmdletRestApi while adding cmdlets: " + e.getLocalizedMessage());
+      return new JsonResponse<>(Response.Status.INTERNAL_SERVER_ERROR,
+              e.getMessage(), ExceptionUtils.getStackTrace(e)).build();
+    }
+  }
+
   @POST
   @Path("/{cmdletId}/stop")
   public Response stop(@PathParam("cmdletId") String cmdletId) {